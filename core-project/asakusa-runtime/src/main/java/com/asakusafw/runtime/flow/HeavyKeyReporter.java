@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.asakusafw.runtime.stage.StagePartitioning;
+
+/**
+ * Reports heavy keys in reducers.
+ * <p>
+ * Groups predicted as heavy keys by {@link StagePartitioning} are reported with their key hash,
+ * and groups which have more records than {@link StagePartitioning#getHeavyKeyThreshold(Configuration)}
+ * are summarized into a few counters, so that the number of counters is bounded.
+ * </p>
+ * @since 0.4.0
+ */
+final class HeavyKeyReporter {
+
+    static final Log LOG = LogFactory.getLog(HeavyKeyReporter.class);
+
+    static final String COUNTER_GROUPS = "detected-groups";
+
+    static final String COUNTER_RECORDS = "detected-records";
+
+    static final int MAX_LOGS = 10;
+
+    private final TaskInputOutputContext<?, ?, ?, ?> context;
+
+    private final long threshold;
+
+    private final int[] predicted;
+
+    private final SegmentedPartitioner<?, ?> partitioner;
+
+    private int logged;
+
+    private HeavyKeyReporter(
+            TaskInputOutputContext<?, ?, ?, ?> context,
+            long threshold,
+            int[] predicted,
+            SegmentedPartitioner<?, ?> partitioner) {
+        assert context != null;
+        assert predicted != null;
+        this.context = context;
+        this.threshold = threshold;
+        this.predicted = predicted;
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * Creates a new instance for the current reducer.
+     * @param context the current context
+     * @return the created instance, or {@code null} if heavy keys are never reported
+     */
+    static HeavyKeyReporter create(TaskInputOutputContext<?, ?, ?, ?> context) {
+        assert context != null;
+        Configuration conf = context.getConfiguration();
+        long threshold = StagePartitioning.getHeavyKeyThreshold(conf);
+        int[] predicted = StagePartitioning.getHeavyKeys(conf);
+        if (threshold <= 0 && predicted.length == 0) {
+            return null;
+        }
+        Arrays.sort(predicted);
+        return new HeavyKeyReporter(context, threshold, predicted, createPartitioner(context));
+    }
+
+    static SegmentedPartitioner<?, ?> createPartitioner(TaskInputOutputContext<?, ?, ?, ?> context) {
+        assert context != null;
+        Class<?> partitionerClass;
+        try {
+            partitionerClass = context.getPartitionerClass();
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Failed to load the partitioner", e);
+            return null;
+        }
+        if (SegmentedPartitioner.class.isAssignableFrom(partitionerClass) == false) {
+            return null;
+        }
+        return (SegmentedPartitioner<?, ?>) ReflectionUtils.newInstance(
+                partitionerClass,
+                context.getConfiguration());
+    }
+
+    /**
+     * Reports a group.
+     * @param key the key of the group
+     * @param records the number of records in the group
+     */
+    void report(SegmentedWritable key, long records) {
+        boolean exceeded = threshold > 0 && records >= threshold;
+        if (exceeded == false && predicted.length == 0) {
+            return;
+        }
+        int hash = hash(key);
+        if (Arrays.binarySearch(predicted, hash) >= 0) {
+            context.getCounter(
+                    StagePartitioning.HEAVY_KEY_COUNTER_GROUP,
+                    StagePartitioning.toHeavyKeyName(hash)).increment(records);
+        }
+        if (exceeded) {
+            context.getCounter(StagePartitioning.HEAVY_KEY_COUNTER_GROUP, COUNTER_GROUPS).increment(1);
+            context.getCounter(StagePartitioning.HEAVY_KEY_COUNTER_GROUP, COUNTER_RECORDS).increment(records);
+            if (logged < MAX_LOGS) {
+                logged++;
+                LOG.warn(MessageFormat.format(
+                        "Heavy key was detected: key={0}, segment={1}, records={2}",
+                        StagePartitioning.toHeavyKeyName(hash),
+                        key.getSegmentId(),
+                        String.valueOf(records)));
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private int hash(SegmentedWritable key) {
+        if (partitioner == null) {
+            return key.hashCode() & Integer.MAX_VALUE;
+        }
+        return ((SegmentedPartitioner) partitioner).getBucketHash(key);
+    }
+}
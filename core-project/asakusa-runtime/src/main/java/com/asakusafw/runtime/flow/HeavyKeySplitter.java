@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import com.asakusafw.runtime.flow.SegmentedPartitioner.SplitKind;
+import com.asakusafw.runtime.stage.StagePartitioning;
+
+/**
+ * Writes shuffle records of {@link SplitKind#REPLICATE} segments.
+ * <p>
+ * Each record whose key is a predicted heavy key is written once for each partition
+ * which processes the key, so that {@link SegmentedPartitioner} can assign the copies into them.
+ * Other records are written just once.
+ * </p>
+ * @since 0.4.0
+ */
+public final class HeavyKeySplitter {
+
+    private final SegmentedPartitioner<?, ?> partitioner;
+
+    private final int partitions;
+
+    private HeavyKeySplitter(SegmentedPartitioner<?, ?> partitioner, int partitions) {
+        this.partitioner = partitioner;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Creates a new instance for the current mapper.
+     * @param context the current context
+     * @return the created instance
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static HeavyKeySplitter create(TaskInputOutputContext<?, ?, ?, ?> context) {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null"); //$NON-NLS-1$
+        }
+        int partitions = context.getNumReduceTasks();
+        if (partitions <= 1
+                || StagePartitioning.getHeavyKeySplit(context.getConfiguration()) <= 1
+                || StagePartitioning.getHeavyKeys(context.getConfiguration()).length == 0) {
+            return new HeavyKeySplitter(null, partitions);
+        }
+        return new HeavyKeySplitter(HeavyKeyReporter.createPartitioner(context), partitions);
+    }
+
+    /**
+     * Writes a shuffle record.
+     * @param <K> the type of the key
+     * @param <V> the type of the value
+     * @param context the target context
+     * @param key the key
+     * @param value the value
+     * @throws IOException if failed to write the record
+     * @throws InterruptedException if interrupted while writing the record
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <K extends SegmentedWritable, V> void write(
+            TaskInputOutputContext<?, ?, ? super K, ? super V> context,
+            K key,
+            V value) throws IOException, InterruptedException {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null"); //$NON-NLS-1$
+        }
+        if (partitioner == null) {
+            context.write(key, value);
+            return;
+        }
+        int replicas = ((SegmentedPartitioner) partitioner).getReplicas(key, partitions);
+        for (int i = 0; i < replicas; i++) {
+            context.write(key, value);
+        }
+    }
+}
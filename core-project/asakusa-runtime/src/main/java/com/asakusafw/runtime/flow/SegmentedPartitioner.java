@@ -0,0 +1,180 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+import com.asakusafw.runtime.stage.StagePartitioning;
+
+/**
+ * An abstract implementation of {@link Partitioner} for {@link SegmentedWritable} keys.
+ * <p>
+ * Each key is assigned into a bucket using its {@link #getHashCode(SegmentedWritable) hash code}.
+ * If a partition table is configured by {@link StagePartitioning}, each bucket is mapped to
+ * a partition using the table, otherwise the bucket number is used as the partition number.
+ * </p>
+ * <p>
+ * If {@link StagePartitioning#getHeavyKeySplit(Configuration) splitting heavy keys} is enabled,
+ * each predicted heavy key of the segments whose {@link #getSplitKind(int) split kind} is not
+ * {@link SplitKind#NONE} is assigned into consecutive partitions starting from its original one:
+ * records of {@link SplitKind#SPREAD} segments are distributed over them in round robin, and
+ * records of {@link SplitKind#REPLICATE} segments must be written once for each partition
+ * (see {@link #getReplicas(SegmentedWritable, int)}), and then the consecutive copies are assigned
+ * into each partition in turn.
+ * Note that this relies on that the partitioner is invoked just once for each written record
+ * in the order of writing.
+ * </p>
+ * @param <K> the type of shuffle keys
+ * @param <V> the type of shuffle values
+ * @since 0.4.0
+ */
+public abstract class SegmentedPartitioner<K extends SegmentedWritable, V>
+        extends Partitioner<K, V> implements Configurable {
+
+    private Configuration conf;
+
+    private int[] table;
+
+    private int tablePartitions;
+
+    private int[] heavyKeys = new int[0];
+
+    private int split = 1;
+
+    private int replicated;
+
+    private int spread;
+
+    /**
+     * Returns the split kind of the segment.
+     * This implementation always returns {@link SplitKind#NONE}.
+     * @param segmentId the target segment ID
+     * @return the split kind
+     */
+    protected SplitKind getSplitKind(int segmentId) {
+        return SplitKind.NONE;
+    }
+
+    /**
+     * Returns the hash code of the grouping properties in the key.
+     * @param key the target key
+     * @return the hash code
+     */
+    protected abstract int getHashCode(K key);
+
+    /**
+     * Returns the non-negative hash code of the key for computing buckets.
+     * @param key the target key
+     * @return the non-negative hash code
+     */
+    public final int getBucketHash(K key) {
+        return getHashCode(key) & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of times the record with the key must be written.
+     * @param key the target key
+     * @param numPartitions the number of partitions
+     * @return the number of replicas, or {@code 1} if the record must not be replicated
+     */
+    public final int getReplicas(K key, int numPartitions) {
+        int count = Math.min(split, numPartitions);
+        if (count <= 1 || getSplitKind(key.getSegmentId()) != SplitKind.REPLICATE) {
+            return 1;
+        }
+        if (isHeavy(getBucketHash(key)) == false) {
+            return 1;
+        }
+        return count;
+    }
+
+    @Override
+    public int getPartition(K key, V value, int numPartitions) {
+        int hash = getHashCode(key) & Integer.MAX_VALUE;
+        int partition;
+        if (tablePartitions == numPartitions) {
+            partition = table[hash % table.length];
+        } else {
+            partition = hash % numPartitions;
+        }
+        int count = Math.min(split, numPartitions);
+        if (count <= 1 || isHeavy(hash) == false) {
+            return partition;
+        }
+        int offset;
+        switch (getSplitKind(key.getSegmentId())) {
+        case REPLICATE:
+            offset = replicated;
+            replicated = (replicated + 1) % count;
+            break;
+        case SPREAD:
+            offset = spread;
+            spread = (spread + 1) % count;
+            break;
+        default:
+            offset = 0;
+            break;
+        }
+        return (partition + offset) % numPartitions;
+    }
+
+    private boolean isHeavy(int hash) {
+        return heavyKeys.length != 0 && Arrays.binarySearch(heavyKeys, hash) >= 0;
+    }
+
+    @Override
+    public void setConf(Configuration newConf) {
+        this.conf = newConf;
+        this.table = newConf == null ? null : StagePartitioning.getTable(newConf);
+        this.tablePartitions = table == null ? -1 : StagePartitioning.getPartitionCount(table);
+        this.heavyKeys = newConf == null ? new int[0] : StagePartitioning.getHeavyKeys(newConf);
+        Arrays.sort(heavyKeys);
+        this.split = newConf == null ? 1 : StagePartitioning.getHeavyKeySplit(newConf);
+        this.replicated = 0;
+        this.spread = 0;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    /**
+     * How records of each segment are processed if their key is a heavy key.
+     * @since 0.4.0
+     */
+    public enum SplitKind {
+
+        /**
+         * Heavy keys are not split.
+         */
+        NONE,
+
+        /**
+         * Records are replicated to all partitions of the heavy key.
+         */
+        REPLICATE,
+
+        /**
+         * Records are spread over the partitions of the heavy key.
+         */
+        SPREAD,
+    }
+}
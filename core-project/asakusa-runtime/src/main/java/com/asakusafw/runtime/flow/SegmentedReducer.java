@@ -19,14 +19,19 @@ import java.io.IOException;
 import java.util.Iterator;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Reducer;
 
+import com.asakusafw.runtime.stage.StagePartitioning;
+
 /**
  * {@link SegmentedWritable}をキーとして、セグメントごとの処理を行う{@link Reducer}の骨格実装。
  * @param <KEYIN> 入力するキーの種類
  * @param <VALUEIN> 入力する値の種類
  * @param <KEYOUT> 出力するキーの種類
  * @param <VALUEOUT> 出力する値の種類
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public abstract class SegmentedReducer<
         KEYIN extends SegmentedWritable,
@@ -48,6 +53,29 @@ public abstract class SegmentedReducer<
      */
     protected abstract Rendezvous<VALUEIN> getRendezvous(KEYIN key);
 
+    private long processedRecords;
+
+    private HeavyKeyReporter heavyKeys;
+
+    /**
+     * レデュース処理を実行する。
+     * <p>
+     * このレデューサーが{@link StagePartitioning}によって偏りが予測されたパーティションを処理する場合、
+     * 処理したレコード数をカウンターに報告する。
+     * また、レコード数が極端に多いグループを検出した場合、それらをカウンターに報告する。
+     * </p>
+     */
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        processedRecords = 0;
+        heavyKeys = HeavyKeyReporter.create(context);
+        super.run(context);
+        Counter counter = StagePartitioning.getHotPartitionCounter(context);
+        if (counter != null) {
+            counter.increment(processedRecords);
+        }
+    }
+
     @Override
     protected void reduce(
             KEYIN key,
@@ -60,10 +88,16 @@ public abstract class SegmentedReducer<
         }
         Rendezvous<VALUEIN> group = getRendezvous(key);
         group.begin();
+        long count = 0;
         while (iter.hasNext()) {
             VALUEIN row = iter.next();
             group.process(row);
+            count++;
         }
         group.end();
+        processedRecords += count;
+        if (heavyKeys != null) {
+            heavyKeys.report(key, count);
+        }
     }
 }
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.MessageFormat;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Implementation of {@link ListBuffer} which keeps elements in serialized form.
+ * <p>
+ * This keeps only a limited number of element objects on the heap,
+ * and the rest of elements are serialized into a byte array slab.
+ * If the slab becomes larger than the threshold, it is escaped into a temporary file.
+ * Elements are deserialized into the reusable objects on {@link #get(int)},
+ * so that this list has the same restrictions as {@link FileMapListBuffer}.
+ * If the number of elements does not exceed the number of objects, elements are never serialized.
+ * </p>
+ * @param <E> element type
+ * @since 0.4.0
+ */
+public class SerializedListBuffer<E extends Writable>
+        extends AbstractList<E> implements ListBuffer<E>, RandomAccess {
+
+    static final Log LOG = LogFactory.getLog(SerializedListBuffer.class);
+
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private static final int MINIMUM_BUFFER_SIZE = 32;
+
+    private static final int DEFAULT_SLAB_LIMIT = 32 * 1024 * 1024;
+
+    private static final int MINIMUM_SLAB_LIMIT = 1024;
+
+    private static final int INITIAL_INDEX_SIZE = 256;
+
+    private static final String ESCAPE_FILE_PREFIX = "SerializedList";
+
+    private static final String ESCAPE_FILE_SUFFIX = ".tmp";
+
+    private final E[] objects;
+
+    private final int[] objectIndices;
+
+    private final int slabLimit;
+
+    private DataOutputBuffer slab;
+
+    private final DataInputBuffer slabInput = new DataInputBuffer();
+
+    private long[] offsets;
+
+    private int serialized;
+
+    private long escaped;
+
+    private File escapeFilePath;
+
+    private RandomAccessFile escapeFile;
+
+    private byte[] escapeBuffer = new byte[0];
+
+    private int size;
+
+    private int cursor;
+
+    private int limit;
+
+    /**
+     * Creates a new instance with default buffer size.
+     */
+    public SerializedListBuffer() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_SLAB_LIMIT);
+    }
+
+    /**
+     * Creates a new instance.
+     * If buffer size or slab limit is too small, the recommended minimum value is used.
+     * @param bufferSize the max number of objects on the heap
+     * @param slabLimit the max size of serialized elements on the heap (in bytes)
+     */
+    @SuppressWarnings("unchecked")
+    public SerializedListBuffer(int bufferSize, int slabLimit) {
+        int objectCount = Math.max(bufferSize, MINIMUM_BUFFER_SIZE);
+        this.objects = (E[]) new Writable[objectCount];
+        this.objectIndices = new int[objectCount];
+        this.slabLimit = Math.max(slabLimit, MINIMUM_SLAB_LIMIT);
+        this.slab = new DataOutputBuffer();
+        this.offsets = new long[INITIAL_INDEX_SIZE];
+        this.size = 0;
+        this.cursor = -1;
+        this.limit = 0;
+    }
+
+    @Override
+    public void begin() {
+        size = -1;
+        cursor = 0;
+        serialized = 0;
+        escaped = 0;
+        slab.reset();
+        modCount++;
+    }
+
+    @Override
+    public void end() {
+        if (cursor >= 0) {
+            size = cursor;
+            cursor = -1;
+            if (size > limit) {
+                // the rest objects will be overwritten in get(int)
+                for (int i = serialized; i < size; i++) {
+                    serialize(objects[i % limit]);
+                }
+            }
+            modCount++;
+        }
+    }
+
+    @Override
+    public boolean isExpandRequired() {
+        return limit <= cursor && limit < objects.length;
+    }
+
+    @Override
+    public void expand(E value) {
+        objects[limit] = value;
+        limit++;
+    }
+
+    @Override
+    public E advance() {
+        int slot = cursor % limit;
+        if (cursor >= limit) {
+            assert serialized == cursor - limit;
+            serialize(objects[slot]);
+        }
+        objectIndices[slot] = cursor;
+        cursor++;
+        return objects[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        int slot = index % limit;
+        E object = objects[slot];
+        if (objectIndices[slot] != index) {
+            restore(index, object);
+            objectIndices[slot] = index;
+        }
+        return object;
+    }
+
+    private void serialize(E object) {
+        if (serialized >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[serialized] = escaped + slab.getLength();
+        try {
+            object.write(slab);
+        } catch (IOException e) {
+            throw new BufferException(MessageFormat.format(
+                    "Failed to serialize an element: index={0}",
+                    serialized), e);
+        }
+        serialized++;
+        if (slab.getLength() >= slabLimit) {
+            escapeSlab();
+        }
+    }
+
+    private void escapeSlab() {
+        try {
+            if (escapeFile == null) {
+                escapeFilePath = File.createTempFile(ESCAPE_FILE_PREFIX, ESCAPE_FILE_SUFFIX);
+                LOG.info(MessageFormat.format(
+                        "Initializing a backing store for SerializedListBuffer: {0}",
+                        escapeFilePath));
+                escapeFile = new RandomAccessFile(escapeFilePath, "rw");
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(MessageFormat.format(
+                        "Saving a slab into backing store: path={0}, index={1}, cursor={2}, size={3}",
+                        escapeFilePath,
+                        serialized,
+                        escaped,
+                        slab.getLength()));
+            }
+            escapeFile.seek(escaped);
+            escapeFile.write(slab.getData(), 0, slab.getLength());
+        } catch (IOException e) {
+            throw new BufferException(MessageFormat.format(
+                    "Failed to save a slab: index={0}, size={1}",
+                    serialized,
+                    slab.getLength()), e);
+        }
+        escaped += slab.getLength();
+        slab.reset();
+    }
+
+    private void restore(int index, E object) {
+        assert index < serialized;
+        long start = offsets[index];
+        long end = index + 1 < serialized ? offsets[index + 1] : escaped + slab.getLength();
+        int length = (int) (end - start);
+        try {
+            if (start >= escaped) {
+                slabInput.reset(slab.getData(), (int) (start - escaped), length);
+            } else {
+                if (escapeBuffer.length < length) {
+                    escapeBuffer = new byte[Math.max(length, escapeBuffer.length * 2)];
+                }
+                escapeFile.seek(start);
+                escapeFile.readFully(escapeBuffer, 0, length);
+                slabInput.reset(escapeBuffer, 0, length);
+            }
+            object.readFields(slabInput);
+        } catch (IOException e) {
+            throw new BufferException(MessageFormat.format(
+                    "Failed to restore an element: index={0}, offset={1}",
+                    index,
+                    start), e);
+        }
+    }
+
+    @Override
+    public void shrink() {
+        if (slab.getData().length > slabLimit) {
+            slab = new DataOutputBuffer();
+        }
+        if (escapeFile != null) {
+            assert escapeFilePath != null;
+            try {
+                escapeFile.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to shrink the backing store", e);
+            }
+            if (escapeFilePath.delete() == false) {
+                LOG.warn(MessageFormat.format(
+                        "Failed to delete backing store file: {0}",
+                        escapeFilePath));
+            }
+            escapeFile = null;
+            escapeFilePath = null;
+        }
+    }
+}
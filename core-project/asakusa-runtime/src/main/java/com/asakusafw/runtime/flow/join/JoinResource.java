@@ -15,6 +15,7 @@
  */
 package com.asakusafw.runtime.flow.join;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.MessageFormat;
@@ -25,25 +26,56 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 
 import com.asakusafw.runtime.flow.FlowResource;
 import com.asakusafw.runtime.io.ModelInput;
 import com.asakusafw.runtime.stage.resource.StageResourceDriver;
+import com.asakusafw.runtime.stage.resource.StageResourceDriver.AccessMode;
 import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
 
 /**
  * 結合を行うためのリソース。
  * @param <L> 結合表を構成する結合先の型、通常はマスタ
  * @param <R> 結合する型、通常はトランザクション
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public abstract class JoinResource<L extends Writable, R> implements FlowResource {
 
     static final Log LOG = LogFactory.getLog(JoinResource.class);
 
+    /**
+     * The counter group name of the number of tasks for each join table and its access mode.
+     * @since 0.4.0
+     */
+    public static final String COUNTER_GROUP = "com.asakusafw.stage.resource.JoinTables";
+
     private final LookUpKey lookupKeyBuffer = new LookUpKey();
 
     private LookUpTable<L> table;
 
+    private AccessMode accessMode;
+
+    /**
+     * 指定のタスクコンテキストを利用してリソースを初期化し、結合表の保持方式をカウンタに記録する。
+     * <p>
+     * カウンタはグループ{@link #COUNTER_GROUP}の{@code <キャッシュ名>-<保持方式>}で、
+     * その方式で結合表を構築したタスクの数を表す。
+     * </p>
+     * @param context 現在のタスクコンテキスト
+     * @throws IOException リソースの初期化に失敗した場合
+     * @throws InterruptedException 初期化中に割り込みが発生した場合
+     * @since 0.4.0
+     */
+    public void setup(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException, InterruptedException {
+        setup(context.getConfiguration());
+        if (accessMode != null) {
+            String name = MessageFormat.format("{0}-{1}", getCacheName(), accessMode.name().toLowerCase());
+            context.getCounter(COUNTER_GROUP, name).increment(1);
+        }
+    }
+
     @Override
     public void setup(Configuration configuration) throws IOException, InterruptedException {
         if (LOG.isDebugEnabled()) {
@@ -65,8 +97,14 @@ public abstract class JoinResource<L extends Writable, R> implements FlowResourc
                         getCacheName(),
                         paths));
             }
+            AccessMode mode = driver.getAccessMode(getCacheName());
+            accessMode = mode;
+            LOG.info(MessageFormat.format(
+                    "Building join table \"{0}\" on {1}",
+                    getCacheName(),
+                    mode.getDescription()));
             try {
-                table = createTable(driver, paths);
+                table = createTable(driver, paths, mode);
             } catch (IOException e) {
                 throw new IOException(MessageFormat.format(
                         "Failed to build a join table from \"{0}\"",
@@ -81,12 +119,20 @@ public abstract class JoinResource<L extends Writable, R> implements FlowResourc
             driver.close();
         }
     }
+
     private LookUpTable<L> createTable(
             StageResourceDriver driver,
-            List<Path> paths) throws IOException {
+            List<Path> paths,
+            AccessMode mode) throws IOException {
         assert driver != null;
         assert paths != null;
-        LookUpTable.Builder<L> builder = createLookUpTable();
+        assert mode != null;
+        LookUpTable.Builder<L> builder;
+        if (mode == AccessMode.DISK) {
+            builder = new LocalFileLookUpTable.Builder<L>(null);
+        } else {
+            builder = createLookUpTable();
+        }
         L value = createValueObject();
         for (Path path : paths) {
             if (LOG.isDebugEnabled()) {
@@ -105,7 +151,9 @@ public abstract class JoinResource<L extends Writable, R> implements FlowResourc
                     lookupKeyBuffer.reset();
                     LookUpKey k = buildLeftKey(value, lookupKeyBuffer);
                     builder.add(k, value);
-                    value = createValueObject();
+                    if (mode == AccessMode.MEMORY) {
+                        value = createValueObject();
+                    }
                 }
             } finally {
                 input.close();
@@ -116,7 +164,10 @@ public abstract class JoinResource<L extends Writable, R> implements FlowResourc
 
     @Override
     public void cleanup(Configuration configuration) throws IOException, InterruptedException {
-        return;
+        if (table instanceof Closeable) {
+            ((Closeable) table).close();
+        }
+        table = null;
     }
 
     /**
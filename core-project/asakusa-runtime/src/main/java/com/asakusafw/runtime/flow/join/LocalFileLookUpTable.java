@@ -0,0 +1,277 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow.join;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * ローカルファイル上にデータを保持する{@link LookUpTable}の実装。
+ * <p>
+ * メモリ上にはキーと値の位置のみを保持し、値は{@link #get(LookUpKey)}のたびにファイルから復元する。
+ * ファイルはメモリマップして読み出し、復元する値のオブジェクトは呼び出しをまたいで再利用する。
+ * このため、{@link #get(LookUpKey)}が返すリストとその要素は、次に同メソッドを起動するまでの間のみ有効である。
+ * 利用後は{@link #close()}を起動してファイルを削除すること。
+ * </p>
+ * @param <T> 要素の種類
+ * @since 0.4.0
+ */
+public class LocalFileLookUpTable<T extends Writable> implements LookUpTable<T>, Closeable {
+
+    static final Log LOG = LogFactory.getLog(LocalFileLookUpTable.class);
+
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    private final File file;
+
+    private final Map<LookUpKey, long[]> index;
+
+    private final Class<? extends T> valueClass;
+
+    private final MappedByteBuffer[] segments;
+
+    private final DataInputBuffer buffer = new DataInputBuffer();
+
+    private final List<T> values = new ArrayList<T>();
+
+    private final List<T> results = new ArrayList<T>();
+
+    private byte[] bytes = new byte[256];
+
+    LocalFileLookUpTable(File file, Map<LookUpKey, long[]> index, Class<? extends T> valueClass) throws IOException {
+        this(file, index, valueClass, SEGMENT_SIZE);
+    }
+
+    LocalFileLookUpTable(
+            File file,
+            Map<LookUpKey, long[]> index,
+            Class<? extends T> valueClass,
+            int segmentSize) throws IOException {
+        assert file != null;
+        assert index != null;
+        assert segmentSize > 0;
+        this.file = file;
+        this.index = index;
+        this.valueClass = valueClass;
+        this.segments = map(file, segmentSize);
+    }
+
+    private static MappedByteBuffer[] map(File file, int segmentSize) throws IOException {
+        assert file != null;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            // the mapped buffers are still available after the channel is closed
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            int count = (int) ((size + segmentSize - 1) / segmentSize);
+            MappedByteBuffer[] results = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i * segmentSize;
+                results[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(segmentSize, size - offset));
+            }
+            return results;
+        } finally {
+            input.close();
+        }
+    }
+
+    @Override
+    public List<T> get(LookUpKey key) throws IOException {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null"); //$NON-NLS-1$
+        }
+        long[] positions = index.get(key);
+        if (positions == null) {
+            return Collections.emptyList();
+        }
+        int count = (int) positions[0];
+        results.clear();
+        for (int i = 1; i <= count; i++) {
+            long position = positions[i];
+            read(position, 4);
+            int length = ((bytes[0] & 0xff) << 24)
+                | ((bytes[1] & 0xff) << 16)
+                | ((bytes[2] & 0xff) << 8)
+                | (bytes[3] & 0xff);
+            read(position + 4, length);
+            buffer.reset(bytes, length);
+            T value;
+            if (i <= values.size()) {
+                value = values.get(i - 1);
+            } else {
+                value = ReflectionUtils.newInstance(valueClass, null);
+                values.add(value);
+            }
+            value.readFields(buffer);
+            results.add(value);
+        }
+        return results;
+    }
+
+    private void read(long position, int length) {
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        int segmentSize = segments[0].capacity();
+        long current = position;
+        int offset = 0;
+        while (offset < length) {
+            MappedByteBuffer segment = segments[(int) (current / segmentSize)];
+            segment.position((int) (current % segmentSize));
+            int size = Math.min(length - offset, segment.remaining());
+            segment.get(bytes, offset, size);
+            offset += size;
+            current += size;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        values.clear();
+        results.clear();
+        delete(file);
+    }
+
+    static void delete(File file) {
+        assert file != null;
+        if (file.delete() == false && file.exists()) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to delete a temporary file for join table: {0}",
+                    file));
+        }
+    }
+
+    /**
+     * {@link LocalFileLookUpTable}を構築するビルダー。
+     * @param <T> 要素の型
+     */
+    public static class Builder<T extends Writable> implements LookUpTable.Builder<T> {
+
+        private final File file;
+
+        private final DataOutputStream output;
+
+        private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+        private final Map<LookUpKey, long[]> index = new HashMap<LookUpKey, long[]>();
+
+        private Class<? extends T> valueClass;
+
+        private long position;
+
+        /**
+         * インスタンスを生成する。
+         * @param temporaryDirectory 一時ファイルを作成するディレクトリ、既定のディレクトリを利用する場合は{@code null}
+         * @throws IOException 一時ファイルの作成に失敗した場合
+         */
+        public Builder(File temporaryDirectory) throws IOException {
+            this.file = File.createTempFile("asakusa-join", ".bin", temporaryDirectory);
+            file.deleteOnExit();
+            boolean succeed = false;
+            try {
+                this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                succeed = true;
+            } finally {
+                if (succeed == false) {
+                    delete(file);
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(MessageFormat.format(
+                        "Created a temporary file for join table: {0}",
+                        file));
+            }
+        }
+
+        @Override
+        public void add(LookUpKey key, T value) throws IOException {
+            if (key == null) {
+                throw new IllegalArgumentException("key must not be null"); //$NON-NLS-1$
+            }
+            if (value == null) {
+                throw new IllegalArgumentException("value must not be null"); //$NON-NLS-1$
+            }
+            if (valueClass == null) {
+                @SuppressWarnings("unchecked")
+                Class<? extends T> c = (Class<? extends T>) value.getClass();
+                valueClass = c;
+            }
+            buffer.reset();
+            value.write(buffer);
+            int length = buffer.getLength();
+            output.writeInt(length);
+            output.write(buffer.getData(), 0, length);
+
+            long[] positions = index.get(key);
+            if (positions == null) {
+                positions = new long[] { 0, 0 };
+                index.put(key.copy(), positions);
+            } else if (positions[0] + 1 == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+                index.put(key, positions);
+            }
+            positions[(int) ++positions[0]] = position;
+            position += 4 + length;
+        }
+
+        @Override
+        public LookUpTable<T> build() throws IOException {
+            return build(SEGMENT_SIZE);
+        }
+
+        LookUpTable<T> build(int segmentSize) throws IOException {
+            boolean succeed = false;
+            try {
+                output.close();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(MessageFormat.format(
+                            "Built join table on local file: {0} ({1} bytes, {2} keys)",
+                            file,
+                            position,
+                            index.size()));
+                }
+                LookUpTable<T> result = new LocalFileLookUpTable<T>(file, index, valueClass, segmentSize);
+                succeed = true;
+                return result;
+            } finally {
+                if (succeed == false) {
+                    delete(file);
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.asakusafw.runtime.io;
 import static com.asakusafw.runtime.io.TsvConstants.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -29,6 +30,7 @@ import java.text.MessageFormat;
 
 import org.apache.hadoop.io.Text;
 
+import com.asakusafw.runtime.io.util.ByteRecordBuffer;
 import com.asakusafw.runtime.value.BooleanOption;
 import com.asakusafw.runtime.value.ByteOption;
 import com.asakusafw.runtime.value.DateOption;
@@ -66,10 +68,17 @@ finally {
     writer.close();
 }
 </code></pre>
+ * <p>
+ * 各レコードはUTF-8のバイト列としてバッファ上に直接構築され、
+ * ある程度の大きさになるまでまとめてから出力先に書き出される。
+ * 出力先に{@link OutputStream}を指定した場合、文字列への変換を行わずにバイト列をそのまま書き出す。
+ * </p>
  * <p>
  * 特に指定がない限り、このクラスのメソッドの引数に{@code null}を指定した場合には
  * {@link NullPointerException}がスローされる。
  * </p>
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class TsvEmitter implements RecordEmitter {
 
@@ -77,18 +86,28 @@ public class TsvEmitter implements RecordEmitter {
 
     private static final int BUFFER_SIZE = 2048;
 
+    private static final int INITIAL_RECORD_BUFFER_SIZE = 8 * 1024;
+
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private static final int DATE_LENGTH = YEAR_FIELD_LENGTH + MONTH_FIELD_LENGTH + DATE_FIELD_LENGTH + 2;
+
     private final Writer writer;
 
-    private final CharsetDecoder decoder;
+    private final OutputStream stream;
 
-    private final StringBuilder lineBuffer;
+    private final CharsetDecoder decoder;
 
-    private final char[] writeBuffer;
+    private final ByteRecordBuffer recordBuffer;
 
     private boolean headOfLine;
 
     private final CharBuffer decodeBuffer;
 
+    private final ByteRecordBuffer dateBuffer = new ByteRecordBuffer(DATE_LENGTH);
+
+    private int lastDays = -1;
+
     // MEMO: 全体的に throws IOException は残しておく
     // これは拡張時に互換性を保つため。
 
@@ -99,42 +118,61 @@ public class TsvEmitter implements RecordEmitter {
      * @throws IllegalArgumentException 引数に{@code null}が指定された場合
      */
     public TsvEmitter(Writer writer) throws IOException {
+        this(writer, null);
         if (writer == null) {
             throw new IllegalArgumentException("writer must not be null"); //$NON-NLS-1$
         }
+    }
+
+    /**
+     * インスタンスを生成する。
+     * <p>
+     * 出力先には各レコードがUTF-8で符号化されたバイト列が書き出される。
+     * </p>
+     * @param stream 出力先のストリーム
+     * @throws IOException 初期化に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     * @since 0.4.0
+     */
+    public TsvEmitter(OutputStream stream) throws IOException {
+        this(null, stream);
+        if (stream == null) {
+            throw new IllegalArgumentException("stream must not be null"); //$NON-NLS-1$
+        }
+    }
+
+    private TsvEmitter(Writer writer, OutputStream stream) {
         this.writer = writer;
+        this.stream = stream;
         this.decoder = TEXT_ENCODE.newDecoder()
             .onMalformedInput(CodingErrorAction.REPORT)
             .onUnmappableCharacter(CodingErrorAction.REPORT);
-        this.lineBuffer = new StringBuilder();
-        this.writeBuffer = new char[BUFFER_SIZE];
+        this.recordBuffer = new ByteRecordBuffer(INITIAL_RECORD_BUFFER_SIZE);
         this.headOfLine = true;
-        this.decodeBuffer = CharBuffer.wrap(writeBuffer);
+        this.decodeBuffer = CharBuffer.allocate(BUFFER_SIZE);
     }
 
     @Override
     public void endRecord() throws IOException {
-        flushLineBuffer();
-        writer.write(RECORD_SEPARATOR);
+        recordBuffer.append(RECORD_SEPARATOR);
         headOfLine = true;
+        if (recordBuffer.getLength() >= FLUSH_THRESHOLD) {
+            flushRecordBuffer();
+        }
     }
 
-    private void flushLineBuffer() throws IOException {
-        int rest = lineBuffer.length();
-        int cursor = 0;
-        while (rest > 0) {
-            int chunkSize = Math.min(rest, writeBuffer.length);
-            lineBuffer.getChars(cursor, cursor + chunkSize, writeBuffer, 0);
-            writer.write(writeBuffer, 0, chunkSize);
-            rest -= chunkSize;
-            cursor += chunkSize;
+    private void flushRecordBuffer() throws IOException {
+        if (stream != null) {
+            recordBuffer.writeTo(stream);
+        } else if (recordBuffer.getLength() > 0) {
+            writer.write(new String(recordBuffer.getData(), 0, recordBuffer.getLength(), TEXT_ENCODE));
+            recordBuffer.clear();
         }
-        lineBuffer.setLength(0);
     }
 
     private void startCell() {
         if (headOfLine == false) {
-            lineBuffer.append(CELL_SEPARATOR);
+            recordBuffer.append(CELL_SEPARATOR);
         }
         headOfLine = false;
     }
@@ -145,7 +183,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get() ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        recordBuffer.append(option.get() ? BOOLEAN_TRUE : BOOLEAN_FALSE);
     }
 
     @Override
@@ -154,7 +192,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get());
+        recordBuffer.append((int) option.get());
     }
 
     @Override
@@ -163,7 +201,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get());
+        recordBuffer.append(option.get());
     }
 
     @Override
@@ -172,7 +210,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get());
+        recordBuffer.append(option.get());
     }
 
     @Override
@@ -181,7 +219,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get());
+        recordBuffer.append(option.get());
     }
 
     @Override
@@ -190,7 +228,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get());
+        recordBuffer.appendAscii(String.valueOf(option.get()));
     }
 
     @Override
@@ -199,7 +237,7 @@ public class TsvEmitter implements RecordEmitter {
         if (emitNull(option)) {
             return;
         }
-        lineBuffer.append(option.get());
+        recordBuffer.appendAscii(String.valueOf(option.get()));
     }
 
     @Override
@@ -209,7 +247,7 @@ public class TsvEmitter implements RecordEmitter {
             return;
         }
         // TODO BigDecimal
-        lineBuffer.append(option.get());
+        recordBuffer.appendAscii(option.get().toString());
     }
 
     @Override
@@ -219,12 +257,48 @@ public class TsvEmitter implements RecordEmitter {
             return;
         }
         Text text = option.get();
-        if (text.getLength() == 0) {
+        int length = text.getLength();
+        if (length == 0) {
             return;
         }
-
         byte[] bytes = text.getBytes();
-        ByteBuffer source = ByteBuffer.wrap(bytes, 0, text.getLength());
+        boolean ascii = true;
+        boolean plain = true;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                ascii = false;
+            } else if (b == '\t' || b == '\n' || b == '\\') {
+                plain = false;
+            }
+        }
+        if (ascii == false) {
+            validate(bytes, length);
+        }
+        if (plain) {
+            recordBuffer.append(bytes, 0, length);
+            return;
+        }
+        // UTF-8 multi-byte sequences never contain ASCII bytes
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b == '\t') {
+                recordBuffer.append(ESCAPE_CHAR);
+                recordBuffer.append(ESCAPE_HT);
+            } else if (b == '\n') {
+                recordBuffer.append(ESCAPE_CHAR);
+                recordBuffer.append(ESCAPE_LF);
+            } else if (b == '\\') {
+                recordBuffer.append(ESCAPE_CHAR);
+                recordBuffer.append(ESCAPE_CHAR);
+            } else {
+                recordBuffer.append(b);
+            }
+        }
+    }
+
+    private void validate(byte[] bytes, int length) throws RecordFormatException {
+        ByteBuffer source = ByteBuffer.wrap(bytes, 0, length);
         decoder.reset();
         decodeBuffer.clear();
         while (true) {
@@ -234,13 +308,10 @@ public class TsvEmitter implements RecordEmitter {
                         "Cannot process a character string (\"{0}\")",
                         result));
             }
+            decodeBuffer.clear();
             if (result.isUnderflow()) {
-                consumeDecoded();
                 break;
             }
-            if (result.isOverflow()) {
-                consumeDecoded();
-            }
         }
         while (true) {
             CoderResult result = decoder.flush(decodeBuffer);
@@ -249,37 +320,11 @@ public class TsvEmitter implements RecordEmitter {
                         "Cannot process a character string (\"{0}\")",
                         result));
             }
+            decodeBuffer.clear();
             if (result.isUnderflow()) {
-                consumeDecoded();
                 break;
             }
-            if (result.isOverflow()) {
-                consumeDecoded();
-            }
-        }
-    }
-
-    private void consumeDecoded() {
-        decodeBuffer.flip();
-        if (decodeBuffer.hasRemaining()) {
-            char[] array = decodeBuffer.array();
-            for (int i = decodeBuffer.position(), n = decodeBuffer.limit(); i < n; i++) {
-                char c = array[i];
-                if (c == '\t') {
-                    lineBuffer.append(ESCAPE_CHAR);
-                    lineBuffer.append(ESCAPE_HT);
-                } else if (c == '\n') {
-                    lineBuffer.append(ESCAPE_CHAR);
-                    lineBuffer.append(ESCAPE_LF);
-                } else if (c == '\\') {
-                    lineBuffer.append(ESCAPE_CHAR);
-                    lineBuffer.append(ESCAPE_CHAR);
-                } else {
-                    lineBuffer.append(c);
-                }
-            }
         }
-        decodeBuffer.clear();
     }
 
     @Override
@@ -302,57 +347,43 @@ public class TsvEmitter implements RecordEmitter {
         int days = DateUtil.getDayFromSeconds(seconds);
         emitDate(days);
 
-        lineBuffer.append(DATE_TIME_SEPARATOR);
+        recordBuffer.append(DATE_TIME_SEPARATOR);
 
         int sec = DateUtil.getSecondOfDay(seconds);
         emitTime(sec);
     }
 
     private void emitDate(int days) {
-        int year = DateUtil.getYearFromDay(days);
-        int daysInYear = days - DateUtil.getDayFromYear(year);
-        boolean leap = DateUtil.isLeap(year);
-        int month = DateUtil.getMonthOfYear(daysInYear, leap);
-        int day = DateUtil.getDayOfMonth(daysInYear, leap);
-
-        fill('0', YEAR_FIELD_LENGTH, year);
-        lineBuffer.append(DATE_FIELD_SEPARATOR);
-        fill('0', MONTH_FIELD_LENGTH, month);
-        lineBuffer.append(DATE_FIELD_SEPARATOR);
-        fill('0', DATE_FIELD_LENGTH, day);
-    }
-
-    private void emitTime(int sec) {
-        fill('0', HOUR_FIELD_LENGTH, sec / (60 * 60));
-        lineBuffer.append(TIME_FIELD_SEPARATOR);
-        fill('0', MINUTE_FIELD_LENGTH, sec / 60 % 60);
-        lineBuffer.append(TIME_FIELD_SEPARATOR);
-        fill('0', SECOND_FIELD_LENGTH, sec % 60);
-    }
-
-    private void fill(char filler, int columns, int value) {
-        for (int i = 0, n = countToFill(columns, value); i < n; i++) {
-            lineBuffer.append(filler);
+        if (days != lastDays) {
+            dateBuffer.clear();
+            int year = DateUtil.getYearFromDay(days);
+            int daysInYear = days - DateUtil.getDayFromYear(year);
+            boolean leap = DateUtil.isLeap(year);
+            int month = DateUtil.getMonthOfYear(daysInYear, leap);
+            int day = DateUtil.getDayOfMonth(daysInYear, leap);
+
+            dateBuffer.appendZeroPadded(year, YEAR_FIELD_LENGTH);
+            dateBuffer.append(DATE_FIELD_SEPARATOR);
+            dateBuffer.appendZeroPadded(month, MONTH_FIELD_LENGTH);
+            dateBuffer.append(DATE_FIELD_SEPARATOR);
+            dateBuffer.appendZeroPadded(day, DATE_FIELD_LENGTH);
+            lastDays = days;
         }
-        lineBuffer.append(value);
+        recordBuffer.append(dateBuffer.getData(), 0, dateBuffer.getLength());
     }
 
-    private int countToFill(int columns, int value) {
-        if (value < 0) {
-            return 0;
-        }
-        for (int count = columns - 1, figure = 10; count >= 0; count--, figure *= 10) {
-            if (value < figure) {
-                return count;
-            }
-        }
-        return 0;
+    private void emitTime(int sec) {
+        recordBuffer.appendZeroPadded(sec / (60 * 60), HOUR_FIELD_LENGTH);
+        recordBuffer.append(TIME_FIELD_SEPARATOR);
+        recordBuffer.appendZeroPadded(sec / 60 % 60, MINUTE_FIELD_LENGTH);
+        recordBuffer.append(TIME_FIELD_SEPARATOR);
+        recordBuffer.appendZeroPadded(sec % 60, SECOND_FIELD_LENGTH);
     }
 
     private boolean emitNull(ValueOption<?> option) {
         if (option.isNull()) {
-            lineBuffer.append(ESCAPE_CHAR);
-            lineBuffer.append(ESCAPE_NULL_COLUMN);
+            recordBuffer.append(ESCAPE_CHAR);
+            recordBuffer.append(ESCAPE_NULL_COLUMN);
             return true;
         }
         return false;
@@ -360,8 +391,12 @@ public class TsvEmitter implements RecordEmitter {
 
     @Override
     public void flush() throws IOException {
-        flushLineBuffer();
-        writer.flush();
+        flushRecordBuffer();
+        if (stream != null) {
+            stream.flush();
+        } else {
+            writer.flush();
+        }
     }
 
     @Override
@@ -369,6 +404,11 @@ public class TsvEmitter implements RecordEmitter {
         if (headOfLine == false) {
             endRecord();
         }
-        writer.close();
+        flushRecordBuffer();
+        if (stream != null) {
+            stream.close();
+        } else {
+            writer.close();
+        }
     }
 }
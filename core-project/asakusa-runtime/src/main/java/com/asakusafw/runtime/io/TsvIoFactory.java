@@ -19,7 +19,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 
 /**
@@ -52,6 +51,6 @@ public class TsvIoFactory<T> extends ModelIoFactory<T> {
         if (out == null) {
             throw new IllegalArgumentException("out must not be null"); //$NON-NLS-1$
         }
-        return new TsvEmitter(new OutputStreamWriter(out, CHARSET));
+        return new TsvEmitter(out);
     }
 }
@@ -0,0 +1,490 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.columnar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Encodes and decodes a column chunk in the columnar format.
+ * <p>
+ * Each chunk consists of a null bitmap (one bit per row) followed by the encoded non-null values.
+ * </p>
+ * @since 0.4.0
+ */
+abstract class ColumnCodec {
+
+    private static final int INITIAL_ROWS = 256;
+
+    private byte[] presence = new byte[INITIAL_ROWS >>> 3];
+
+    private int rows;
+
+    private int cursor;
+
+    private byte[] chunk = new byte[0];
+
+    private final DataInputBuffer chunkInput = new DataInputBuffer();
+
+    /**
+     * Creates a new codec for the property type.
+     * @param optionType the property type
+     * @return the created codec
+     */
+    static ColumnCodec newInstance(Class<?> optionType) {
+        assert optionType != null;
+        if (optionType == StringOption.class) {
+            return new StringCodec();
+        } else if (optionType == LongOption.class) {
+            return new IntegralCodec() {
+                @Override
+                long toLong(ValueOption<?> value) {
+                    return ((LongOption) value).get();
+                }
+                @SuppressWarnings("deprecation")
+                @Override
+                void set(ValueOption<?> target, long value) {
+                    ((LongOption) target).modify(value);
+                }
+            };
+        } else if (optionType == IntOption.class) {
+            return new IntegralCodec() {
+                @Override
+                long toLong(ValueOption<?> value) {
+                    return ((IntOption) value).get();
+                }
+                @SuppressWarnings("deprecation")
+                @Override
+                void set(ValueOption<?> target, long value) {
+                    ((IntOption) target).modify((int) value);
+                }
+            };
+        } else if (optionType == ShortOption.class) {
+            return new IntegralCodec() {
+                @Override
+                long toLong(ValueOption<?> value) {
+                    return ((ShortOption) value).get();
+                }
+                @SuppressWarnings("deprecation")
+                @Override
+                void set(ValueOption<?> target, long value) {
+                    ((ShortOption) target).modify((short) value);
+                }
+            };
+        } else if (optionType == ByteOption.class) {
+            return new IntegralCodec() {
+                @Override
+                long toLong(ValueOption<?> value) {
+                    return ((ByteOption) value).get();
+                }
+                @SuppressWarnings("deprecation")
+                @Override
+                void set(ValueOption<?> target, long value) {
+                    ((ByteOption) target).modify((byte) value);
+                }
+            };
+        } else if (optionType == DateOption.class) {
+            return new IntegralCodec() {
+                @Override
+                long toLong(ValueOption<?> value) {
+                    return ((DateOption) value).get().getElapsedDays();
+                }
+                @SuppressWarnings("deprecation")
+                @Override
+                void set(ValueOption<?> target, long value) {
+                    ((DateOption) target).modify((int) value);
+                }
+            };
+        } else if (optionType == DateTimeOption.class) {
+            return new IntegralCodec() {
+                @Override
+                long toLong(ValueOption<?> value) {
+                    return ((DateTimeOption) value).get().getElapsedSeconds();
+                }
+                @SuppressWarnings("deprecation")
+                @Override
+                void set(ValueOption<?> target, long value) {
+                    ((DateTimeOption) target).modify(value);
+                }
+            };
+        } else {
+            return new GenericCodec();
+        }
+    }
+
+    /**
+     * Appends a row value into the current chunk.
+     * @param value the value
+     */
+    final void add(ValueOption<?> value) {
+        assert value != null;
+        int index = rows++;
+        int offset = index >>> 3;
+        if (offset >= presence.length) {
+            presence = Arrays.copyOf(presence, presence.length * 2);
+        }
+        if (value.isNull() == false) {
+            presence[offset] |= 1 << (index & 7);
+            addValue(value);
+        }
+    }
+
+    /**
+     * Writes the current chunk and then clears it.
+     * @param output the target output
+     * @throws IOException if failed to write the chunk
+     */
+    final void writeTo(DataOutput output) throws IOException {
+        assert output != null;
+        int bytes = (rows + 7) >>> 3;
+        output.write(presence, 0, bytes);
+        writeValues(output);
+        Arrays.fill(presence, 0, bytes, (byte) 0);
+        rows = 0;
+        clearValues();
+    }
+
+    /**
+     * Reads a chunk.
+     * @param input the source input
+     * @param length the chunk length in bytes
+     * @param count the number of rows in the chunk
+     * @throws IOException if failed to read the chunk
+     */
+    final void readFrom(DataInput input, int length, int count) throws IOException {
+        assert input != null;
+        if (chunk.length < length) {
+            chunk = new byte[Math.max(length, chunk.length * 2)];
+        }
+        input.readFully(chunk, 0, length);
+        chunkInput.reset(chunk, 0, length);
+        int bytes = (count + 7) >>> 3;
+        if (presence.length < bytes) {
+            presence = new byte[bytes];
+        }
+        chunkInput.readFully(presence, 0, bytes);
+        int present = 0;
+        for (int i = 0; i < bytes; i++) {
+            present += Integer.bitCount(presence[i] & 0xff);
+        }
+        rows = count;
+        cursor = 0;
+        readValues(chunkInput, present);
+    }
+
+    /**
+     * Restores the next row value into the target property.
+     * @param target the target property
+     * @throws IOException if failed to restore the value
+     */
+    @SuppressWarnings("deprecation")
+    final void next(ValueOption<?> target) throws IOException {
+        assert target != null;
+        assert cursor < rows;
+        int index = cursor++;
+        if ((presence[index >>> 3] & (1 << (index & 7))) == 0) {
+            target.setNull();
+        } else {
+            nextValue(target);
+        }
+    }
+
+    abstract void addValue(ValueOption<?> value);
+
+    abstract void writeValues(DataOutput output) throws IOException;
+
+    abstract void clearValues();
+
+    abstract void readValues(DataInputBuffer input, int count) throws IOException;
+
+    abstract void nextValue(ValueOption<?> target) throws IOException;
+
+    /**
+     * Encodes integral values using delta and zig-zag variable length encoding.
+     */
+    abstract static class IntegralCodec extends ColumnCodec {
+
+        private long[] values = new long[INITIAL_ROWS];
+
+        private int count;
+
+        private int position;
+
+        abstract long toLong(ValueOption<?> value);
+
+        abstract void set(ValueOption<?> target, long value);
+
+        @Override
+        void addValue(ValueOption<?> value) {
+            if (count >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = toLong(value);
+        }
+
+        @Override
+        void writeValues(DataOutput output) throws IOException {
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                long value = values[i];
+                WritableUtils.writeVLong(output, zigzag(value - last));
+                last = value;
+            }
+        }
+
+        @Override
+        void clearValues() {
+            count = 0;
+        }
+
+        @Override
+        void readValues(DataInputBuffer input, int present) throws IOException {
+            if (values.length < present) {
+                values = new long[present];
+            }
+            long last = 0;
+            for (int i = 0; i < present; i++) {
+                last += unzigzag(WritableUtils.readVLong(input));
+                values[i] = last;
+            }
+            count = present;
+            position = 0;
+        }
+
+        @Override
+        void nextValue(ValueOption<?> target) {
+            set(target, values[position++]);
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Encodes text values using a per-chunk dictionary if it is effective.
+     */
+    static final class StringCodec extends ColumnCodec {
+
+        private static final int MODE_PLAIN = 0;
+
+        private static final int MODE_DICTIONARY = 1;
+
+        private static final int MAX_DICTIONARY_SIZE = 1 << 14;
+
+        private final DataOutputBuffer bytes = new DataOutputBuffer();
+
+        private int[] offsets = new int[INITIAL_ROWS + 1];
+
+        private int count;
+
+        private final Map<Text, Integer> dictionary = new HashMap<Text, Integer>();
+
+        private int[] indices = new int[INITIAL_ROWS];
+
+        private boolean dictionaryAvailable = true;
+
+        private int[] begins = new int[0];
+
+        private int[] lengths = new int[0];
+
+        private int position;
+
+        private final Text work = new Text();
+
+        @Override
+        void addValue(ValueOption<?> value) {
+            Text text = ((StringOption) value).get();
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            if (count >= indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            try {
+                bytes.write(text.getBytes(), 0, text.getLength());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            offsets[count + 1] = bytes.getLength();
+            if (dictionaryAvailable) {
+                Integer index = dictionary.get(text);
+                if (index == null) {
+                    if (dictionary.size() >= MAX_DICTIONARY_SIZE) {
+                        dictionaryAvailable = false;
+                        dictionary.clear();
+                    } else {
+                        index = dictionary.size();
+                        dictionary.put(new Text(text), index);
+                    }
+                }
+                if (index != null) {
+                    indices[count] = index;
+                }
+            }
+            count++;
+        }
+
+        @Override
+        void writeValues(DataOutput output) throws IOException {
+            byte[] buf = bytes.getData();
+            if (dictionaryAvailable && dictionary.size() * 2 <= count) {
+                output.writeByte(MODE_DICTIONARY);
+                Text[] entries = new Text[dictionary.size()];
+                for (Map.Entry<Text, Integer> entry : dictionary.entrySet()) {
+                    entries[entry.getValue()] = entry.getKey();
+                }
+                WritableUtils.writeVInt(output, entries.length);
+                for (Text entry : entries) {
+                    WritableUtils.writeVInt(output, entry.getLength());
+                    output.write(entry.getBytes(), 0, entry.getLength());
+                }
+                for (int i = 0; i < count; i++) {
+                    WritableUtils.writeVInt(output, indices[i]);
+                }
+            } else {
+                output.writeByte(MODE_PLAIN);
+                for (int i = 0; i < count; i++) {
+                    int length = offsets[i + 1] - offsets[i];
+                    WritableUtils.writeVInt(output, length);
+                    output.write(buf, offsets[i], length);
+                }
+            }
+        }
+
+        @Override
+        void clearValues() {
+            bytes.reset();
+            count = 0;
+            dictionary.clear();
+            dictionaryAvailable = true;
+        }
+
+        @Override
+        void readValues(DataInputBuffer input, int present) throws IOException {
+            if (begins.length < present) {
+                begins = new int[present];
+                lengths = new int[present];
+            }
+            bytes.reset();
+            int mode = input.readByte();
+            if (mode == MODE_DICTIONARY) {
+                int size = WritableUtils.readVInt(input);
+                int[] entryBegins = new int[size];
+                int[] entryLengths = new int[size];
+                for (int i = 0; i < size; i++) {
+                    int length = WritableUtils.readVInt(input);
+                    entryBegins[i] = bytes.getLength();
+                    entryLengths[i] = length;
+                    bytes.write(input, length);
+                }
+                for (int i = 0; i < present; i++) {
+                    int index = WritableUtils.readVInt(input);
+                    if (index < 0 || index >= size) {
+                        throw new IOException(MessageFormat.format(
+                                "Invalid dictionary index in columnar chunk: {0} (size={1})",
+                                index,
+                                size));
+                    }
+                    begins[i] = entryBegins[index];
+                    lengths[i] = entryLengths[index];
+                }
+            } else if (mode == MODE_PLAIN) {
+                for (int i = 0; i < present; i++) {
+                    int length = WritableUtils.readVInt(input);
+                    begins[i] = bytes.getLength();
+                    lengths[i] = length;
+                    bytes.write(input, length);
+                }
+            } else {
+                throw new IOException(MessageFormat.format(
+                        "Invalid columnar chunk mode: {0}",
+                        mode));
+            }
+            position = 0;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        void nextValue(ValueOption<?> target) {
+            int index = position++;
+            work.set(bytes.getData(), begins[index], lengths[index]);
+            ((StringOption) target).modify(work);
+        }
+    }
+
+    /**
+     * Encodes values using their {@link ValueOption#write(DataOutput) serialized form}.
+     */
+    static final class GenericCodec extends ColumnCodec {
+
+        private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+        private DataInputBuffer input;
+
+        @Override
+        void addValue(ValueOption<?> value) {
+            try {
+                value.write(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        void writeValues(DataOutput output) throws IOException {
+            output.write(buffer.getData(), 0, buffer.getLength());
+        }
+
+        @Override
+        void clearValues() {
+            buffer.reset();
+        }
+
+        @Override
+        void readValues(DataInputBuffer chunkInput, int count) {
+            this.input = chunkInput;
+        }
+
+        @Override
+        void nextValue(ValueOption<?> target) throws IOException {
+            target.readFields(input);
+        }
+    }
+}
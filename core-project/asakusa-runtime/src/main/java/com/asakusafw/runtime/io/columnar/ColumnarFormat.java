@@ -0,0 +1,335 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.columnar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.asakusafw.runtime.model.PropertyOrder;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Common definitions of the columnar model format.
+ * <p>
+ * A columnar file consists of a header and a sequence of row groups.
+ * Each row group starts with a sync marker, and then has one chunk for each property.
+ * Readers can skip chunks of unused properties, and can start reading from an arbitrary
+ * position by scanning the next sync marker.
+ * </p>
+<pre><code>
+File:
+    Header RowGroup*
+Header:
+    MAGIC VInt(version) SyncMarker String(data-type) VInt(property-count) Property*
+Property:
+    String(property-name) String(property-type)
+RowGroup:
+    SyncMarker VInt(row-count) Chunk*
+Chunk:
+    VInt(chunk-length) NullBitmap EncodedValues
+</code></pre>
+ * @since 0.4.0
+ */
+public final class ColumnarFormat {
+
+    /**
+     * The magic number of the columnar format.
+     */
+    static final byte[] MAGIC = { 'A', 'C', 'F', 1 };
+
+    /**
+     * The current format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The sync marker size in bytes.
+     */
+    static final int SYNC_SIZE = 16;
+
+    /**
+     * The default number of rows in each row group.
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 4096;
+
+    private static final String GETTER_PREFIX = "get";
+
+    private static final String GETTER_SUFFIX = "Option";
+
+    private static final Map<Class<?>, List<Property>> PROPERTIES = new WeakHashMap<Class<?>, List<Property>>();
+
+    /**
+     * Returns whether the header bytes represent the columnar format or not.
+     * @param bytes the leading bytes of the target contents
+     * @param length the available length of {@code bytes}
+     * @return {@code true} if it is in the columnar format, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isColumnar(byte[] bytes, int length) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("bytes must not be null"); //$NON-NLS-1$
+        }
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the target file is in the columnar format or not.
+     * @param conf the current configuration
+     * @param path the target file path
+     * @return {@code true} if it is in the columnar format, otherwise {@code false}
+     * @throws IOException if failed to read the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isColumnar(Configuration conf, Path path) throws IOException {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        if (path == null) {
+            throw new IllegalArgumentException("path must not be null"); //$NON-NLS-1$
+        }
+        FileSystem fs = path.getFileSystem(conf);
+        InputStream input = fs.open(path);
+        try {
+            byte[] header = new byte[MAGIC.length];
+            int length = 0;
+            while (length < header.length) {
+                int read = input.read(header, length, header.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return isColumnar(header, length);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the properties of the data type.
+     * The result is cached for each data type, so that getters are looked up only once.
+     * @param dataType the data type
+     * @return the properties
+     * @throws IllegalArgumentException if the data type does not have any properties
+     */
+    static List<Property> getProperties(Class<?> dataType) {
+        assert dataType != null;
+        synchronized (PROPERTIES) {
+            List<Property> cached = PROPERTIES.get(dataType);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Property> results = Collections.unmodifiableList(collectProperties(dataType));
+        synchronized (PROPERTIES) {
+            PROPERTIES.put(dataType, results);
+        }
+        return results;
+    }
+
+    private static List<Property> collectProperties(Class<?> dataType) {
+        assert dataType != null;
+        PropertyOrder order = dataType.getAnnotation(PropertyOrder.class);
+        if (order != null) {
+            List<Property> results = new ArrayList<Property>();
+            for (String name : order.value()) {
+                Method getter = findGetter(dataType, toGetterName(name));
+                if (getter == null) {
+                    results = null;
+                    break;
+                }
+                results.add(new Property(name, getter));
+            }
+            if (results != null) {
+                return results;
+            }
+        }
+        List<Method> getters = new ArrayList<Method>();
+        for (Method method : dataType.getMethods()) {
+            if (isGetter(method)) {
+                getters.add(method);
+            }
+        }
+        if (getters.isEmpty()) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Data type must have property getters (get<Name>Option()): {0}",
+                    dataType.getName()));
+        }
+        Collections.sort(getters, new Comparator<Method>() {
+            @Override
+            public int compare(Method o1, Method o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        List<Property> results = new ArrayList<Property>();
+        for (Method getter : getters) {
+            String name = getter.getName();
+            results.add(new Property(
+                    name.substring(GETTER_PREFIX.length(), name.length() - GETTER_SUFFIX.length()),
+                    getter));
+        }
+        return results;
+    }
+
+    private static String toGetterName(String snakeName) {
+        assert snakeName != null;
+        StringBuilder buf = new StringBuilder(GETTER_PREFIX);
+        for (String segment : snakeName.split("_")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            buf.append(Character.toUpperCase(segment.charAt(0)));
+            buf.append(segment.substring(1));
+        }
+        buf.append(GETTER_SUFFIX);
+        return buf.toString();
+    }
+
+    private static Method findGetter(Class<?> dataType, String name) {
+        assert dataType != null;
+        assert name != null;
+        try {
+            Method method = dataType.getMethod(name);
+            return isGetter(method) ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean isGetter(Method method) {
+        assert method != null;
+        String name = method.getName();
+        return Modifier.isStatic(method.getModifiers()) == false
+            && name.startsWith(GETTER_PREFIX)
+            && name.endsWith(GETTER_SUFFIX)
+            && name.length() > GETTER_PREFIX.length() + GETTER_SUFFIX.length()
+            && method.getParameterTypes().length == 0
+            && ValueOption.class.isAssignableFrom(method.getReturnType());
+    }
+
+    static boolean isSync(byte[] expected, byte[] ring, int ringOffset) {
+        assert expected.length == ring.length;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != ring[(ringOffset + i) % ring.length]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ColumnarFormat() {
+        return;
+    }
+
+    /**
+     * A property of data models.
+     */
+    static final class Property {
+
+        final String name;
+
+        final Method getter;
+
+        final Class<?> type;
+
+        Property(String name, Method getter) {
+            assert name != null;
+            assert getter != null;
+            this.name = name;
+            this.getter = getter;
+            this.type = getter.getReturnType();
+        }
+
+        ValueOption<?> get(Object model) throws IOException {
+            try {
+                return (ValueOption<?>) getter.invoke(model);
+            } catch (Exception e) {
+                throw new IOException(MessageFormat.format(
+                        "Failed to access property: {0}#{1}",
+                        model.getClass().getName(),
+                        getter.getName()), e);
+            }
+        }
+    }
+
+    /**
+     * Resolves the property values of a model object only once.
+     * <p>
+     * Data models hold each property value as a {@link ValueOption} field and their getters always return
+     * the same object, so that the resolved values can be reused while the target model object is not changed.
+     * As readers and writers usually reuse a single model object, this avoids invoking getters reflectively
+     * for each record.
+     * </p>
+     */
+    static final class PropertyValues {
+
+        private final Property[] properties;
+
+        private final ValueOption<?>[] values;
+
+        private Object model;
+
+        /**
+         * Creates a new instance.
+         * @param properties the target properties, may contain {@code null} for skipped ones
+         */
+        PropertyValues(Property[] properties) {
+            assert properties != null;
+            this.properties = properties;
+            this.values = new ValueOption<?>[properties.length];
+        }
+
+        /**
+         * Returns the values of the properties for the model object.
+         * The each element is {@code null} if the corresponding property is {@code null}.
+         * @param target the target model object
+         * @return the property values
+         * @throws IOException if failed to access the properties
+         */
+        ValueOption<?>[] of(Object target) throws IOException {
+            assert target != null;
+            if (target != model) {
+                for (int i = 0; i < properties.length; i++) {
+                    Property property = properties[i];
+                    values[i] = property == null ? null : property.get(target);
+                }
+                model = target;
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.columnar;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.columnar.ColumnarFormat.Property;
+import com.asakusafw.runtime.io.columnar.ColumnarFormat.PropertyValues;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * An implementation of {@link ModelInput} which reads models in the {@link ColumnarFormat columnar format}.
+ * <p>
+ * This can read only a range of the file; in this case, this reads row groups
+ * whose sync marker starts in the range.
+ * Additionally, this can restore only the projected properties and then the other properties
+ * will be {@code null}.
+ * </p>
+ * @param <T> the data model type
+ * @since 0.4.0
+ */
+public class ColumnarModelInput<T> implements ModelInput<T> {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CountingInputStream counter;
+
+    private final DataInputStream input;
+
+    private final long start;
+
+    private final long end;
+
+    private final Set<String> projection;
+
+    private final String dataTypeName;
+
+    private final String[] columnNames;
+
+    private final String[] columnTypes;
+
+    private final ColumnCodec[] codecs;
+
+    private final byte[] sync = new byte[ColumnarFormat.SYNC_SIZE];
+
+    private final long headerEnd;
+
+    private Class<?> boundType;
+
+    private Property[] columnProperties;
+
+    private PropertyValues columnValues;
+
+    private PropertyValues missingValues;
+
+    private boolean positioned;
+
+    private int groupRows;
+
+    private int groupCursor;
+
+    private boolean eof;
+
+    /**
+     * Creates a new instance which reads the whole contents.
+     * @param input the source input stream
+     * @throws IOException if failed to read the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ColumnarModelInput(InputStream input) throws IOException {
+        this(input, 0L, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param input the source input stream (must be placed on the head of the file)
+     * @param start the start offset of the target range in bytes
+     * @param end the end offset of the target range in bytes (exclusive)
+     * @param projection the names of properties to be restored, or {@code null} to restore all properties
+     * @throws IOException if failed to read the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ColumnarModelInput(
+            InputStream input,
+            long start,
+            long end,
+            Collection<String> projection) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
+        }
+        this.counter = new CountingInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        this.input = new DataInputStream(counter);
+        this.start = start;
+        this.end = end;
+        this.projection = projection == null ? null : normalize(projection);
+        byte[] magic = new byte[ColumnarFormat.MAGIC.length];
+        this.input.readFully(magic);
+        if (ColumnarFormat.isColumnar(magic, magic.length) == false) {
+            throw new IOException("Input is not in columnar format");
+        }
+        int version = WritableUtils.readVInt(this.input);
+        if (version != ColumnarFormat.VERSION) {
+            throw new IOException(MessageFormat.format(
+                    "Unsupported columnar format version: {0}",
+                    version));
+        }
+        this.input.readFully(sync);
+        this.dataTypeName = Text.readString(this.input);
+        int count = WritableUtils.readVInt(this.input);
+        this.columnNames = new String[count];
+        this.columnTypes = new String[count];
+        this.codecs = new ColumnCodec[count];
+        for (int i = 0; i < count; i++) {
+            columnNames[i] = Text.readString(this.input);
+            columnTypes[i] = Text.readString(this.input);
+        }
+        this.headerEnd = counter.position;
+    }
+
+    /**
+     * Returns the data type name stored in the file header.
+     * @return the data type name
+     */
+    public String getDataTypeName() {
+        return dataTypeName;
+    }
+
+    /**
+     * Returns the current position in bytes.
+     * @return the current position
+     */
+    public long getPosition() {
+        return counter.position;
+    }
+
+    @Override
+    public boolean readTo(T model) throws IOException {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null"); //$NON-NLS-1$
+        }
+        if (boundType != model.getClass()) {
+            bind(model.getClass());
+        }
+        while (groupCursor >= groupRows) {
+            if (nextRowGroup() == false) {
+                return false;
+            }
+        }
+        ValueOption<?>[] columns = columnValues.of(model);
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != null) {
+                codecs[i].next(columns[i]);
+            }
+        }
+        for (ValueOption<?> missing : missingValues.of(model)) {
+            setNull(missing);
+        }
+        groupCursor++;
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void setNull(ValueOption<?> option) {
+        option.setNull();
+    }
+
+    private void bind(Class<?> type) throws IOException {
+        assert type != null;
+        if (groupCursor < groupRows) {
+            throw new IOException(MessageFormat.format(
+                    "Cannot change data type in the middle of row group: {0}",
+                    type.getName()));
+        }
+        Map<String, Property> properties = new HashMap<String, Property>();
+        List<Property> list = ColumnarFormat.getProperties(type);
+        for (Property property : list) {
+            properties.put(property.name, property);
+        }
+        this.columnProperties = new Property[codecs.length];
+        for (int i = 0; i < codecs.length; i++) {
+            Property property = properties.remove(columnNames[i]);
+            if (property == null) {
+                continue;
+            }
+            if (property.type.getName().equals(columnTypes[i]) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Inconsistent property type: {0}.{1} (file={2}, model={3})",
+                        type.getName(),
+                        columnNames[i],
+                        columnTypes[i],
+                        property.type.getName()));
+            }
+            if (projection != null && projection.contains(normalize(columnNames[i])) == false) {
+                properties.put(property.name, property);
+                continue;
+            }
+            columnProperties[i] = property;
+            if (codecs[i] == null) {
+                codecs[i] = ColumnCodec.newInstance(property.type);
+            }
+        }
+        this.columnValues = new PropertyValues(columnProperties);
+        this.missingValues = new PropertyValues(properties.values().toArray(new Property[properties.size()]));
+        this.boundType = type;
+    }
+
+    private static Set<String> normalize(Collection<String> names) {
+        assert names != null;
+        Set<String> results = new HashSet<String>();
+        for (String name : names) {
+            results.add(normalize(name));
+        }
+        return results;
+    }
+
+    /**
+     * Normalizes property names, so that both {@code snake_case} and {@code CamelCase} names are accepted.
+     * @param name the property name
+     * @return the normalized name
+     */
+    private static String normalize(String name) {
+        assert name != null;
+        return name.replace("_", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    private boolean nextRowGroup() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (positioned == false) {
+            positioned = true;
+            long origin = Math.max(start, headerEnd);
+            skipFully(origin - counter.position);
+            if (scanSync() == false) {
+                eof = true;
+                return false;
+            }
+        } else {
+            if (counter.position >= end || readSync() == false) {
+                eof = true;
+                return false;
+            }
+        }
+        if (counter.position - sync.length >= end) {
+            eof = true;
+            return false;
+        }
+        int rows = WritableUtils.readVInt(input);
+        for (int i = 0; i < codecs.length; i++) {
+            int length = WritableUtils.readVInt(input);
+            if (columnProperties[i] == null) {
+                skipFully(length);
+            } else {
+                codecs[i].readFrom(input, length, rows);
+            }
+        }
+        groupRows = rows;
+        groupCursor = 0;
+        return true;
+    }
+
+    private boolean readSync() throws IOException {
+        int first = input.read();
+        if (first < 0) {
+            return false;
+        }
+        byte[] buf = new byte[sync.length];
+        buf[0] = (byte) first;
+        input.readFully(buf, 1, buf.length - 1);
+        for (int i = 0; i < buf.length; i++) {
+            if (buf[i] != sync[i]) {
+                throw new IOException("Broken columnar file: sync marker is not found");
+            }
+        }
+        return true;
+    }
+
+    private boolean scanSync() throws IOException {
+        byte[] ring = new byte[sync.length];
+        int filled = 0;
+        int offset = 0;
+        while (true) {
+            int c = input.read();
+            if (c < 0) {
+                return false;
+            }
+            ring[offset] = (byte) c;
+            offset = (offset + 1) % ring.length;
+            if (filled < ring.length) {
+                filled++;
+            }
+            if (filled == ring.length && ColumnarFormat.isSync(sync, ring, offset)) {
+                return true;
+            }
+        }
+    }
+
+    private void skipFully(long length) throws IOException {
+        long rest = length;
+        while (rest > 0) {
+            long skipped = input.skip(rest);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            rest -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long position;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                position++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                position += skipped;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.List;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.columnar.ColumnarFormat.Property;
+import com.asakusafw.runtime.io.columnar.ColumnarFormat.PropertyValues;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * An implementation of {@link ModelOutput} which writes models in the {@link ColumnarFormat columnar format}.
+ * @param <T> the data model type
+ * @since 0.4.0
+ */
+public class ColumnarModelOutput<T> implements ModelOutput<T> {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream output;
+
+    private final Property[] properties;
+
+    private final PropertyValues values;
+
+    private final ColumnCodec[] codecs;
+
+    private final byte[] sync;
+
+    private final int rowGroupSize;
+
+    private final DataOutputBuffer chunk = new DataOutputBuffer();
+
+    private int rows;
+
+    /**
+     * Creates a new instance.
+     * @param dataType the data model type
+     * @param output the target output stream
+     * @throws IOException if failed to write the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ColumnarModelOutput(Class<T> dataType, OutputStream output) throws IOException {
+        this(dataType, output, ColumnarFormat.DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param dataType the data model type
+     * @param output the target output stream
+     * @param rowGroupSize the max number of rows in each row group
+     * @throws IOException if failed to write the file header
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public ColumnarModelOutput(Class<T> dataType, OutputStream output, int rowGroupSize) throws IOException {
+        if (dataType == null) {
+            throw new IllegalArgumentException("dataType must not be null"); //$NON-NLS-1$
+        }
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("rowGroupSize must be > 0"); //$NON-NLS-1$
+        }
+        List<Property> list = ColumnarFormat.getProperties(dataType);
+        this.properties = list.toArray(new Property[list.size()]);
+        this.values = new PropertyValues(properties);
+        this.codecs = new ColumnCodec[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            codecs[i] = ColumnCodec.newInstance(properties[i].type);
+        }
+        this.output = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        this.rowGroupSize = rowGroupSize;
+        this.sync = new byte[ColumnarFormat.SYNC_SIZE];
+        new SecureRandom().nextBytes(sync);
+        writeHeader(dataType);
+    }
+
+    private void writeHeader(Class<T> dataType) throws IOException {
+        output.write(ColumnarFormat.MAGIC);
+        WritableUtils.writeVInt(output, ColumnarFormat.VERSION);
+        output.write(sync);
+        Text.writeString(output, dataType.getName());
+        WritableUtils.writeVInt(output, properties.length);
+        for (Property property : properties) {
+            Text.writeString(output, property.name);
+            Text.writeString(output, property.type.getName());
+        }
+    }
+
+    @Override
+    public void write(T model) throws IOException {
+        ValueOption<?>[] options = values.of(model);
+        for (int i = 0; i < options.length; i++) {
+            codecs[i].add(options[i]);
+        }
+        rows++;
+        if (rows >= rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    private void flushRowGroup() throws IOException {
+        output.write(sync);
+        WritableUtils.writeVInt(output, rows);
+        for (ColumnCodec codec : codecs) {
+            chunk.reset();
+            codec.writeTo(chunk);
+            WritableUtils.writeVInt(output, chunk.getLength());
+            output.write(chunk.getData(), 0, chunk.getLength());
+        }
+        rows = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rows > 0) {
+            flushRowGroup();
+        }
+        output.close();
+    }
+}
@@ -17,16 +17,26 @@ package com.asakusafw.runtime.io.csv;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Text;
 
 import com.asakusafw.runtime.io.RecordEmitter;
+import com.asakusafw.runtime.io.util.ByteRecordBuffer;
 import com.asakusafw.runtime.value.BooleanOption;
 import com.asakusafw.runtime.value.ByteOption;
 import com.asakusafw.runtime.value.DateOption;
@@ -41,7 +51,13 @@ import com.asakusafw.runtime.value.StringOption;
 
 /**
  * A simple CSV emitter.
+ * <p>
+ * This builds records in a reusable byte buffer, and writes them into the target stream in large chunks.
+ * If the charset is a stateless ASCII compatible one, this writes numbers and ASCII strings
+ * into the buffer directly without encoding characters.
+ * </p>
  * @since 0.2.4
+ * @version 0.4.0
  */
 public class CsvEmitter implements RecordEmitter {
 
@@ -49,14 +65,41 @@ public class CsvEmitter implements RecordEmitter {
 
     private static final int INITIAL_BUFFER_SIZE = 1024;
 
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
     private static final String LINE_DELIMITER = "\r\n";
 
     private static final char ESCAPE = '"';
 
-    private final Writer writer;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Charsets which are stateless and encode each ASCII character into the same single byte.
+     */
+    private static final Set<String> DIRECT_CHARSET_NAMES = new HashSet<String>(Arrays.asList(new String[] {
+            "UTF-8",
+            "US-ASCII",
+            "ISO-8859-1",
+            "windows-1252",
+            "Shift_JIS",
+            "windows-31j",
+            "EUC-JP",
+    }));
+
+    private final OutputStream stream;
+
+    private final CharsetEncoder encoder;
+
+    private final boolean direct;
+
+    private final CharsetDecoder textValidator;
 
     private final char separator;
 
+    private final String separatorString;
+
+    private final boolean asciiSeparator;
+
     private final String trueFormat;
 
     private final String falseFormat;
@@ -69,18 +112,38 @@ public class CsvEmitter implements RecordEmitter {
 
     private final boolean escapeDateTime;
 
-    private final List<String> headerCellsFormat;
-
-    private boolean firstLine = true;
-
     private boolean firstCell = true;
 
     private boolean open = true;
 
-    private final StringBuilder lineBuffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+    private final ByteRecordBuffer recordBuffer = new ByteRecordBuffer(INITIAL_BUFFER_SIZE * 8);
+
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private final CharBuffer decodeBuffer = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private final StringBuilder escapeBuffer = new StringBuilder();
 
     private final Pattern escapePattern;
 
+    private byte[] separatorBytes;
+
+    private byte[] trueBytes;
+
+    private byte[] falseBytes;
+
+    private final ByteRecordBuffer dateCache = new ByteRecordBuffer(INITIAL_BUFFER_SIZE / 16);
+
+    private boolean dateCached = false;
+
+    private int lastDate;
+
+    private final ByteRecordBuffer dateTimeCache = new ByteRecordBuffer(INITIAL_BUFFER_SIZE / 16);
+
+    private boolean dateTimeCached = false;
+
+    private long lastDateTime;
+
     /**
      * Creates a new instance.
      * @param stream the target stream
@@ -95,8 +158,18 @@ public class CsvEmitter implements RecordEmitter {
         if (config == null) {
             throw new IllegalArgumentException("config must not be null"); //$NON-NLS-1$
         }
-        this.writer = new OutputStreamWriter(stream, config.getCharset());
+        Charset charset = config.getCharset();
+        this.stream = stream;
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.direct = isDirectCharset(charset);
+        this.textValidator = charset.equals(UTF8) ? UTF8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT) : null;
         this.separator = config.getSeparatorChar();
+        this.separatorString = String.valueOf(separator);
+        this.asciiSeparator = separator < 0x80 && separator != '\r' && separator != '\n';
         this.escapePattern = Pattern.compile("[" + ESCAPE + separator + LINE_DELIMITER + "]");
         this.trueFormat = escape(config.getTrueFormat());
         this.falseFormat = escape(config.getFalseFormat());
@@ -104,7 +177,55 @@ public class CsvEmitter implements RecordEmitter {
         this.escapeDate = hasMetaCharacter(dateFormat.getPattern());
         this.dateTimeFormat = DateTimeFormatter.newInstance(config.getDateTimeFormat());
         this.escapeDateTime = hasMetaCharacter(dateTimeFormat.getPattern());
-        this.headerCellsFormat = config.getHeaderCells();
+        if (direct) {
+            this.separatorBytes = encodeOnce(separatorString);
+            this.trueBytes = encodeOnce(trueFormat);
+            this.falseBytes = encodeOnce(falseFormat);
+        }
+        appendHeader(config.getHeaderCells());
+    }
+
+    private static boolean isDirectCharset(Charset charset) {
+        assert charset != null;
+        if (DIRECT_CHARSET_NAMES.contains(charset.name()) == false) {
+            return false;
+        }
+        char[] ascii = new char[0x80];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) i;
+        }
+        byte[] encoded = new String(ascii).getBytes(charset);
+        if (encoded.length != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i] != ascii[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encodeOnce(String string) {
+        assert direct;
+        int start = recordBuffer.getLength();
+        appendChars(string);
+        byte[] results = Arrays.copyOfRange(recordBuffer.getData(), start, recordBuffer.getLength());
+        recordBuffer.clear();
+        return results;
+    }
+
+    private void appendHeader(List<String> headerCells) {
+        assert headerCells != null;
+        Iterator<String> iter = headerCells.iterator();
+        if (iter.hasNext()) {
+            appendChars(escape(iter.next()));
+            while (iter.hasNext()) {
+                appendChars(separatorString);
+                appendChars(escape(iter.next()));
+            }
+            appendChars(LINE_DELIMITER);
+        }
     }
 
     private String escape(String string) {
@@ -126,7 +247,11 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(BooleanOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(toString(option.get()));
+            if (direct) {
+                recordBuffer.append(option.get() ? trueBytes : falseBytes);
+            } else {
+                appendChars(toString(option.get()));
+            }
         }
     }
 
@@ -138,7 +263,7 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(ByteOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendNumber(option.get());
         }
     }
 
@@ -146,7 +271,7 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(ShortOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendNumber(option.get());
         }
     }
 
@@ -154,7 +279,7 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(IntOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendNumber(option.get());
         }
     }
 
@@ -162,7 +287,15 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(LongOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendNumber(option.get());
+        }
+    }
+
+    private void appendNumber(long value) {
+        if (direct) {
+            recordBuffer.append(value);
+        } else {
+            appendChars(String.valueOf(value));
         }
     }
 
@@ -170,7 +303,7 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(FloatOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendChars(String.valueOf(option.get()));
         }
     }
 
@@ -178,7 +311,7 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(DoubleOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendChars(String.valueOf(option.get()));
         }
     }
 
@@ -186,7 +319,7 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(DecimalOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            lineBuffer.append(option.get());
+            appendChars(option.get().toString());
         }
     }
 
@@ -194,13 +327,80 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(StringOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
+            if (direct && asciiSeparator && appendDirect(option.get())) {
+                return;
+            }
             String str = option.getAsString();
-            if (hasEscapeTarget(str)) {
-                appendEscaped(lineBuffer, str);
-            } else {
-                lineBuffer.append(str);
+            appendCell(str, hasEscapeTarget(str));
+        }
+    }
+
+    /**
+     * Appends the UTF-8 bytes of the text directly if they are valid in the current charset.
+     * ASCII bytes never appear in UTF-8 multi-byte sequences, so that this can escape them in bytes.
+     */
+    private boolean appendDirect(Text text) {
+        assert direct;
+        assert asciiSeparator;
+        byte[] bytes = text.getBytes();
+        int length = text.getLength();
+        byte separatorByte = (byte) separator;
+        boolean ascii = true;
+        boolean plain = true;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                ascii = false;
+            } else if (b == separatorByte || b == ESCAPE || b == '\r' || b == '\n') {
+                plain = false;
+            }
+        }
+        if (ascii == false && isValidUtf8(bytes, length) == false) {
+            return false;
+        }
+        if (plain) {
+            recordBuffer.append(bytes, 0, length);
+        } else {
+            recordBuffer.append(ESCAPE);
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (b == ESCAPE) {
+                    recordBuffer.append(ESCAPE);
+                }
+                recordBuffer.append(b);
             }
+            recordBuffer.append(ESCAPE);
         }
+        return true;
+    }
+
+    private boolean isValidUtf8(byte[] bytes, int length) {
+        if (textValidator == null) {
+            return false;
+        }
+        ByteBuffer source = ByteBuffer.wrap(bytes, 0, length);
+        textValidator.reset();
+        while (true) {
+            decodeBuffer.clear();
+            CoderResult result = textValidator.decode(source, decodeBuffer, true);
+            if (result.isError()) {
+                return false;
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        while (true) {
+            decodeBuffer.clear();
+            CoderResult result = textValidator.flush(decodeBuffer);
+            if (result.isError()) {
+                return false;
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        return true;
     }
 
     private boolean hasEscapeTarget(String string) {
@@ -217,11 +417,18 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(DateOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            CharSequence string = dateFormat.format(option.get().getElapsedDays());
-            if (escapeDate) {
-                appendEscaped(lineBuffer, string);
-            } else {
-                lineBuffer.append(string);
+            int elapsed = option.get().getElapsedDays();
+            if (dateCached && lastDate == elapsed) {
+                recordBuffer.append(dateCache.getData(), 0, dateCache.getLength());
+                return;
+            }
+            int start = recordBuffer.getLength();
+            appendCell(dateFormat.format(elapsed), escapeDate);
+            if (direct) {
+                dateCache.clear();
+                dateCache.append(recordBuffer.getData(), start, recordBuffer.getLength() - start);
+                lastDate = elapsed;
+                dateCached = true;
             }
         }
     }
@@ -230,12 +437,29 @@ public class CsvEmitter implements RecordEmitter {
     public void emit(DateTimeOption option) throws IOException {
         addCellDelimiter();
         if (option.isNull() == false) {
-            CharSequence string = dateTimeFormat.format(option.get().getElapsedSeconds());
-            if (escapeDateTime) {
-                appendEscaped(lineBuffer, string);
-            } else {
-                lineBuffer.append(string);
+            long elapsed = option.get().getElapsedSeconds();
+            if (dateTimeCached && lastDateTime == elapsed) {
+                recordBuffer.append(dateTimeCache.getData(), 0, dateTimeCache.getLength());
+                return;
             }
+            int start = recordBuffer.getLength();
+            appendCell(dateTimeFormat.format(elapsed), escapeDateTime);
+            if (direct) {
+                dateTimeCache.clear();
+                dateTimeCache.append(recordBuffer.getData(), start, recordBuffer.getLength() - start);
+                lastDateTime = elapsed;
+                dateTimeCached = true;
+            }
+        }
+    }
+
+    private void appendCell(CharSequence string, boolean escape) {
+        if (escape) {
+            escapeBuffer.setLength(0);
+            appendEscaped(escapeBuffer, string);
+            appendChars(escapeBuffer);
+        } else {
+            appendChars(string);
         }
     }
 
@@ -263,53 +487,86 @@ public class CsvEmitter implements RecordEmitter {
         buffer.append(ESCAPE);
     }
 
+    private void appendChars(CharSequence string) {
+        if (direct) {
+            if (isAscii(string)) {
+                recordBuffer.appendAscii(string);
+            } else {
+                encoder.reset();
+                encode(CharBuffer.wrap(string), true);
+            }
+        } else {
+            // stateful encoders must keep their state across cells
+            encode(CharBuffer.wrap(string), false);
+        }
+    }
+
+    private static boolean isAscii(CharSequence string) {
+        for (int i = 0, n = string.length(); i < n; i++) {
+            if (string.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void encode(CharBuffer source, boolean endOfInput) {
+        while (true) {
+            CoderResult result = encoder.encode(source, encodeBuffer, endOfInput);
+            drainEncoded();
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (encoder.flush(encodeBuffer).isOverflow()) {
+                drainEncoded();
+            }
+            drainEncoded();
+        }
+    }
+
+    private void drainEncoded() {
+        encodeBuffer.flip();
+        recordBuffer.append(encodeBuffer.array(), 0, encodeBuffer.limit());
+        encodeBuffer.clear();
+    }
+
     private void addCellDelimiter() {
         if (firstCell) {
             firstCell = false;
+        } else if (direct) {
+            recordBuffer.append(separatorBytes);
         } else {
-            lineBuffer.append(separator);
+            appendChars(separatorString);
         }
     }
 
     @Override
     public void endRecord() throws IOException {
-        lineBuffer.append(LINE_DELIMITER);
-        flushBuffer();
-        firstLine = false;
+        appendChars(LINE_DELIMITER);
+        if (recordBuffer.getLength() >= FLUSH_THRESHOLD) {
+            recordBuffer.writeTo(stream);
+        }
         firstCell = true;
     }
 
     @Override
     public void flush() throws IOException {
-        flushBuffer();
-        writer.flush();
-    }
-
-    private void flushBuffer() throws IOException {
-        if (firstLine) {
-            firstLine = false;
-            Iterator<String> iter = headerCellsFormat.iterator();
-            if (iter.hasNext()) {
-                writer.append(escape(iter.next()));
-                while (iter.hasNext()) {
-                    writer.append(separator);
-                    writer.append(escape(iter.next()));
-                }
-                writer.append(LINE_DELIMITER);
-            }
-        }
-        if (lineBuffer.length() > 0) {
-            writer.append(lineBuffer);
-            lineBuffer.setLength(0);
-        }
+        recordBuffer.writeTo(stream);
+        stream.flush();
     }
 
     @Override
     public void close() throws IOException {
         if (open) {
-            flush();
+            if (direct == false) {
+                encode(CharBuffer.allocate(0), true);
+            }
+            recordBuffer.writeTo(stream);
+            stream.flush();
             open = false;
-            writer.close();
+            stream.close();
         }
     }
 }
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer for building text records.
+ * <p>
+ * This formats integral values using digit tables without creating intermediate strings,
+ * and can write its contents into {@link OutputStream} at once.
+ * </p>
+ * @since 0.4.0
+ */
+public final class ByteRecordBuffer {
+
+    private static final byte[] DIGIT_TENS = new byte[100];
+
+    private static final byte[] DIGIT_ONES = new byte[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (byte) ('0' + i / 10);
+            DIGIT_ONES[i] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private static final byte[] LONG_MIN_VALUE = ascii(String.valueOf(Long.MIN_VALUE));
+
+    private static final int MAX_LONG_DIGITS = 19;
+
+    private byte[] data;
+
+    private int length;
+
+    /**
+     * Creates a new instance.
+     * @param initialCapacity the initial capacity in bytes
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public ByteRecordBuffer(int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be > 0"); //$NON-NLS-1$
+        }
+        this.data = new byte[initialCapacity];
+    }
+
+    /**
+     * Converts the ASCII string into bytes.
+     * @param string the source string which consists of only ASCII characters
+     * @return the bytes
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static byte[] ascii(CharSequence string) {
+        if (string == null) {
+            throw new IllegalArgumentException("string must not be null"); //$NON-NLS-1$
+        }
+        byte[] results = new byte[string.length()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) string.charAt(i);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the internal byte array.
+     * The available contents are in the range of {@code [0, getLength())}.
+     * @return the internal byte array
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the number of bytes in this buffer.
+     * @return the number of bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Removes all contents in this buffer.
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * Appends a byte.
+     * @param b the byte
+     */
+    public void append(byte b) {
+        ensure(1);
+        data[length++] = b;
+    }
+
+    /**
+     * Appends an ASCII character.
+     * @param c the character (must be in ASCII)
+     */
+    public void append(char c) {
+        assert c < 0x80;
+        ensure(1);
+        data[length++] = (byte) c;
+    }
+
+    /**
+     * Appends bytes.
+     * @param bytes the bytes
+     */
+    public void append(byte[] bytes) {
+        append(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Appends bytes.
+     * @param bytes the bytes
+     * @param offset the offset in bytes
+     * @param count the number of bytes
+     */
+    public void append(byte[] bytes, int offset, int count) {
+        ensure(count);
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+    }
+
+    /**
+     * Appends ASCII characters.
+     * @param string the characters (must be in ASCII)
+     */
+    public void appendAscii(CharSequence string) {
+        int count = string.length();
+        ensure(count);
+        byte[] buf = data;
+        int offset = length;
+        for (int i = 0; i < count; i++) {
+            buf[offset + i] = (byte) string.charAt(i);
+        }
+        length += count;
+    }
+
+    /**
+     * Appends the decimal representation of the value.
+     * @param value the value
+     */
+    public void append(int value) {
+        append((long) value);
+    }
+
+    /**
+     * Appends the decimal representation of the value.
+     * @param value the value
+     */
+    public void append(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(LONG_MIN_VALUE);
+            return;
+        }
+        ensure(MAX_LONG_DIGITS + 1);
+        long rest = value;
+        if (rest < 0) {
+            data[length++] = '-';
+            rest = -rest;
+        }
+        int end = length + countDigits(rest);
+        int cursor = end;
+        while (rest >= 100) {
+            int r = (int) (rest % 100);
+            rest /= 100;
+            data[--cursor] = DIGIT_ONES[r];
+            data[--cursor] = DIGIT_TENS[r];
+        }
+        int r = (int) rest;
+        data[--cursor] = DIGIT_ONES[r];
+        if (r >= 10) {
+            data[--cursor] = DIGIT_TENS[r];
+        }
+        length = end;
+    }
+
+    /**
+     * Appends the decimal representation of the value with leading zeros.
+     * If the value is negative, this appends it without leading zeros.
+     * @param value the value
+     * @param columns the minimum number of digits
+     */
+    public void appendZeroPadded(int value, int columns) {
+        if (value >= 0) {
+            int digits = countDigits(value);
+            if (digits < columns) {
+                ensure(columns - digits);
+                for (int i = digits; i < columns; i++) {
+                    data[length++] = '0';
+                }
+            }
+        }
+        append(value);
+    }
+
+    /**
+     * Writes the contents of this buffer into the stream, and then clears this buffer.
+     * @param output the target stream
+     * @throws IOException if failed to write the contents
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        if (length > 0) {
+            output.write(data, 0, length);
+            length = 0;
+        }
+    }
+
+    private static int countDigits(long value) {
+        assert value >= 0;
+        int digits = 1;
+        for (long limit = 10; digits < MAX_LONG_DIGITS && value >= limit; limit *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private void ensure(int count) {
+        int required = length + count;
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.util;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Reads data model records which were written by {@link CompactRecordOutput}.
+<pre><code>
+CompactRecordInput input = CompactRecordInput.get();
+input.begin(in, 2);
+input.read(hoge);
+input.read(foo);
+input.end();
+</code></pre>
+ * @since 0.4.0
+ */
+@SuppressWarnings("deprecation")
+public final class CompactRecordInput {
+
+    private static final ThreadLocal<CompactRecordInput> INSTANCES = new ThreadLocal<CompactRecordInput>() {
+        @Override
+        protected CompactRecordInput initialValue() {
+            return new CompactRecordInput();
+        }
+    };
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private int limit;
+
+    private int position;
+
+    private int fieldIndex;
+
+    private CompactRecordInput() {
+        return;
+    }
+
+    /**
+     * Returns the instance for the current thread.
+     * @return the instance
+     */
+    public static CompactRecordInput get() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Starts reading the next record.
+     * @param in the source input
+     * @param fieldCount the number of fields in the record
+     * @throws IOException if failed to read the record
+     */
+    public void begin(DataInput in, int fieldCount) throws IOException {
+        int length = WritableUtils.readVInt(in);
+        int bitmapLength = (fieldCount + 7) / 8;
+        if (length < bitmapLength) {
+            throw new IOException(MessageFormat.format(
+                    "Invalid record length: {0} (fields={1})",
+                    length,
+                    fieldCount));
+        }
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        in.readFully(buffer, 0, length);
+        limit = length;
+        position = bitmapLength;
+        fieldIndex = 0;
+    }
+
+    /**
+     * Finishes reading the current record.
+     * @throws IOException if the record has extra bytes
+     */
+    public void end() throws IOException {
+        if (position != limit) {
+            throw new IOException(MessageFormat.format(
+                    "Invalid record: {0} bytes are remaining",
+                    limit - position));
+        }
+    }
+
+    private boolean readNull(ValueOption<?> option) {
+        int index = fieldIndex++;
+        if ((buffer[index >> 3] & (1 << (index & 7))) != 0) {
+            option.setNull();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(BooleanOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify(readByte() != 0);
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(ByteOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify(readByte());
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(ShortOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify((short) readVarLong());
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(IntOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify((int) readVarLong());
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(LongOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify(readVarLong());
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(FloatOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify(Float.intBitsToFloat((int) readFixed(4)));
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(DoubleOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify(Double.longBitsToDouble(readFixed(8)));
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(DecimalOption option) throws IOException {
+        if (readNull(option) == false) {
+            int scale = (int) readVarLong();
+            int length = readLength();
+            byte[] unscaled = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            option.modify(new BigDecimal(new BigInteger(unscaled), scale));
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(StringOption option) throws IOException {
+        if (readNull(option) == false) {
+            int length = readLength();
+            option.reset();
+            option.get().set(buffer, position, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(DateOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify((int) readVarLong());
+        }
+    }
+
+    /**
+     * Reads the next field.
+     * @param option the destination
+     * @throws IOException if failed to read the field
+     */
+    public void read(DateTimeOption option) throws IOException {
+        if (readNull(option) == false) {
+            option.modify(readVarLong());
+        }
+    }
+
+    private byte readByte() throws IOException {
+        if (position >= limit) {
+            throw new IOException("Unexpected end of record");
+        }
+        return buffer[position++];
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarLong();
+        if (length < 0 || length > limit - position) {
+            throw new IOException(MessageFormat.format(
+                    "Invalid field length: {0}",
+                    length));
+        }
+        return (int) length;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (result >>> 1) ^ -(result & 1);
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    private long readFixed(int bytes) throws IOException {
+        long result = 0;
+        for (int i = 0; i < bytes; i++) {
+            result = (result << 8) | (readByte() & 0xff);
+        }
+        return result;
+    }
+}
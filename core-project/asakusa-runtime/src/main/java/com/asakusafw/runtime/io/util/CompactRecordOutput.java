@@ -0,0 +1,253 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+import com.asakusafw.runtime.value.ValueOption;
+
+/**
+ * Writes data model records in the compact format.
+ * <p>
+ * Each record is written as the following structure:
+ * </p>
+<pre><code>
+record := vint(length) null-bitmap field*
+null-bitmap := byte[(number-of-fields + 7) / 8]
+</code></pre>
+ * <p>
+ * The {@code i}-th bit of the null bitmap is set if the {@code i}-th field is {@code null},
+ * and {@code null} fields do not have any following bytes.
+ * Integral values, dates, and date-times are written as zig-zag encoded variable length integers,
+ * and the other values are written in their natural forms.
+ * Records are built in a reusable byte buffer and then written into {@link DataOutput} at once.
+ * Use {@link CompactRecordInput} to read the records.
+ * </p>
+<pre><code>
+CompactRecordOutput output = CompactRecordOutput.get();
+output.begin(2);
+output.write(hoge);
+output.write(foo);
+output.end(out);
+</code></pre>
+ * @since 0.4.0
+ */
+public final class CompactRecordOutput {
+
+    private static final ThreadLocal<CompactRecordOutput> INSTANCES = new ThreadLocal<CompactRecordOutput>() {
+        @Override
+        protected CompactRecordOutput initialValue() {
+            return new CompactRecordOutput();
+        }
+    };
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private final ByteRecordBuffer buffer = new ByteRecordBuffer(INITIAL_BUFFER_SIZE);
+
+    private int fieldIndex;
+
+    private CompactRecordOutput() {
+        return;
+    }
+
+    /**
+     * Returns the instance for the current thread.
+     * @return the instance
+     */
+    public static CompactRecordOutput get() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Starts writing a new record.
+     * @param fieldCount the number of fields in the record
+     */
+    public void begin(int fieldCount) {
+        buffer.clear();
+        for (int i = 0, n = (fieldCount + 7) / 8; i < n; i++) {
+            buffer.append((byte) 0);
+        }
+        fieldIndex = 0;
+    }
+
+    /**
+     * Writes the current record into the target output.
+     * @param out the target output
+     * @throws IOException if failed to write the record
+     */
+    public void end(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, buffer.getLength());
+        out.write(buffer.getData(), 0, buffer.getLength());
+        buffer.clear();
+    }
+
+    private boolean writeNull(ValueOption<?> option) {
+        int index = fieldIndex++;
+        if (option.isNull()) {
+            buffer.getData()[index >> 3] |= 1 << (index & 7);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(BooleanOption option) {
+        if (writeNull(option) == false) {
+            buffer.append((byte) (option.get() ? 1 : 0));
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(ByteOption option) {
+        if (writeNull(option) == false) {
+            buffer.append(option.get());
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(ShortOption option) {
+        if (writeNull(option) == false) {
+            writeVarLong(option.get());
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(IntOption option) {
+        if (writeNull(option) == false) {
+            writeVarLong(option.get());
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(LongOption option) {
+        if (writeNull(option) == false) {
+            writeVarLong(option.get());
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(FloatOption option) {
+        if (writeNull(option) == false) {
+            writeFixed(Float.floatToIntBits(option.get()), 4);
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(DoubleOption option) {
+        if (writeNull(option) == false) {
+            writeFixed(Double.doubleToLongBits(option.get()), 8);
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(DecimalOption option) {
+        if (writeNull(option) == false) {
+            BigDecimal decimal = option.get();
+            byte[] unscaled = decimal.unscaledValue().toByteArray();
+            writeVarLong(decimal.scale());
+            writeVarLong(unscaled.length);
+            buffer.append(unscaled);
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(StringOption option) {
+        if (writeNull(option) == false) {
+            Text text = option.get();
+            writeVarLong(text.getLength());
+            buffer.append(text.getBytes(), 0, text.getLength());
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(DateOption option) {
+        if (writeNull(option) == false) {
+            writeVarLong(option.get().getElapsedDays());
+        }
+    }
+
+    /**
+     * Writes the next field.
+     * @param option the field value
+     */
+    public void write(DateTimeOption option) {
+        if (writeNull(option) == false) {
+            writeVarLong(option.get().getElapsedSeconds());
+        }
+    }
+
+    private void writeVarLong(long value) {
+        long rest = (value << 1) ^ (value >> 63);
+        while ((rest & ~0x7fL) != 0) {
+            buffer.append((byte) ((rest & 0x7f) | 0x80));
+            rest >>>= 7;
+        }
+        buffer.append((byte) rest);
+    }
+
+    private void writeFixed(long value, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer.append((byte) (value >> shift));
+        }
+    }
+}
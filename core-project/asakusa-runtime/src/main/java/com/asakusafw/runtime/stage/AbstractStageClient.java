@@ -27,6 +27,7 @@ import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.Writable;
@@ -38,9 +39,11 @@ import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import com.asakusafw.runtime.core.context.RuntimeContext;
+import com.asakusafw.runtime.stage.input.BridgeInputFormat;
 import com.asakusafw.runtime.stage.input.StageInputDriver;
 import com.asakusafw.runtime.stage.input.StageInputFormat;
 import com.asakusafw.runtime.stage.input.StageInputMapper;
+import com.asakusafw.runtime.stage.output.BridgeOutputFormat;
 import com.asakusafw.runtime.stage.output.LegacyBridgeOutputCommitter;
 import com.asakusafw.runtime.stage.output.StageOutputDriver;
 import com.asakusafw.runtime.stage.output.StageOutputFormat;
@@ -52,6 +55,9 @@ import com.asakusafw.runtime.util.VariableTable.RedefineStrategy;
  * ステージごとの処理を起動するクライアントの基底クラス。
  * @since 0.1.0
  * @version 0.4.0
+ * @see StageCheckpoint
+ * @see StageEmptyInput
+ * @see StageLocalMode
  */
 public abstract class AbstractStageClient extends BaseStageClient {
 
@@ -110,6 +116,12 @@ public abstract class AbstractStageClient extends BaseStageClient {
      */
     public static final String METHOD_REDUCER_CLASS = "getReducerClassOrNull";
 
+    /**
+     * {@link #configureStage(Job, VariableTable)}のメソッド名。
+     * @since 0.4.0
+     */
+    public static final String METHOD_CONFIGURE_STAGE = "configureStage";
+
     static final Log LOG = LogFactory.getLog(AbstractStageClient.class);
 
     /**
@@ -217,6 +229,9 @@ public abstract class AbstractStageClient extends BaseStageClient {
         conf.set(StageConstants.PROP_BATCH_ID, getBatchId());
         conf.set(StageConstants.PROP_FLOW_ID, getFlowId());
         Job job = createJob(conf);
+        if (StageCheckpoint.isEnabled(job.getConfiguration())) {
+            return submitWithCheckpoint(job);
+        }
         return submit(job);
     }
 
@@ -253,7 +268,15 @@ public abstract class AbstractStageClient extends BaseStageClient {
                     "Job is skipped because current execution status is in simulation mode: name={0}",
                     job.getJobName()));
             succeed = true;
+        } else if (StageEmptyInput.isSkippable(job, getStageOutputs())) {
+            LOG.info(MessageFormat.format(
+                    "Job is skipped because all of its inputs are empty: name={0}",
+                    job.getJobName()));
+            StageEmptyInput.prepareEmptyOutputs(job, getStageOutputs());
+            succeed = true;
         } else {
+            StageLocalMode.prepare(job);
+            StagePartitioning.prepare(job, getStageOutputs());
             job.submit();
             LOG.info(MessageFormat.format(
                     "Job Submitted: id={0}, name={1}",
@@ -272,6 +295,73 @@ public abstract class AbstractStageClient extends BaseStageClient {
         return succeed ? ToolLauncher.JOB_SUCCEEDED : ToolLauncher.JOB_FAILED;
     }
 
+    private int submitWithCheckpoint(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        if (RuntimeContext.get().isSimulation()) {
+            return submit(job);
+        }
+        StageCheckpoint checkpoint = computeCheckpoint(job);
+        if (checkpoint == null) {
+            return submit(job);
+        }
+        if (checkpoint.isReusable()) {
+            LOG.info(MessageFormat.format(
+                    "Job is skipped because its checkpoint is not changed: name={0}, checkpoint={1}",
+                    job.getJobName(),
+                    checkpoint.getFingerprint()));
+            return ToolLauncher.JOB_SUCCEEDED;
+        }
+        checkpoint.discard();
+        int result = submit(job);
+        if (result == ToolLauncher.JOB_SUCCEEDED) {
+            checkpoint.save();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private StageCheckpoint computeCheckpoint(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        if (BridgeOutputFormat.hasOutput(job)) {
+            LOG.info(MessageFormat.format(
+                    "Checkpoint is not available for stages with bridge outputs: {0}",
+                    job.getJobName()));
+            return null;
+        }
+        VariableTable variables = new VariableTable(RedefineStrategy.IGNORE);
+        variables.defineVariables(conf.get(PROP_ASAKUSA_BATCH_ARGS, ""));
+        List<Path> inputPaths = new ArrayList<Path>();
+        List<Class<?>> programClasses = new ArrayList<Class<?>>();
+        programClasses.add(getClass());
+        for (StageInput input : getStageInputs()) {
+            if (BridgeInputFormat.class.isAssignableFrom(input.getFormatClass())) {
+                LOG.info(MessageFormat.format(
+                        "Checkpoint is not available for stages with bridge inputs: {0}",
+                        job.getJobName()));
+                return null;
+            }
+            inputPaths.add(new Path(variables.parse(input.getPathString())));
+            programClasses.add(input.getMapperClass());
+        }
+        for (StageResource resource : getStageResources()) {
+            inputPaths.add(new Path(variables.parse(resource.getLocation())));
+        }
+        for (Class<?> aClass : new Class<?>[] {
+                getShuffleKeyClassOrNull(),
+                getShuffleValueClassOrNull(),
+                getPartitionerClassOrNull(),
+                getCombinerClassOrNull(),
+                getSortComparatorClassOrNull(),
+                getGroupingComparatorClassOrNull(),
+                getReducerClassOrNull(),
+        }) {
+            if (aClass != null) {
+                programClasses.add(aClass);
+            }
+        }
+        Path outputPath = new Path(variables.parse(getStageOutputPath()));
+        return StageCheckpoint.compute(conf, getDefinitionId(), outputPath, inputPaths, programClasses);
+    }
+
     private void configureJobInfo(Job job, VariableTable variables) {
         Class<?> clientClass = getClass();
         String definitionId = getDefinitionId();
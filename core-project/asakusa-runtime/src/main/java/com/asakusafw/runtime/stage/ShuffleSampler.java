@@ -0,0 +1,356 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.asakusafw.runtime.flow.SegmentedPartitioner;
+import com.asakusafw.runtime.flow.SegmentedWritable;
+import com.asakusafw.runtime.stage.input.StageInputFormat;
+import com.asakusafw.runtime.stage.input.StageInputSplit;
+
+/**
+ * Samples the shuffle outputs of a stage by running its mappers on the client.
+ * <p>
+ * Each input record of the sampled splits is passed to the mapper with the specified frequency,
+ * so that the samples are not biased to the head of the splits.
+ * Only the records written into the shuffle are counted.
+ * Clients must not use this for stages whose mappers may write non-temporary outputs,
+ * because the mappers run with the actual stage configuration.
+ * </p>
+ * @since 0.4.0
+ */
+final class ShuffleSampler {
+
+    static final Log LOG = LogFactory.getLog(ShuffleSampler.class);
+
+    private static final String KEY_OUTPUT_DIR = "mapred.output.dir";
+
+    private static final String KEY_SPLIT_COMBINER = "com.asakusafw.input.combine";
+
+    private final Job job;
+
+    private final SegmentedPartitioner<?, ?> partitioner;
+
+    private final int buckets;
+
+    private final Map<Integer, long[]> keyRecords = new HashMap<Integer, long[]>();
+
+    private long totalRecords;
+
+    /**
+     * Creates a new instance.
+     * @param job the target job
+     * @param partitioner the partitioner of the job
+     * @param buckets the number of buckets
+     */
+    ShuffleSampler(Job job, SegmentedPartitioner<?, ?> partitioner, int buckets) {
+        assert job != null;
+        assert partitioner != null;
+        assert buckets > 0;
+        this.job = job;
+        this.partitioner = partitioner;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Returns the number of sampled shuffle outputs for each key hash code.
+     * This is available after {@link #sample(int, int, float)} was invoked.
+     * @return the number of sampled records for each {@link SegmentedPartitioner#getBucketHash(SegmentedWritable)}
+     */
+    Map<Integer, Long> getKeyRecords() {
+        Map<Integer, Long> results = new HashMap<Integer, Long>();
+        for (Map.Entry<Integer, long[]> entry : keyRecords.entrySet()) {
+            results.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the total number of sampled shuffle outputs.
+     * This is available after {@link #sample(int, int, float)} was invoked.
+     * @return the total number of sampled records
+     */
+    long getTotalRecords() {
+        return totalRecords;
+    }
+
+    /**
+     * Returns the total bytes of the sampled shuffle outputs for each bucket.
+     * @param maxSplits the max number of splits to be sampled
+     * @param maxRecords the max number of input records to be sampled in each split
+     * @param frequency the probability of each input record to be sampled, in {@code (0, 1]}
+     * @return the sampled bytes, whose index is the bucket number
+     * @throws IOException if failed to sample the stage input
+     * @throws InterruptedException if interrupted while sampling
+     */
+    long[] sample(int maxSplits, int maxRecords, float frequency) throws IOException, InterruptedException {
+        File temporary = File.createTempFile("asakusa-sample", ".tmp");
+        if (temporary.delete() == false || temporary.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to create a temporary directory: {0}",
+                    temporary));
+        }
+        try {
+            Configuration conf = new Configuration(job.getConfiguration());
+            conf.set(KEY_OUTPUT_DIR, temporary.toURI().toString());
+            conf.set(KEY_SPLIT_COMBINER, "disabled");
+            Job sampling = new Job(conf);
+            StageInputFormat format = new StageInputFormat();
+            List<InputSplit> splits = format.getSplits(sampling);
+            long[] results = new long[buckets];
+            if (splits.isEmpty() || maxSplits <= 0 || maxRecords <= 0 || frequency <= 0) {
+                return results;
+            }
+            int count = Math.min(maxSplits, splits.size());
+            for (int i = 0; i < count; i++) {
+                InputSplit split = splits.get((int) ((long) i * splits.size() / count));
+                TaskAttemptID id = new TaskAttemptID("sampling", 0, true, i, 0);
+                RecordSampler sampler = new RecordSampler(maxRecords, Math.min(frequency, 1.0f), new Random(i));
+                sample(sampling.getConfiguration(), id, format, (StageInputSplit) split, sampler, results);
+            }
+            return results;
+        } finally {
+            if (FileUtil.fullyDelete(temporary) == false) {
+                LOG.warn(MessageFormat.format(
+                        "Failed to delete a temporary directory: {0}",
+                        temporary));
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void sample(
+            Configuration conf,
+            TaskAttemptID id,
+            StageInputFormat format,
+            StageInputSplit split,
+            RecordSampler sampler,
+            long[] results) throws IOException, InterruptedException {
+        assert conf != null;
+        assert id != null;
+        assert format != null;
+        assert split != null;
+        assert sampler != null;
+        assert results != null;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(MessageFormat.format(
+                    "Sampling shuffle outputs: mapper={0}, length={1}",
+                    split.getMapperClass().getName(),
+                    split.getLength()));
+        }
+        TaskAttemptContext context = new TaskAttemptContext(conf, id);
+        RecordReader<?, ?> reader = format.createRecordReader(split, context);
+        try {
+            reader.initialize(split, context);
+            Mapper mapper = ReflectionUtils.newInstance(split.getMapperClass(), conf);
+            Mapper.Context mapperContext = mapper.new Context(
+                    conf,
+                    id,
+                    new SamplingReader(reader, sampler),
+                    new SamplingWriter(results),
+                    null,
+                    new DummyReporter(),
+                    split);
+            mapper.run(mapperContext);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Selects input records to be sampled.
+     */
+    static final class RecordSampler {
+
+        private final float frequency;
+
+        private final Random random;
+
+        private int rest;
+
+        RecordSampler(int limit, float frequency, Random random) {
+            assert frequency > 0 && frequency <= 1;
+            assert random != null;
+            this.rest = limit;
+            this.frequency = frequency;
+            this.random = random;
+        }
+
+        /**
+         * Returns whether more records can be sampled or not.
+         * @return {@code true} if more records can be sampled, otherwise {@code false}
+         */
+        boolean hasRest() {
+            return rest > 0;
+        }
+
+        /**
+         * Returns whether the next record is sampled or not.
+         * @return {@code true} if the next record is sampled, otherwise {@code false}
+         */
+        boolean next() {
+            assert rest > 0;
+            if (frequency < 1 && random.nextFloat() >= frequency) {
+                return false;
+            }
+            rest--;
+            return true;
+        }
+    }
+
+    private static final class SamplingReader extends RecordReader<Object, Object> {
+
+        private final RecordReader<?, ?> delegate;
+
+        private final RecordSampler sampler;
+
+        SamplingReader(RecordReader<?, ?> delegate, RecordSampler sampler) {
+            assert delegate != null;
+            assert sampler != null;
+            this.delegate = delegate;
+            this.sampler = sampler;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+            return;
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            while (sampler.hasRest()) {
+                if (delegate.nextKeyValue() == false) {
+                    return false;
+                }
+                if (sampler.next()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Object getCurrentKey() throws IOException, InterruptedException {
+            return delegate.getCurrentKey();
+        }
+
+        @Override
+        public Object getCurrentValue() throws IOException, InterruptedException {
+            return delegate.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return delegate.getProgress();
+        }
+
+        @Override
+        public void close() {
+            return;
+        }
+    }
+
+    private final class SamplingWriter extends RecordWriter<Object, Object> {
+
+        private final long[] results;
+
+        private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+        SamplingWriter(long[] results) {
+            assert results != null;
+            this.results = results;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public void write(Object key, Object value) throws IOException {
+            if ((key instanceof SegmentedWritable) == false || (value instanceof Writable) == false) {
+                return;
+            }
+            int hash = ((SegmentedPartitioner) partitioner).getBucketHash((SegmentedWritable) key);
+            buffer.reset();
+            ((SegmentedWritable) key).write(buffer);
+            ((Writable) value).write(buffer);
+            results[hash % results.length] += buffer.getLength();
+            long[] count = keyRecords.get(hash);
+            if (count == null) {
+                count = new long[1];
+                keyRecords.put(hash, count);
+            }
+            count[0]++;
+            totalRecords++;
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+            return;
+        }
+    }
+
+    private static final class DummyReporter extends StatusReporter {
+
+        private final Counters counters = new Counters();
+
+        DummyReporter() {
+            return;
+        }
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+            return;
+        }
+
+        @Override
+        public void setStatus(String status) {
+            return;
+        }
+    }
+}
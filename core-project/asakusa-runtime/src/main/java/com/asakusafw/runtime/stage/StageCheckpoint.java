@@ -0,0 +1,416 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.asakusafw.runtime.util.VariableTable;
+import com.asakusafw.runtime.util.VariableTable.RedefineStrategy;
+
+/**
+ * Checkpoint of a stage execution.
+ * <p>
+ * A checkpoint is a fingerprint of the stage inputs (paths, sizes, and modification times),
+ * the batch arguments, and the stage program.
+ * If a stage has been completed with the same fingerprint,
+ * the stage client can reuse its previous output instead of submitting the job again.
+ * This feature is enabled only if {@link #KEY_ENABLED} is set to {@code true}.
+ * </p>
+ * <p>
+ * The batch arguments listed in {@link #KEY_EXCLUDED_ARGUMENTS}
+ * (by default, only {@link StageConstants#VAR_EXECUTION_ID the execution ID}) are not part of the fingerprint,
+ * because they differ in every execution and would never let the stage be reused.
+ * The input paths are still fingerprinted after their variables are resolved,
+ * so that stages which read execution specific paths are not reused across executions.
+ * </p>
+ * @since 0.4.0
+ */
+public final class StageCheckpoint {
+
+    static final Log LOG = LogFactory.getLog(StageCheckpoint.class);
+
+    /**
+     * The configuration key whether checkpoints are enabled or not.
+     */
+    public static final String KEY_ENABLED = "com.asakusafw.stage.checkpoint";
+
+    /**
+     * The default value of {@link #KEY_ENABLED}.
+     */
+    public static final boolean DEFAULT_ENABLED = false;
+
+    /**
+     * The configuration key of the comma separated batch argument names
+     * which are excluded from the fingerprint.
+     */
+    public static final String KEY_EXCLUDED_ARGUMENTS = "com.asakusafw.stage.checkpoint.excludes";
+
+    /**
+     * The default value of {@link #KEY_EXCLUDED_ARGUMENTS}.
+     */
+    public static final String DEFAULT_EXCLUDED_ARGUMENTS = StageConstants.VAR_EXECUTION_ID;
+
+    /**
+     * The checkpoint file name (placed in the stage output directory).
+     */
+    public static final String FILE_NAME = "_asakusa_checkpoint";
+
+    private static final String KEY_JOB_JAR = "mapred.jar";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final Charset ENCODING = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Configuration configuration;
+
+    private final Path outputPath;
+
+    private final String fingerprint;
+
+    private StageCheckpoint(Configuration configuration, Path outputPath, String fingerprint) {
+        assert configuration != null;
+        assert outputPath != null;
+        assert fingerprint != null;
+        this.configuration = configuration;
+        this.outputPath = outputPath;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns whether checkpoints are enabled in the configuration.
+     * @param conf the current configuration
+     * @return {@code true} if enabled, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isEnabled(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        return conf.getBoolean(KEY_ENABLED, DEFAULT_ENABLED);
+    }
+
+    /**
+     * Computes a checkpoint for the stage.
+     * @param conf the current configuration
+     * @param definitionId the stage definition ID
+     * @param outputPath the stage output path (must not contain variables)
+     * @param inputPaths the stage input paths (must not contain variables)
+     * @param programClasses the classes which consist of the stage program
+     * @return the computed checkpoint
+     * @throws IOException if failed to compute the checkpoint
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static StageCheckpoint compute(
+            Configuration conf,
+            String definitionId,
+            Path outputPath,
+            Collection<Path> inputPaths,
+            Collection<? extends Class<?>> programClasses) throws IOException {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        if (definitionId == null) {
+            throw new IllegalArgumentException("definitionId must not be null"); //$NON-NLS-1$
+        }
+        if (outputPath == null) {
+            throw new IllegalArgumentException("outputPath must not be null"); //$NON-NLS-1$
+        }
+        if (inputPaths == null) {
+            throw new IllegalArgumentException("inputPaths must not be null"); //$NON-NLS-1$
+        }
+        if (programClasses == null) {
+            throw new IllegalArgumentException("programClasses must not be null"); //$NON-NLS-1$
+        }
+        MessageDigest digest = createDigest();
+        update(digest, "definition", definitionId);
+        for (Map.Entry<String, String> entry : getArguments(conf).entrySet()) {
+            update(digest, "argument:" + entry.getKey(), entry.getValue());
+        }
+        for (Path pattern : inputPaths) {
+            update(digest, "input", pattern.toString());
+            for (FileStatus status : listFiles(conf, pattern)) {
+                update(digest, "file", MessageFormat.format(
+                        "{0}:{1}:{2}",
+                        status.getPath().toString(),
+                        String.valueOf(status.getLen()),
+                        String.valueOf(status.getModificationTime())));
+            }
+        }
+        updateProgram(digest, conf, programClasses);
+        return new StageCheckpoint(conf, outputPath, toHexString(digest.digest()));
+    }
+
+    /**
+     * Returns the fingerprint of this checkpoint.
+     * @return the fingerprint
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the checkpoint file path.
+     * @return the checkpoint file path
+     */
+    public Path getCheckpointPath() {
+        return new Path(outputPath, FILE_NAME);
+    }
+
+    /**
+     * Returns whether the previous output of the stage can be reused or not.
+     * @return {@code true} if the stage output was created with the same fingerprint, otherwise {@code false}
+     * @throws IOException if failed to read the previous checkpoint
+     */
+    public boolean isReusable() throws IOException {
+        Path path = getCheckpointPath();
+        FileSystem fs = path.getFileSystem(configuration);
+        if (fs.exists(path) == false) {
+            LOG.debug(MessageFormat.format(
+                    "Checkpoint is not found: {0}",
+                    path));
+            return false;
+        }
+        String previous = read(fs, path);
+        if (fingerprint.equals(previous) == false) {
+            LOG.info(MessageFormat.format(
+                    "Checkpoint is changed: {0} (previous={1}, current={2})",
+                    path,
+                    previous,
+                    fingerprint));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the previous stage output if it exists.
+     * This must be invoked before the stage is submitted again.
+     * @throws IOException if failed to remove the previous output
+     */
+    public void discard() throws IOException {
+        FileSystem fs = outputPath.getFileSystem(configuration);
+        if (fs.exists(outputPath)) {
+            LOG.info(MessageFormat.format(
+                    "Removing stale stage output: {0}",
+                    outputPath));
+            if (fs.delete(outputPath, true) == false) {
+                throw new IOException(MessageFormat.format(
+                        "Failed to remove stale stage output: {0}",
+                        outputPath));
+            }
+        }
+    }
+
+    /**
+     * Stores this checkpoint into the stage output directory.
+     * This must be invoked after the stage was successfully completed.
+     * @throws IOException if failed to store the checkpoint
+     */
+    public void save() throws IOException {
+        Path path = getCheckpointPath();
+        FileSystem fs = path.getFileSystem(configuration);
+        LOG.debug(MessageFormat.format(
+                "Saving checkpoint: {0} ({1})",
+                path,
+                fingerprint));
+        OutputStream output = fs.create(path, true);
+        try {
+            output.write(fingerprint.getBytes(ENCODING));
+        } finally {
+            output.close();
+        }
+    }
+
+    private static SortedMap<String, String> getArguments(Configuration conf) {
+        assert conf != null;
+        VariableTable variables = new VariableTable(RedefineStrategy.IGNORE);
+        variables.defineVariables(conf.get(StageConstants.PROP_ASAKUSA_BATCH_ARGS, ""));
+        SortedMap<String, String> results = new TreeMap<String, String>(variables.getVariables());
+        Set<String> excludes = new TreeSet<String>();
+        String[] names = conf.getStrings(KEY_EXCLUDED_ARGUMENTS, DEFAULT_EXCLUDED_ARGUMENTS);
+        if (names != null) {
+            for (String name : names) {
+                String trimmed = name.trim();
+                if (trimmed.isEmpty() == false) {
+                    excludes.add(trimmed);
+                }
+            }
+        }
+        results.keySet().removeAll(excludes);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(MessageFormat.format(
+                    "Batch arguments excluded from checkpoint: {0}",
+                    excludes));
+        }
+        return results;
+    }
+
+    private static List<FileStatus> listFiles(Configuration conf, Path pattern) throws IOException {
+        assert conf != null;
+        assert pattern != null;
+        FileSystem fs = pattern.getFileSystem(conf);
+        FileStatus[] found = fs.globStatus(pattern);
+        if (found == null || found.length == 0) {
+            return Collections.emptyList();
+        }
+        List<FileStatus> results = new ArrayList<FileStatus>();
+        List<FileStatus> work = new ArrayList<FileStatus>(Arrays.asList(found));
+        while (work.isEmpty() == false) {
+            FileStatus status = work.remove(work.size() - 1);
+            if (status.isDir()) {
+                FileStatus[] children = fs.listStatus(status.getPath());
+                if (children != null) {
+                    Collections.addAll(work, children);
+                }
+            } else {
+                results.add(status);
+            }
+        }
+        Collections.sort(results, new Comparator<FileStatus>() {
+            @Override
+            public int compare(FileStatus o1, FileStatus o2) {
+                return o1.getPath().compareTo(o2.getPath());
+            }
+        });
+        return results;
+    }
+
+    private static void updateProgram(
+            MessageDigest digest,
+            Configuration conf,
+            Collection<? extends Class<?>> programClasses) throws IOException {
+        assert digest != null;
+        assert conf != null;
+        assert programClasses != null;
+        String jar = conf.get(KEY_JOB_JAR);
+        if (jar != null) {
+            File file = new File(jar);
+            if (file.isFile()) {
+                update(digest, "jar", file.getName());
+                InputStream input = new FileInputStream(file);
+                try {
+                    update(digest, input);
+                } finally {
+                    input.close();
+                }
+                return;
+            }
+        }
+        for (Class<?> aClass : programClasses) {
+            update(digest, "class", aClass.getName());
+            ClassLoader loader = aClass.getClassLoader();
+            String resource = aClass.getName().replace('.', '/') + ".class";
+            InputStream input = loader == null ? null : loader.getResourceAsStream(resource);
+            if (input == null) {
+                continue;
+            }
+            try {
+                update(digest, input);
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String kind, String value) {
+        assert digest != null;
+        assert kind != null;
+        assert value != null;
+        digest.update(kind.getBytes(ENCODING));
+        digest.update((byte) '=');
+        digest.update(value.getBytes(ENCODING));
+        digest.update((byte) '\n');
+    }
+
+    private static void update(MessageDigest digest, InputStream input) throws IOException {
+        assert digest != null;
+        assert input != null;
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (true) {
+            int read = input.read(buf);
+            if (read < 0) {
+                break;
+            }
+            digest.update(buf, 0, read);
+        }
+    }
+
+    private static String read(FileSystem fs, Path path) throws IOException {
+        assert fs != null;
+        assert path != null;
+        FSDataInputStream input = fs.open(path);
+        try {
+            StringBuilder buf = new StringBuilder();
+            byte[] bytes = new byte[BUFFER_SIZE];
+            while (true) {
+                int read = input.read(bytes);
+                if (read < 0) {
+                    break;
+                }
+                buf.append(new String(bytes, 0, read, ENCODING));
+            }
+            return buf.toString().trim();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static String toHexString(byte[] bytes) {
+        assert bytes != null;
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(String.format("%02x", b & 0xff));
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Compression settings of intermediate data for each stage.
+ * <p>
+ * The compression mode is one of {@link #MODE_NONE}, {@link #MODE_DEFAULT}, {@link #MODE_FAST},
+ * or a fully qualified class name of {@link CompressionCodec}.
+ * Stage clients pass the mode estimated by the compiler to {@link #configure(Job, String)}
+ * only if it is explicitly enabled in the compiler options; otherwise, they call {@link #configure(Job)}
+ * and the compression settings of the cluster are kept as is.
+ * In both cases, users can override the mode by setting {@link #KEY_MODE} in the job configuration.
+ * The resolved codec is used for both temporary outputs and map outputs (shuffle).
+ * If the codec is not available on the client, the current compression settings are kept.
+ * </p>
+ * @since 0.4.0
+ */
+public final class StageCompression {
+
+    static final Log LOG = LogFactory.getLog(StageCompression.class);
+
+    /**
+     * The configuration key of the compression mode which overrides the estimated one.
+     */
+    public static final String KEY_MODE = "com.asakusafw.stage.compression";
+
+    /**
+     * The configuration key of the resolved codec class name for temporary outputs.
+     * The empty value means that temporary outputs will not be compressed.
+     */
+    public static final String KEY_TEMPORARY_CODEC = "com.asakusafw.stage.compression.temporary";
+
+    /**
+     * The compression mode which does not compress intermediate data.
+     */
+    public static final String MODE_NONE = "none";
+
+    /**
+     * The compression mode which uses {@link DefaultCodec} (deflate).
+     */
+    public static final String MODE_DEFAULT = "default";
+
+    /**
+     * The compression mode which uses the first available codec in {@link #FAST_CODEC_CLASS_NAMES}.
+     * If none of them is available, the current compression settings are kept.
+     */
+    public static final String MODE_FAST = "fast";
+
+    /**
+     * The candidates of fast codec class names, in order of preference.
+     */
+    public static final List<String> FAST_CODEC_CLASS_NAMES = Arrays.asList(new String[] {
+            "org.apache.hadoop.io.compress.SnappyCodec",
+            "org.apache.hadoop.io.compress.Lz4Codec",
+            "com.hadoop.compression.lzo.LzoCodec",
+    });
+
+    private static final String KEY_MAP_OUTPUT_COMPRESS = "mapred.compress.map.output";
+
+    private static final String KEY_MAP_OUTPUT_CODEC = "mapred.map.output.compression.codec";
+
+    private StageCompression() {
+        return;
+    }
+
+    /**
+     * Configures compression of intermediate data for the job only if {@link #KEY_MODE} is set.
+     * Otherwise, the current compression settings are kept.
+     * @param job the target job
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void configure(Job job) {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        String mode = job.getConfiguration().get(KEY_MODE);
+        if (mode == null || mode.trim().isEmpty()) {
+            return;
+        }
+        configure(job, mode);
+    }
+
+    /**
+     * Configures compression of intermediate data for the job.
+     * @param job the target job
+     * @param estimatedMode the compression mode estimated by the compiler,
+     *     this will be ignored if {@link #KEY_MODE} is set in the job configuration
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void configure(Job job, String estimatedMode) {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        if (estimatedMode == null) {
+            throw new IllegalArgumentException("estimatedMode must not be null"); //$NON-NLS-1$
+        }
+        Configuration conf = job.getConfiguration();
+        String mode = conf.get(KEY_MODE);
+        if (mode == null || mode.trim().isEmpty()) {
+            mode = estimatedMode;
+        }
+        mode = mode.trim();
+        if (mode.equals(MODE_NONE)) {
+            LOG.info(MessageFormat.format(
+                    "Intermediate data will not be compressed: job={0}",
+                    job.getJobName()));
+            conf.set(KEY_TEMPORARY_CODEC, "");
+            conf.setBoolean(KEY_MAP_OUTPUT_COMPRESS, false);
+            return;
+        }
+        Class<? extends CompressionCodec> codec = findCodec(conf, mode);
+        if (codec == null) {
+            return;
+        }
+        LOG.info(MessageFormat.format(
+                "Intermediate data will be compressed: job={0}, mode={1}, codec={2}",
+                job.getJobName(),
+                mode,
+                codec.getName()));
+        conf.set(KEY_TEMPORARY_CODEC, codec.getName());
+        conf.setBoolean(KEY_MAP_OUTPUT_COMPRESS, true);
+        conf.setClass(KEY_MAP_OUTPUT_CODEC, codec, CompressionCodec.class);
+    }
+
+    /**
+     * Returns whether the compression of temporary outputs is configured by this class or not.
+     * @param conf the current configuration
+     * @return {@code true} if it is configured, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isConfigured(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        return conf.get(KEY_TEMPORARY_CODEC) != null;
+    }
+
+    /**
+     * Creates a codec for temporary outputs.
+     * @param conf the current configuration
+     * @return the created codec, or {@code null} if temporary outputs will not be compressed
+     * @throws IOException if failed to create the configured codec
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static CompressionCodec createTemporaryCodec(Configuration conf) throws IOException {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        String className = conf.get(KEY_TEMPORARY_CODEC);
+        if (className == null || className.isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> codecClass = conf.getClassByName(className);
+            return ReflectionUtils.newInstance(codecClass.asSubclass(CompressionCodec.class), conf);
+        } catch (Exception e) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to create compression codec ({0}={1})",
+                    KEY_TEMPORARY_CODEC,
+                    className), e);
+        }
+    }
+
+    private static Class<? extends CompressionCodec> findCodec(Configuration conf, String mode) {
+        assert conf != null;
+        assert mode != null;
+        if (mode.equals(MODE_DEFAULT)) {
+            return DefaultCodec.class;
+        } else if (mode.equals(MODE_FAST)) {
+            for (String className : FAST_CODEC_CLASS_NAMES) {
+                Class<? extends CompressionCodec> codec = loadAvailableCodec(conf, className);
+                if (codec != null) {
+                    return codec;
+                }
+            }
+            LOG.info(MessageFormat.format(
+                    "Fast compression codecs are not available, keeps the current compression settings: {0}",
+                    FAST_CODEC_CLASS_NAMES));
+            return null;
+        } else {
+            Class<? extends CompressionCodec> codec = loadAvailableCodec(conf, mode);
+            if (codec == null) {
+                LOG.warn(MessageFormat.format(
+                        "Compression codec is not available, keeps the current compression settings: {0}",
+                        mode));
+            }
+            return codec;
+        }
+    }
+
+    private static Class<? extends CompressionCodec> loadAvailableCodec(Configuration conf, String className) {
+        assert conf != null;
+        assert className != null;
+        Class<? extends CompressionCodec> codecClass;
+        try {
+            codecClass = conf.getClassByName(className).asSubclass(CompressionCodec.class);
+        } catch (ClassNotFoundException e) {
+            LOG.debug(MessageFormat.format(
+                    "Compression codec is not found: {0}",
+                    className), e);
+            return null;
+        } catch (ClassCastException e) {
+            LOG.debug(MessageFormat.format(
+                    "Class is not a compression codec: {0}",
+                    className), e);
+            return null;
+        }
+        try {
+            // native codecs fail to create their compressors if the native library is not loaded
+            CompressionCodec codec = ReflectionUtils.newInstance(codecClass, conf);
+            Compressor compressor = codec.createCompressor();
+            if (compressor != null) {
+                compressor.end();
+            }
+            return codecClass;
+        } catch (RuntimeException e) {
+            LOG.debug(MessageFormat.format(
+                    "Compression codec is not available: {0}",
+                    className), e);
+            return null;
+        } catch (LinkageError e) {
+            LOG.debug(MessageFormat.format(
+                    "Compression codec is not available: {0}",
+                    className), e);
+            return null;
+        }
+    }
+}
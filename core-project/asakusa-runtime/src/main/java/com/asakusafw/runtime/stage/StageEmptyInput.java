@@ -0,0 +1,224 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.stage.input.StageInputFormat;
+import com.asakusafw.runtime.stage.output.TemporaryOutputFormat;
+import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
+
+/**
+ * Skips stages whose inputs are all empty.
+ * <p>
+ * If this feature is enabled for a stage, the stage client probes each split of the stage input
+ * just before the job is submitted.
+ * If none of them provides any records, the job is not submitted and
+ * {@link #prepareEmptyOutputs(Job, List)} creates an empty file for each stage output instead.
+ * The succeeding stages will see the empty files as their input,
+ * so that they are also skipped if all of their inputs are empty.
+ * </p>
+ * <p>
+ * This is only available for stages whose outputs are all {@link TemporaryOutputFormat temporary outputs}.
+ * Stage clients pass the setting specified in the compiler to {@link #configure(Job, boolean)},
+ * and users can override it by setting {@link #KEY_ENABLED} in the job configuration.
+ * </p>
+ * @since 0.4.0
+ */
+public final class StageEmptyInput {
+
+    static final Log LOG = LogFactory.getLog(StageEmptyInput.class);
+
+    /**
+     * The configuration key whether stages with empty inputs are skipped or not.
+     */
+    public static final String KEY_ENABLED = "com.asakusafw.stage.skipEmptyInput";
+
+    /**
+     * The default value of {@link #KEY_ENABLED}.
+     */
+    public static final boolean DEFAULT_ENABLED = false;
+
+    private static final String KEY_SPLIT_COMBINER = "com.asakusafw.input.combine";
+
+    private static final String EMPTY_FILE_SUFFIX = "-m-00000";
+
+    private StageEmptyInput() {
+        return;
+    }
+
+    /**
+     * Configures whether the job is skipped if its inputs are all empty.
+     * @param job the target job
+     * @param specified the setting specified in the compiler,
+     *     this will be ignored if {@link #KEY_ENABLED} is set in the job configuration
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void configure(Job job, boolean specified) {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        Configuration conf = job.getConfiguration();
+        if (conf.get(KEY_ENABLED) == null) {
+            conf.setBoolean(KEY_ENABLED, specified);
+        }
+    }
+
+    /**
+     * Returns whether stages with empty inputs are skipped or not.
+     * @param conf the current configuration
+     * @return {@code true} to skip stages with empty inputs, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isEnabled(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        return conf.getBoolean(KEY_ENABLED, DEFAULT_ENABLED);
+    }
+
+    /**
+     * Returns whether the job can be skipped instead of submitting it.
+     * <p>
+     * This returns {@code true} only if this feature is enabled, all outputs are temporary outputs,
+     * and the stage inputs do not provide any records.
+     * If failed to probe the stage inputs, this returns {@code false}.
+     * </p>
+     * @param job the target job
+     * @param outputs the stage outputs
+     * @return {@code true} if the job can be skipped, otherwise {@code false}
+     * @throws InterruptedException if interrupted while probing the stage inputs
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isSkippable(Job job, List<StageOutput> outputs) throws InterruptedException {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        if (outputs == null) {
+            throw new IllegalArgumentException("outputs must not be null"); //$NON-NLS-1$
+        }
+        if (isEnabled(job.getConfiguration()) == false) {
+            return false;
+        }
+        for (StageOutput output : outputs) {
+            if (TemporaryOutputFormat.class.isAssignableFrom(output.getFormatClass()) == false) {
+                LOG.info(MessageFormat.format(
+                        "Skipping empty stage is not available for stages with non-temporary outputs: {0} ({1})",
+                        job.getJobName(),
+                        output.getName()));
+                return false;
+            }
+        }
+        try {
+            return isEmpty(job);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to probe the stage input, the job will be submitted: {0}",
+                    job.getJobName()), e);
+            return false;
+        } catch (RuntimeException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to probe the stage input, the job will be submitted: {0}",
+                    job.getJobName()), e);
+            return false;
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static boolean isEmpty(Job job) throws IOException, InterruptedException {
+        assert job != null;
+        Configuration conf = new Configuration(job.getConfiguration());
+        conf.set(KEY_SPLIT_COMBINER, "disabled");
+        Job probe = new Job(conf);
+        StageInputFormat format = new StageInputFormat();
+        List<InputSplit> splits = format.getSplits(probe);
+        for (int i = 0, n = splits.size(); i < n; i++) {
+            InputSplit split = splits.get(i);
+            TaskAttemptContext context = new TaskAttemptContext(
+                    probe.getConfiguration(),
+                    new TaskAttemptID("probing", 0, true, i, 0));
+            RecordReader reader = format.createRecordReader(split, context);
+            try {
+                reader.initialize(split, context);
+                if (reader.nextKeyValue()) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(MessageFormat.format(
+                                "Stage input is not empty: {0} (split={1}/{2})",
+                                job.getJobName(),
+                                i + 1,
+                                n));
+                    }
+                    return false;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates an empty file for each stage output of the skipped job.
+     * <p>
+     * Like as the job submission, this fails if the output directory already exists,
+     * so that the stale outputs from the previous executions are never passed to the succeeding stages.
+     * </p>
+     * @param job the target job
+     * @param outputs the stage outputs
+     * @throws IOException if failed to create outputs, or the output directory already exists
+     * @throws InterruptedException if interrupted while checking the output directory
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void prepareEmptyOutputs(
+            Job job,
+            List<StageOutput> outputs) throws IOException, InterruptedException {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        if (outputs == null) {
+            throw new IllegalArgumentException("outputs must not be null"); //$NON-NLS-1$
+        }
+        new TemporaryOutputFormat<Object>().checkOutputSpecs(job);
+        Configuration conf = job.getConfiguration();
+        Path base = TemporaryOutputFormat.getOutputPath(job);
+        FileSystem fs = base.getFileSystem(conf);
+        fs.mkdirs(base);
+        for (StageOutput output : outputs) {
+            Path path = new Path(base, output.getName() + EMPTY_FILE_SUFFIX);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(MessageFormat.format(
+                        "Creating empty stage output: {0}",
+                        path));
+            }
+            ModelOutput<?> out = TemporaryStorage.openOutput(conf, output.getValueClass(), path);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+
+import com.asakusafw.runtime.stage.input.StageInputFormat;
+
+/**
+ * Runs small stages in the launcher process.
+ * <p>
+ * If the total size of the stage input is not greater than {@link #KEY_THRESHOLD} bytes,
+ * {@link #prepare(Job)} switches the job to the local job runner,
+ * so that the stage is executed in the current process instead of being submitted to the cluster.
+ * This avoids the overhead of scheduling tasks and launching task processes for tiny stages.
+ * </p>
+ * <p>
+ * This feature is disabled by default, and stages which use the distributed cache are not executed locally.
+ * Stage clients pass the threshold specified in the compiler to {@link #configure(Job, long)},
+ * and users can override it by setting {@link #KEY_THRESHOLD} in the job configuration.
+ * </p>
+ * @since 0.4.0
+ */
+public final class StageLocalMode {
+
+    static final Log LOG = LogFactory.getLog(StageLocalMode.class);
+
+    /**
+     * The configuration key of the max total bytes of the stage input to be executed locally.
+     * Negative value disables this feature.
+     */
+    public static final String KEY_THRESHOLD = "com.asakusafw.stage.local.threshold";
+
+    /**
+     * The default value of {@link #KEY_THRESHOLD}.
+     */
+    public static final long DEFAULT_THRESHOLD = -1L;
+
+    static final String KEY_JOB_TRACKER = "mapred.job.tracker";
+
+    static final String KEY_JOB_TRACKER_ADDRESS = "mapreduce.jobtracker.address";
+
+    static final String LOCAL = "local";
+
+    private static final String KEY_SPLIT_COMBINER = "com.asakusafw.input.combine";
+
+    private StageLocalMode() {
+        return;
+    }
+
+    /**
+     * Configures the threshold of the stage input size to be executed locally.
+     * @param job the target job
+     * @param specifiedThreshold the threshold in bytes specified in the compiler,
+     *     this will be ignored if {@link #KEY_THRESHOLD} is set in the job configuration
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void configure(Job job, long specifiedThreshold) {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        Configuration conf = job.getConfiguration();
+        if (conf.get(KEY_THRESHOLD) == null) {
+            conf.setLong(KEY_THRESHOLD, specifiedThreshold);
+        }
+    }
+
+    /**
+     * Returns whether the job is configured to be executed by the local job runner.
+     * @param conf the current configuration
+     * @return {@code true} if the job is executed locally, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean isLocal(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        return conf.get(KEY_JOB_TRACKER, LOCAL).equals(LOCAL)
+            && conf.get(KEY_JOB_TRACKER_ADDRESS, LOCAL).equals(LOCAL);
+    }
+
+    /**
+     * Switches the job to the local job runner only if its input is small enough.
+     * This must be invoked just before the job is submitted.
+     * @param job the target job
+     * @return {@code true} if the job was switched to the local job runner, otherwise {@code false}
+     * @throws InterruptedException if interrupted while computing the stage input size
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static boolean prepare(Job job) throws InterruptedException {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        Configuration conf = job.getConfiguration();
+        long threshold = conf.getLong(KEY_THRESHOLD, DEFAULT_THRESHOLD);
+        if (threshold < 0 || isLocal(conf)) {
+            return false;
+        }
+        long size;
+        try {
+            if (DistributedCache.getCacheFiles(conf) != null) {
+                LOG.info(MessageFormat.format(
+                        "Local execution is not available for stages with distributed cache: {0}",
+                        job.getJobName()));
+                return false;
+            }
+            size = computeInputSize(job, threshold);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to compute the stage input size, the job will be submitted to the cluster: {0}",
+                    job.getJobName()), e);
+            return false;
+        }
+        if (size < 0) {
+            return false;
+        }
+        LOG.info(MessageFormat.format(
+                "Job will be executed in the current process: name={0}, input={1}, threshold={2}",
+                job.getJobName(),
+                size,
+                threshold));
+        conf.set(KEY_JOB_TRACKER, LOCAL);
+        conf.set(KEY_JOB_TRACKER_ADDRESS, LOCAL);
+        if (job.getNumReduceTasks() > 1) {
+            job.setNumReduceTasks(1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the total size of the stage input.
+     * @param job the target job
+     * @param limit the max size to compute
+     * @return the total size, or {@code -1} if it is greater than the limit or is unknown
+     */
+    private static long computeInputSize(Job job, long limit) throws IOException, InterruptedException {
+        assert job != null;
+        Configuration conf = new Configuration(job.getConfiguration());
+        conf.set(KEY_SPLIT_COMBINER, "disabled");
+        List<InputSplit> splits = new StageInputFormat().getSplits(new Job(conf));
+        long total = 0;
+        for (InputSplit split : splits) {
+            long length = split.getLength();
+            if (length < 0) {
+                return -1;
+            }
+            total += length;
+            if (total > limit) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(MessageFormat.format(
+                            "Stage input is larger than the local execution threshold: {0} (>{1})",
+                            job.getJobName(),
+                            limit));
+                }
+                return -1;
+            }
+        }
+        return total;
+    }
+}
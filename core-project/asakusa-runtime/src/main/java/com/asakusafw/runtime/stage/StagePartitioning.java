@@ -0,0 +1,622 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.asakusafw.runtime.flow.SegmentedPartitioner;
+import com.asakusafw.runtime.stage.output.BridgeOutputFormat;
+import com.asakusafw.runtime.stage.output.TemporaryOutputFormat;
+
+/**
+ * Partitioning settings of the shuffle for each stage.
+ * <p>
+ * The partitioning mode is one of {@link #MODE_HASH} or {@link #MODE_SAMPLED}.
+ * Stage clients pass the mode specified in the compiler to {@link #configure(Job, String)},
+ * and users can override it by setting {@link #KEY_MODE} in the job configuration.
+ * </p>
+ * <p>
+ * In {@link #MODE_SAMPLED}, {@link #prepare(Job, List)} runs the stage mappers on a sample of the stage input
+ * before the job is submitted, and then builds a partition table which balances the estimated bytes
+ * of each partition.
+ * The table maps buckets of key hash codes to partitions, so that records in the same group
+ * are always sent to the same reducer.
+ * A partition which still receives much more data than the others (typically because of a heavy key)
+ * is reported as a hot partition, and its reducer reports the number of records into
+ * the job counter group {@link #COUNTER_GROUP}.
+ * If sampling was failed, the shuffle falls back to the hash partitioning.
+ * </p>
+ * <p>
+ * Each key which occupies more than a fair share of a reducer in the samples is also detected as
+ * a heavy key, and stored into {@link #KEY_HEAVY_KEYS}.
+ * Regardless of the partitioning mode, reducers report groups which are predicted as heavy keys or
+ * have more than {@link #KEY_HEAVY_KEY_THRESHOLD} records into the job counter group
+ * {@link #HEAVY_KEY_COUNTER_GROUP}, named after their {@link SegmentedPartitioner#getBucketHash key hash}.
+ * </p>
+ * <p>
+ * If {@link #KEY_HEAVY_KEY_SPLIT} is greater than {@code 1}, each predicted heavy key of segments which
+ * can be split (currently, the inputs of master join operators) is processed by that number of reducers:
+ * the records of the large side are spread over the reducers, and the records of the small side
+ * are replicated to all of them.
+ * This is disabled by default.
+ * </p>
+ * @since 0.4.0
+ */
+public final class StagePartitioning {
+
+    static final Log LOG = LogFactory.getLog(StagePartitioning.class);
+
+    /**
+     * The configuration key of the partitioning mode which overrides the specified one.
+     */
+    public static final String KEY_MODE = "com.asakusafw.stage.partitioning";
+
+    /**
+     * The configuration key of the number of input splits to be sampled.
+     */
+    public static final String KEY_SAMPLE_SPLITS = "com.asakusafw.stage.partitioning.sample.splits";
+
+    /**
+     * The configuration key of the max number of input records to be sampled in each split.
+     */
+    public static final String KEY_SAMPLE_RECORDS = "com.asakusafw.stage.partitioning.sample.records";
+
+    /**
+     * The configuration key of the probability of each input record to be sampled.
+     */
+    public static final String KEY_SAMPLE_FREQUENCY = "com.asakusafw.stage.partitioning.sample.frequency";
+
+    /**
+     * The configuration key of the partition table.
+     * This is computed in {@link #prepare(Job, List)}.
+     */
+    public static final String KEY_TABLE = "com.asakusafw.stage.partitioning.table";
+
+    /**
+     * The configuration key of the hot partition numbers.
+     * This is computed in {@link #prepare(Job, List)}.
+     */
+    public static final String KEY_HOT_PARTITIONS = "com.asakusafw.stage.partitioning.hot";
+
+    /**
+     * The configuration key of the hash codes of the heavy keys.
+     * This is computed in {@link #prepare(Job, List)}.
+     */
+    public static final String KEY_HEAVY_KEYS = "com.asakusafw.stage.partitioning.heavy";
+
+    /**
+     * The configuration key of the number of records in a group to be reported as a heavy key.
+     * Zero or negative value disables reporting heavy keys except the predicted ones.
+     */
+    public static final String KEY_HEAVY_KEY_THRESHOLD = "com.asakusafw.stage.partitioning.heavy.threshold";
+
+    /**
+     * The configuration key of the number of reducers which process each predicted heavy key.
+     * {@code 1} or less disables splitting heavy keys.
+     */
+    public static final String KEY_HEAVY_KEY_SPLIT = "com.asakusafw.stage.partitioning.heavy.split";
+
+    /**
+     * The partitioning mode which uses hash codes of the keys.
+     */
+    public static final String MODE_HASH = "hash";
+
+    /**
+     * The partitioning mode which uses a partition table built from samples of the stage input.
+     */
+    public static final String MODE_SAMPLED = "sampled";
+
+    /**
+     * The counter group name of the hot partitions.
+     */
+    public static final String COUNTER_GROUP = "com.asakusafw.stage.partitioning.HotPartitions";
+
+    /**
+     * The counter group name of the heavy keys.
+     */
+    public static final String HEAVY_KEY_COUNTER_GROUP = "com.asakusafw.stage.partitioning.HeavyKeys";
+
+    static final long DEFAULT_HEAVY_KEY_THRESHOLD = 1000000L;
+
+    static final int DEFAULT_HEAVY_KEY_SPLIT = 1;
+
+    static final int MIN_HEAVY_KEY_SAMPLES = 100;
+
+    static final int MAX_HEAVY_KEYS = 10;
+
+    static final int DEFAULT_SAMPLE_SPLITS = 10;
+
+    static final int DEFAULT_SAMPLE_RECORDS = 10000;
+
+    static final float DEFAULT_SAMPLE_FREQUENCY = 0.1f;
+
+    static final int BUCKETS_PER_PARTITION = 32;
+
+    static final int MAX_BUCKETS = 8192;
+
+    static final double HOT_PARTITION_FACTOR = 2.0;
+
+    static final int MAX_HOT_PARTITIONS = 10;
+
+    private StagePartitioning() {
+        return;
+    }
+
+    /**
+     * Configures the partitioning mode for the job.
+     * @param job the target job
+     * @param specifiedMode the partitioning mode specified in the compiler,
+     *     this will be ignored if {@link #KEY_MODE} is set in the job configuration
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void configure(Job job, String specifiedMode) {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        if (specifiedMode == null) {
+            throw new IllegalArgumentException("specifiedMode must not be null"); //$NON-NLS-1$
+        }
+        Configuration conf = job.getConfiguration();
+        String mode = conf.get(KEY_MODE);
+        if (mode == null || mode.trim().isEmpty()) {
+            mode = specifiedMode;
+        }
+        mode = mode.trim();
+        if (mode.equals(MODE_HASH) == false && mode.equals(MODE_SAMPLED) == false) {
+            LOG.warn(MessageFormat.format(
+                    "Unknown partitioning mode, uses \"{1}\" instead: {0}",
+                    mode,
+                    MODE_HASH));
+            mode = MODE_HASH;
+        }
+        conf.set(KEY_MODE, mode);
+    }
+
+    /**
+     * Computes the partition table for the job, only if {@link #MODE_SAMPLED} is configured.
+     * This must be invoked just before the job is submitted.
+     * <p>
+     * Sampling runs the stage mappers on the client,
+     * so that this uses hash partitioning instead if the stage has any non-temporary outputs,
+     * which may be written by the mappers.
+     * </p>
+     * @param job the target job
+     * @param outputs the stage outputs
+     * @throws InterruptedException if interrupted while sampling the stage input
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static void prepare(Job job, List<StageOutput> outputs) throws InterruptedException {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        if (outputs == null) {
+            throw new IllegalArgumentException("outputs must not be null"); //$NON-NLS-1$
+        }
+        Configuration conf = job.getConfiguration();
+        conf.set(KEY_TABLE, "");
+        conf.set(KEY_HOT_PARTITIONS, "");
+        conf.set(KEY_HEAVY_KEYS, "");
+        if (conf.get(KEY_MODE, MODE_HASH).equals(MODE_SAMPLED) == false) {
+            return;
+        }
+        int partitions = job.getNumReduceTasks();
+        if (partitions <= 1) {
+            return;
+        }
+        if (hasExternalOutputs(job, outputs)) {
+            return;
+        }
+        SegmentedPartitioner<?, ?> partitioner = createPartitioner(job);
+        if (partitioner == null) {
+            return;
+        }
+        int buckets = Math.max(partitions, Math.min(partitions * BUCKETS_PER_PARTITION, MAX_BUCKETS));
+        long start = System.currentTimeMillis();
+        ShuffleSampler sampler = new ShuffleSampler(job, partitioner, buckets);
+        long[] weights;
+        try {
+            weights = sampler.sample(
+                    conf.getInt(KEY_SAMPLE_SPLITS, DEFAULT_SAMPLE_SPLITS),
+                    conf.getInt(KEY_SAMPLE_RECORDS, DEFAULT_SAMPLE_RECORDS),
+                    conf.getFloat(KEY_SAMPLE_FREQUENCY, DEFAULT_SAMPLE_FREQUENCY));
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to sample the stage input, uses hash partitioning instead: {0}",
+                    job.getJobName()), e);
+            return;
+        } catch (RuntimeException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to sample the stage input, uses hash partitioning instead: {0}",
+                    job.getJobName()), e);
+            return;
+        }
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        if (total == 0) {
+            LOG.info(MessageFormat.format(
+                    "Stage input is empty, uses hash partitioning instead: {0}",
+                    job.getJobName()));
+            return;
+        }
+        int[] table = buildTable(weights, partitions);
+        long[] loads = computeLoads(weights, table, partitions);
+        List<Integer> hot = findHotPartitions(loads);
+        List<Integer> heavy = findHeavyKeys(sampler.getKeyRecords(), sampler.getTotalRecords(), partitions);
+        conf.set(KEY_TABLE, encode(table));
+        conf.set(KEY_HOT_PARTITIONS, encode(hot));
+        conf.set(KEY_HEAVY_KEYS, encode(heavy));
+        for (Integer hash : heavy) {
+            LOG.warn(MessageFormat.format(
+                    "Heavy key was detected in samples: job={0}, key={1}, partition={2}",
+                    job.getJobName(),
+                    toHeavyKeyName(hash),
+                    table[hash % table.length]));
+        }
+        long end = System.currentTimeMillis();
+        LOG.info(MessageFormat.format(
+                "Partition table was built from samples: job={0}, buckets={1}, partitions={2}, "
+                + "sampledBytes={3}, hotPartitions={4}, elapsed={5}ms",
+                job.getJobName(),
+                buckets,
+                partitions,
+                String.valueOf(total),
+                hot,
+                String.valueOf(end - start)));
+    }
+
+    static boolean hasExternalOutputs(Job job, List<StageOutput> outputs) {
+        assert job != null;
+        assert outputs != null;
+        if (BridgeOutputFormat.hasOutput(job)) {
+            LOG.info(MessageFormat.format(
+                    "Sampling is not available for stages with bridge outputs, uses hash partitioning instead: {0}",
+                    job.getJobName()));
+            return true;
+        }
+        for (StageOutput output : outputs) {
+            if (TemporaryOutputFormat.class.isAssignableFrom(output.getFormatClass()) == false) {
+                LOG.info(MessageFormat.format(
+                        "Sampling is not available for stages with non-temporary outputs, "
+                        + "uses hash partitioning instead: {0} ({1})",
+                        job.getJobName(),
+                        output.getName()));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static SegmentedPartitioner<?, ?> createPartitioner(Job job) {
+        assert job != null;
+        Class<? extends Partitioner> partitionerClass;
+        try {
+            partitionerClass = job.getPartitionerClass();
+        } catch (ClassNotFoundException e) {
+            LOG.warn(MessageFormat.format(
+                    "Failed to load the partitioner, uses hash partitioning instead: {0}",
+                    job.getJobName()), e);
+            return null;
+        }
+        if (SegmentedPartitioner.class.isAssignableFrom(partitionerClass) == false) {
+            LOG.info(MessageFormat.format(
+                    "Partitioner does not support partition tables, uses it as is: {0}",
+                    partitionerClass.getName()));
+            return null;
+        }
+        return (SegmentedPartitioner<?, ?>) ReflectionUtils.newInstance(
+                partitionerClass,
+                new Configuration(false));
+    }
+
+    /**
+     * Returns the counter of the current reducer if it processes a hot partition.
+     * @param context the current task context
+     * @return the counter, or {@code null} if the current partition is not hot
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static Counter getHotPartitionCounter(TaskInputOutputContext<?, ?, ?, ?> context) {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null"); //$NON-NLS-1$
+        }
+        String hot = context.getConfiguration().get(KEY_HOT_PARTITIONS);
+        if (hot == null || hot.isEmpty() || context.getTaskAttemptID().isMap()) {
+            return null;
+        }
+        int partition = context.getTaskAttemptID().getTaskID().getId();
+        for (int candidate : decode(hot)) {
+            if (candidate == partition) {
+                return context.getCounter(COUNTER_GROUP, String.format("partition-%05d", partition));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the hash codes of the heavy keys predicted in {@link #prepare(Job, List)}.
+     * @param conf the current configuration
+     * @return the hash codes of the heavy keys, or an empty array if there are no predicted ones
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static int[] getHeavyKeys(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        String heavy = conf.get(KEY_HEAVY_KEYS);
+        if (heavy == null || heavy.isEmpty()) {
+            return new int[0];
+        }
+        try {
+            return decode(heavy);
+        } catch (NumberFormatException e) {
+            LOG.warn(MessageFormat.format(
+                    "Invalid heavy keys, ignored: {0}",
+                    KEY_HEAVY_KEYS), e);
+            return new int[0];
+        }
+    }
+
+    /**
+     * Returns the number of records in a group to be reported as a heavy key.
+     * @param conf the current configuration
+     * @return the threshold, or {@code 0} if it is disabled
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static long getHeavyKeyThreshold(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        return Math.max(0L, conf.getLong(KEY_HEAVY_KEY_THRESHOLD, DEFAULT_HEAVY_KEY_THRESHOLD));
+    }
+
+    /**
+     * Returns the number of reducers which process each predicted heavy key.
+     * @param conf the current configuration
+     * @return the number of reducers, or {@code 1} if splitting heavy keys is disabled
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static int getHeavyKeySplit(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        return Math.max(1, conf.getInt(KEY_HEAVY_KEY_SPLIT, DEFAULT_HEAVY_KEY_SPLIT));
+    }
+
+    /**
+     * Returns the counter name of the heavy key.
+     * @param hash the {@link SegmentedPartitioner#getBucketHash key hash}
+     * @return the counter name
+     */
+    public static String toHeavyKeyName(int hash) {
+        return String.format("key-%08x", hash);
+    }
+
+    /**
+     * Returns the partition table in the configuration.
+     * @param conf the current configuration
+     * @return the partition table, or {@code null} if it is not configured
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static int[] getTable(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        String table = conf.get(KEY_TABLE);
+        if (table == null || table.isEmpty()) {
+            return null;
+        }
+        try {
+            return decode(table);
+        } catch (NumberFormatException e) {
+            LOG.warn(MessageFormat.format(
+                    "Invalid partition table, uses hash partitioning instead: {0}",
+                    KEY_TABLE), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of partitions which the table distributes buckets into.
+     * @param table the partition table
+     * @return the number of partitions
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static int getPartitionCount(int[] table) {
+        if (table == null) {
+            throw new IllegalArgumentException("table must not be null"); //$NON-NLS-1$
+        }
+        int max = -1;
+        for (int partition : table) {
+            max = Math.max(max, partition);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Builds a partition table which balances the estimated weights of partitions.
+     * Every bucket is smoothed by the mean weight, because buckets without samples may have data.
+     * @param weights the sampled weights of each bucket
+     * @param partitions the number of partitions
+     * @return the partition table, whose index is the bucket number
+     */
+    static int[] buildTable(long[] weights, int partitions) {
+        assert weights.length >= partitions;
+        assert partitions > 0;
+        final long[] smoothed = smooth(weights);
+        List<Integer> buckets = new ArrayList<Integer>(smoothed.length);
+        for (int i = 0; i < smoothed.length; i++) {
+            buckets.add(i);
+        }
+        Collections.sort(buckets, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long w1 = smoothed[o1];
+                long w2 = smoothed[o2];
+                if (w1 != w2) {
+                    return w1 > w2 ? -1 : +1;
+                }
+                return o1.compareTo(o2);
+            }
+        });
+        final long[] loads = new long[partitions];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(partitions, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long l1 = loads[o1];
+                long l2 = loads[o2];
+                if (l1 != l2) {
+                    return l1 < l2 ? -1 : +1;
+                }
+                return o1.compareTo(o2);
+            }
+        });
+        for (int i = 0; i < partitions; i++) {
+            queue.add(i);
+        }
+        int[] table = new int[smoothed.length];
+        for (int bucket : buckets) {
+            int partition = queue.poll();
+            table[bucket] = partition;
+            loads[partition] += smoothed[bucket];
+            queue.add(partition);
+        }
+        return table;
+    }
+
+    static long[] computeLoads(long[] weights, int[] table, int partitions) {
+        assert weights.length == table.length;
+        long[] smoothed = smooth(weights);
+        long[] loads = new long[partitions];
+        for (int i = 0; i < smoothed.length; i++) {
+            loads[table[i]] += smoothed[i];
+        }
+        return loads;
+    }
+
+    static List<Integer> findHotPartitions(final long[] loads) {
+        long total = 0;
+        for (long load : loads) {
+            total += load;
+        }
+        double threshold = (double) total / loads.length * HOT_PARTITION_FACTOR;
+        List<Integer> results = new ArrayList<Integer>();
+        for (int i = 0; i < loads.length; i++) {
+            if (loads[i] > threshold) {
+                results.add(i);
+            }
+        }
+        Collections.sort(results, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long l1 = loads[o1];
+                long l2 = loads[o2];
+                if (l1 != l2) {
+                    return l1 > l2 ? -1 : +1;
+                }
+                return o1.compareTo(o2);
+            }
+        });
+        if (results.size() > MAX_HOT_PARTITIONS) {
+            results = new ArrayList<Integer>(results.subList(0, MAX_HOT_PARTITIONS));
+        }
+        return results;
+    }
+
+    static List<Integer> findHeavyKeys(final Map<Integer, Long> keyRecords, long total, int partitions) {
+        assert partitions > 0;
+        double threshold = Math.max((double) total / partitions, MIN_HEAVY_KEY_SAMPLES);
+        List<Integer> results = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Long> entry : keyRecords.entrySet()) {
+            if (entry.getValue() >= threshold) {
+                results.add(entry.getKey());
+            }
+        }
+        Collections.sort(results, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                long c1 = keyRecords.get(o1);
+                long c2 = keyRecords.get(o2);
+                if (c1 != c2) {
+                    return c1 > c2 ? -1 : +1;
+                }
+                return o1.compareTo(o2);
+            }
+        });
+        if (results.size() > MAX_HEAVY_KEYS) {
+            results = new ArrayList<Integer>(results.subList(0, MAX_HEAVY_KEYS));
+        }
+        return results;
+    }
+
+    private static long[] smooth(long[] weights) {
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        long prior = Math.max(1, total / weights.length);
+        long[] results = new long[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            results[i] = weights[i] + prior;
+        }
+        return results;
+    }
+
+    private static String encode(int[] values) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(values[i]);
+        }
+        return buf.toString();
+    }
+
+    private static String encode(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return encode(array);
+    }
+
+    private static int[] decode(String values) {
+        String[] fields = values.split(",");
+        int[] results = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            results[i] = Integer.parseInt(fields[i].trim());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage.input;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Collection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.asakusafw.runtime.io.columnar.ColumnarModelInput;
+
+/**
+ * A {@link RecordReader} for temporary files in the columnar format.
+ * @param <T> data type
+ * @since 0.4.0
+ */
+final class ColumnarRecordReader<T> extends RecordReader<NullWritable, T> {
+
+    static final Log LOG = LogFactory.getLog(ColumnarRecordReader.class);
+
+    private final Collection<String> projection;
+
+    private ColumnarModelInput<T> input;
+
+    private T value;
+
+    private long start;
+
+    private long length;
+
+    /**
+     * Creates a new instance.
+     * @param projection the names of properties to be restored, or {@code null} to restore all properties
+     */
+    ColumnarRecordReader(Collection<String> projection) {
+        this.projection = projection;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        FileSplit fileSplit = (FileSplit) split;
+        Configuration conf = context.getConfiguration();
+        Path path = fileSplit.getPath();
+        this.start = fileSplit.getStart();
+        this.length = fileSplit.getLength();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(MessageFormat.format(
+                    "Opening columnar temporary input: {0} (start={1}, length={2})",
+                    path,
+                    start,
+                    length));
+        }
+        FileSystem fs = path.getFileSystem(conf);
+        this.input = new ColumnarModelInput<T>(fs.open(path), start, start + length, projection);
+        try {
+            Class<?> dataType = conf.getClassByName(input.getDataTypeName());
+            this.value = (T) ReflectionUtils.newInstance(dataType, conf);
+        } catch (ClassNotFoundException e) {
+            input.close();
+            throw new IOException(MessageFormat.format(
+                    "Failed to load data type of columnar file: {0} ({1})",
+                    path,
+                    input.getDataTypeName()), e);
+        }
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+        return input.readTo(value);
+    }
+
+    @Override
+    public NullWritable getCurrentKey() throws IOException, InterruptedException {
+        return NullWritable.get();
+    }
+
+    @Override
+    public T getCurrentValue() throws IOException, InterruptedException {
+        return value;
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+        if (length <= 0) {
+            return 1f;
+        }
+        long read = input.getPosition() - start;
+        return Math.max(0f, Math.min(1f, (float) read / length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+        }
+    }
+}
@@ -30,7 +30,7 @@ import com.asakusafw.runtime.stage.input.StageInputSplit.Source;
 /**
  * {@link StageInputSplit}を処理する{@link RecordReader}の実装。
  * @since 0.1.0
- * @version 0.2.6
+ * @version 0.4.0
  */
 @SuppressWarnings("rawtypes")
 public class StageInputRecordReader extends RecordReader {
@@ -70,6 +70,8 @@ public class StageInputRecordReader extends RecordReader {
 
     private Iterator<Source> sources;
 
+    private Class<?> mapperClass;
+
     private TaskAttemptContext context;
 
     private RecordReader<?, ?> current;
@@ -86,6 +88,7 @@ public class StageInputRecordReader extends RecordReader {
             TaskAttemptContext taskContext) throws IOException, InterruptedException {
         assert split instanceof StageInputSplit;
         List<Source> sourceList = ((StageInputSplit) split).getSources();
+        this.mapperClass = ((StageInputSplit) split).getMapperClass();
         this.sources = sourceList.iterator();
         this.context = taskContext;
         this.progressPerSource = sourceList.isEmpty() ? 1f : 1f / sourceList.size();
@@ -101,7 +104,11 @@ public class StageInputRecordReader extends RecordReader {
         if (sources.hasNext()) {
             Source next = sources.next();
             InputFormat<?, ?> format = ReflectionUtils.newInstance(next.getFormatClass(), context.getConfiguration());
-            current = format.createRecordReader(next.getSplit(), context);
+            if (format instanceof TemporaryInputFormat<?>) {
+                current = ((TemporaryInputFormat<?>) format).createRecordReader(next.getSplit(), context, mapperClass);
+            } else {
+                current = format.createRecordReader(next.getSplit(), context);
+            }
             current.initialize(next.getSplit(), context);
         } else {
             eof = true;
@@ -16,11 +16,16 @@
 package com.asakusafw.runtime.stage.input;
 
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputFormat;
@@ -30,19 +35,32 @@ import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 
+import com.asakusafw.runtime.io.columnar.ColumnarFormat;
 import com.asakusafw.runtime.stage.StageInput;
 
 /**
  * A temporary input format.
+ * This accepts both {@code SequenceFile} and {@link ColumnarFormat columnar} files.
+ * For columnar files, the reader restores only the properties which are
+ * {@link #setProjection(Job, Class, String...) projected} for the target mapper class, if they are specified.
  * @param <T> data type
  * @since 0.2.5
+ * @version 0.4.0
  */
 public final class TemporaryInputFormat<T> extends InputFormat<NullWritable, T> {
 
     static final Log LOG = LogFactory.getLog(TemporaryInputFormat.class);
 
+    /**
+     * The configuration key prefix of projected property names for each mapper class.
+     * The key is followed by the mapper class name, and its value is a comma separated property names.
+     * @since 0.4.0
+     */
+    public static final String KEY_PROJECTION_PREFIX = "com.asakusafw.temporary.projection.";
+
     private final FileInputFormat<NullWritable, T> bridge = new SequenceFileInputFormat<NullWritable, T>();
 
     @Override
@@ -94,10 +112,89 @@ public final class TemporaryInputFormat<T> extends InputFormat<NullWritable, T>
         FileInputFormat.setInputPaths(job, paths.toArray(new Path[paths.size()]));
     }
 
+    /**
+     * Configures the properties which are read by the mapper.
+     * The other properties of columnar files are not restored and will be {@code null} in the mapper.
+     * @param job current job
+     * @param mapperClass the target mapper class
+     * @param propertyNames the names of properties read by the mapper
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.4.0
+     */
+    public static void setProjection(Job job, Class<?> mapperClass, String... propertyNames) {
+        if (job == null) {
+            throw new IllegalArgumentException("job must not be null"); //$NON-NLS-1$
+        }
+        if (mapperClass == null) {
+            throw new IllegalArgumentException("mapperClass must not be null"); //$NON-NLS-1$
+        }
+        if (propertyNames == null) {
+            throw new IllegalArgumentException("propertyNames must not be null"); //$NON-NLS-1$
+        }
+        job.getConfiguration().setStrings(KEY_PROJECTION_PREFIX + mapperClass.getName(), propertyNames);
+    }
+
+    /**
+     * Returns the properties which are read by the mapper.
+     * @param conf current configuration
+     * @param mapperClass the target mapper class
+     * @return the names of properties read by the mapper, or {@code null} if all properties are required
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.4.0
+     */
+    public static Collection<String> getProjection(Configuration conf, Class<?> mapperClass) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        if (mapperClass == null) {
+            throw new IllegalArgumentException("mapperClass must not be null"); //$NON-NLS-1$
+        }
+        String key = KEY_PROJECTION_PREFIX + mapperClass.getName();
+        if (conf.get(key) == null) {
+            return null;
+        }
+        String[] names = conf.getStrings(key);
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(names);
+    }
+
     @Override
     public RecordReader<NullWritable, T> createRecordReader(
             InputSplit split,
             TaskAttemptContext context) throws IOException, InterruptedException {
+        return createRecordReader(split, context, null);
+    }
+
+    /**
+     * Creates a record reader for the split which is processed by the mapper.
+     * @param split the target split
+     * @param context current context
+     * @param mapperClass the mapper class which processes the split, or {@code null} if it is unknown
+     * @return the created record reader
+     * @throws IOException if failed to create a reader
+     * @throws InterruptedException if interrupted
+     * @since 0.4.0
+     */
+    public RecordReader<NullWritable, T> createRecordReader(
+            InputSplit split,
+            TaskAttemptContext context,
+            Class<?> mapperClass) throws IOException, InterruptedException {
+        if (split instanceof FileSplit) {
+            Configuration conf = context.getConfiguration();
+            Path path = ((FileSplit) split).getPath();
+            if (ColumnarFormat.isColumnar(conf, path)) {
+                Collection<String> projection = mapperClass == null ? null : getProjection(conf, mapperClass);
+                if (projection != null && LOG.isDebugEnabled()) {
+                    LOG.debug(MessageFormat.format(
+                            "Restoring only {0} from columnar temporary input: {1}",
+                            projection,
+                            path));
+                }
+                return new ColumnarRecordReader<T>(projection);
+            }
+        }
         return bridge.createRecordReader(split, context);
     }
 }
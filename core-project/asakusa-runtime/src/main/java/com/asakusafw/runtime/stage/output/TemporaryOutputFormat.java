@@ -38,11 +38,18 @@ import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.security.TokenCache;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.columnar.ColumnarModelOutput;
+import com.asakusafw.runtime.stage.StageCompression;
+import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
 
 /**
  * A temporary output format.
  * @param <T> target type
  * @since 0.2.5
+ * @version 0.4.0
+ * @see TemporaryStorage#KEY_FORMAT
+ * @see StageCompression#KEY_TEMPORARY_CODEC
  */
 public final class TemporaryOutputFormat<T> extends OutputFormat<NullWritable, T> {
 
@@ -109,10 +116,18 @@ public final class TemporaryOutputFormat<T> extends OutputFormat<NullWritable, T
         if (dataType == null) {
             throw new IllegalArgumentException("dataType must not be null"); //$NON-NLS-1$
         }
+        Configuration conf = context.getConfiguration();
+        if (TemporaryStorage.isColumnarOutput(conf)) {
+            return createColumnarRecordWriter(context, name, dataType);
+        }
         CompressionCodec codec = null;
         CompressionType compressionType = CompressionType.NONE;
-        Configuration conf = context.getConfiguration();
-        if (FileOutputFormat.getCompressOutput(context)) {
+        if (StageCompression.isConfigured(conf)) {
+            codec = StageCompression.createTemporaryCodec(conf);
+            if (codec != null) {
+                compressionType = CompressionType.BLOCK;
+            }
+        } else if (FileOutputFormat.getCompressOutput(context)) {
             compressionType = SequenceFileOutputFormat.getOutputCompressionType(context);
             Class<?> codecClass = FileOutputFormat.getOutputCompressorClass(context, DefaultCodec.class);
             codec = (CompressionCodec) ReflectionUtils.newInstance(codecClass, conf);
@@ -145,6 +160,33 @@ public final class TemporaryOutputFormat<T> extends OutputFormat<NullWritable, T
         };
     }
 
+    private <V> RecordWriter<NullWritable, V> createColumnarRecordWriter(
+            TaskAttemptContext context,
+            String name,
+            Class<V> dataType) throws IOException {
+        assert context != null;
+        assert name != null;
+        assert dataType != null;
+        FileOutputCommitter committer = getOutputCommitter(context);
+        Path file = new Path(
+                committer.getWorkPath(),
+                FileOutputFormat.getUniqueFile(context, name, ""));
+        FileSystem fs = file.getFileSystem(context.getConfiguration());
+        final ModelOutput<V> out = new ColumnarModelOutput<V>(dataType, fs.create(file, false));
+        return new RecordWriter<NullWritable, V>() {
+
+            @Override
+            public void write(NullWritable key, V value) throws IOException {
+                out.write(value);
+            }
+
+            @Override
+            public void close(TaskAttemptContext ignored) throws IOException {
+                out.close();
+            }
+        };
+    }
+
     @Override
     public synchronized FileOutputCommitter getOutputCommitter(TaskAttemptContext context) throws IOException {
         if (committerCache == null) {
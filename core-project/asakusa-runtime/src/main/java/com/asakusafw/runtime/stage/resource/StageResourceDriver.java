@@ -36,13 +36,32 @@ import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
 
 /**
  * ステージリソースを利用するためのドライバ。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class StageResourceDriver implements Closeable {
 
     static final Log LOG = LogFactory.getLog(StageResourceDriver.class);
 
+    /**
+     * The configuration key of the max total size of each stage resource which can be put on memory (in bytes).
+     * Resources larger than this size will be accessed via local disk in each task.
+     * @since 0.4.0
+     */
+    public static final String KEY_MEMORY_BUDGET = "com.asakusafw.stage.resource.memoryBudget";
+
+    /**
+     * The default value of {@link #KEY_MEMORY_BUDGET}.
+     * @since 0.4.0
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
     private static final String PREFIX_LOCAL_CACHE_NAME = "com.asakusafw.cache.";
 
+    private static final String PREFIX_RESOURCE_SIZE = "com.asakusafw.cacheSize.";
+
+    private static final String PREFIX_ACCESS_MODE = "com.asakusafw.cacheMode.";
+
     private final Configuration configuration;
 
     private final FileSystem localFileSystem;
@@ -101,6 +120,32 @@ public class StageResourceDriver implements Closeable {
         return results;
     }
 
+    /**
+     * Returns how the resource should be accessed in this execution.
+     * @param resourceName the resource name
+     * @return the access mode, or {@link AccessMode#MEMORY} if it is not decided
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.4.0
+     */
+    public AccessMode getAccessMode(String resourceName) {
+        if (resourceName == null) {
+            throw new IllegalArgumentException("resourceName must not be null"); //$NON-NLS-1$
+        }
+        String value = getConfiguration().get(PREFIX_ACCESS_MODE + resourceName);
+        if (value == null) {
+            return AccessMode.MEMORY;
+        }
+        try {
+            return AccessMode.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            LOG.warn(MessageFormat.format(
+                    "Invalid access mode \"{1}\" (resource={0})",
+                    resourceName,
+                    value));
+            return AccessMode.MEMORY;
+        }
+    }
+
     private Path findLocalCache(String resourceName, String localName) throws IOException {
         assert localName != null;
         Path cache = new Path(localName);
@@ -206,6 +251,11 @@ public class StageResourceDriver implements Closeable {
                     "Resource not found: {0}",
                     resourcePath));
         }
+        long size = 0;
+        for (Path path : list) {
+            FileSystem fs = path.getFileSystem(job.getConfiguration());
+            size += fs.getFileStatus(path).getLen();
+        }
         String[] added = job.getConfiguration().getStrings(getLocalCacheNameKey(resourceName));
         List<String> localNames = new ArrayList<String>();
         if (added != null && added.length >= 1) {
@@ -236,10 +286,60 @@ public class StageResourceDriver implements Closeable {
         } else {
             DistributedCache.createSymlink(job.getConfiguration());
         }
+        configureAccessMode(job.getConfiguration(), resourceName, size);
+    }
+
+    private static void configureAccessMode(Configuration conf, String resourceName, long delta) {
+        assert conf != null;
+        assert resourceName != null;
+        long size = conf.getLong(PREFIX_RESOURCE_SIZE + resourceName, 0L) + delta;
+        long budget = conf.getLong(KEY_MEMORY_BUDGET, DEFAULT_MEMORY_BUDGET);
+        AccessMode mode = size <= budget ? AccessMode.MEMORY : AccessMode.DISK;
+        conf.setLong(PREFIX_RESOURCE_SIZE + resourceName, size);
+        conf.set(PREFIX_ACCESS_MODE + resourceName, mode.name());
+        LOG.info(MessageFormat.format(
+                "Stage resource \"{0}\" will be accessed on {1} (size={2}, budget={3})",
+                resourceName,
+                mode.getDescription(),
+                size,
+                budget));
     }
 
     private static String getLocalCacheNameKey(String resourceName) {
         assert resourceName != null;
         return PREFIX_LOCAL_CACHE_NAME + resourceName;
     }
+
+    /**
+     * How stage resources are accessed in each task.
+     * @since 0.4.0
+     */
+    public enum AccessMode {
+
+        /**
+         * The resource is put on memory.
+         */
+        MEMORY("memory"),
+
+        /**
+         * The resource is put on local disk, and only its index is put on memory.
+         */
+        DISK("local disk"),
+        ;
+
+        private final String description;
+
+        private AccessMode(String description) {
+            assert description != null;
+            this.description = description;
+        }
+
+        /**
+         * Returns the description of this mode.
+         * @return the description
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
 }
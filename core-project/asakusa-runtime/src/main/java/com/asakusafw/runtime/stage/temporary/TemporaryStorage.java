@@ -15,6 +15,7 @@
  */
 package com.asakusafw.runtime.stage.temporary;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -37,18 +38,75 @@ import org.apache.hadoop.io.compress.CompressionCodec;
 
 import com.asakusafw.runtime.io.ModelInput;
 import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.columnar.ColumnarFormat;
+import com.asakusafw.runtime.io.columnar.ColumnarModelInput;
+import com.asakusafw.runtime.io.columnar.ColumnarModelOutput;
 import com.asakusafw.runtime.io.sequencefile.SequenceFileModelInput;
 import com.asakusafw.runtime.io.sequencefile.SequenceFileModelOutput;
 import com.asakusafw.runtime.io.sequencefile.SequenceFileUtil;
 
 /**
  * Access to the temporary storage.
+ * <p>
+ * Temporary files are written as {@code SequenceFile} by default,
+ * or in the {@link ColumnarFormat columnar format} if {@link #KEY_FORMAT} is {@link #FORMAT_COLUMNAR}.
+ * Readers detect the format of each file from its header.
+ * Note that the columnar format does not use any compression codecs.
+ * </p>
  * @since 0.2.5
+ * @version 0.4.0
  */
 public final class TemporaryStorage {
 
     static final Log LOG = LogFactory.getLog(TemporaryStorage.class);
 
+    private static final int HEADER_SIZE = 4;
+
+    private static final int HEADER_BUFFER_SIZE = 4096;
+
+    /**
+     * The configuration key of the temporary file format for outputs.
+     * @since 0.4.0
+     */
+    public static final String KEY_FORMAT = "com.asakusafw.temporary.format";
+
+    /**
+     * The format name of {@code SequenceFile} (default).
+     * @since 0.4.0
+     */
+    public static final String FORMAT_SEQUENCE_FILE = "sequencefile";
+
+    /**
+     * The format name of {@link ColumnarFormat}.
+     * @since 0.4.0
+     */
+    public static final String FORMAT_COLUMNAR = "columnar";
+
+    /**
+     * Returns whether temporary outputs are written in the columnar format or not.
+     * @param conf current configuration
+     * @return {@code true} to use the columnar format, otherwise {@code false}
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.4.0
+     */
+    public static boolean isColumnarOutput(Configuration conf) {
+        if (conf == null) {
+            throw new IllegalArgumentException("conf must not be null"); //$NON-NLS-1$
+        }
+        String format = conf.get(KEY_FORMAT, FORMAT_SEQUENCE_FILE).trim();
+        if (format.equalsIgnoreCase(FORMAT_COLUMNAR)) {
+            return true;
+        }
+        if (format.equalsIgnoreCase(FORMAT_SEQUENCE_FILE) == false) {
+            LOG.warn(MessageFormat.format(
+                    "Unknown temporary format \"{1}\" in \"{0}\", using \"{2}\" instead",
+                    KEY_FORMAT,
+                    format,
+                    FORMAT_SEQUENCE_FILE));
+        }
+        return false;
+    }
+
     /**
      * Resolves the raw path pattern into the concrete path list.
      * @param conf current configuration
@@ -113,6 +171,9 @@ public final class TemporaryStorage {
                     path,
                     fs.getUri()));
         }
+        if (ColumnarFormat.isColumnar(conf, path)) {
+            return new ColumnarModelInput<V>(fs.open(path));
+        }
         SequenceFile.Reader reader = new SequenceFile.Reader(fs, path, conf);
         return (ModelInput<V>) new SequenceFileModelInput<Writable>(reader);
     }
@@ -146,7 +207,11 @@ public final class TemporaryStorage {
         if (input == null) {
             throw new IllegalArgumentException("input must not be null"); //$NON-NLS-1$
         }
-        SequenceFile.Reader reader = SequenceFileUtil.openReader(input, status, conf);
+        BufferedInputStream buffered = new BufferedInputStream(input, HEADER_BUFFER_SIZE);
+        if (isColumnar(buffered)) {
+            return new ColumnarModelInput<V>(buffered);
+        }
+        SequenceFile.Reader reader = SequenceFileUtil.openReader(buffered, status, conf);
         return (ModelInput<V>) new SequenceFileModelInput<Writable>(reader, input);
     }
 
@@ -180,6 +245,9 @@ public final class TemporaryStorage {
                     path,
                     fs.getUri()));
         }
+        if (isColumnarOutput(conf)) {
+            return new ColumnarModelOutput<V>(dataType, fs.create(path, true));
+        }
         SequenceFile.Writer out = SequenceFile.createWriter(
                 fs,
                 conf,
@@ -221,6 +289,9 @@ public final class TemporaryStorage {
                     path,
                     fs.getUri()));
         }
+        if (isColumnarOutput(conf)) {
+            return new ColumnarModelOutput<V>(dataType, fs.create(path, true));
+        }
         SequenceFile.Writer out;
         if (compressionCodec == null) {
             out = SequenceFile.createWriter(
@@ -285,11 +356,33 @@ public final class TemporaryStorage {
         if (output == null) {
             throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
         }
+        if (isColumnarOutput(conf)) {
+            return new ColumnarModelOutput<V>(dataType, output);
+        }
         SequenceFile.Writer out = SequenceFileUtil.openWriter(
                 output, conf, NullWritable.class, dataType, compressionCodec);
         return new SequenceFileModelOutput<V>(out);
     }
 
+    private static boolean isColumnar(InputStream input) throws IOException {
+        assert input.markSupported();
+        byte[] header = new byte[HEADER_SIZE];
+        input.mark(header.length);
+        int length = 0;
+        try {
+            while (length < header.length) {
+                int read = input.read(header, length, header.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+        } finally {
+            input.reset();
+        }
+        return ColumnarFormat.isColumnar(header, length);
+    }
+
     private TemporaryStorage() {
         return;
     }
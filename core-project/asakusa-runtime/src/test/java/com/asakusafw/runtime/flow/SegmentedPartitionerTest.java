@@ -0,0 +1,196 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Test;
+
+import com.asakusafw.runtime.stage.StagePartitioning;
+
+/**
+ * Test for {@link SegmentedPartitioner}.
+ */
+public class SegmentedPartitionerTest {
+
+    static final int MASTER = 1;
+
+    static final int TRANSACTION = 2;
+
+    static final int OTHER = 3;
+
+    static final int HEAVY = 100;
+
+    /**
+     * keys are not split by default.
+     */
+    @Test
+    public void simple() {
+        Mock partitioner = partitioner(new Configuration());
+        Key master = new Key(MASTER, HEAVY);
+        Key tx = new Key(TRANSACTION, HEAVY);
+        assertThat(partitioner.getReplicas(master, 10), is(1));
+        for (int i = 0; i < 10; i++) {
+            assertThat(partitioner.getPartition(master, null, 10), is(0));
+            assertThat(partitioner.getPartition(tx, null, 10), is(0));
+        }
+    }
+
+    /**
+     * heavy keys are split.
+     */
+    @Test
+    public void split() {
+        Configuration conf = new Configuration();
+        conf.set(StagePartitioning.KEY_HEAVY_KEYS, String.valueOf(HEAVY));
+        conf.setInt(StagePartitioning.KEY_HEAVY_KEY_SPLIT, 3);
+        Mock partitioner = partitioner(conf);
+
+        Key master = new Key(MASTER, HEAVY);
+        int replicas = partitioner.getReplicas(master, 10);
+        assertThat(replicas, is(3));
+        for (int round = 0; round < 2; round++) {
+            Set<Integer> replicated = new HashSet<Integer>();
+            for (int i = 0; i < replicas; i++) {
+                replicated.add(partitioner.getPartition(master, null, 10));
+            }
+            assertThat(replicated, is(set(0, 1, 2)));
+        }
+
+        Key tx = new Key(TRANSACTION, HEAVY);
+        assertThat(partitioner.getReplicas(tx, 10), is(1));
+        Set<Integer> spread = new HashSet<Integer>();
+        for (int i = 0; i < 30; i++) {
+            spread.add(partitioner.getPartition(tx, null, 10));
+        }
+        assertThat(spread, is(set(0, 1, 2)));
+
+        Key other = new Key(OTHER, HEAVY);
+        assertThat(partitioner.getReplicas(other, 10), is(1));
+        assertThat(partitioner.getPartition(other, null, 10), is(0));
+    }
+
+    /**
+     * only heavy keys are split.
+     */
+    @Test
+    public void split_not_heavy() {
+        Configuration conf = new Configuration();
+        conf.set(StagePartitioning.KEY_HEAVY_KEYS, String.valueOf(HEAVY));
+        conf.setInt(StagePartitioning.KEY_HEAVY_KEY_SPLIT, 3);
+        Mock partitioner = partitioner(conf);
+
+        Key master = new Key(MASTER, 5);
+        Key tx = new Key(TRANSACTION, 5);
+        assertThat(partitioner.getReplicas(master, 10), is(1));
+        for (int i = 0; i < 10; i++) {
+            assertThat(partitioner.getPartition(master, null, 10), is(5));
+            assertThat(partitioner.getPartition(tx, null, 10), is(5));
+        }
+    }
+
+    /**
+     * heavy keys are split into at most the number of partitions.
+     */
+    @Test
+    public void split_few_partitions() {
+        Configuration conf = new Configuration();
+        conf.set(StagePartitioning.KEY_HEAVY_KEYS, String.valueOf(HEAVY));
+        conf.setInt(StagePartitioning.KEY_HEAVY_KEY_SPLIT, 5);
+        Mock partitioner = partitioner(conf);
+
+        Key master = new Key(MASTER, HEAVY);
+        assertThat(partitioner.getReplicas(master, 1), is(1));
+        assertThat(partitioner.getPartition(master, null, 1), is(0));
+
+        assertThat(partitioner.getReplicas(master, 3), is(3));
+        Set<Integer> replicated = new HashSet<Integer>();
+        for (int i = 0; i < 3; i++) {
+            replicated.add(partitioner.getPartition(master, null, 3));
+        }
+        assertThat(replicated, is(set(0, 1, 2)));
+    }
+
+    private Mock partitioner(Configuration conf) {
+        Mock partitioner = new Mock();
+        partitioner.setConf(conf);
+        return partitioner;
+    }
+
+    private Set<Integer> set(int... values) {
+        Set<Integer> results = new HashSet<Integer>();
+        for (int value : values) {
+            results.add(value);
+        }
+        return results;
+    }
+
+    static final class Mock extends SegmentedPartitioner<Key, NullWritable> {
+
+        @Override
+        protected int getHashCode(Key key) {
+            return key.hash;
+        }
+
+        @Override
+        protected SplitKind getSplitKind(int segmentId) {
+            switch (segmentId) {
+            case MASTER:
+                return SplitKind.REPLICATE;
+            case TRANSACTION:
+                return SplitKind.SPREAD;
+            default:
+                return SplitKind.NONE;
+            }
+        }
+    }
+
+    static final class Key implements SegmentedWritable {
+
+        final int segmentId;
+
+        final int hash;
+
+        Key(int segmentId, int hash) {
+            this.segmentId = segmentId;
+            this.hash = hash;
+        }
+
+        @Override
+        public int getSegmentId() {
+            return segmentId;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.asakusafw.runtime.flow.FileMapListBufferTest.Holder;
+
+/**
+ * Test for {@link SerializedListBuffer}.
+ */
+public class SerializedListBufferTest {
+
+    /**
+     * 空のリストを作成する。
+     */
+    @Test
+    public void createEmpty() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        buf.begin();
+        buf.end();
+        assertThat(buf.size(), is(0));
+
+        buf.shrink();
+    }
+
+    /**
+     * 要素がひとつのリストを作成する。
+     */
+    @Test
+    public void createSingle() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        buf.begin();
+        assertThat(buf.isExpandRequired(), is(true));
+        buf.expand(new Holder(""));
+        assertThat(buf.isExpandRequired(), is(false));
+        buf.advance().value = "Hello";
+        buf.end();
+        assertThat(buf.size(), is(1));
+        assertThat(buf.get(0), is(new Holder("Hello")));
+
+        buf.shrink();
+    }
+
+    /**
+     * 要素がひとつのリストを作成し、再利用する。
+     */
+    @Test
+    public void reuse() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        buf.begin();
+        assertThat(buf.isExpandRequired(), is(true));
+        buf.expand(new Holder(""));
+        buf.advance().value = "Hello";
+        buf.end();
+        buf.shrink();
+
+        buf.begin();
+        buf.advance().value = "World";
+        buf.end();
+
+        assertThat(buf.size(), is(1));
+        assertThat(buf.get(0), is(new Holder("World")));
+        buf.shrink();
+    }
+
+    /**
+     * 巨大なリストを生成する。。
+     */
+    @Test
+    public void createBigList() {
+        int size = 100000;
+
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        buf.begin();
+        for (int i = 0; i < size; i++) {
+            if (buf.isExpandRequired()) {
+                buf.expand(new Holder(""));
+            }
+            buf.advance().value = String.valueOf(i);
+        }
+        buf.end();
+
+        assertThat(buf.size(), is(size));
+
+        for (int i = 0; i < size; i++) {
+            assertThat(buf.get(i).value, is(String.valueOf(i)));
+        }
+
+        buf.shrink();
+    }
+
+    /**
+     * over expanded.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void over_expand() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        try {
+            buf.begin();
+            while (true) {
+                buf.expand(new Holder(""));
+            }
+        } finally {
+            buf.shrink();
+        }
+    }
+
+    /**
+     * リストの構築時にadvanceを行わない。
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_UpperOutOfBounds() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        try {
+            buf.begin();
+            buf.end();
+            buf.get(0);
+        } finally {
+            buf.shrink();
+        }
+    }
+
+    /**
+     * 負のインデックスを参照する。
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_LowerOutOfBounds() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        try {
+            buf.begin();
+            buf.end();
+            buf.get(-1);
+        } finally {
+            buf.shrink();
+        }
+    }
+
+    /**
+     * escapes serialized elements into a file.
+     */
+    @Test
+    public void escape() {
+        int size = 100000;
+
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>(32, 1024);
+        for (int round = 0; round < 2; round++) {
+            buf.begin();
+            for (int i = 0; i < size; i++) {
+                if (buf.isExpandRequired()) {
+                    buf.expand(new Holder(""));
+                }
+                buf.advance().value = round + ":" + i;
+            }
+            buf.end();
+
+            assertThat(buf.size(), is(size));
+            for (int i = size - 1; i >= 0; i -= 7) {
+                assertThat(buf.get(i).value, is(round + ":" + i));
+            }
+            int count = 0;
+            for (Holder holder : buf) {
+                assertThat(holder.value, is(round + ":" + count));
+                count++;
+            }
+            assertThat(count, is(size));
+        }
+        buf.shrink();
+    }
+
+    /**
+     * small lists keep their objects.
+     */
+    @Test
+    public void keepObjects() {
+        SerializedListBuffer<Holder> buf = new SerializedListBuffer<Holder>();
+        buf.begin();
+        for (int i = 0; i < 10; i++) {
+            if (buf.isExpandRequired()) {
+                buf.expand(new Holder(""));
+            }
+            buf.advance().value = String.valueOf(i);
+        }
+        buf.end();
+
+        Holder first = buf.get(0);
+        first.value = "modified";
+        for (int i = 1; i < 10; i++) {
+            assertThat(buf.get(i).value, is(String.valueOf(i)));
+        }
+        assertThat(buf.get(0), sameInstance(first));
+        assertThat(buf.get(0).value, is("modified"));
+        buf.shrink();
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.flow.join;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.value.IntOption;
+
+/**
+ * Test for {@link LocalFileLookUpTable}.
+ */
+public class LocalFileLookUpTableTest {
+
+    /**
+     * 一時フォルダ。
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 空のテーブル。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void empty() throws Exception {
+        LookUpTable<IntOption> table = builder().build();
+        try {
+            assertThat(sort(table.get(key(100))), is(values()));
+        } finally {
+            close(table);
+        }
+    }
+
+    /**
+     * 単純なテスト。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void simple() throws Exception {
+        LocalFileLookUpTable.Builder<IntOption> builder = builder();
+        builder.add(key(100), new IntOption(100));
+
+        LookUpTable<IntOption> table = builder.build();
+        try {
+            assertThat(sort(table.get(key(100))), is(values(100)));
+            assertThat(sort(table.get(key(101))), is(values()));
+        } finally {
+            close(table);
+        }
+    }
+
+    /**
+     * 同じキーの重複。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void duplicate() throws Exception {
+        LocalFileLookUpTable.Builder<IntOption> builder = builder();
+        builder.add(key(100), new IntOption(100));
+        builder.add(key(100), new IntOption(101));
+        builder.add(key(100), new IntOption(102));
+
+        LookUpTable<IntOption> table = builder.build();
+        try {
+            assertThat(sort(table.get(key(100))), is(values(100, 101, 102)));
+            assertThat(sort(table.get(key(101))), is(values()));
+        } finally {
+            close(table);
+        }
+    }
+
+    /**
+     * 値オブジェクトやキーを再利用する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void reuse() throws Exception {
+        LocalFileLookUpTable.Builder<IntOption> builder = builder();
+        LookUpKey key = key();
+        IntOption value = new IntOption();
+
+        for (int i = 0; i < 100; i++) {
+            key.reset();
+            key.add(new IntOption(i % 10));
+            value.modify(i);
+            builder.add(key, value);
+        }
+
+        LookUpTable<IntOption> table = builder.build();
+        try {
+            assertThat(sort(table.get(key(0))), is(values(0, 10, 20, 30, 40, 50, 60, 70, 80, 90)));
+            assertThat(sort(table.get(key(9))), is(values(9, 19, 29, 39, 49, 59, 69, 79, 89, 99)));
+            assertThat(sort(table.get(key(10))), is(values()));
+        } finally {
+            close(table);
+        }
+    }
+
+    /**
+     * ファイルを複数の領域に分割してマップする。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void segmented() throws Exception {
+        LocalFileLookUpTable.Builder<IntOption> builder = builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(key(i % 10), new IntOption(i));
+        }
+
+        // 各レコードが領域の境界をまたぐように、レコード長より小さな領域に分割する
+        LookUpTable<IntOption> table = builder.build(7);
+        try {
+            assertThat(sort(table.get(key(0))), is(values(0, 10, 20, 30, 40, 50, 60, 70, 80, 90)));
+            assertThat(sort(table.get(key(9))), is(values(9, 19, 29, 39, 49, 59, 69, 79, 89, 99)));
+            assertThat(sort(table.get(key(10))), is(values()));
+        } finally {
+            close(table);
+        }
+    }
+
+    /**
+     * 復元した値のオブジェクトを呼び出しをまたいで再利用する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void reuse_values() throws Exception {
+        LocalFileLookUpTable.Builder<IntOption> builder = builder();
+        builder.add(key(100), new IntOption(100));
+        builder.add(key(101), new IntOption(101));
+
+        LookUpTable<IntOption> table = builder.build();
+        try {
+            IntOption first = table.get(key(100)).get(0);
+            assertThat(first, is(new IntOption(100)));
+            IntOption second = table.get(key(101)).get(0);
+            assertThat(second, is(new IntOption(101)));
+            assertThat(second, is(sameInstance(first)));
+        } finally {
+            close(table);
+        }
+    }
+
+    /**
+     * 利用後にファイルが削除される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void cleanup() throws Exception {
+        LocalFileLookUpTable.Builder<IntOption> builder = builder();
+        builder.add(key(100), new IntOption(100));
+        assertThat(folder.getRoot().list().length, is(1));
+
+        LookUpTable<IntOption> table = builder.build();
+        close(table);
+        assertThat(folder.getRoot().list().length, is(0));
+    }
+
+    private LocalFileLookUpTable.Builder<IntOption> builder() throws IOException {
+        File dir = folder.getRoot();
+        return new LocalFileLookUpTable.Builder<IntOption>(dir);
+    }
+
+    private void close(LookUpTable<IntOption> table) throws IOException {
+        ((LocalFileLookUpTable<IntOption>) table).close();
+    }
+
+    private LookUpKey key(int... values) throws IOException {
+        LookUpKey result = new LookUpKey();
+        for (int value : values) {
+            result.add(new IntOption(value));
+        }
+        return result;
+    }
+
+    private List<IntOption> sort(List<IntOption> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    private List<IntOption> values(int...values) {
+        List<IntOption> options = new ArrayList<IntOption>();
+        for (int value : values) {
+            options.add(new IntOption(value));
+        }
+        return sort(options);
+    }
+}
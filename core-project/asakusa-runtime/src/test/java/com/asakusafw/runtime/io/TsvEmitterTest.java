@@ -18,11 +18,13 @@ package com.asakusafw.runtime.io;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 
+import org.apache.hadoop.io.Text;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -594,6 +596,46 @@ public class TsvEmitterTest {
         assertThat(parser.next(), is(false));
     }
 
+    /**
+     * ストリームに直接出力するテスト。
+     * @throws Exception 例外が発生した場合
+     */
+    @Test
+    public void emitStream() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TsvEmitter streamEmitter = new TsvEmitter(bytes);
+        for (TsvEmitter target : new TsvEmitter[] { emitter, streamEmitter }) {
+            for (int i = 0; i < 3000; i++) {
+                target.emit(new StringOption("Hello, world!"));
+                target.emit(new StringOption("\\\tあい\nう"));
+                target.emit(new StringOption(""));
+                target.emit(new StringOption());
+                target.emit(new IntOption(Integer.MIN_VALUE + i));
+                target.emit(new LongOption(Long.MIN_VALUE + i));
+                target.emit(new LongOption(i * 1234567L));
+                target.emit(new ByteOption((byte) -i));
+                target.emit(new DateOption(date(2000 + i % 3, 2, 9)));
+                target.emit(new DateTimeOption(time(2000, 2, 9, 1, i % 60, 3)));
+                target.endRecord();
+            }
+            target.emit(new StringOption("last"));
+            target.close();
+        }
+        assertThat(new String(bytes.toByteArray(), "UTF-8"), is(buffer.toString()));
+    }
+
+    /**
+     * 不正な文字列を出力するテスト。
+     * @throws Exception 例外が発生した場合
+     */
+    @Test(expected = RecordFormatException.class)
+    public void emitMalformedString() throws Exception {
+        TsvEmitter streamEmitter = new TsvEmitter(new ByteArrayOutputStream());
+        StringOption value = new StringOption();
+        value.modify(new Text(new byte[] { 'a', (byte) 0xff, 'b' }));
+        streamEmitter.emit(value);
+    }
+
     private Date date(int y, int m, int d) {
         int elapsed = DateUtil.getDayFromDate(y, m, d);
         Date date = new Date();
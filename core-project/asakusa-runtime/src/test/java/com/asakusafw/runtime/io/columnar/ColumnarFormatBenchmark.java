@@ -0,0 +1,164 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.columnar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.columnar.ColumnarModelInputTest.Model;
+import com.asakusafw.runtime.io.sequencefile.SequenceFileUtil;
+
+/**
+ * Benchmark for {@link ColumnarModelInput} and {@link ColumnarModelOutput}.
+ * <p>
+ * This writes and reads a synthetic workload both in {@code SequenceFile} and in the columnar format
+ * (with and without projection), and then prints the elapsed time and the data size of each.
+ * </p>
+<pre><code>
+java -classpath ... com.asakusafw.runtime.io.columnar.ColumnarFormatBenchmark [number-of-records [rounds]]
+</code></pre>
+ */
+public final class ColumnarFormatBenchmark {
+
+    private static final Collection<String> PROJECTION = Arrays.asList("id", "date");
+
+    private ColumnarFormatBenchmark() {
+        return;
+    }
+
+    /**
+     * Program entry.
+     * @param args program arguments
+     * @throws IOException if failed to read or write records
+     */
+    public static void main(String... args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Configuration conf = new Configuration();
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            byte[] sequence = writeSequenceFile(conf, records);
+            long sequenceWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long sequenceCount = readSequenceFile(conf, sequence);
+            long sequenceRead = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            byte[] columnar = writeColumnar(records);
+            long columnarWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long columnarCount = readColumnar(columnar, null);
+            long columnarRead = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long projectedCount = readColumnar(columnar, PROJECTION);
+            long projectedRead = System.nanoTime() - start;
+
+            if (sequenceCount != records || columnarCount != records || projectedCount != records) {
+                throw new IllegalStateException();
+            }
+            System.out.printf(
+                    "round %d: sequence-file(write=%,dms, read=%,dms, size=%,d), "
+                    + "columnar(write=%,dms, read=%,dms, read-projected=%,dms, size=%,d)%n",
+                    round,
+                    sequenceWrite / 1000000,
+                    sequenceRead / 1000000,
+                    sequence.length,
+                    columnarWrite / 1000000,
+                    columnarRead / 1000000,
+                    projectedRead / 1000000,
+                    columnar.length);
+        }
+    }
+
+    private static byte[] writeSequenceFile(Configuration conf, int records) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        SequenceFile.Writer writer = SequenceFileUtil.openWriter(buf, conf, NullWritable.class, Model.class, null);
+        try {
+            Model model = new Model();
+            for (int i = 0; i < records; i++) {
+                set(model, i);
+                writer.append(NullWritable.get(), model);
+            }
+        } finally {
+            writer.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private static long readSequenceFile(Configuration conf, byte[] bytes) throws IOException {
+        SequenceFile.Reader reader = SequenceFileUtil.openReader(new ByteArrayInputStream(bytes), bytes.length, conf);
+        try {
+            NullWritable key = NullWritable.get();
+            Model model = new Model();
+            long count = 0;
+            while (reader.next(key, model)) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] writeColumnar(int records) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ModelOutput<Model> output = new ColumnarModelOutput<Model>(Model.class, buf);
+        try {
+            Model model = new Model();
+            for (int i = 0; i < records; i++) {
+                set(model, i);
+                output.write(model);
+            }
+        } finally {
+            output.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private static long readColumnar(byte[] bytes, Collection<String> projection) throws IOException {
+        ColumnarModelInput<Model> input = new ColumnarModelInput<Model>(
+                new ByteArrayInputStream(bytes),
+                0L,
+                Long.MAX_VALUE,
+                projection);
+        try {
+            Model model = new Model();
+            long count = 0;
+            while (input.readTo(model)) {
+                count++;
+            }
+            return count;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void set(Model model, int index) {
+        model.set(index, "name" + (index % 100), 700000 + index / 1000, index % 3 == 0 ? null : index, "1.25");
+    }
+}
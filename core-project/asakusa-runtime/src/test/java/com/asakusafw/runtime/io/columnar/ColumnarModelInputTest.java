@@ -0,0 +1,349 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.columnar;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.io.sequencefile.SequenceFileUtil;
+import com.asakusafw.runtime.model.PropertyOrder;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link ColumnarModelInput} and {@link ColumnarModelOutput}.
+ */
+public class ColumnarModelInputTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        Model model = new Model();
+        model.set(1, "Hello", 100, 10, "1.5");
+        byte[] bytes = write(16, model);
+        assertThat(ColumnarFormat.isColumnar(bytes, bytes.length), is(true));
+
+        ColumnarModelInput<Model> input = new ColumnarModelInput<Model>(new ByteArrayInputStream(bytes));
+        try {
+            assertThat(input.getDataTypeName(), is(Model.class.getName()));
+            Model buf = new Model();
+            assertThat(input.readTo(buf), is(true));
+            assertThat(buf, is(model));
+            assertThat(input.readTo(buf), is(false));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * empty file.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        byte[] bytes = write(16);
+        ColumnarModelInput<Model> input = new ColumnarModelInput<Model>(new ByteArrayInputStream(bytes));
+        try {
+            assertThat(input.readTo(new Model()), is(false));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * many rows with nulls over multiple row groups.
+     * @throws Exception if failed
+     */
+    @Test
+    public void many() throws Exception {
+        Model[] models = generate(1000);
+        byte[] bytes = write(64, models);
+        Model[] results = read(bytes, 0, Long.MAX_VALUE, null);
+        assertThat(Arrays.asList(results), is(Arrays.asList(models)));
+    }
+
+    /**
+     * with projection.
+     * @throws Exception if failed
+     */
+    @Test
+    public void projection() throws Exception {
+        Model[] models = generate(300);
+        byte[] bytes = write(64, models);
+        Model[] results = read(bytes, 0, Long.MAX_VALUE, new String[] { "id", "date" });
+        assertThat(results.length, is(models.length));
+        for (int i = 0; i < results.length; i++) {
+            assertThat(results[i].id, is(models[i].id));
+            assertThat(results[i].date, is(models[i].date));
+            assertThat(results[i].name.isNull(), is(true));
+            assertThat(results[i].count.isNull(), is(true));
+            assertThat(results[i].price.isNull(), is(true));
+        }
+    }
+
+    /**
+     * reuses a model object, and projection is specified in camel case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void reuse() throws Exception {
+        Model[] models = generate(300);
+        byte[] bytes = write(64, models);
+        ColumnarModelInput<Model> input = new ColumnarModelInput<Model>(
+                new ByteArrayInputStream(bytes),
+                0L,
+                Long.MAX_VALUE,
+                Arrays.asList("Id", "name"));
+        try {
+            Model buf = new Model();
+            for (Model model : models) {
+                buf.date.modify(1);
+                assertThat(input.readTo(buf), is(true));
+                assertThat(buf.id, is(model.id));
+                assertThat(buf.name, is(model.name));
+                assertThat(buf.date.isNull(), is(true));
+            }
+            assertThat(input.readTo(buf), is(false));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * read split ranges.
+     * @throws Exception if failed
+     */
+    @Test
+    public void split() throws Exception {
+        Model[] models = generate(1000);
+        byte[] bytes = write(50, models);
+        for (int splits : new int[] { 2, 3, 7, 100 }) {
+            long step = (bytes.length + splits - 1) / splits;
+            int total = 0;
+            for (int i = 0; i < splits; i++) {
+                Model[] results = read(bytes, step * i, step * (i + 1), null);
+                for (Model result : results) {
+                    assertThat(result, is(models[total++]));
+                }
+            }
+            assertThat(total, is(models.length));
+        }
+    }
+
+    /**
+     * columnar format is smaller than sequence file for repetitive data.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compact() throws Exception {
+        Model[] models = generate(10000);
+        byte[] columnar = write(ColumnarFormat.DEFAULT_ROW_GROUP_SIZE, models);
+
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        SequenceFile.Writer writer = SequenceFileUtil.openWriter(
+                sequence, new Configuration(), NullWritable.class, Model.class, null);
+        for (Model model : models) {
+            writer.append(NullWritable.get(), model);
+        }
+        writer.close();
+
+        assertThat(columnar.length, lessThan(sequence.size()));
+    }
+
+    private Model[] generate(int count) {
+        Model[] results = new Model[count];
+        for (int i = 0; i < count; i++) {
+            Model model = new Model();
+            model.set(i, "name" + (i % 10), 700000 + i / 100, i % 3 == 0 ? null : i, i % 5 + ".25");
+            if (i % 7 == 0) {
+                model.name.setNull();
+            }
+            results[i] = model;
+        }
+        return results;
+    }
+
+    private byte[] write(int rowGroupSize, Model... models) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ModelOutput<Model> output = new ColumnarModelOutput<Model>(Model.class, buf, rowGroupSize);
+        try {
+            for (Model model : models) {
+                output.write(model);
+            }
+        } finally {
+            output.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private Model[] read(byte[] bytes, long start, long end, String[] projection) throws IOException {
+        ColumnarModelInput<Model> input = new ColumnarModelInput<Model>(
+                new ByteArrayInputStream(bytes),
+                start,
+                end,
+                projection == null ? null : Arrays.asList(projection));
+        try {
+            List<Model> results = new ArrayList<Model>();
+            while (true) {
+                Model model = new Model();
+                if (input.readTo(model) == false) {
+                    break;
+                }
+                results.add(model);
+            }
+            return results.toArray(new Model[results.size()]);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * A data model for testing.
+     */
+    @PropertyOrder({ "id", "name", "date", "count", "price" })
+    @SuppressWarnings("deprecation")
+    public static class Model implements Writable {
+
+        final LongOption id = new LongOption();
+
+        final StringOption name = new StringOption();
+
+        final DateOption date = new DateOption();
+
+        final IntOption count = new IntOption();
+
+        final DecimalOption price = new DecimalOption();
+
+        void set(long newId, String newName, int newDate, Integer newCount, String newPrice) {
+            id.modify(newId);
+            name.modify(newName);
+            date.modify(newDate);
+            if (newCount == null) {
+                count.setNull();
+            } else {
+                count.modify(newCount);
+            }
+            price.modify(new BigDecimal(newPrice));
+        }
+
+        /**
+         * Returns id.
+         * @return id
+         */
+        public LongOption getIdOption() {
+            return id;
+        }
+
+        /**
+         * Returns name.
+         * @return name
+         */
+        public StringOption getNameOption() {
+            return name;
+        }
+
+        /**
+         * Returns date.
+         * @return date
+         */
+        public DateOption getDateOption() {
+            return date;
+        }
+
+        /**
+         * Returns count.
+         * @return count
+         */
+        public IntOption getCountOption() {
+            return count;
+        }
+
+        /**
+         * Returns price.
+         * @return price
+         */
+        public DecimalOption getPriceOption() {
+            return price;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            id.write(out);
+            name.write(out);
+            date.write(out);
+            count.write(out);
+            price.write(out);
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            id.readFields(in);
+            name.readFields(in);
+            date.readFields(in);
+            count.readFields(in);
+            price.readFields(in);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] { id, name, date, count, price });
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Model other = (Model) obj;
+            return id.equals(other.id)
+                && name.equals(other.name)
+                && date.equals(other.date)
+                && count.equals(other.count)
+                && price.equals(other.price);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.asList(id, name, date, count, price).toString();
+        }
+    }
+}
@@ -21,9 +21,11 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.hadoop.io.Text;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
@@ -538,4 +540,46 @@ public class CsvEmitterTest {
         assertThat(parser.next(), is(false));
         parser.close();
     }
+
+    /**
+     * emits many records in various charsets.
+     * @throws Exception if failed
+     */
+    @Test
+    public void charsets() throws Exception {
+        for (String name : new String[] { "UTF-8", "windows-31j", "EUC-JP", "UTF-16", "ISO-2022-JP" }) {
+            Charset charset = Charset.forName(name);
+            CsvConfiguration conf = new CsvConfiguration(
+                    charset,
+                    Arrays.asList("キー", "value"),
+                    trueFormat,
+                    falseFormat,
+                    dateFormat,
+                    dateTimeFormat);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            CsvEmitter emitter = new CsvEmitter(buffer, testName.getMethodName(), conf);
+            StringBuilder expected = new StringBuilder();
+            expected.append("キー,value\r\n");
+            StringOption malformed = new StringOption();
+            malformed.modify(new Text(new byte[] { 'a', (byte) 0xff }));
+            for (int i = 0; i < 3000; i++) {
+                emitter.emit(new StringOption("Hello, world!"));
+                emitter.emit(new StringOption("あいうえお"));
+                emitter.emit(new StringOption("\"あ\"\r\n"));
+                emitter.emit(malformed);
+                emitter.emit(new IntOption(-i));
+                emitter.emit(new LongOption(Long.MIN_VALUE + i));
+                emitter.emit(new BooleanOption(i % 2 == 0));
+                emitter.emit(new DateOption(new Date(2011, 12, 1 + i % 3)));
+                emitter.endRecord();
+                expected.append("\"Hello, world!\",あいうえお,\"\"\"あ\"\"\r\n\",a\uFFFD,");
+                expected.append(-i).append(',').append(Long.MIN_VALUE + i).append(',');
+                expected.append(i % 2 == 0 ? trueFormat : falseFormat).append(',');
+                expected.append("2011-12-0").append(1 + i % 3).append("\r\n");
+            }
+            emitter.close();
+            String message = name;
+            assertThat(message, buffer.toByteArray(), is(expected.toString().getBytes(charset)));
+        }
+    }
 }
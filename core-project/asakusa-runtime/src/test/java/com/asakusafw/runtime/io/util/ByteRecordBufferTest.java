@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ByteRecordBuffer}.
+ */
+public class ByteRecordBufferTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        ByteRecordBuffer buffer = new ByteRecordBuffer(1);
+        buffer.append((byte) 'a');
+        buffer.append('b');
+        buffer.appendAscii("cde");
+        buffer.append(new byte[] { 'f', 'g' });
+        assertThat(toString(buffer), is("abcdefg"));
+
+        buffer.clear();
+        assertThat(buffer.getLength(), is(0));
+    }
+
+    /**
+     * integral values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void integers() throws Exception {
+        long[] values = {
+                0, 1, -1, 9, 10, 99, 100, 101, -100,
+                Integer.MAX_VALUE, Integer.MIN_VALUE,
+                999999999999999999L, 1000000000000000000L,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1,
+        };
+        ByteRecordBuffer buffer = new ByteRecordBuffer(1);
+        for (long value : values) {
+            buffer.clear();
+            buffer.append(value);
+            assertThat(toString(buffer), is(String.valueOf(value)));
+        }
+        for (long value = -100000; value <= 100000; value += 7) {
+            buffer.clear();
+            buffer.append((int) value);
+            assertThat(toString(buffer), is(String.valueOf(value)));
+        }
+    }
+
+    /**
+     * zero padded values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void zeroPadded() throws Exception {
+        ByteRecordBuffer buffer = new ByteRecordBuffer(1);
+        buffer.appendZeroPadded(1, 4);
+        buffer.append('/');
+        buffer.appendZeroPadded(12, 2);
+        buffer.append('/');
+        buffer.appendZeroPadded(12345, 4);
+        buffer.append('/');
+        buffer.appendZeroPadded(-1, 4);
+        assertThat(toString(buffer), is("0001/12/12345/-1"));
+    }
+
+    /**
+     * write contents.
+     * @throws Exception if failed
+     */
+    @Test
+    public void writeTo() throws Exception {
+        ByteRecordBuffer buffer = new ByteRecordBuffer(1);
+        buffer.appendAscii("Hello, world!");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        buffer.writeTo(output);
+        assertThat(buffer.getLength(), is(0));
+        assertThat(new String(output.toByteArray(), "US-ASCII"), is("Hello, world!"));
+    }
+
+    private String toString(ByteRecordBuffer buffer) throws Exception {
+        return new String(buffer.getData(), 0, buffer.getLength(), "US-ASCII");
+    }
+}
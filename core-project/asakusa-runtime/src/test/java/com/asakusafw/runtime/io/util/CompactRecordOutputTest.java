@@ -0,0 +1,185 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.io.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.Date;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTime;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Test for {@link CompactRecordOutput} and {@link CompactRecordInput}.
+ */
+public class CompactRecordOutputTest {
+
+    /**
+     * all types.
+     * @throws Exception if failed
+     */
+    @Test
+    public void all_types() throws Exception {
+        BooleanOption a = new BooleanOption(true);
+        ByteOption b = new ByteOption((byte) -1);
+        ShortOption c = new ShortOption(Short.MIN_VALUE);
+        IntOption d = new IntOption(Integer.MAX_VALUE);
+        LongOption e = new LongOption(Long.MIN_VALUE);
+        FloatOption f = new FloatOption(-1.5f);
+        DoubleOption g = new DoubleOption(Math.PI);
+        DecimalOption h = new DecimalOption(new BigDecimal("-1234567890.0987654321"));
+        StringOption i = new StringOption("Hello, world!");
+        DateOption j = new DateOption(new Date(2012, 1, 2));
+        DateTimeOption k = new DateTimeOption(new DateTime(2012, 1, 2, 3, 4, 5));
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        CompactRecordOutput output = CompactRecordOutput.get();
+        output.begin(11);
+        output.write(a);
+        output.write(b);
+        output.write(c);
+        output.write(d);
+        output.write(e);
+        output.write(f);
+        output.write(g);
+        output.write(h);
+        output.write(i);
+        output.write(j);
+        output.write(k);
+        output.end(out);
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        CompactRecordInput input = CompactRecordInput.get();
+        BooleanOption ra = new BooleanOption();
+        ByteOption rb = new ByteOption();
+        ShortOption rc = new ShortOption();
+        IntOption rd = new IntOption();
+        LongOption re = new LongOption();
+        FloatOption rf = new FloatOption();
+        DoubleOption rg = new DoubleOption();
+        DecimalOption rh = new DecimalOption();
+        StringOption ri = new StringOption();
+        DateOption rj = new DateOption();
+        DateTimeOption rk = new DateTimeOption();
+        input.begin(in, 11);
+        input.read(ra);
+        input.read(rb);
+        input.read(rc);
+        input.read(rd);
+        input.read(re);
+        input.read(rf);
+        input.read(rg);
+        input.read(rh);
+        input.read(ri);
+        input.read(rj);
+        input.read(rk);
+        input.end();
+        assertThat(in.read(), is(-1));
+
+        assertThat(ra, is(a));
+        assertThat(rb, is(b));
+        assertThat(rc, is(c));
+        assertThat(rd, is(d));
+        assertThat(re, is(e));
+        assertThat(rf, is(f));
+        assertThat(rg, is(g));
+        assertThat(rh, is(h));
+        assertThat(ri, is(i));
+        assertThat(rj, is(j));
+        assertThat(rk, is(k));
+    }
+
+    /**
+     * null values use only the bitmap.
+     * @throws Exception if failed
+     */
+    @Test
+    public void nulls() throws Exception {
+        DataOutputBuffer out = new DataOutputBuffer();
+        CompactRecordOutput output = CompactRecordOutput.get();
+        output.begin(10);
+        for (int index = 0; index < 10; index++) {
+            output.write(index == 8 ? new IntOption(-1) : new IntOption());
+        }
+        output.end(out);
+
+        // length + bitmap(2) + zig-zag(-1)
+        assertThat(out.getLength(), is(1 + 2 + 1));
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        CompactRecordInput input = CompactRecordInput.get();
+        input.begin(in, 10);
+        IntOption value = new IntOption(100);
+        for (int index = 0; index < 10; index++) {
+            input.read(value);
+            if (index == 8) {
+                assertThat(value.get(), is(-1));
+            } else {
+                assertThat(value.isNull(), is(true));
+            }
+        }
+        input.end();
+    }
+
+    /**
+     * many records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void records() throws Exception {
+        DataOutputBuffer out = new DataOutputBuffer();
+        CompactRecordOutput output = CompactRecordOutput.get();
+        for (long value = -100000; value <= 100000; value += 13) {
+            output.begin(2);
+            output.write(new LongOption(value * value * value));
+            output.write(new StringOption(String.valueOf(value)));
+            output.end(out);
+        }
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        CompactRecordInput input = CompactRecordInput.get();
+        LongOption number = new LongOption();
+        StringOption string = new StringOption();
+        for (long value = -100000; value <= 100000; value += 13) {
+            input.begin(in, 2);
+            input.read(number);
+            input.read(string);
+            input.end();
+            assertThat(number.get(), is(value * value * value));
+            assertThat(string.getAsString(), is(String.valueOf(value)));
+        }
+        assertThat(in.read(), is(-1));
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link StageCheckpoint}.
+ */
+public class StageCheckpointTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration conf;
+
+    private File input;
+
+    private Path output;
+
+    /**
+     * Initializes the test.
+     * @throws Exception if some errors were occurred
+     */
+    @Before
+    public void setUp() throws Exception {
+        conf = new Configuration(true);
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=b");
+        input = folder.newFolder("input");
+        write(new File(input, "part-0000"), "Hello, world!");
+        output = new Path(new File(folder.getRoot(), "output").toURI());
+    }
+
+    /**
+     * enabled flag.
+     */
+    @Test
+    public void enabled() {
+        assertThat(StageCheckpoint.isEnabled(conf), is(false));
+        conf.setBoolean(StageCheckpoint.KEY_ENABLED, true);
+        assertThat(StageCheckpoint.isEnabled(conf), is(true));
+    }
+
+    /**
+     * reuse previous output.
+     * @throws Exception if failed
+     */
+    @Test
+    public void reuse() throws Exception {
+        StageCheckpoint first = compute();
+        assertThat(first.isReusable(), is(false));
+        first.save();
+
+        StageCheckpoint second = compute();
+        assertThat(second.getFingerprint(), is(first.getFingerprint()));
+        assertThat(second.isReusable(), is(true));
+    }
+
+    /**
+     * input files are changed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void input_changed() throws Exception {
+        StageCheckpoint first = compute();
+        first.save();
+
+        write(new File(input, "part-0001"), "Hello, checkpoint!");
+        StageCheckpoint second = compute();
+        assertThat(second.getFingerprint(), is(not(first.getFingerprint())));
+        assertThat(second.isReusable(), is(false));
+    }
+
+    /**
+     * batch arguments are changed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void arguments_changed() throws Exception {
+        StageCheckpoint first = compute();
+        first.save();
+
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=c");
+        StageCheckpoint second = compute();
+        assertThat(second.isReusable(), is(false));
+    }
+
+    /**
+     * only the execution ID is changed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execution_id_changed() throws Exception {
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=b,execution_id=e1");
+        StageCheckpoint first = compute();
+        first.save();
+
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=b,execution_id=e2");
+        StageCheckpoint second = compute();
+        assertThat(second.getFingerprint(), is(first.getFingerprint()));
+        assertThat(second.isReusable(), is(true));
+    }
+
+    /**
+     * custom excluded arguments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void excluded_arguments() throws Exception {
+        conf.set(StageCheckpoint.KEY_EXCLUDED_ARGUMENTS, "execution_id, date");
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=b,execution_id=e1,date=20120101");
+        StageCheckpoint first = compute();
+        first.save();
+
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=b,execution_id=e2,date=20120102");
+        StageCheckpoint second = compute();
+        assertThat(second.isReusable(), is(true));
+
+        conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "a=c,execution_id=e2,date=20120102");
+        StageCheckpoint third = compute();
+        assertThat(third.isReusable(), is(false));
+    }
+
+    /**
+     * program is changed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void program_changed() throws Exception {
+        StageCheckpoint first = compute();
+        first.save();
+
+        StageCheckpoint second = StageCheckpoint.compute(
+                conf,
+                "testing",
+                output,
+                Collections.singletonList(new Path(input.toURI())),
+                Arrays.asList(StageCheckpointTest.class, String.class));
+        assertThat(second.isReusable(), is(false));
+    }
+
+    /**
+     * discard stale output.
+     * @throws Exception if failed
+     */
+    @Test
+    public void discard() throws Exception {
+        StageCheckpoint checkpoint = compute();
+        checkpoint.save();
+        File outputDir = new File(output.toUri());
+        assertThat(outputDir.exists(), is(true));
+
+        checkpoint.discard();
+        assertThat(outputDir.exists(), is(false));
+        assertThat(checkpoint.isReusable(), is(false));
+    }
+
+    private StageCheckpoint compute() throws IOException {
+        List<Path> inputs = Collections.singletonList(new Path(new File(input, "part-*").toURI()));
+        List<Class<?>> classes = Collections.<Class<?>>singletonList(StageCheckpointTest.class);
+        return StageCheckpoint.compute(conf, "testing", output, inputs, classes);
+    }
+
+    private void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.Job;
+
+import com.asakusafw.runtime.io.sequencefile.SequenceFileUtil;
+
+/**
+ * Benchmark for {@link StageCompression}.
+ * <p>
+ * This writes and reads a synthetic temporary file with the codec of each compression mode,
+ * and then prints the elapsed time and the data size of each.
+ * Modes whose codec is not available on this environment are skipped.
+ * </p>
+<pre><code>
+java -classpath ... com.asakusafw.runtime.stage.StageCompressionBenchmark \
+    [number-of-records [rounds [mode-or-codec-class-name ...]]]
+</code></pre>
+ */
+public final class StageCompressionBenchmark {
+
+    private StageCompressionBenchmark() {
+        return;
+    }
+
+    /**
+     * Program entry.
+     * @param args program arguments
+     * @throws IOException if failed to read or write records
+     */
+    public static void main(String... args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        List<String> modes = args.length > 2
+                ? Arrays.asList(args).subList(2, args.length)
+                : Arrays.asList(StageCompression.MODE_NONE, StageCompression.MODE_DEFAULT, StageCompression.MODE_FAST);
+
+        List<String> names = new ArrayList<String>();
+        List<CompressionCodec> codecs = new ArrayList<CompressionCodec>();
+        for (String mode : modes) {
+            Job job = new Job(new Configuration());
+            StageCompression.configure(job, mode);
+            if (StageCompression.isConfigured(job.getConfiguration()) == false) {
+                System.out.printf("%s: not available%n", mode);
+                continue;
+            }
+            CompressionCodec codec = StageCompression.createTemporaryCodec(job.getConfiguration());
+            names.add(codec == null ? mode : mode + "(" + codec.getClass().getSimpleName() + ")");
+            codecs.add(codec);
+        }
+
+        Configuration conf = new Configuration();
+        for (int round = 1; round <= rounds; round++) {
+            StringBuilder buf = new StringBuilder();
+            buf.append(String.format("round %d:", round));
+            for (int i = 0, n = codecs.size(); i < n; i++) {
+                long start = System.nanoTime();
+                byte[] bytes = write(conf, codecs.get(i), records);
+                long writeTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long count = read(conf, bytes);
+                long readTime = System.nanoTime() - start;
+
+                if (count != records) {
+                    throw new IllegalStateException();
+                }
+                buf.append(String.format(
+                        " %s(write=%,dms, read=%,dms, size=%,d)",
+                        names.get(i),
+                        writeTime / 1000000,
+                        readTime / 1000000,
+                        bytes.length));
+            }
+            System.out.println(buf);
+        }
+    }
+
+    private static byte[] write(Configuration conf, CompressionCodec codec, int records) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        SequenceFile.Writer writer = SequenceFileUtil.openWriter(buf, conf, NullWritable.class, Text.class, codec);
+        try {
+            Text value = new Text();
+            for (int i = 0; i < records; i++) {
+                value.set(String.format("%08d,name%03d,%d,%d.25", i, i % 100, 700000 + i / 1000, i % 5));
+                writer.append(NullWritable.get(), value);
+            }
+        } finally {
+            writer.close();
+        }
+        return buf.toByteArray();
+    }
+
+    private static long read(Configuration conf, byte[] bytes) throws IOException {
+        SequenceFile.Reader reader = SequenceFileUtil.openReader(new ByteArrayInputStream(bytes), bytes.length, conf);
+        try {
+            NullWritable key = NullWritable.get();
+            Text value = new Text();
+            long count = 0;
+            while (reader.next(key, value)) {
+                count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Test;
+
+/**
+ * Test for {@link StageCompression}.
+ */
+public class StageCompressionTest {
+
+    /**
+     * not configured.
+     * @throws Exception if failed
+     */
+    @Test
+    public void not_configured() throws Exception {
+        Configuration conf = new Configuration();
+        assertThat(StageCompression.isConfigured(conf), is(false));
+        assertThat(StageCompression.createTemporaryCodec(conf), is(nullValue()));
+    }
+
+    /**
+     * none.
+     * @throws Exception if failed
+     */
+    @Test
+    public void none() throws Exception {
+        Job job = new Job(new Configuration());
+        StageCompression.configure(job, StageCompression.MODE_NONE);
+        Configuration conf = job.getConfiguration();
+        assertThat(StageCompression.isConfigured(conf), is(true));
+        assertThat(StageCompression.createTemporaryCodec(conf), is(nullValue()));
+        assertThat(conf.getBoolean("mapred.compress.map.output", true), is(false));
+    }
+
+    /**
+     * default codec.
+     * @throws Exception if failed
+     */
+    @Test
+    public void default_codec() throws Exception {
+        Job job = new Job(new Configuration());
+        StageCompression.configure(job, StageCompression.MODE_DEFAULT);
+        Configuration conf = job.getConfiguration();
+        CompressionCodec codec = StageCompression.createTemporaryCodec(conf);
+        assertThat(codec, instanceOf(DefaultCodec.class));
+        assertThat(conf.getBoolean("mapred.compress.map.output", false), is(true));
+        assertThat(conf.get("mapred.map.output.compression.codec"), is(DefaultCodec.class.getName()));
+    }
+
+    /**
+     * fast codec.
+     * @throws Exception if failed
+     */
+    @Test
+    public void fast() throws Exception {
+        Job job = new Job(new Configuration());
+        StageCompression.configure(job, StageCompression.MODE_FAST);
+        Configuration conf = job.getConfiguration();
+        CompressionCodec codec = StageCompression.createTemporaryCodec(conf);
+        if (codec == null) {
+            // native libraries may not be available
+            assertThat(StageCompression.isConfigured(conf), is(false));
+        } else {
+            assertThat(StageCompression.FAST_CODEC_CLASS_NAMES, hasItem(codec.getClass().getName()));
+            assertThat(conf.getBoolean("mapred.compress.map.output", false), is(true));
+        }
+    }
+
+    /**
+     * codec class name.
+     * @throws Exception if failed
+     */
+    @Test
+    public void codec_class() throws Exception {
+        Job job = new Job(new Configuration());
+        StageCompression.configure(job, GzipCodec.class.getName());
+        CompressionCodec codec = StageCompression.createTemporaryCodec(job.getConfiguration());
+        assertThat(codec, instanceOf(GzipCodec.class));
+    }
+
+    /**
+     * unknown codec class name.
+     * @throws Exception if failed
+     */
+    @Test
+    public void codec_class_unknown() throws Exception {
+        Job job = new Job(new Configuration());
+        StageCompression.configure(job, "com.example.MissingCodec");
+        Configuration conf = job.getConfiguration();
+        assertThat(StageCompression.isConfigured(conf), is(false));
+    }
+
+    /**
+     * keeps the current settings if the mode is not specified.
+     * @throws Exception if failed
+     */
+    @Test
+    public void keep() throws Exception {
+        Configuration original = new Configuration();
+        original.setBoolean("mapred.compress.map.output", true);
+        Job job = new Job(original);
+        StageCompression.configure(job);
+        Configuration conf = job.getConfiguration();
+        assertThat(StageCompression.isConfigured(conf), is(false));
+        assertThat(conf.getBoolean("mapred.compress.map.output", false), is(true));
+    }
+
+    /**
+     * mode is specified only in the configuration.
+     * @throws Exception if failed
+     */
+    @Test
+    public void keep_override() throws Exception {
+        Configuration original = new Configuration();
+        original.set(StageCompression.KEY_MODE, StageCompression.MODE_DEFAULT);
+        Job job = new Job(original);
+        StageCompression.configure(job);
+        assertThat(StageCompression.createTemporaryCodec(job.getConfiguration()), instanceOf(DefaultCodec.class));
+    }
+
+    /**
+     * mode is overridden by the configuration.
+     * @throws Exception if failed
+     */
+    @Test
+    public void override() throws Exception {
+        Configuration original = new Configuration();
+        original.set(StageCompression.KEY_MODE, StageCompression.MODE_NONE);
+        Job job = new Job(original);
+        StageCompression.configure(job, StageCompression.MODE_DEFAULT);
+        assertThat(StageCompression.createTemporaryCodec(job.getConfiguration()), is(nullValue()));
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.io.ModelInput;
+import com.asakusafw.runtime.io.ModelOutput;
+import com.asakusafw.runtime.stage.input.StageInputDriver;
+import com.asakusafw.runtime.stage.input.TemporaryInputFormat;
+import com.asakusafw.runtime.stage.output.TemporaryOutputFormat;
+import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
+
+/**
+ * Test for {@link StageEmptyInput}.
+ */
+public class StageEmptyInputTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Job job;
+
+    private File input;
+
+    /**
+     * Initializes the test.
+     * @throws Exception if some errors were occurred
+     */
+    @Before
+    public void setUp() throws Exception {
+        job = new Job(new Configuration());
+        job.setJobName("testing");
+        input = folder.newFolder("input");
+        StageInputDriver.set(job, Collections.singletonList(new StageInput(
+                new File(input, "part-*").toURI().toString(),
+                TemporaryInputFormat.class,
+                Mapper.class)));
+    }
+
+    /**
+     * enabled flag.
+     */
+    @Test
+    public void enabled() {
+        assertThat(StageEmptyInput.isEnabled(job.getConfiguration()), is(false));
+        StageEmptyInput.configure(job, true);
+        assertThat(StageEmptyInput.isEnabled(job.getConfiguration()), is(true));
+    }
+
+    /**
+     * user configuration overrides the specified one.
+     */
+    @Test
+    public void enabled_override() {
+        job.getConfiguration().setBoolean(StageEmptyInput.KEY_ENABLED, false);
+        StageEmptyInput.configure(job, true);
+        assertThat(StageEmptyInput.isEnabled(job.getConfiguration()), is(false));
+    }
+
+    /**
+     * inputs which contain no records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void skippable() throws Exception {
+        StageEmptyInput.configure(job, true);
+        write(new File(input, "part-0000"));
+        write(new File(input, "part-0001"));
+        assertThat(StageEmptyInput.isSkippable(job, outputs()), is(true));
+    }
+
+    /**
+     * inputs which contain some records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void skippable_not_empty() throws Exception {
+        StageEmptyInput.configure(job, true);
+        write(new File(input, "part-0000"));
+        write(new File(input, "part-0001"), "Hello, world!");
+        assertThat(StageEmptyInput.isSkippable(job, outputs()), is(false));
+    }
+
+    /**
+     * skipping is disabled.
+     * @throws Exception if failed
+     */
+    @Test
+    public void skippable_disabled() throws Exception {
+        StageEmptyInput.configure(job, false);
+        write(new File(input, "part-0000"));
+        assertThat(StageEmptyInput.isSkippable(job, outputs()), is(false));
+    }
+
+    /**
+     * stages with non-temporary outputs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void skippable_normal_output() throws Exception {
+        StageEmptyInput.configure(job, true);
+        write(new File(input, "part-0000"));
+        List<StageOutput> outputs = Arrays.asList(
+                new StageOutput("a", NullWritable.class, Text.class, TemporaryOutputFormat.class),
+                new StageOutput("b", NullWritable.class, Text.class, TextOutputFormat.class));
+        assertThat(StageEmptyInput.isSkippable(job, outputs), is(false));
+    }
+
+    /**
+     * creates empty outputs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepareEmptyOutputs() throws Exception {
+        Path output = new Path(new File(folder.getRoot(), "output").toURI());
+        TemporaryOutputFormat.setOutputPath(job, output);
+        StageEmptyInput.prepareEmptyOutputs(job, outputs());
+
+        Configuration conf = job.getConfiguration();
+        List<Path> a = TemporaryStorage.list(conf, new Path(output, "a-*"));
+        List<Path> b = TemporaryStorage.list(conf, new Path(output, "b-*"));
+        assertThat(a.size(), is(1));
+        assertThat(b.size(), is(1));
+        assertThat(count(a.get(0)), is(0));
+        assertThat(count(b.get(0)), is(0));
+    }
+
+    /**
+     * attempts to create empty outputs into the existing directory.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepareEmptyOutputs_exists() throws Exception {
+        File stale = new File(folder.newFolder("output"), "a-m-00001");
+        write(stale, "stale");
+        Path output = new Path(stale.getParentFile().toURI());
+        TemporaryOutputFormat.setOutputPath(job, output);
+        try {
+            StageEmptyInput.prepareEmptyOutputs(job, outputs());
+            fail();
+        } catch (IOException e) {
+            // ok.
+        }
+        Configuration conf = job.getConfiguration();
+        List<Path> a = TemporaryStorage.list(conf, new Path(output, "a-*"));
+        assertThat(a.size(), is(1));
+        assertThat(count(a.get(0)), is(1));
+    }
+
+    private List<StageOutput> outputs() {
+        return Arrays.asList(
+                new StageOutput("a", NullWritable.class, Text.class, TemporaryOutputFormat.class),
+                new StageOutput("b", NullWritable.class, Text.class, TemporaryOutputFormat.class));
+    }
+
+    private void write(File file, String... values) throws IOException {
+        ModelOutput<Text> output = TemporaryStorage.openOutput(
+                job.getConfiguration(),
+                Text.class,
+                new Path(file.toURI()));
+        try {
+            for (String value : values) {
+                output.write(new Text(value));
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private int count(Path path) throws IOException {
+        ModelInput<Text> in = TemporaryStorage.openInput(job.getConfiguration(), Text.class, path);
+        try {
+            int count = 0;
+            Text buf = new Text();
+            while (in.readTo(buf)) {
+                count++;
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+}
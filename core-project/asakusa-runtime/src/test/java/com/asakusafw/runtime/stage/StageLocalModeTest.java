@@ -0,0 +1,145 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.runtime.stage.input.StageInputDriver;
+
+/**
+ * Test for {@link StageLocalMode}.
+ */
+public class StageLocalModeTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Job job;
+
+    private File input;
+
+    /**
+     * Initializes the test.
+     * @throws Exception if some errors were occurred
+     */
+    @Before
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration();
+        conf.set(StageLocalMode.KEY_JOB_TRACKER, "testing:9001");
+        job = new Job(conf);
+        job.setJobName("testing");
+        job.setNumReduceTasks(4);
+        input = folder.newFolder("input");
+        StageInputDriver.set(job, Collections.singletonList(new StageInput(
+                new File(input, "part-*").toURI().toString(),
+                TextInputFormat.class,
+                Mapper.class)));
+    }
+
+    /**
+     * small inputs are executed locally.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepare() throws Exception {
+        write(new File(input, "part-0000"), 100);
+        write(new File(input, "part-0001"), 100);
+        StageLocalMode.configure(job, 1000);
+        assertThat(StageLocalMode.prepare(job), is(true));
+        assertThat(StageLocalMode.isLocal(job.getConfiguration()), is(true));
+        assertThat(job.getNumReduceTasks(), is(1));
+    }
+
+    /**
+     * large inputs are submitted to the cluster.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepare_large() throws Exception {
+        write(new File(input, "part-0000"), 600);
+        write(new File(input, "part-0001"), 600);
+        StageLocalMode.configure(job, 1000);
+        assertThat(StageLocalMode.prepare(job), is(false));
+        assertThat(StageLocalMode.isLocal(job.getConfiguration()), is(false));
+        assertThat(job.getNumReduceTasks(), is(4));
+    }
+
+    /**
+     * local execution is disabled by default.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepare_default() throws Exception {
+        write(new File(input, "part-0000"), 100);
+        assertThat(StageLocalMode.prepare(job), is(false));
+        assertThat(StageLocalMode.isLocal(job.getConfiguration()), is(false));
+    }
+
+    /**
+     * user configuration overrides the specified threshold.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepare_override() throws Exception {
+        write(new File(input, "part-0000"), 100);
+        job.getConfiguration().setLong(StageLocalMode.KEY_THRESHOLD, -1);
+        StageLocalMode.configure(job, 1000);
+        assertThat(StageLocalMode.prepare(job), is(false));
+    }
+
+    /**
+     * stages with distributed cache are submitted to the cluster.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepare_cache() throws Exception {
+        write(new File(input, "part-0000"), 100);
+        DistributedCache.addCacheFile(new File(input, "part-0000").toURI(), job.getConfiguration());
+        StageLocalMode.configure(job, 1000);
+        assertThat(StageLocalMode.prepare(job), is(false));
+    }
+
+    private void write(File file, int size) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < size; i++) {
+                out.write('a');
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.runtime.stage;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.junit.Test;
+
+import com.asakusafw.runtime.stage.ShuffleSampler.RecordSampler;
+import com.asakusafw.runtime.stage.output.TemporaryOutputFormat;
+
+/**
+ * Test for {@link StagePartitioning}.
+ */
+public class StagePartitioningTest {
+
+    /**
+     * specified mode.
+     * @throws Exception if failed
+     */
+    @Test
+    public void configure() throws Exception {
+        Job job = new Job(new Configuration());
+        StagePartitioning.configure(job, StagePartitioning.MODE_SAMPLED);
+        assertThat(job.getConfiguration().get(StagePartitioning.KEY_MODE), is(StagePartitioning.MODE_SAMPLED));
+    }
+
+    /**
+     * user specified mode overrides the specified one.
+     * @throws Exception if failed
+     */
+    @Test
+    public void configure_override() throws Exception {
+        Job job = new Job(new Configuration());
+        job.getConfiguration().set(StagePartitioning.KEY_MODE, StagePartitioning.MODE_HASH);
+        StagePartitioning.configure(job, StagePartitioning.MODE_SAMPLED);
+        assertThat(job.getConfiguration().get(StagePartitioning.KEY_MODE), is(StagePartitioning.MODE_HASH));
+    }
+
+    /**
+     * unknown mode.
+     * @throws Exception if failed
+     */
+    @Test
+    public void configure_unknown() throws Exception {
+        Job job = new Job(new Configuration());
+        StagePartitioning.configure(job, "__UNKNOWN__");
+        assertThat(job.getConfiguration().get(StagePartitioning.KEY_MODE), is(StagePartitioning.MODE_HASH));
+    }
+
+    /**
+     * hash mode does not build tables.
+     * @throws Exception if failed
+     */
+    @Test
+    public void prepare_hash() throws Exception {
+        Job job = new Job(new Configuration());
+        job.setNumReduceTasks(4);
+        StagePartitioning.configure(job, StagePartitioning.MODE_HASH);
+        StagePartitioning.prepare(job, Collections.<StageOutput>emptyList());
+        assertThat(StagePartitioning.getTable(job.getConfiguration()), is(nullValue()));
+    }
+
+    /**
+     * stages with non-temporary outputs are not sampled.
+     * @throws Exception if failed
+     */
+    @Test
+    public void hasExternalOutputs() throws Exception {
+        Job job = new Job(new Configuration());
+        StageOutput temporary = new StageOutput("a", NullWritable.class, Text.class, TemporaryOutputFormat.class);
+        StageOutput external = new StageOutput("b", NullWritable.class, Text.class, TextOutputFormat.class);
+        assertThat(StagePartitioning.hasExternalOutputs(job, Arrays.asList(temporary)), is(false));
+        assertThat(StagePartitioning.hasExternalOutputs(job, Arrays.asList(temporary, external)), is(true));
+    }
+
+    /**
+     * samples are spread over the input.
+     */
+    @Test
+    public void sampler() {
+        RecordSampler sampler = new RecordSampler(100, 0.1f, new Random(6502));
+        int index = 0;
+        int last = -1;
+        int sampled = 0;
+        while (sampler.hasRest()) {
+            if (sampler.next()) {
+                last = index;
+                sampled++;
+            }
+            index++;
+        }
+        assertThat(sampled, is(100));
+        assertThat(last, greaterThan(500));
+    }
+
+    /**
+     * all records are sampled if frequency is 1.
+     */
+    @Test
+    public void sampler_all() {
+        RecordSampler sampler = new RecordSampler(10, 1.0f, new Random(6502));
+        for (int i = 0; i < 10; i++) {
+            assertThat(sampler.hasRest(), is(true));
+            assertThat(sampler.next(), is(true));
+        }
+        assertThat(sampler.hasRest(), is(false));
+    }
+
+    /**
+     * build table from uniform weights.
+     */
+    @Test
+    public void table_uniform() {
+        long[] weights = new long[16];
+        Arrays.fill(weights, 100);
+        int[] table = StagePartitioning.buildTable(weights, 4);
+        assertThat(table.length, is(16));
+        assertThat(StagePartitioning.getPartitionCount(table), is(4));
+        long[] loads = StagePartitioning.computeLoads(weights, table, 4);
+        for (long load : loads) {
+            assertThat(load, is(loads[0]));
+        }
+        assertThat(StagePartitioning.findHotPartitions(loads).size(), is(0));
+    }
+
+    /**
+     * build table from skewed weights.
+     */
+    @Test
+    public void table_skewed() {
+        long[] weights = new long[16];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i < 8 ? 100 : 0;
+        }
+        int[] table = StagePartitioning.buildTable(weights, 4);
+        long[] loads = StagePartitioning.computeLoads(weights, table, 4);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long load : loads) {
+            min = Math.min(min, load);
+            max = Math.max(max, load);
+        }
+        assertThat(max - min, lessThanOrEqualTo(100L));
+        assertThat(StagePartitioning.findHotPartitions(loads).size(), is(0));
+    }
+
+    /**
+     * heavy buckets are reported as hot partitions.
+     */
+    @Test
+    public void table_hot() {
+        long[] weights = new long[16];
+        Arrays.fill(weights, 10);
+        weights[5] = 10000;
+        int[] table = StagePartitioning.buildTable(weights, 4);
+        long[] loads = StagePartitioning.computeLoads(weights, table, 4);
+        List<Integer> hot = StagePartitioning.findHotPartitions(loads);
+        assertThat(hot, is(Arrays.asList(table[5])));
+
+        for (int i = 0; i < table.length; i++) {
+            if (i != 5) {
+                assertThat(table[i], is(not(table[5])));
+            }
+        }
+    }
+
+    /**
+     * table in configuration.
+     * @throws Exception if failed
+     */
+    @Test
+    public void table_conf() throws Exception {
+        Configuration conf = new Configuration();
+        assertThat(StagePartitioning.getTable(conf), is(nullValue()));
+        conf.set(StagePartitioning.KEY_TABLE, "0, 2,1,0");
+        int[] table = StagePartitioning.getTable(conf);
+        assertThat(table, is(new int[] { 0, 2, 1, 0 }));
+        assertThat(StagePartitioning.getPartitionCount(table), is(3));
+
+        conf.set(StagePartitioning.KEY_TABLE, "INVALID");
+        assertThat(StagePartitioning.getTable(conf), is(nullValue()));
+    }
+
+    /**
+     * detect heavy keys from samples.
+     */
+    @Test
+    public void heavy_keys() {
+        Map<Integer, Long> records = new HashMap<Integer, Long>();
+        long total = 0;
+        for (int i = 0; i < 100; i++) {
+            records.put(i, 10L);
+            total += 10;
+        }
+        records.put(1000, 2000L);
+        records.put(2000, 1000L);
+        total += 3000;
+        List<Integer> heavy = StagePartitioning.findHeavyKeys(records, total, 3);
+        assertThat(heavy, is(Arrays.asList(1000)));
+
+        heavy = StagePartitioning.findHeavyKeys(records, total, 10);
+        assertThat(heavy, is(Arrays.asList(1000, 2000)));
+    }
+
+    /**
+     * heavy keys are not detected from too small samples.
+     */
+    @Test
+    public void heavy_keys_small() {
+        Map<Integer, Long> records = new HashMap<Integer, Long>();
+        records.put(1, 50L);
+        records.put(2, 1L);
+        assertThat(StagePartitioning.findHeavyKeys(records, 51, 2).size(), is(0));
+    }
+
+    /**
+     * heavy keys in configuration.
+     * @throws Exception if failed
+     */
+    @Test
+    public void heavy_keys_conf() throws Exception {
+        Configuration conf = new Configuration();
+        assertThat(StagePartitioning.getHeavyKeys(conf).length, is(0));
+        assertThat(StagePartitioning.getHeavyKeyThreshold(conf), is(StagePartitioning.DEFAULT_HEAVY_KEY_THRESHOLD));
+
+        conf.set(StagePartitioning.KEY_HEAVY_KEYS, "10,20");
+        assertThat(StagePartitioning.getHeavyKeys(conf), is(new int[] { 10, 20 }));
+        conf.setLong(StagePartitioning.KEY_HEAVY_KEY_THRESHOLD, -1);
+        assertThat(StagePartitioning.getHeavyKeyThreshold(conf), is(0L));
+        assertThat(StagePartitioning.toHeavyKeyName(255), is("key-000000ff"));
+    }
+
+    /**
+     * split heavy keys in configuration.
+     * @throws Exception if failed
+     */
+    @Test
+    public void heavy_keys_split_conf() throws Exception {
+        Configuration conf = new Configuration();
+        assertThat(StagePartitioning.getHeavyKeySplit(conf), is(1));
+
+        conf.setInt(StagePartitioning.KEY_HEAVY_KEY_SPLIT, 4);
+        assertThat(StagePartitioning.getHeavyKeySplit(conf), is(4));
+        conf.setInt(StagePartitioning.KEY_HEAVY_KEY_SPLIT, 0);
+        assertThat(StagePartitioning.getHeavyKeySplit(conf), is(1));
+    }
+}
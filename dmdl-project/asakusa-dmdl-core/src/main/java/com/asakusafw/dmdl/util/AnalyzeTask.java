@@ -17,9 +17,12 @@ package com.asakusafw.dmdl.util;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.List;
 import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,9 +39,16 @@ import com.asakusafw.dmdl.source.DmdlSourceRepository;
 import com.asakusafw.dmdl.source.DmdlSourceRepository.Cursor;
 import com.asakusafw.dmdl.spi.AttributeDriver;
 import com.asakusafw.dmdl.spi.TypeDriver;
+import com.asakusafw.utils.collections.Lists;
 
 /**
  * Analyzes DMDL models from input DMDL scripts.
+ * <p>
+ * Input scripts are parsed in parallel, and then their models are analyzed
+ * in the order of the source repository.
+ * </p>
+ * @since 0.2.0
+ * @version 0.4.0
  */
 public class AnalyzeTask {
 
@@ -105,38 +115,40 @@ public class AnalyzeTask {
 
     private DmdlAnalyzer parse(DmdlSourceRepository source) throws IOException {
         assert source != null;
-        boolean green = true;
-        DmdlParser parser = new DmdlParser();
-        DmdlAnalyzer analyzer = new DmdlAnalyzer(
-                ServiceLoader.load(TypeDriver.class, serviceClassLoader),
-                ServiceLoader.load(AttributeDriver.class, serviceClassLoader));
-        int count = 0;
+        List<ParseTask> tasks = Lists.create();
         Cursor cursor = source.createCursor();
         try {
             while (cursor.next()) {
                 URI name = cursor.getIdentifier();
-                LOG.info("DMDLスクリプトを解析します: {}", name);
                 Reader resource = cursor.openResource();
                 try {
-                    AstScript script = parser.parse(resource, name);
-                    for (AstModelDefinition<?> model : script.models) {
-                        LOG.info("モデルを追加します: {}", model.name);
-                        analyzer.addModel(model);
-                        count++;
-                    }
-                } catch (DmdlSyntaxException e) {
-                    LOG.error(MessageFormat.format(
-                            "{0}の解析に失敗しました",
-                            name), e);
-                    green = false;
+                    tasks.add(new ParseTask(name, read(resource)));
                 } finally {
                     resource.close();
                 }
             }
-            LOG.info("{}個のモデルが定義されています", count);
         } finally {
             cursor.close();
         }
+        List<AstScript> scripts = ParallelTasks.execute(tasks, ParallelTasks.getDefaultThreads());
+
+        boolean green = true;
+        DmdlAnalyzer analyzer = new DmdlAnalyzer(
+                ServiceLoader.load(TypeDriver.class, serviceClassLoader),
+                ServiceLoader.load(AttributeDriver.class, serviceClassLoader));
+        int count = 0;
+        for (AstScript script : scripts) {
+            if (script == null) {
+                green = false;
+                continue;
+            }
+            for (AstModelDefinition<?> model : script.models) {
+                LOG.info("モデルを追加します: {}", model.name);
+                analyzer.addModel(model);
+                count++;
+            }
+        }
+        LOG.info("{}個のモデルが定義されています", count);
         if (green == false) {
             throw new IOException(MessageFormat.format(
                     "DMDLスクリプトの解析中にエラーが発生したため、{0}を中止します",
@@ -147,4 +159,48 @@ public class AnalyzeTask {
         }
         return analyzer;
     }
+
+    private static String read(Reader reader) throws IOException {
+        assert reader != null;
+        StringBuilder buf = new StringBuilder();
+        char[] chars = new char[1024];
+        while (true) {
+            int read = reader.read(chars);
+            if (read < 0) {
+                break;
+            }
+            buf.append(chars, 0, read);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Parses a DMDL script.
+     * Each task returns the parsed script, or {@code null} if the script has syntax errors.
+     */
+    private static final class ParseTask implements Callable<AstScript> {
+
+        private final URI name;
+
+        private final String content;
+
+        ParseTask(URI name, String content) {
+            assert content != null;
+            this.name = name;
+            this.content = content;
+        }
+
+        @Override
+        public AstScript call() {
+            LOG.info("DMDLスクリプトを解析します: {}", name);
+            try {
+                return new DmdlParser().parse(new StringReader(content), name);
+            } catch (DmdlSyntaxException e) {
+                LOG.error(MessageFormat.format(
+                        "{0}の解析に失敗しました",
+                        name), e);
+                return null;
+            }
+        }
+    }
 }
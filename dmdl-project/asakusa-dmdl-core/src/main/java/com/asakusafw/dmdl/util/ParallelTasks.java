@@ -0,0 +1,137 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.dmdl.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.asakusafw.utils.collections.Lists;
+
+/**
+ * Executes independent tasks on a pool of worker threads.
+ * <p>
+ * Results are always returned in the order of the original tasks,
+ * so that callers can process them deterministically.
+ * </p>
+ * @since 0.4.0
+ */
+public final class ParallelTasks {
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private ParallelTasks() {
+        return;
+    }
+
+    /**
+     * Returns the default number of worker threads.
+     * @return the default number of worker threads
+     */
+    public static int getDefaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Executes the tasks and returns their results.
+     * If the number of threads is less than {@code 2},
+     * this executes the tasks sequentially on the current thread.
+     * @param <T> the type of task results
+     * @param tasks the tasks to execute
+     * @param threads the max number of worker threads
+     * @return the results of the tasks, in the order of the tasks
+     * @throws IOException if some tasks were failed
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public static <T> List<T> execute(
+            List<? extends Callable<? extends T>> tasks,
+            int threads) throws IOException {
+        if (tasks == null) {
+            throw new IllegalArgumentException("tasks must not be null"); //$NON-NLS-1$
+        }
+        List<T> results = Lists.create();
+        int poolSize = Math.min(threads, tasks.size());
+        if (poolSize <= 1) {
+            for (Callable<? extends T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw rethrow(e);
+                }
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, new WorkerFactory());
+        try {
+            List<Future<? extends T>> futures = Lists.create();
+            for (Callable<? extends T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<? extends T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw rethrow(e.getCause());
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while executing tasks", e);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        assert cause != null;
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            return new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final int poolId = POOL_COUNTER.incrementAndGet();
+
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        WorkerFactory() {
+            return;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, String.format(
+                    "dmdl-%d-worker-%d",
+                    poolId,
+                    threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
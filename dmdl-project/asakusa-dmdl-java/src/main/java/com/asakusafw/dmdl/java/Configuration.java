@@ -24,9 +24,17 @@ import com.asakusafw.utils.java.model.util.Emitter;
 
 /**
  * Configurations for DMDL Java emitter.
+ * @since 0.2.0
+ * @version 0.4.0
  */
 public class Configuration {
 
+    /**
+     * The default number of worker threads to generate Java model classes.
+     * @since 0.4.0
+     */
+    public static final int DEFAULT_THREADS = 1;
+
     private final ModelFactory factory;
 
     private final DmdlSourceRepository source;
@@ -39,8 +47,11 @@ public class Configuration {
 
     private final Locale locale;
 
+    private final int threads;
+
     /**
      * Creates and returns a new instance.
+     * Java model classes will be generated on the current thread.
      * @param factory Java DOM element factory
      * @param source DMDL source repository
      * @param basePackage the Java base package
@@ -56,6 +67,30 @@ public class Configuration {
             Emitter output,
             ClassLoader serviceClassLoader,
             Locale locale) {
+        this(factory, source, basePackage, output, serviceClassLoader, locale, DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates and returns a new instance.
+     * @param factory Java DOM element factory
+     * @param source DMDL source repository
+     * @param basePackage the Java base package
+     * @param output the Java DOM emitter
+     * @param serviceClassLoader the class loader to load external services
+     * @param locale the locale information to generate programs
+     * @param threads the number of worker threads to generate Java model classes;
+     *     if this is {@code 2} or more, {@code output} and the data model drivers must be thread-safe
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.4.0
+     */
+    public Configuration(
+            ModelFactory factory,
+            DmdlSourceRepository source,
+            Name basePackage,
+            Emitter output,
+            ClassLoader serviceClassLoader,
+            Locale locale,
+            int threads) {
         if (factory == null) {
             throw new IllegalArgumentException("factory must not be null"); //$NON-NLS-1$
         }
@@ -80,6 +115,7 @@ public class Configuration {
         this.output = output;
         this.serviceClassLoader = serviceClassLoader;
         this.locale = locale;
+        this.threads = Math.max(1, threads);
     }
 
     /**
@@ -129,4 +165,13 @@ public class Configuration {
     public Locale getLocale() {
         return locale;
     }
+
+    /**
+     * Returns the number of worker threads to generate Java model classes.
+     * @return the number of worker threads (at least {@code 1})
+     * @since 0.4.0
+     */
+    public int getThreads() {
+        return threads;
+    }
 }
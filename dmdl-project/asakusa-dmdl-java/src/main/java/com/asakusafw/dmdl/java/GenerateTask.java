@@ -17,6 +17,8 @@ package com.asakusafw.dmdl.java;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,9 +29,19 @@ import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
 import com.asakusafw.dmdl.semantics.DmdlSemantics;
 import com.asakusafw.dmdl.semantics.ModelDeclaration;
 import com.asakusafw.dmdl.util.AnalyzeTask;
+import com.asakusafw.dmdl.util.ParallelTasks;
+import com.asakusafw.utils.collections.Lists;
 
 /**
  * Generates Java model classes from input DMDL scripts.
+ * <p>
+ * If {@link Configuration#getThreads()} is {@code 2} or more, each Java model class is generated in parallel.
+ * In this case, the {@link Configuration#getOutput() output emitter}
+ * and the {@link JavaDataModelDriver data model drivers} must be thread-safe.
+ * Otherwise, all model classes are generated sequentially on the current thread.
+ * </p>
+ * @since 0.2.0
+ * @version 0.4.0
  */
 public class GenerateTask {
 
@@ -70,11 +82,14 @@ public class GenerateTask {
         DmdlSemantics semantics = analyze();
         JavaModelClassGenerator generator = new JavaModelClassGenerator(semantics, conf, driver);
         Collection<ModelDeclaration> models = semantics.getDeclaredModels();
-        LOG.info("{}個のモデルからJavaデータモデルクラスを生成します", models.size());
+        LOG.info("{}個のモデルからJavaデータモデルクラスを生成します (スレッド数: {})",
+                models.size(),
+                conf.getThreads());
+        List<EmitTask> tasks = Lists.create();
         for (ModelDeclaration model : models) {
-            LOG.info("データモデルクラスを生成しています: {}", model.getName());
-            generator.emit(model);
+            tasks.add(new EmitTask(generator, model));
         }
+        ParallelTasks.execute(tasks, conf.getThreads());
         LOG.info("データモデルクラスの生成が完了しました");
     }
 
@@ -82,4 +97,25 @@ public class GenerateTask {
         AnalyzeTask analyzer = new AnalyzeTask("データモデルクラスの生成", conf.getServiceClassLoader());
         return analyzer.process(conf.getSource());
     }
+
+    private static final class EmitTask implements Callable<Void> {
+
+        private final JavaModelClassGenerator generator;
+
+        private final ModelDeclaration model;
+
+        EmitTask(JavaModelClassGenerator generator, ModelDeclaration model) {
+            assert generator != null;
+            assert model != null;
+            this.generator = generator;
+            this.model = model;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            LOG.info("データモデルクラスを生成しています: {}", model.getName());
+            generator.emit(model);
+            return null;
+        }
+    }
 }
@@ -50,6 +50,7 @@ public final class Main {
     private static final Option OPT_TARGET_ENCODING;
     private static final Option OPT_SOURCE_PATH;
     private static final Option OPT_PLUGIN;
+    private static final Option OPT_THREADS;
 
     private static final Options OPTIONS;
     static {
@@ -78,6 +79,10 @@ public final class Main {
         OPT_PLUGIN.setValueSeparator(File.pathSeparatorChar);
         OPT_PLUGIN.setRequired(false);
 
+        OPT_THREADS = new Option("threads", true, "number of worker threads to generate Java files");
+        OPT_THREADS.setArgName("number-of-threads");
+        OPT_THREADS.setRequired(false);
+
         OPTIONS = new Options();
         OPTIONS.addOption(OPT_OUTPUT);
         OPTIONS.addOption(OPT_PACKAGE);
@@ -85,6 +90,7 @@ public final class Main {
         OPTIONS.addOption(OPT_TARGET_ENCODING);
         OPTIONS.addOption(OPT_SOURCE_PATH);
         OPTIONS.addOption(OPT_PLUGIN);
+        OPTIONS.addOption(OPT_THREADS);
     }
 
     private Main() {
@@ -132,6 +138,7 @@ public final class Main {
         Charset targetEnc = parseCharset(cmd.getOptionValue(OPT_TARGET_ENCODING.getOpt()));
         String sourcePaths = cmd.getOptionValue(OPT_SOURCE_PATH.getOpt());
         String plugin = cmd.getOptionValue(OPT_PLUGIN.getOpt());
+        String threads = cmd.getOptionValue(OPT_THREADS.getOpt());
 
         File outputDirectory = new File(output);
         DmdlSourceRepository source = buildRepository(parseFileList(sourcePaths), sourceEnc);
@@ -144,6 +151,7 @@ public final class Main {
                 Models.toName(factory, packageName),
                 new Filer(outputDirectory, targetEnc),
                 serviceLoader,
-                Locale.getDefault());
+                Locale.getDefault(),
+                threads == null ? Configuration.DEFAULT_THREADS : Integer.parseInt(threads.trim()));
     }
 }
@@ -29,6 +29,9 @@ import com.asakusafw.dmdl.java.spi.JavaDataModelDriver;
 import com.asakusafw.dmdl.model.ModelDefinitionKind;
 import com.asakusafw.dmdl.semantics.ModelDeclaration;
 import com.asakusafw.dmdl.semantics.PropertyDeclaration;
+import com.asakusafw.dmdl.semantics.trait.CompactSerializationTrait;
+import com.asakusafw.runtime.io.util.CompactRecordInput;
+import com.asakusafw.runtime.io.util.CompactRecordOutput;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.model.syntax.MethodDeclaration;
 import com.asakusafw.utils.java.model.syntax.ModelFactory;
@@ -39,9 +42,16 @@ import com.asakusafw.utils.java.model.syntax.TypeParameterDeclaration;
 import com.asakusafw.utils.java.model.util.AttributeBuilder;
 import com.asakusafw.utils.java.model.util.ExpressionBuilder;
 import com.asakusafw.utils.java.model.util.Models;
+import com.asakusafw.utils.java.model.util.TypeBuilder;
 
 /**
  * Implements {@link Writable} interface.
+ * <p>
+ * If the model has {@link CompactSerializationTrait},
+ * the generated methods use {@link CompactRecordOutput} and {@link CompactRecordInput}.
+ * </p>
+ * @since 0.2.0
+ * @version 0.4.0
  */
 public class WritableDriver extends JavaDataModelDriver {
 
@@ -66,12 +76,17 @@ public class WritableDriver extends JavaDataModelDriver {
         assert model != null;
         ModelFactory f = context.getModelFactory();
         SimpleName parameter = context.createVariableName("out");
-        List<Statement> statements = Lists.create();
-        for (PropertyDeclaration property : model.getDeclaredProperties()) {
-            SimpleName fieldName = context.getFieldName(property);
-            statements.add(new ExpressionBuilder(f, fieldName)
-                .method("write", parameter)
-                .toStatement());
+        List<Statement> statements;
+        if (isCompact(model)) {
+            statements = createCompactWrite(context, model, parameter);
+        } else {
+            statements = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                SimpleName fieldName = context.getFieldName(property);
+                statements.add(new ExpressionBuilder(f, fieldName)
+                    .method("write", parameter)
+                    .toStatement());
+            }
         }
         return f.newMethodDeclaration(
                 null,
@@ -95,12 +110,17 @@ public class WritableDriver extends JavaDataModelDriver {
         assert model != null;
         ModelFactory f = context.getModelFactory();
         SimpleName parameter = context.createVariableName("in");
-        List<Statement> statements = Lists.create();
-        for (PropertyDeclaration property : model.getDeclaredProperties()) {
-            SimpleName fieldName = context.getFieldName(property);
-            statements.add(new ExpressionBuilder(f, fieldName)
-                .method("readFields", parameter)
-                .toStatement());
+        List<Statement> statements;
+        if (isCompact(model)) {
+            statements = createCompactReadFields(context, model, parameter);
+        } else {
+            statements = Lists.create();
+            for (PropertyDeclaration property : model.getDeclaredProperties()) {
+                SimpleName fieldName = context.getFieldName(property);
+                statements.add(new ExpressionBuilder(f, fieldName)
+                    .method("readFields", parameter)
+                    .toStatement());
+            }
         }
         return f.newMethodDeclaration(
                 null,
@@ -118,4 +138,69 @@ public class WritableDriver extends JavaDataModelDriver {
                 Collections.singletonList(context.resolve(IOException.class)),
                 f.newBlock(statements));
     }
+
+    private boolean isCompact(ModelDeclaration model) {
+        assert model != null;
+        return model.getTrait(CompactSerializationTrait.class) != null;
+    }
+
+    private List<Statement> createCompactWrite(
+            EmitContext context,
+            ModelDeclaration model,
+            SimpleName parameter) {
+        assert context != null;
+        assert model != null;
+        assert parameter != null;
+        ModelFactory f = context.getModelFactory();
+        Type outputType = context.resolve(CompactRecordOutput.class);
+        SimpleName output = context.createVariableName("output");
+        List<PropertyDeclaration> properties = model.getDeclaredProperties();
+        List<Statement> statements = Lists.create();
+        statements.add(new TypeBuilder(f, outputType)
+            .method("get")
+            .toLocalVariableDeclaration(outputType, output));
+        statements.add(new ExpressionBuilder(f, output)
+            .method("begin", Models.toLiteral(f, properties.size()))
+            .toStatement());
+        for (PropertyDeclaration property : properties) {
+            SimpleName fieldName = context.getFieldName(property);
+            statements.add(new ExpressionBuilder(f, output)
+                .method("write", fieldName)
+                .toStatement());
+        }
+        statements.add(new ExpressionBuilder(f, output)
+            .method("end", parameter)
+            .toStatement());
+        return statements;
+    }
+
+    private List<Statement> createCompactReadFields(
+            EmitContext context,
+            ModelDeclaration model,
+            SimpleName parameter) {
+        assert context != null;
+        assert model != null;
+        assert parameter != null;
+        ModelFactory f = context.getModelFactory();
+        Type inputType = context.resolve(CompactRecordInput.class);
+        SimpleName input = context.createVariableName("input");
+        List<PropertyDeclaration> properties = model.getDeclaredProperties();
+        List<Statement> statements = Lists.create();
+        statements.add(new TypeBuilder(f, inputType)
+            .method("get")
+            .toLocalVariableDeclaration(inputType, input));
+        statements.add(new ExpressionBuilder(f, input)
+            .method("begin", parameter, Models.toLiteral(f, properties.size()))
+            .toStatement());
+        for (PropertyDeclaration property : properties) {
+            SimpleName fieldName = context.getFieldName(property);
+            statements.add(new ExpressionBuilder(f, input)
+                .method("read", fieldName)
+                .toStatement());
+        }
+        statements.add(new ExpressionBuilder(f, input)
+            .method("end")
+            .toStatement());
+        return statements;
+    }
 }
@@ -37,6 +37,14 @@ import com.asakusafw.utils.java.model.syntax.Type;
  * <p>
  * All default implementation will do nothing.
  * </p>
+ * <p>
+ * If Java model classes are generated on two or more threads
+ * ({@link com.asakusafw.dmdl.java.Configuration#getThreads()}),
+ * the methods of this class may be invoked concurrently for different models.
+ * Implementations which hold mutable state must be thread-safe in that case.
+ * </p>
+ * @since 0.2.0
+ * @version 0.4.0
  */
 public abstract class JavaDataModelDriver {
 
@@ -68,6 +68,27 @@ public class MainTest {
         assertThat(config.getSource(), is(source("example.dmdl")));
         assertThat(config.getOutput(), is(target(output)));
         assertThat(config.getBasePackage().toNameString(), is("com.example.testing"));
+        assertThat(config.getThreads(), is(Configuration.DEFAULT_THREADS));
+    }
+
+    /**
+     * number of worker threads.
+     * @throws Exception if test was failed
+     */
+    @Test
+    public void threads() throws Exception {
+        File output = folder.newFolder("output");
+        File source = folder.newFile("example.dmdl");
+
+        List<String> arguments = Lists.create();
+
+        Collections.addAll(arguments, "-output", output.getPath());
+        Collections.addAll(arguments, "-source", source.getPath());
+        Collections.addAll(arguments, "-package", "com.example.testing");
+        Collections.addAll(arguments, "-threads", "4");
+        Configuration config = Main.configure(arguments.toArray(new String[arguments.size()]));
+
+        assertThat(config.getThreads(), is(4));
     }
 
     /**
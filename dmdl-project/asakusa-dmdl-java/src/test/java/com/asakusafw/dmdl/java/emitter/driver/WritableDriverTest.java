@@ -81,4 +81,41 @@ public class WritableDriverTest extends GeneratorTesterRoot {
         assertThat(input.read(), is(-1));
         assertThat(writable, equalTo(copy));
     }
+
+    /**
+     * compact serialization.
+     * @throws Exception if test was failed
+     */
+    @Test
+    public void compact() throws Exception {
+        ModelLoader loader = generate();
+        ModelWrapper object = loader.newModel("Primitives");
+        assertThat(object.unwrap(), instanceOf(Writable.class));
+
+        object.set("type_boolean", true);
+        object.set("type_byte", (byte) 64);
+        object.set("type_short", (short) 256);
+        object.set("type_int", -100);
+        object.set("type_long", 200L);
+        object.set("type_decimal", new BigDecimal("1234.567"));
+        object.set("type_text", new Text("Hello, world!"));
+        object.set("type_date", new Date(2011, 3, 31));
+
+        Writable writable = (Writable) object.unwrap();
+
+        DataOutputBuffer output = new DataOutputBuffer();
+        writable.write(output);
+        writable.write(output);
+
+        Writable copy = (Writable) loader.newModel("Primitives").unwrap();
+        DataInputBuffer input = new DataInputBuffer();
+        input.reset(output.getData(), output.getLength());
+        copy.readFields(input);
+        assertThat(writable, equalTo(copy));
+
+        copy = (Writable) loader.newModel("Primitives").unwrap();
+        copy.readFields(input);
+        assertThat(input.read(), is(-1));
+        assertThat(writable, equalTo(copy));
+    }
 }
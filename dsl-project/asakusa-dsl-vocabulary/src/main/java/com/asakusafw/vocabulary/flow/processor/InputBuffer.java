@@ -37,8 +37,8 @@ public enum InputBuffer implements FlowElementAttribute {
      * <p>
      * 入力バッファをヒープ上に構築し、バッファが足りなくなったら内部的な
      * スワップ領域にオブジェクトを退避する。
-     * ヒープ上に配置されるオブジェクトは全体の一部で、残りはファイルシステム上などの
-     * ヒープを利用しない領域に保存する。
+     * ヒープ上に配置されるオブジェクトは全体の一部で、残りはシリアライズした形式でヒープ上に保持し、
+     * それも一定の大きさを超えたらファイルシステム上などのヒープを利用しない領域に保存する。
      * </p>
      * <p>
      * このオプションを指定した場合、それぞれの{@code List}からはひとつずつしかオブジェクトを取り出せなくなる。
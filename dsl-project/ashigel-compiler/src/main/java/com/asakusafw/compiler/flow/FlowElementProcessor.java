@@ -25,8 +25,8 @@ import java.util.NoSuchElementException;
 import com.asakusafw.compiler.common.NameGenerator;
 import com.asakusafw.compiler.common.Precondition;
 import com.asakusafw.runtime.flow.ArrayListBuffer;
-import com.asakusafw.runtime.flow.FileMapListBuffer;
 import com.asakusafw.runtime.flow.ListBuffer;
+import com.asakusafw.runtime.flow.SerializedListBuffer;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.model.syntax.Expression;
 import com.asakusafw.utils.java.model.syntax.FieldDeclaration;
@@ -347,7 +347,7 @@ public interface FlowElementProcessor extends FlowCompilingEnvironment.Initializ
             case EXPAND:
                 return ArrayListBuffer.class;
             case ESCAPE:
-                return FileMapListBuffer.class;
+                return SerializedListBuffer.class;
             default:
                 throw new AssertionError(kind);
             }
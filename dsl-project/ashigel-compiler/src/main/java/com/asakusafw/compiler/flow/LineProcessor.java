@@ -34,9 +34,29 @@ import com.asakusafw.vocabulary.flow.graph.OperatorDescription;
 
 /**
  * ラインに配置される演算子を処理する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public abstract class LineProcessor extends AbstractFlowElementProcessor {
 
+    /**
+     * この処理が入力されたオブジェクトを参照するのみかどうかを返す。
+     * <p>
+     * この値が{@code true}である場合、この処理は入力されたオブジェクトの内容を変更せず、
+     * また入力されたオブジェクト自体を出力や以降の処理に渡さない。
+     * 既定では{@code false}を返すため、これを満たす処理はこのメソッドをオーバーライドすること。
+     * </p>
+     * <p>
+     * ステージ内で同一のオブジェクトを複数の処理に渡す際、
+     * 参照するのみの処理に対してはオブジェクトの複製を省略する。
+     * </p>
+     * @return 入力されたオブジェクトを参照するのみである場合に{@code true}
+     * @since 0.4.0
+     */
+    public boolean isInputReadOnly() {
+        return false;
+    }
+
     /**
      * ラインに配置される演算子の処理文脈の基底となるクラス。
      */
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.jobflow;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.compiler.common.Precondition;
+import com.asakusafw.compiler.flow.jobflow.JobflowModel.Delivery;
+import com.asakusafw.compiler.flow.jobflow.JobflowModel.Import;
+import com.asakusafw.compiler.flow.jobflow.JobflowModel.Process;
+import com.asakusafw.compiler.flow.jobflow.JobflowModel.Source;
+import com.asakusafw.compiler.flow.jobflow.JobflowModel.Stage;
+import com.asakusafw.utils.collections.Maps;
+import com.asakusafw.vocabulary.external.ImporterDescription;
+import com.asakusafw.vocabulary.external.ImporterDescription.DataSize;
+
+/**
+ * Estimates the data size of each stage in a jobflow.
+ * <p>
+ * The data size of a stage is the largest one of its inputs:
+ * jobflow inputs use {@link ImporterDescription#getDataSize()},
+ * and outputs of other stages use the estimated size of the producer stage.
+ * If a stage has many outputs, its size is raised from {@link DataSize#TINY} to {@link DataSize#SMALL}.
+ * </p>
+ * @since 0.4.0
+ */
+public class DataSizeEstimator {
+
+    static final Logger LOG = LoggerFactory.getLogger(DataSizeEstimator.class);
+
+    /**
+     * The minimum number of stage outputs which raises the estimated size.
+     */
+    static final int FAN_OUT_THRESHOLD = 4;
+
+    private final Map<Delivery, Stage> producers = Maps.create();
+
+    private final Map<Stage, DataSize> estimated = Maps.create();
+
+    /**
+     * Creates a new instance.
+     * @param jobflow the target jobflow
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public DataSizeEstimator(JobflowModel jobflow) {
+        Precondition.checkMustNotBeNull(jobflow, "jobflow"); //$NON-NLS-1$
+        for (Stage stage : jobflow.getStages()) {
+            for (Delivery delivery : stage.getDeliveries()) {
+                producers.put(delivery, stage);
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated data size of the stage.
+     * @param stage the target stage
+     * @return the estimated data size
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    public DataSize estimate(Stage stage) {
+        Precondition.checkMustNotBeNull(stage, "stage"); //$NON-NLS-1$
+        DataSize cached = estimated.get(stage);
+        if (cached != null) {
+            return cached;
+        }
+        DataSize result = null;
+        for (Process process : stage.getProcesses()) {
+            for (Source source : process.getResolvedSources()) {
+                result = merge(result, estimate(source));
+            }
+        }
+        if (result == null) {
+            result = DataSize.UNKNOWN;
+        }
+        if (result == DataSize.TINY && stage.getDeliveries().size() >= FAN_OUT_THRESHOLD) {
+            result = DataSize.SMALL;
+        }
+        LOG.debug("Estimated data size of {}: {}", stage, result);
+        estimated.put(stage, result);
+        return result;
+    }
+
+    private DataSize estimate(Source source) {
+        assert source != null;
+        if (source instanceof Import) {
+            ImporterDescription importer = ((Import) source).getDescription().getImporterDescription();
+            if (importer == null || importer.getDataSize() == null) {
+                return DataSize.UNKNOWN;
+            }
+            return importer.getDataSize();
+        }
+        Stage producer = producers.get(source);
+        if (producer == null) {
+            return DataSize.UNKNOWN;
+        }
+        return estimate(producer);
+    }
+
+    private static DataSize merge(DataSize a, DataSize b) {
+        assert b != null;
+        if (a == null) {
+            return b;
+        }
+        if (a == DataSize.LARGE || b == DataSize.LARGE) {
+            return DataSize.LARGE;
+        }
+        if (a == DataSize.UNKNOWN || b == DataSize.UNKNOWN) {
+            return DataSize.UNKNOWN;
+        }
+        if (a == DataSize.SMALL || b == DataSize.SMALL) {
+            return DataSize.SMALL;
+        }
+        return DataSize.TINY;
+    }
+}
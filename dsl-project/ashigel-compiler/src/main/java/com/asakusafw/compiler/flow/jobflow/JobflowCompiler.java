@@ -270,8 +270,9 @@ public class JobflowCompiler {
 
     private void compileClients(JobflowModel jobflow) throws IOException {
         assert jobflow != null;
+        DataSizeEstimator estimator = new DataSizeEstimator(jobflow);
         for (Stage stage : jobflow.getStages()) {
-            CompiledStage client = stageClientEmitter.emit(stage);
+            CompiledStage client = stageClientEmitter.emit(stage, estimator.estimate(stage));
             stage.setCompiled(client);
         }
         cleanupStageClientEmitter.emit();
@@ -22,27 +22,43 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.asakusafw.compiler.common.Naming;
 import com.asakusafw.compiler.common.Precondition;
 import com.asakusafw.compiler.flow.ExternalIoDescriptionProcessor.SourceInfo;
+import com.asakusafw.compiler.flow.FlowCompilerOptions;
+import com.asakusafw.compiler.flow.FlowCompilerOptions.GenericOptionValue;
 import com.asakusafw.compiler.flow.FlowCompilingEnvironment;
 import com.asakusafw.compiler.flow.Location;
+import com.asakusafw.compiler.flow.ShuffleDescription;
 import com.asakusafw.compiler.flow.jobflow.JobflowModel.Delivery;
 import com.asakusafw.compiler.flow.jobflow.JobflowModel.Process;
 import com.asakusafw.compiler.flow.jobflow.JobflowModel.Reduce;
 import com.asakusafw.compiler.flow.jobflow.JobflowModel.SideData;
 import com.asakusafw.compiler.flow.jobflow.JobflowModel.Source;
 import com.asakusafw.compiler.flow.jobflow.JobflowModel.Stage;
+import com.asakusafw.compiler.flow.plan.FlowBlock;
+import com.asakusafw.compiler.flow.processor.ShuffleProjection;
+import com.asakusafw.compiler.flow.stage.ShuffleModel;
 import com.asakusafw.runtime.stage.AbstractStageClient;
 import com.asakusafw.runtime.stage.BaseStageClient;
+import com.asakusafw.runtime.stage.StageCompression;
+import com.asakusafw.runtime.stage.StageEmptyInput;
+import com.asakusafw.runtime.stage.StageLocalMode;
+import com.asakusafw.runtime.stage.StagePartitioning;
 import com.asakusafw.runtime.stage.StageInput;
 import com.asakusafw.runtime.stage.StageOutput;
 import com.asakusafw.runtime.stage.StageResource;
+import com.asakusafw.runtime.stage.input.TemporaryInputFormat;
+import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
+import com.asakusafw.runtime.util.VariableTable;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.model.syntax.Comment;
 import com.asakusafw.utils.java.model.syntax.CompilationUnit;
@@ -65,12 +81,95 @@ import com.asakusafw.utils.java.model.util.ImportBuilder;
 import com.asakusafw.utils.java.model.util.JavadocBuilder;
 import com.asakusafw.utils.java.model.util.Models;
 import com.asakusafw.utils.java.model.util.TypeBuilder;
+import com.asakusafw.vocabulary.external.ImporterDescription.DataSize;
+import com.asakusafw.vocabulary.flow.graph.FlowElement;
+import com.asakusafw.vocabulary.flow.graph.FlowElementInput;
+import com.asakusafw.vocabulary.flow.graph.FlowElementKind;
+import com.asakusafw.vocabulary.flow.graph.FlowElementOutput;
+import com.asakusafw.vocabulary.flow.graph.ShuffleKey;
 
 /**
  * ステージクライアントクラスを生成する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class StageClientEmitter {
 
+    /**
+     * 中間データの形式を指定するオプション名 ({@code -XtemporaryFormat=columnar}など)。
+     * <p>
+     * 列指向形式の中間データを読み出す際、マッパーが後続のシャッフルで利用するプロパティのみを読み出す。
+     * </p>
+     * @since 0.4.0
+     * @see TemporaryStorage#KEY_FORMAT
+     */
+    public static final String KEY_TEMPORARY_FORMAT = "temporaryFormat";
+
+    /**
+     * 中間データの圧縮方式を指定するオプション名。
+     * <p>
+     * {@code -XstageCompression=auto}の場合、ステージのデータサイズの見積もりから圧縮方式を決定する。
+     * そのほか、{@code none}, {@code default}, {@code fast}, または圧縮コーデックのクラス名を指定できる。
+     * また、{@code -XstageCompression-<フローID>=...}でジョブフローごとに指定できる。
+     * 指定しない場合、実行時の設定に従う (既定ではクラスターの圧縮設定をそのまま利用する)。
+     * </p>
+     * @since 0.4.0
+     * @see StageCompression
+     */
+    public static final String KEY_STAGE_COMPRESSION = "stageCompression";
+
+    /**
+     * {@link #KEY_STAGE_COMPRESSION}でデータサイズから圧縮方式を決定することを表す値。
+     * @since 0.4.0
+     */
+    public static final String VALUE_STAGE_COMPRESSION_AUTO = "auto";
+
+    /**
+     * シャッフルのパーティショニング方式を指定するオプション名。
+     * <p>
+     * {@code hash}または{@code sampled}を指定できる。
+     * {@code -XstagePartitioning=sampled}の場合、ジョブの起動時にステージの入力をサンプリングし、
+     * 各パーティションのデータサイズが均等になるようにキーを割り当てる。
+     * また、{@code -XstagePartitioning-<フローID>=...}でジョブフローごとに指定できる。
+     * </p>
+     * @since 0.4.0
+     * @see StagePartitioning
+     */
+    public static final String KEY_STAGE_PARTITIONING = "stagePartitioning";
+
+    static final String DEFAULT_STAGE_PARTITIONING = StagePartitioning.MODE_HASH;
+
+    /**
+     * 入力が全て空のステージの実行を省略するかどうかを指定するオプション名。
+     * <p>
+     * 有効な場合、ジョブの起動前にステージの入力を調べ、いずれの入力にもデータが含まれなければ
+     * ジョブを起動せずに空の出力を作成する。
+     * 後続のステージは空の出力を入力とするため、同様に実行が省略される。
+     * {@code -XskipEmptyInput=enabled}のように指定する。
+     * また、{@code -XskipEmptyInput-<フローID>=...}でジョブフローごとに指定できる。
+     * 指定しない場合、実行時の設定に従う (既定では常にジョブを起動する)。
+     * </p>
+     * @since 0.4.0
+     * @see StageEmptyInput
+     */
+    public static final String KEY_SKIP_EMPTY_INPUT = "skipEmptyInput";
+
+    static final GenericOptionValue DEFAULT_SKIP_EMPTY_INPUT = GenericOptionValue.DISABLED;
+
+    /**
+     * ステージをローカルで実行する入力データサイズの上限 (バイト数) を指定するオプション名。
+     * <p>
+     * ジョブの起動時にステージの入力の合計サイズがこの値以下であれば、
+     * ジョブをクラスターに投入せずに、起動したプロセス内でローカルに実行する。
+     * {@code -XstageLocalThreshold=1048576}のように指定する。
+     * また、{@code -XstageLocalThreshold-<フローID>=...}でジョブフローごとに指定できる。
+     * 指定しない場合、実行時の設定に従う。
+     * </p>
+     * @since 0.4.0
+     * @see StageLocalMode
+     */
+    public static final String KEY_STAGE_LOCAL_THRESHOLD = "stageLocalThreshold";
+
     static final Logger LOG = LoggerFactory.getLogger(StageClientEmitter.class);
 
     private final FlowCompilingEnvironment environment;
@@ -93,9 +192,23 @@ public class StageClientEmitter {
      * @throws IllegalArgumentException 引数に{@code null}が指定された場合
      */
     public CompiledStage emit(JobflowModel.Stage stage) throws IOException {
+        return emit(stage, DataSize.UNKNOWN);
+    }
+
+    /**
+     * 指定のステージ情報を元にステージクライアントクラスを生成し、生成したステージの情報を返す。
+     * @param stage ステージ情報
+     * @param dataSize ステージが扱うデータサイズの見積もり
+     * @return ステージクライアントクラス
+     * @throws IOException 生成に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     * @since 0.4.0
+     */
+    public CompiledStage emit(JobflowModel.Stage stage, DataSize dataSize) throws IOException {
         Precondition.checkMustNotBeNull(stage, "stage"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(dataSize, "dataSize"); //$NON-NLS-1$
         LOG.debug("{}に対するジョブ実行クライアントを生成します", stage);
-        Engine engine = new Engine(environment, stage);
+        Engine engine = new Engine(environment, stage, dataSize);
         CompilationUnit source = engine.generate();
         environment.emit(source);
         Name packageName = source.getPackageDeclaration().getName();
@@ -115,15 +228,19 @@ public class StageClientEmitter {
 
         private final Stage stage;
 
+        private final DataSize dataSize;
+
         private final ModelFactory factory;
 
         private final ImportBuilder importer;
 
-        Engine(FlowCompilingEnvironment environment, Stage stage) {
+        Engine(FlowCompilingEnvironment environment, Stage stage, DataSize dataSize) {
             assert environment != null;
             assert stage != null;
+            assert dataSize != null;
             this.environment = environment;
             this.stage = stage;
+            this.dataSize = dataSize;
             this.factory = environment.getModelFactory();
             Name packageName = environment.getStagePackageName(stage.getNumber());
             this.importer = new ImportBuilder(
@@ -154,6 +271,7 @@ public class StageClientEmitter {
             if (stage.getReduceOrNull() != null) {
                 members.addAll(createShuffleMethods());
             }
+            members.add(createConfigureStageMethod());
             return factory.newClassDeclaration(
                     createJavadoc(),
                     new AttributeBuilder(factory)
@@ -346,6 +464,224 @@ public class StageClientEmitter {
             return results;
         }
 
+        private MethodDeclaration createConfigureStageMethod() {
+            SimpleName job = factory.newSimpleName("job");
+            SimpleName variables = factory.newSimpleName("variables");
+            List<Statement> statements = Lists.create();
+            String format = environment.getOptions().getExtraAttribute(KEY_TEMPORARY_FORMAT);
+            if (format != null) {
+                LOG.debug("{}の中間データ形式に{}を利用します", stage, format);
+                statements.add(new ExpressionBuilder(factory, job)
+                    .method("getConfiguration")
+                    .method("set",
+                            Models.toLiteral(factory, TemporaryStorage.KEY_FORMAT),
+                            Models.toLiteral(factory, format))
+                    .toStatement());
+            }
+            for (Process process : stage.getProcesses()) {
+                Set<String> projection = getProjection(process);
+                if (projection == null) {
+                    continue;
+                }
+                LOG.debug("{}の中間データからはプロパティ{}のみを読み出します", process, projection);
+                List<Expression> arguments = Lists.create();
+                arguments.add(job);
+                arguments.add(dotClass(process.getMapperTypeName()));
+                for (String name : projection) {
+                    arguments.add(Models.toLiteral(factory, name));
+                }
+                statements.add(new TypeBuilder(factory, t(TemporaryInputFormat.class))
+                    .method("setProjection", arguments)
+                    .toStatement());
+            }
+            String compression = getCompressionMode();
+            if (compression == null) {
+                statements.add(new TypeBuilder(factory, t(StageCompression.class))
+                    .method("configure", job)
+                    .toStatement());
+            } else {
+                LOG.debug("{}の中間データの圧縮方式に{}を利用します ({})", new Object[] {
+                        stage,
+                        compression,
+                        dataSize,
+                });
+                statements.add(new TypeBuilder(factory, t(StageCompression.class))
+                    .method("configure", job, Models.toLiteral(factory, compression))
+                    .toStatement());
+            }
+            if (stage.getReduceOrNull() != null) {
+                String partitioning = getPartitioningMode();
+                LOG.debug("{}のパーティショニング方式に{}を利用します", stage, partitioning);
+                statements.add(new TypeBuilder(factory, t(StagePartitioning.class))
+                    .method("configure", job, Models.toLiteral(factory, partitioning))
+                    .toStatement());
+            }
+            if (isSkipEmptyInput()) {
+                LOG.debug("{}の入力が全て空の場合に実行を省略します", stage);
+                statements.add(new TypeBuilder(factory, t(StageEmptyInput.class))
+                    .method("configure", job, Models.toLiteral(factory, true))
+                    .toStatement());
+            }
+            Long localThreshold = getLocalThreshold();
+            if (localThreshold != null) {
+                LOG.debug("{}のローカル実行の上限に{}を利用します", stage, localThreshold);
+                statements.add(new TypeBuilder(factory, t(StageLocalMode.class))
+                    .method("configure", job, Models.toLiteral(factory, localThreshold.longValue()))
+                    .toStatement());
+            }
+            statements.add(new ExpressionBuilder(factory, factory.newSuper())
+                .method(AbstractStageClient.METHOD_CONFIGURE_STAGE, job, variables)
+                .toStatement());
+            return factory.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(factory)
+                        .annotation(t(Override.class))
+                        .Protected()
+                        .toAttributes(),
+                    t(void.class),
+                    factory.newSimpleName(AbstractStageClient.METHOD_CONFIGURE_STAGE),
+                    Arrays.asList(
+                            factory.newFormalParameterDeclaration(t(Job.class), job),
+                            factory.newFormalParameterDeclaration(t(VariableTable.class), variables)),
+                    statements);
+        }
+
+        /**
+         * マッパーが中間データから読み出すプロパティの一覧を返す。
+         * <p>
+         * マッパーの入力から擬似要素のみを経由して、
+         * プロパティを取り除くシャッフル ({@link ShuffleProjection}) にのみ到達する場合、
+         * それらのシャッフルで転送されるプロパティのみが読み出される。
+         * </p>
+         * @param process 対象のマッパー
+         * @return 読み出すプロパティの一覧、全てのプロパティを読み出す場合は{@code null}
+         */
+        private Set<String> getProjection(Process process) {
+            assert process != null;
+            ShuffleModel shuffle = stage.getModel().getShuffleModel();
+            if (shuffle == null) {
+                return null;
+            }
+            Set<String> results = new TreeSet<String>();
+            for (FlowBlock.Input input : process.getInputs()) {
+                if (collectProjection(shuffle, input.getOwner(), input.getElementPort(), results) == false) {
+                    return null;
+                }
+            }
+            return results;
+        }
+
+        private boolean collectProjection(
+                ShuffleModel shuffle,
+                FlowBlock block,
+                FlowElementInput port,
+                Set<String> results) {
+            assert shuffle != null;
+            assert block != null;
+            assert port != null;
+            assert results != null;
+            FlowElement element = port.getOwner();
+            if (element.getDescription().getKind() != FlowElementKind.PSEUD) {
+                return false;
+            }
+            for (FlowElementOutput output : element.getOutputPorts()) {
+                for (FlowElementInput opposite : output.getOpposites()) {
+                    if (collectProjection(shuffle, block, opposite, results) == false) {
+                        return false;
+                    }
+                }
+                for (FlowBlock.Output blockOutput : block.getBlockOutputs()) {
+                    if (blockOutput.getElementPort() != output) {
+                        continue;
+                    }
+                    if (blockOutput.getConnections().isEmpty()) {
+                        return false;
+                    }
+                    for (FlowBlock.Connection connection : blockOutput.getConnections()) {
+                        ShuffleModel.Segment segment = shuffle.findSegment(
+                                connection.getDownstream().getElementPort());
+                        if (segment == null) {
+                            return false;
+                        }
+                        ShuffleDescription description = segment.getDescription();
+                        if ((description.getConverter() instanceof ShuffleProjection) == false) {
+                            return false;
+                        }
+                        results.addAll(((ShuffleProjection) description.getConverter()).getPropertyNames());
+                        ShuffleKey key = description.getKeyInfo();
+                        results.addAll(key.getGroupProperties());
+                        for (ShuffleKey.Order order : key.getOrderings()) {
+                            results.add(order.getProperty());
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        private String getCompressionMode() {
+            FlowCompilerOptions options = environment.getOptions();
+            String value = options.getExtraAttribute(KEY_STAGE_COMPRESSION + '-' + environment.getFlowId());
+            if (value == null) {
+                value = options.getExtraAttribute(KEY_STAGE_COMPRESSION);
+            }
+            if (value == null) {
+                return null;
+            }
+            if (value.equals(VALUE_STAGE_COMPRESSION_AUTO) == false) {
+                return value;
+            }
+            switch (dataSize) {
+            case TINY:
+                return StageCompression.MODE_NONE;
+            default:
+                return StageCompression.MODE_FAST;
+            }
+        }
+
+        private String getPartitioningMode() {
+            FlowCompilerOptions options = environment.getOptions();
+            String value = options.getExtraAttribute(KEY_STAGE_PARTITIONING + '-' + environment.getFlowId());
+            if (value == null) {
+                value = options.getExtraAttribute(KEY_STAGE_PARTITIONING);
+            }
+            if (value == null) {
+                value = DEFAULT_STAGE_PARTITIONING;
+            }
+            return value;
+        }
+
+        private boolean isSkipEmptyInput() {
+            FlowCompilerOptions options = environment.getOptions();
+            GenericOptionValue value = options.getGenericExtraAttribute(
+                    KEY_SKIP_EMPTY_INPUT + '-' + environment.getFlowId(),
+                    GenericOptionValue.AUTO);
+            if (value == GenericOptionValue.AUTO) {
+                value = options.getGenericExtraAttribute(KEY_SKIP_EMPTY_INPUT, DEFAULT_SKIP_EMPTY_INPUT);
+            }
+            return value == GenericOptionValue.ENABLED;
+        }
+
+        private Long getLocalThreshold() {
+            FlowCompilerOptions options = environment.getOptions();
+            String value = options.getExtraAttribute(KEY_STAGE_LOCAL_THRESHOLD + '-' + environment.getFlowId());
+            if (value == null) {
+                value = options.getExtraAttribute(KEY_STAGE_LOCAL_THRESHOLD);
+            }
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Long.valueOf(value.trim());
+            } catch (NumberFormatException e) {
+                environment.error(
+                        "ローカル実行の上限には整数を指定してください: {0}={1}",
+                        KEY_STAGE_LOCAL_THRESHOLD,
+                        value);
+                return null;
+            }
+        }
+
         private Javadoc createJavadoc() {
             return new JavadocBuilder(factory)
                 .text("ステージ{0}のジョブを実行するクライアント。", stage.getNumber())
@@ -65,7 +65,7 @@ import com.asakusafw.vocabulary.operator.MasterJoinUpdate;
 /**
  * フローグラフを書き換えてJoinを最適化する。
  * @since 0.1.0
- * @version 0.2.5
+ * @version 0.4.0
  */
 public class JoinRewriter extends FlowCompilingEnvironment.Initialized implements FlowGraphRewriter {
 
@@ -119,9 +119,7 @@ public class JoinRewriter extends FlowCompilingEnvironment.Initialized implement
             case TINY:
                 return options.isHashJoinForTiny();
             case SMALL:
-                // TODO implement for small
-                // return options.isHashJoinForSmall();
-                return false;
+                return options.isHashJoinForSmall();
             default:
                 return false;
         }
@@ -0,0 +1,458 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.packager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.compiler.common.Precondition;
+import com.asakusafw.utils.collections.Lists;
+
+/**
+ * 生成されたプログラムのコンパイル結果を保持するキャッシュ。
+ * <p>
+ * 生成されたソースプログラム、コンパイラの設定、およびコンパイル時に参照したクラスファイルの内容から
+ * ダイジェストを計算し、それらがすべて前回のコンパイル時と等しい場合には前回のクラスファイルを再利用する。
+ * フロー記述や演算子、データモデルの変更はいずれも生成されるソースプログラムか
+ * 参照されるクラスファイルの変更として検出される。
+ * </p>
+ * @since 0.4.0
+ */
+final class CompileCache {
+
+    static final Logger LOG = LoggerFactory.getLogger(CompileCache.class);
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final String DIGEST_FILE = "cache.properties";
+
+    private static final String CLASS_DIRECTORY = "bin";
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private static final String KEY_SOURCES = "sources";
+
+    private static final String KEY_COMPILER = "compiler";
+
+    private static final String PREFIX_DEPENDENCY = "dependency:";
+
+    private final File directory;
+
+    private final String sourcesDigest;
+
+    private final String compilerDigest;
+
+    /**
+     * インスタンスを生成する。
+     * @param directory キャッシュを保持するディレクトリ
+     * @param sourceDirectory 生成されたソースプログラムを含むディレクトリ
+     * @param compilerSignature コンパイラの設定を表す文字列の一覧
+     * @throws IOException ソースプログラムの読み出しに失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    CompileCache(
+            File directory,
+            File sourceDirectory,
+            List<String> compilerSignature) throws IOException {
+        Precondition.checkMustNotBeNull(directory, "directory"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(sourceDirectory, "sourceDirectory"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(compilerSignature, "compilerSignature"); //$NON-NLS-1$
+        this.directory = directory;
+        this.sourcesDigest = digestTree(sourceDirectory);
+        MessageDigest digest = createDigest();
+        for (String value : compilerSignature) {
+            update(digest, value);
+        }
+        update(digest, System.getProperty("java.vendor"));
+        update(digest, System.getProperty("java.version"));
+        this.compilerDigest = toHex(digest.digest());
+    }
+
+    /**
+     * 前回のコンパイル結果を利用できない理由を返す。
+     * @return 利用できない理由、前回のコンパイル結果を利用できる場合は{@code null}
+     */
+    String findObsolete() {
+        Properties properties = loadDigests();
+        if (properties == null) {
+            return "キャッシュが存在しません";
+        }
+        if (sourcesDigest.equals(properties.getProperty(KEY_SOURCES)) == false) {
+            return "生成されたソースプログラムが変更されました";
+        }
+        if (compilerDigest.equals(properties.getProperty(KEY_COMPILER)) == false) {
+            return "コンパイラの設定が変更されました";
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(PREFIX_DEPENDENCY) == false) {
+                continue;
+            }
+            String location = key.substring(PREFIX_DEPENDENCY.length());
+            String digest = digestDependency(location);
+            if (digest == null || digest.equals(properties.getProperty(key)) == false) {
+                return MessageFormat.format(
+                        "参照しているクラスが変更されました ({0})",
+                        location);
+            }
+        }
+        return null;
+    }
+
+    private Properties loadDigests() {
+        File file = new File(directory, DIGEST_FILE);
+        if (file.isFile() == false) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "コンパイル結果のキャッシュを読み出せませんでした ({0})",
+                    file), e);
+            return null;
+        }
+        return properties;
+    }
+
+    /**
+     * キャッシュされたクラスファイルを指定のディレクトリに復元する。
+     * @param classDirectory 復元先のディレクトリ
+     * @throws IOException 復元に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    void restore(File classDirectory) throws IOException {
+        Precondition.checkMustNotBeNull(classDirectory, "classDirectory"); //$NON-NLS-1$
+        copyClasses(new File(directory, CLASS_DIRECTORY), classDirectory);
+    }
+
+    /**
+     * 指定のディレクトリに含まれるクラスファイルをキャッシュに保存する。
+     * @param classDirectory コンパイル結果を含むディレクトリ
+     * @param dependencies コンパイル時に参照したクラスファイルの位置
+     * @throws IOException 保存に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    void store(File classDirectory, Set<URI> dependencies) throws IOException {
+        Precondition.checkMustNotBeNull(classDirectory, "classDirectory"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(dependencies, "dependencies"); //$NON-NLS-1$
+        File digestFile = new File(directory, DIGEST_FILE);
+        if (digestFile.exists() && digestFile.delete() == false) {
+            throw new IOException(MessageFormat.format(
+                    "コンパイル結果のキャッシュを削除できませんでした ({0})",
+                    digestFile));
+        }
+        File cacheClasses = new File(directory, CLASS_DIRECTORY);
+        delete(cacheClasses);
+        copyClasses(classDirectory, cacheClasses);
+
+        Properties properties = new Properties();
+        properties.setProperty(KEY_SOURCES, sourcesDigest);
+        properties.setProperty(KEY_COMPILER, compilerDigest);
+        for (URI uri : dependencies) {
+            String location = uri.toString();
+            String digest = digestDependency(location);
+            if (digest == null) {
+                LOG.debug("Skipped recording a dependency: {}", location);
+                continue;
+            }
+            properties.setProperty(PREFIX_DEPENDENCY + location, digest);
+        }
+        mkdir(directory);
+        OutputStream output = new FileOutputStream(digestFile);
+        try {
+            properties.store(output, null);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * 指定のファイルマネージャーをラップし、クラスパスから読み出されたクラスファイルの位置を記録する。
+     * @param fileManager 対象のファイルマネージャー
+     * @param dependencies 読み出されたクラスファイルの位置を記録する先
+     * @return ラップしたファイルマネージャー
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    static JavaFileManager track(StandardJavaFileManager fileManager, Set<URI> dependencies) {
+        Precondition.checkMustNotBeNull(fileManager, "fileManager"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(dependencies, "dependencies"); //$NON-NLS-1$
+        return new DependencyTracker(fileManager, dependencies);
+    }
+
+    private static String digestDependency(String location) {
+        assert location != null;
+        try {
+            URLConnection connection = new URI(location).toURL().openConnection();
+            connection.setUseCaches(false);
+            InputStream input = connection.getInputStream();
+            try {
+                MessageDigest digest = createDigest();
+                update(digest, input);
+                return toHex(digest.digest());
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            LOG.debug(MessageFormat.format("Failed to read a dependency: {0}", location), e);
+            return null;
+        } catch (URISyntaxException e) {
+            LOG.debug(MessageFormat.format("Failed to read a dependency: {0}", location), e);
+            return null;
+        } catch (IllegalArgumentException e) {
+            LOG.debug(MessageFormat.format("Failed to read a dependency: {0}", location), e);
+            return null;
+        }
+    }
+
+    private static String digestTree(File root) throws IOException {
+        assert root != null;
+        Map<String, File> files = new TreeMap<String, File>();
+        collect(root, "", files);
+        MessageDigest digest = createDigest();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            update(digest, entry.getKey());
+            InputStream input = new FileInputStream(entry.getValue());
+            try {
+                update(digest, input);
+            } finally {
+                input.close();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void collect(File file, String path, Map<String, File> results) {
+        assert file != null;
+        assert path != null;
+        assert results != null;
+        if (file.isFile()) {
+            results.put(path, file);
+        } else if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                collect(child, path + '/' + child.getName(), results);
+            }
+        }
+    }
+
+    private static void copyClasses(File from, File to) throws IOException {
+        assert from != null;
+        assert to != null;
+        Map<String, File> files = new TreeMap<String, File>();
+        collect(from, "", files);
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            if (entry.getKey().endsWith(CLASS_EXTENSION) == false) {
+                continue;
+            }
+            File target = new File(to, entry.getKey());
+            mkdir(target.getParentFile());
+            copy(entry.getValue(), target);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        assert from != null;
+        assert to != null;
+        InputStream input = new FileInputStream(from);
+        try {
+            OutputStream output = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[1024];
+                while (true) {
+                    int read = input.read(buffer);
+                    if (read < 0) {
+                        break;
+                    }
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void mkdir(File file) throws IOException {
+        assert file != null;
+        if (file.isDirectory() == false && file.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                    "ディレクトリの作成に失敗しました ({0})",
+                    file));
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        assert file != null;
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                delete(child);
+            }
+        }
+        if (file.exists() && file.delete() == false) {
+            throw new IOException(MessageFormat.format(
+                    "コンパイル結果のキャッシュを削除できませんでした ({0})",
+                    file));
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        assert digest != null;
+        if (value != null) {
+            try {
+                digest.update(value.getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, InputStream input) throws IOException {
+        assert digest != null;
+        assert input != null;
+        byte[] buffer = new byte[1024];
+        while (true) {
+            int read = input.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        assert bytes != null;
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(String.format("%02x", b & 0xff));
+        }
+        return buf.toString();
+    }
+
+    private static final class DependencyTracker extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        final Set<URI> dependencies;
+
+        DependencyTracker(StandardJavaFileManager fileManager, Set<URI> dependencies) {
+            super(fileManager);
+            assert dependencies != null;
+            this.dependencies = dependencies;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(
+                Location location,
+                String packageName,
+                Set<JavaFileObject.Kind> kinds,
+                boolean recurse) throws IOException {
+            Iterable<JavaFileObject> results = super.list(location, packageName, kinds, recurse);
+            if (location != StandardLocation.CLASS_PATH) {
+                return results;
+            }
+            List<JavaFileObject> tracked = Lists.create();
+            for (JavaFileObject file : results) {
+                if (file.getKind() == JavaFileObject.Kind.CLASS) {
+                    tracked.add(new TrackedFileObject(file, dependencies));
+                } else {
+                    tracked.add(file);
+                }
+            }
+            return tracked;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            return super.inferBinaryName(location, unwrap(file));
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            return super.isSameFile(unwrap(a), unwrap(b));
+        }
+
+        private static <T extends FileObject> T unwrap(T file) {
+            if (file instanceof TrackedFileObject) {
+                @SuppressWarnings("unchecked")
+                T original = (T) ((TrackedFileObject) file).getOriginal();
+                return original;
+            }
+            return file;
+        }
+    }
+
+    private static final class TrackedFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+
+        private final Set<URI> dependencies;
+
+        TrackedFileObject(JavaFileObject file, Set<URI> dependencies) {
+            super(file);
+            assert dependencies != null;
+            this.dependencies = dependencies;
+        }
+
+        JavaFileObject getOriginal() {
+            return fileObject;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            synchronized (dependencies) {
+                dependencies.add(toUri());
+            }
+            return super.openInputStream();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.URI;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -37,6 +38,7 @@ import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
@@ -74,6 +76,16 @@ public class FilePackager
 
     private static final String CLASS_DIRECTORY = "bin";
 
+    /**
+     * コンパイル結果のキャッシュを保持するディレクトリを指定するコンパイラスイッチの名前。
+     * <p>
+     * {@code -XcompileCache=/path/to/cache}のように指定する。
+     * 指定しない場合はキャッシュを利用しない。
+     * </p>
+     * @since 0.4.0
+     */
+    public static final String KEY_COMPILE_CACHE = "compileCache";
+
     private final File sourceDirectory;
 
     private final File classDirectory;
@@ -266,10 +278,55 @@ public class FilePackager
         if (sources.isEmpty()) {
             return;
         }
-        compile(compiler, sources);
+        CompileCache cache = createCache();
+        if (cache == null) {
+            compile(compiler, sources, null);
+            return;
+        }
+        String obsolete = cache.findObsolete();
+        if (obsolete == null) {
+            LOG.info("{}のコンパイル結果をキャッシュから再利用します", getEnvironment().getTargetId());
+            mkdir(classDirectory);
+            cache.restore(classDirectory);
+            return;
+        }
+        LOG.info("{}を再コンパイルします ({})", getEnvironment().getTargetId(), obsolete);
+        Set<URI> dependencies = Sets.create();
+        compile(compiler, sources, dependencies);
+        try {
+            cache.store(classDirectory, dependencies);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "{0}のコンパイル結果をキャッシュに保存できませんでした",
+                    getEnvironment().getTargetId()), e);
+        }
+    }
+
+    private CompileCache createCache() throws IOException {
+        String path = getEnvironment().getOptions().getExtraAttribute(KEY_COMPILE_CACHE);
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        File directory = new File(
+                new File(path.trim(), getEnvironment().getBatchId()),
+                getEnvironment().getFlowId());
+        LOG.debug("コンパイル結果のキャッシュ: {}", directory);
+        return new CompileCache(directory, sourceDirectory, getCompilerSignature());
     }
 
-    private void compile(JavaCompiler compiler, List<File> sources) throws IOException {
+    private List<String> getCompilerSignature() {
+        List<String> arguments = Lists.create();
+        Collections.addAll(arguments, "-source", "1.6");
+        Collections.addAll(arguments, "-target", "1.6");
+        Collections.addAll(arguments, "-encoding", CHARSET.name());
+        Collections.addAll(arguments, "-Xlint:all");
+        return arguments;
+    }
+
+    private void compile(
+            JavaCompiler compiler,
+            List<File> sources,
+            Set<URI> dependencies) throws IOException {
         assert compiler != null;
         assert sources != null;
 
@@ -286,25 +343,25 @@ public class FilePackager
                 Locale.getDefault(),
                 CHARSET);
         try {
-            List<String> arguments = Lists.create();
-            Collections.addAll(arguments, "-source", "1.6");
-            Collections.addAll(arguments, "-target", "1.6");
-            Collections.addAll(arguments, "-encoding", CHARSET.name());
+            List<String> arguments = getCompilerSignature();
             Collections.addAll(arguments,
                     "-sourcepath",
                     sourceDirectory.getCanonicalFile().toString());
             Collections.addAll(arguments,
                     "-d",
                     classDirectory.getCanonicalFile().toString());
-            Collections.addAll(arguments, "-Xlint:all");
 
             StringWriter errors = new StringWriter();
             PrintWriter pw = new PrintWriter(errors);
 
+            JavaFileManager taskFileManager = dependencies == null
+                    ? fileManager
+                    : CompileCache.track(fileManager, dependencies);
+
             LOG.debug("コンパイルオプション: {}", arguments);
             CompilationTask task = compiler.getTask(
                     pw,
-                    fileManager,
+                    taskFileManager,
                     diagnostics,
                     arguments,
                     Collections.<String>emptyList(),
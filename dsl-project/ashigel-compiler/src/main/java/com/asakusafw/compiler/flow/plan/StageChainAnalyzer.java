@@ -0,0 +1,401 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.plan;
+
+import java.lang.annotation.Annotation;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.asakusafw.compiler.common.Precondition;
+import com.asakusafw.runtime.util.TypeUtil;
+import com.asakusafw.utils.collections.Lists;
+import com.asakusafw.utils.collections.Maps;
+import com.asakusafw.utils.collections.Sets;
+import com.asakusafw.vocabulary.flow.graph.FlowElement;
+import com.asakusafw.vocabulary.flow.graph.FlowElementDescription;
+import com.asakusafw.vocabulary.flow.graph.FlowElementInput;
+import com.asakusafw.vocabulary.flow.graph.FlowElementKind;
+import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
+import com.asakusafw.vocabulary.flow.graph.FlowGraph;
+import com.asakusafw.vocabulary.flow.graph.OperatorDescription;
+import com.asakusafw.vocabulary.flow.graph.PortConnection;
+import com.asakusafw.vocabulary.flow.graph.ShuffleKey;
+import com.asakusafw.vocabulary.model.Summarized;
+import com.asakusafw.vocabulary.model.Summarized.Aggregator;
+import com.asakusafw.vocabulary.operator.Fold;
+import com.asakusafw.vocabulary.operator.Summarize;
+
+/**
+ * 連続するステージのシャッフルキーを比較し、
+ * 後続するステージのシャッフルを先行するステージのレデュース処理内で連結できるかどうかを分析する。
+ * <p>
+ * 後続するステージのシャッフルを省略するには、先行するステージと同じキーで分配されており、
+ * かつ先行するステージの演算子がそのキーの値を変更しないことが保証されている必要がある。
+ * 一般の演算子では出力するデータのキーが保存されるかどうかをコンパイル時に判定できないため、
+ * 現在のところ、単純集計演算子に同じキーで後続する畳み込み演算子のみを連結の対象とし
+ * ({@link #findChainableFolds(FlowGraph)})、それ以外の分析結果は診断情報としてのみ利用される。
+ * </p>
+ * @since 0.4.0
+ */
+public final class StageChainAnalyzer {
+
+    private StageChainAnalyzer() {
+        return;
+    }
+
+    /**
+     * 指定のステージグラフに含まれる連続したシャッフルを分析する。
+     * <p>
+     * 結果には、レデュース処理を含むステージに直接後続するシャッフルを含むステージのみが含まれる。
+     * </p>
+     * @param graph 対象のステージグラフ
+     * @return 分析結果の一覧
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    public static List<Chain> analyze(StageGraph graph) {
+        Precondition.checkMustNotBeNull(graph, "graph"); //$NON-NLS-1$
+        Map<FlowBlock, StageBlock> membership = Maps.create();
+        for (StageBlock stage : graph.getStages()) {
+            for (FlowBlock block : stage.getMapBlocks()) {
+                membership.put(block, stage);
+            }
+            for (FlowBlock block : stage.getReduceBlocks()) {
+                membership.put(block, stage);
+            }
+        }
+        List<Chain> results = Lists.create();
+        for (StageBlock stage : graph.getStages()) {
+            if (stage.hasReduceBlocks() == false) {
+                continue;
+            }
+            Set<StageBlock> reducers = Sets.create();
+            boolean others = false;
+            for (FlowBlock block : stage.getMapBlocks()) {
+                for (FlowBlock.Input input : block.getBlockInputs()) {
+                    for (FlowBlock.Connection conn : input.getConnections()) {
+                        FlowBlock upstream = conn.getUpstream().getOwner();
+                        StageBlock pred = membership.get(upstream);
+                        if (pred != null && upstream.isReduceBlock()) {
+                            reducers.add(pred);
+                        } else {
+                            others = true;
+                        }
+                    }
+                }
+            }
+            if (reducers.isEmpty()) {
+                continue;
+            }
+            if (others || reducers.size() >= 2) {
+                results.add(new Chain(reducers, stage, Relation.MULTIPLE_SOURCES));
+            } else {
+                StageBlock upstream = reducers.iterator().next();
+                Relation relation = compare(getShuffleKeys(upstream), getShuffleKeys(stage));
+                results.add(new Chain(reducers, stage, relation));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 指定の演算子グラフから、先行する単純集計演算子のレデュース処理に連結できる畳み込み演算子を検出する。
+     * <p>
+     * 単純集計演算子の出力はグループごとに1件のみで、そのキーの値は集計前のキーの値がそのまま保存される。
+     * このため、単純集計演算子の出力のみを入力とし、そのキーをすべて含むキーでグループ化する畳み込み演算子は、
+     * 常に1件のデータからなるグループを処理し、入力をそのまま出力する。
+     * このような畳み込み演算子を取り除くと、後続する処理は先行するレデュース処理に連結され、
+     * 一時ファイルへの出力、再読み込み、および再シャッフルが省略される。
+     * </p>
+     * <p>
+     * なお、キーの接頭辞でグループ化する畳み込み演算子は、
+     * 先行する単純集計演算子がキー全体で分配されているため対象としない。
+     * </p>
+     * @param graph 対象の演算子グラフ
+     * @return 連結できる畳み込み演算子の一覧
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    public static List<FlowElement> findChainableFolds(FlowGraph graph) {
+        Precondition.checkMustNotBeNull(graph, "graph"); //$NON-NLS-1$
+        List<FlowElement> results = Lists.create();
+        for (FlowElement element : FlowGraphUtil.collectElements(graph)) {
+            if (isOperator(element, Fold.class) == false
+                    || element.getInputPorts().size() != 1
+                    || element.getOutputPorts().size() != 1) {
+                continue;
+            }
+            FlowElementPortDescription port = element.getInputPorts().get(0).getDescription();
+            ShuffleKey key = port.getShuffleKey();
+            if (key == null) {
+                continue;
+            }
+            FlowElement upstream = getSingleUpstream(element.getInputPorts().get(0));
+            if (upstream == null || isOperator(upstream, Summarize.class) == false) {
+                continue;
+            }
+            List<String> summarized = getSummarizedKey(upstream);
+            if (summarized == null) {
+                continue;
+            }
+            FlowElementPortDescription source = upstream.getOutputPorts().get(0).getDescription();
+            if (source.getDataType().equals(port.getDataType()) == false) {
+                continue;
+            }
+            if (key.getGroupProperties().containsAll(summarized)) {
+                results.add(element);
+            }
+        }
+        return results;
+    }
+
+    private static boolean isOperator(FlowElement element, Class<? extends Annotation> kind) {
+        assert element != null;
+        assert kind != null;
+        FlowElementDescription description = element.getDescription();
+        if (description.getKind() != FlowElementKind.OPERATOR) {
+            return false;
+        }
+        OperatorDescription operator = (OperatorDescription) description;
+        return operator.getDeclaration().getAnnotationType() == kind;
+    }
+
+    private static FlowElement getSingleUpstream(FlowElementInput input) {
+        assert input != null;
+        FlowElementInput current = input;
+        while (true) {
+            Collection<PortConnection> connections = current.getConnected();
+            if (connections.size() != 1) {
+                return null;
+            }
+            FlowElement upstream = connections.iterator().next().getUpstream().getOwner();
+            if (FlowGraphUtil.isIdentity(upstream) == false) {
+                return upstream;
+            }
+            current = upstream.getInputPorts().get(0);
+        }
+    }
+
+    private static List<String> getSummarizedKey(FlowElement element) {
+        assert element != null;
+        if (element.getInputPorts().size() != 1 || element.getOutputPorts().size() != 1) {
+            return null;
+        }
+        FlowElementPortDescription input = element.getInputPorts().get(0).getDescription();
+        FlowElementPortDescription output = element.getOutputPorts().get(0).getDescription();
+        Summarized summarized = TypeUtil.erase(output.getDataType()).getAnnotation(Summarized.class);
+        if (summarized == null || input.getShuffleKey() == null) {
+            return null;
+        }
+        Map<String, String> mapping = Maps.create();
+        for (Summarized.Folding folding : summarized.term().foldings()) {
+            if (folding.aggregator() == Aggregator.ANY) {
+                mapping.put(folding.source(), folding.destination());
+            }
+        }
+        List<String> results = Lists.create();
+        for (String original : input.getShuffleKey().getGroupProperties()) {
+            String target = mapping.get(original);
+            if (target == null) {
+                return null;
+            }
+            results.add(target);
+        }
+        return results;
+    }
+
+    private static Relation compare(List<ShuffleKey> upstreams, List<ShuffleKey> downstreams) {
+        assert upstreams != null;
+        assert downstreams != null;
+        if (upstreams.isEmpty() || downstreams.isEmpty()) {
+            return Relation.DIFFERENT;
+        }
+        Relation result = Relation.EQUIVALENT;
+        for (ShuffleKey downstream : downstreams) {
+            List<String> down = downstream.getGroupProperties();
+            for (ShuffleKey upstream : upstreams) {
+                List<String> up = upstream.getGroupProperties();
+                if (down.equals(up)) {
+                    continue;
+                } else if (down.size() < up.size() && up.subList(0, down.size()).equals(down)) {
+                    result = Relation.PREFIX;
+                } else {
+                    return Relation.DIFFERENT;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<ShuffleKey> getShuffleKeys(StageBlock stage) {
+        assert stage != null;
+        List<ShuffleKey> results = Lists.create();
+        for (FlowBlock block : stage.getReduceBlocks()) {
+            for (FlowBlock.Input input : block.getBlockInputs()) {
+                ShuffleKey key = input.getElementPort().getDescription().getShuffleKey();
+                if (key != null) {
+                    results.add(key);
+                }
+            }
+        }
+        return results;
+    }
+
+    static List<List<String>> toGroups(List<ShuffleKey> keys) {
+        assert keys != null;
+        List<List<String>> results = Lists.create();
+        for (ShuffleKey key : keys) {
+            results.add(key.getGroupProperties());
+        }
+        return results;
+    }
+
+    private static Set<FlowElement> getShuffleOperators(Set<StageBlock> stages) {
+        assert stages != null;
+        Set<FlowElement> results = Sets.create();
+        for (StageBlock stage : stages) {
+            for (FlowBlock block : stage.getReduceBlocks()) {
+                for (FlowBlock.Input input : block.getBlockInputs()) {
+                    results.add(input.getElementPort().getOwner());
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 先行するステージとシャッフルキーの関係。
+     */
+    public enum Relation {
+
+        /**
+         * 先行するステージと同じキーでシャッフルする。
+         */
+        EQUIVALENT,
+
+        /**
+         * 先行するステージのキーの接頭辞でシャッフルする。
+         */
+        PREFIX,
+
+        /**
+         * 先行するステージと異なるキーでシャッフルする。
+         */
+        DIFFERENT,
+
+        /**
+         * 複数のステージやジョブフローの入力からデータを受け取る。
+         */
+        MULTIPLE_SOURCES,
+    }
+
+    /**
+     * 連続するステージの分析結果。
+     */
+    public static final class Chain {
+
+        private final Set<StageBlock> upstreams;
+
+        private final StageBlock downstream;
+
+        private final Relation relation;
+
+        Chain(Set<StageBlock> upstreams, StageBlock downstream, Relation relation) {
+            assert upstreams != null;
+            assert downstream != null;
+            assert relation != null;
+            this.upstreams = Collections.unmodifiableSet(upstreams);
+            this.downstream = downstream;
+            this.relation = relation;
+        }
+
+        /**
+         * 先行するレデュース処理を含むステージの一覧を返す。
+         * @return 先行するステージの一覧
+         */
+        public Set<StageBlock> getUpstreams() {
+            return upstreams;
+        }
+
+        /**
+         * 後続するステージを返す。
+         * @return 後続するステージ
+         */
+        public StageBlock getDownstream() {
+            return downstream;
+        }
+
+        /**
+         * 先行するステージとシャッフルキーの関係を返す。
+         * @return シャッフルキーの関係
+         */
+        public Relation getRelation() {
+            return relation;
+        }
+
+        /**
+         * 後続するステージのシャッフルを連結しなかった理由を返す。
+         * @return 連結しなかった理由
+         */
+        public String getReason() {
+            switch (relation) {
+            case MULTIPLE_SOURCES:
+                return "複数のステージやジョブフローの入力からデータを受け取るため";
+            case DIFFERENT:
+                return MessageFormat.format(
+                        "シャッフルキー{0}が先行するステージのシャッフルキー{1}と異なるため",
+                        toGroups(getShuffleKeys(downstream)),
+                        toGroups(getUpstreamShuffleKeys()));
+            case PREFIX:
+                return MessageFormat.format(
+                        "シャッフルキー{0}は先行するステージのシャッフルキー{1}の接頭辞だが、"
+                        + "先行するステージはキー全体で分配されており、"
+                        + "かつ演算子{2}がキーの値を変更しないことを保証できないため",
+                        toGroups(getShuffleKeys(downstream)),
+                        toGroups(getUpstreamShuffleKeys()),
+                        getShuffleOperators(upstreams));
+            case EQUIVALENT:
+                return MessageFormat.format(
+                        "シャッフルキー{0}は先行するステージと同じだが、"
+                        + "演算子{1}がキーの値を変更しないことを保証できないため "
+                        + "(単純集計演算子に後続する畳み込み演算子のみ連結できる)",
+                        toGroups(getShuffleKeys(downstream)),
+                        getShuffleOperators(upstreams));
+            default:
+                throw new AssertionError(relation);
+            }
+        }
+
+        private List<ShuffleKey> getUpstreamShuffleKeys() {
+            List<ShuffleKey> results = Lists.create();
+            for (StageBlock stage : upstreams) {
+                results.addAll(getShuffleKeys(stage));
+            }
+            return results;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format(
+                    "{0} -> {1} ({2})",
+                    upstreams,
+                    downstream,
+                    relation);
+        }
+    }
+}
@@ -64,6 +64,8 @@ import com.asakusafw.vocabulary.operator.Split;
 
 /**
  * 演算子グラフの実行計画を立案する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class StagePlanner {
 
@@ -71,6 +73,10 @@ public class StagePlanner {
 
     static final GenericOptionValue DEFAULT_COMPRESS_FLOW_BLOCK_GROUP = GenericOptionValue.ENABLED;
 
+    static final String KEY_CHAIN_SUMMARIZE_FOLD = "chainSummarizeFold";
+
+    static final GenericOptionValue DEFAULT_CHAIN_SUMMARIZE_FOLD = GenericOptionValue.ENABLED;
+
     static final Logger LOG = LoggerFactory.getLogger(StagePlanner.class);
 
     private final List<? extends FlowGraphRewriter> rewriters;
@@ -121,10 +127,34 @@ public class StagePlanner {
         normalizeFlowGraph(copy);
 
         StageGraph result = buildStageGraph(copy);
+        reportStageChains(result);
 
         return result;
     }
 
+    private void reportStageChains(StageGraph graph) {
+        assert graph != null;
+        for (StageChainAnalyzer.Chain chain : StageChainAnalyzer.analyze(graph)) {
+            switch (chain.getRelation()) {
+            case EQUIVALENT:
+            case PREFIX:
+                LOG.info("{}のシャッフルは{}のレデュース処理と連結されません: {}", new Object[] {
+                        chain.getDownstream(),
+                        chain.getUpstreams(),
+                        chain.getReason(),
+                });
+                break;
+            default:
+                LOG.debug("{}のシャッフルは{}のレデュース処理と連結されません: {}", new Object[] {
+                        chain.getDownstream(),
+                        chain.getUpstreams(),
+                        chain.getReason(),
+                });
+                break;
+            }
+        }
+    }
+
     private boolean rewrite(FlowGraph graph) {
         assert graph != null;
         LOG.debug("{}の書き換えを行います", graph);
@@ -755,6 +785,7 @@ public class StagePlanner {
         LOG.debug("{}の演算子グラフを標準形に変換しています", graph);
 
         inlineFlowParts(graph);
+        chainSummarizeFolds(graph);
 
         // FIXME at most onceの性質を持つ演算子の単一化
         // とりあえずの措置として、直後にチェックポイントを配置する
@@ -766,6 +797,35 @@ public class StagePlanner {
         reduceIdentities(graph);
     }
 
+    /**
+     * 単純集計演算子に同じキーで後続する畳み込み演算子を取り除き、
+     * 後続する処理を単純集計演算子のレデュース処理に連結する。
+     * @param graph 対象のグラフ
+     * @see StageChainAnalyzer#findChainableFolds(FlowGraph)
+     */
+    private void chainSummarizeFolds(FlowGraph graph) {
+        assert graph != null;
+        GenericOptionValue active = options.getGenericExtraAttribute(
+                KEY_CHAIN_SUMMARIZE_FOLD,
+                DEFAULT_CHAIN_SUMMARIZE_FOLD);
+        if (active == GenericOptionValue.DISABLED) {
+            LOG.debug("単純集計演算子と畳み込み演算子の連結は無効化されています");
+            return;
+        }
+        while (true) {
+            List<FlowElement> folds = StageChainAnalyzer.findChainableFolds(graph);
+            if (folds.isEmpty()) {
+                break;
+            }
+            for (FlowElement element : folds) {
+                LOG.info("{}は先行する単純集計演算子と同じキーでグループ化するため、"
+                        + "シャッフルを省略して先行するレデュース処理に連結します",
+                        element.getDescription());
+                FlowGraphUtil.skip(element);
+            }
+        }
+    }
+
     private void inlineFlowParts(FlowGraph graph) {
         assert graph != null;
         for (FlowElement element : FlowGraphUtil.collectFlowParts(graph)) {
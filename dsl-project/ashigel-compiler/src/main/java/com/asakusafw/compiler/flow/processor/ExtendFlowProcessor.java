@@ -25,10 +25,17 @@ import com.asakusafw.vocabulary.operator.Extend;
 
 /**
  * {@link Extend 拡張演算子}を処理する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(Extend.class)
 public class ExtendFlowProcessor extends LinePartProcessor {
 
+    @Override
+    public boolean isInputReadOnly() {
+        return true;
+    }
+
     @Override
     public void emitLinePart(Context context) {
         FlowElementPortDescription input = context.getInputPort(Extend.ID_INPUT);
@@ -15,18 +15,47 @@
  */
 package com.asakusafw.compiler.flow.processor;
 
+import java.util.Collections;
+
 import com.asakusafw.compiler.common.TargetOperator;
 import com.asakusafw.compiler.flow.RendezvousProcessor;
+import com.asakusafw.compiler.flow.ShuffleDescription;
 import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.vocabulary.flow.graph.FlowElementDescription;
 import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
+import com.asakusafw.vocabulary.flow.graph.OperatorHelper;
 import com.asakusafw.vocabulary.operator.MasterCheck;
 
 /**
  * {@link MasterCheck マスタ確認演算子}を処理する。
+ * <p>
+ * マスタ選択条件が指定されていない場合、マスタデータは存在の確認にのみ利用されるため、
+ * マスタ側のシャッフルではシャッフルキー以外のプロパティを転送しない。
+ * </p>
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(MasterCheck.class)
 public class MasterCheckFlowProcessor extends RendezvousProcessor {
 
+    @Override
+    public ShuffleDescription getShuffleDescription(
+            FlowElementDescription element,
+            FlowElementPortDescription port) {
+        FlowElementPortDescription master = element.getInputPorts().get(MasterCheck.ID_INPUT_MASTER);
+        if (port.equals(master) && element.getAttribute(OperatorHelper.class) == null) {
+            ShuffleDescription projected = ShuffleProjection.createDescription(
+                    getEnvironment(),
+                    element,
+                    port,
+                    Collections.<String>emptySet());
+            if (projected != null) {
+                return projected;
+            }
+        }
+        return super.getShuffleDescription(element, port);
+    }
+
     @Override
     public void emitRendezvous(Context context) {
         MasterKindFlowAnalyzer masterAnalyzer = new MasterKindFlowAnalyzer(context);
@@ -22,22 +22,62 @@ import com.asakusafw.compiler.common.TargetOperator;
 import com.asakusafw.compiler.flow.DataClass;
 import com.asakusafw.compiler.flow.DataClass.Property;
 import com.asakusafw.compiler.flow.RendezvousProcessor;
+import com.asakusafw.compiler.flow.ShuffleDescription;
 import com.asakusafw.runtime.util.TypeUtil;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.collections.Sets;
 import com.asakusafw.utils.java.model.syntax.Expression;
 import com.asakusafw.utils.java.model.syntax.ModelFactory;
 import com.asakusafw.utils.java.model.syntax.Statement;
+import com.asakusafw.vocabulary.flow.graph.FlowElementDescription;
 import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
+import com.asakusafw.vocabulary.flow.graph.OperatorHelper;
 import com.asakusafw.vocabulary.model.Joined;
 import com.asakusafw.vocabulary.operator.MasterJoin;
 
 /**
  * {@link MasterJoin マスタ結合演算子}を処理する。
+ * <p>
+ * マスタ選択条件が指定されていない場合、マスタ側のシャッフルでは
+ * 結合結果に利用されるプロパティのみを転送する。
+ * </p>
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(MasterJoin.class)
 public class MasterJoinFlowProcessor extends RendezvousProcessor {
 
+    @Override
+    public ShuffleDescription getShuffleDescription(
+            FlowElementDescription element,
+            FlowElementPortDescription port) {
+        FlowElementPortDescription master = element.getInputPorts().get(MasterJoin.ID_INPUT_MASTER);
+        if (port.equals(master) && element.getAttribute(OperatorHelper.class) == null) {
+            FlowElementPortDescription joined = element.getOutputPorts().get(MasterJoin.ID_OUTPUT_JOINED);
+            Joined annotation = TypeUtil.erase(joined.getDataType()).getAnnotation(Joined.class);
+            if (annotation != null) {
+                Set<String> used = Sets.create();
+                for (Joined.Term term : annotation.terms()) {
+                    if (term.source().equals(master.getDataType()) == false) {
+                        continue;
+                    }
+                    for (Joined.Mapping mapping : term.mappings()) {
+                        used.add(mapping.source());
+                    }
+                }
+                ShuffleDescription projected = ShuffleProjection.createDescription(
+                        getEnvironment(),
+                        element,
+                        port,
+                        used);
+                if (projected != null) {
+                    return projected;
+                }
+            }
+        }
+        return super.getShuffleDescription(element, port);
+    }
+
     @Override
     public void emitRendezvous(Context context) {
         MasterKindFlowAnalyzer masterAnalyzer = new MasterKindFlowAnalyzer(context);
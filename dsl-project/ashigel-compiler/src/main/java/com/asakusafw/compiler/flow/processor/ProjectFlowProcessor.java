@@ -25,10 +25,17 @@ import com.asakusafw.vocabulary.operator.Project;
 
 /**
  * {@link Project 射影演算子}を処理する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(Project.class)
 public class ProjectFlowProcessor extends LinePartProcessor {
 
+    @Override
+    public boolean isInputReadOnly() {
+        return true;
+    }
+
     @Override
     public void emitLinePart(Context context) {
         FlowElementPortDescription input = context.getInputPort(Project.ID_INPUT);
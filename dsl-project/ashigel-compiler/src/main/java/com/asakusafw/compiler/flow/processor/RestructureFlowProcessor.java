@@ -25,10 +25,17 @@ import com.asakusafw.vocabulary.operator.Restructure;
 
 /**
  * {@link Restructure 再構築演算子}を処理する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(Restructure.class)
 public class RestructureFlowProcessor extends LinePartProcessor {
 
+    @Override
+    public boolean isInputReadOnly() {
+        return true;
+    }
+
     @Override
     public void emitLinePart(Context context) {
         FlowElementPortDescription input = context.getInputPort(Restructure.ID_INPUT);
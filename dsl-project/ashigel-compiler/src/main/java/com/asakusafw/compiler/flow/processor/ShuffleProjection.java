@@ -0,0 +1,170 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.processor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.compiler.common.Precondition;
+import com.asakusafw.compiler.flow.DataClass;
+import com.asakusafw.compiler.flow.DataClass.Property;
+import com.asakusafw.compiler.flow.FlowCompilerOptions.GenericOptionValue;
+import com.asakusafw.compiler.flow.FlowCompilingEnvironment;
+import com.asakusafw.compiler.flow.FlowElementProcessor.DataObjectMirror;
+import com.asakusafw.compiler.flow.LinePartProcessor;
+import com.asakusafw.compiler.flow.ShuffleDescription;
+import com.asakusafw.utils.collections.Sets;
+import com.asakusafw.vocabulary.flow.graph.FlowElementDescription;
+import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
+import com.asakusafw.vocabulary.flow.graph.ShuffleKey;
+
+/**
+ * シャッフル前に、後続の演算子が利用しないプロパティを取り除く。
+ * <p>
+ * シャッフルで転送されるデータのうち、指定されたプロパティとシャッフルキーに含まれるプロパティのみを残し、
+ * それ以外のプロパティは{@code null}にした状態で転送する。
+ * 取り除かれたプロパティはレデュース側で{@code null}として扱われるため、
+ * 後続の演算子がそれらのプロパティを参照しないことが明らかな場合にのみ利用できる。
+ * </p>
+ * @since 0.4.0
+ */
+public class ShuffleProjection extends LinePartProcessor {
+
+    static final Logger LOG = LoggerFactory.getLogger(ShuffleProjection.class);
+
+    /**
+     * シャッフル前に不要なプロパティを取り除くかどうかを指定するコンパイラスイッチの名前。
+     * <p>
+     * {@code -XprojectShuffleValues=disabled}のように指定する。
+     * </p>
+     */
+    public static final String KEY_PROJECT_SHUFFLE_VALUES = "projectShuffleValues";
+
+    static final GenericOptionValue DEFAULT_PROJECT_SHUFFLE_VALUES = GenericOptionValue.ENABLED;
+
+    private final DataClass dataClass;
+
+    private final Set<String> propertyNames;
+
+    /**
+     * インスタンスを生成する。
+     * @param dataClass 対象のデータクラス
+     * @param propertyNames 転送するプロパティ名の一覧
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    public ShuffleProjection(DataClass dataClass, Collection<String> propertyNames) {
+        Precondition.checkMustNotBeNull(dataClass, "dataClass"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(propertyNames, "propertyNames"); //$NON-NLS-1$
+        this.dataClass = dataClass;
+        this.propertyNames = new TreeSet<String>(propertyNames);
+    }
+
+    /**
+     * 指定のポートに対する、不要なプロパティを取り除くシャッフルの情報を返す。
+     * <p>
+     * 指定のプロパティとシャッフルキーに含まれるプロパティ以外を全て取り除く。
+     * ただし、コンパイラスイッチでこの最適化が無効にされている場合や、
+     * 取り除けるプロパティが存在しない場合には{@code null}を返す。
+     * </p>
+     * @param environment 環境
+     * @param element 対象の要素
+     * @param port 対象のポート
+     * @param propertyNames 後続の処理で参照されるプロパティ名の一覧
+     * @return 対応するシャッフルの情報、利用できない場合は{@code null}
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    public static ShuffleDescription createDescription(
+            FlowCompilingEnvironment environment,
+            FlowElementDescription element,
+            FlowElementPortDescription port,
+            Collection<String> propertyNames) {
+        Precondition.checkMustNotBeNull(environment, "environment"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(element, "element"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(port, "port"); //$NON-NLS-1$
+        Precondition.checkMustNotBeNull(propertyNames, "propertyNames"); //$NON-NLS-1$
+        GenericOptionValue active = environment.getOptions().getGenericExtraAttribute(
+                KEY_PROJECT_SHUFFLE_VALUES,
+                DEFAULT_PROJECT_SHUFFLE_VALUES);
+        if (active == GenericOptionValue.DISABLED) {
+            return null;
+        }
+        DataClass dataClass = environment.getDataClasses().load(port.getDataType());
+        if (dataClass == null) {
+            return null;
+        }
+        ShuffleKey key = port.getShuffleKey();
+        Set<String> required = Sets.from(propertyNames);
+        required.addAll(key.getGroupProperties());
+        for (ShuffleKey.Order order : key.getOrderings()) {
+            required.add(order.getProperty());
+        }
+        Set<String> removed = new TreeSet<String>();
+        for (Property property : dataClass.getProperties()) {
+            if (required.contains(property.getName()) == false) {
+                removed.add(property.getName());
+            }
+        }
+        if (removed.isEmpty()) {
+            return null;
+        }
+        for (String name : required) {
+            if (dataClass.findProperty(name) == null) {
+                LOG.debug("{}にプロパティ{}が見つからないため、シャッフルの射影は行いません", dataClass, name);
+                return null;
+            }
+        }
+        LOG.debug("{}の{}からシャッフル前にプロパティ{}を取り除きます", new Object[] {
+                element,
+                port.getName(),
+                removed,
+        });
+        ShuffleProjection projection = new ShuffleProjection(dataClass, required);
+        projection.initialize(environment);
+        return new ShuffleDescription(port.getDataType(), key, projection);
+    }
+
+    /**
+     * 転送するプロパティ名の一覧を返す。
+     * @return 転送するプロパティ名の一覧
+     */
+    public Set<String> getPropertyNames() {
+        return Collections.unmodifiableSet(propertyNames);
+    }
+
+    @Override
+    public boolean isInputReadOnly() {
+        return true;
+    }
+
+    @Override
+    public void emitLinePart(Context context) {
+        DataObjectMirror cache = context.createModelCache(dataClass.getType());
+        context.add(cache.createReset());
+        for (String name : propertyNames) {
+            Property property = dataClass.findProperty(name);
+            assert property != null;
+            context.add(property.createSetter(
+                    cache.get(),
+                    property.createGetter(context.getInput())));
+        }
+        context.setOutput(cache.get());
+    }
+}
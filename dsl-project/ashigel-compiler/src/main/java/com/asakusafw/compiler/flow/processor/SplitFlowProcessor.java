@@ -31,10 +31,17 @@ import com.asakusafw.vocabulary.operator.Split;
 
 /**
  * {@link Split 分割演算子}を処理する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(Split.class)
 public class SplitFlowProcessor extends LineEndProcessor {
 
+    @Override
+    public boolean isInputReadOnly() {
+        return true;
+    }
+
     @Override
     public void emitLineEnd(Context context) {
         FlowElementPortDescription inputPort = context.getInputPort(Split.ID_INPUT);
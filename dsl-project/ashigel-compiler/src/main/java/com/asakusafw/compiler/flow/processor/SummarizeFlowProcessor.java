@@ -46,6 +46,8 @@ import com.asakusafw.vocabulary.operator.Summarize;
 
 /**
  * {@link Summarize 単純集計演算子}を処理する。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 @TargetOperator(Summarize.class)
 public class SummarizeFlowProcessor extends RendezvousProcessor {
@@ -189,6 +191,11 @@ public class SummarizeFlowProcessor extends RendezvousProcessor {
             this.outputType = outputType;
         }
 
+        @Override
+        public boolean isInputReadOnly() {
+            return true;
+        }
+
         @Override
         public void emitLinePart(Context context) {
             Summarized summarized = TypeUtil.erase(outputType).getAnnotation(Summarized.class);
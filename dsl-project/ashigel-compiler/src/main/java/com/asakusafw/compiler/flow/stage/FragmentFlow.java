@@ -15,9 +15,7 @@
  */
 package com.asakusafw.compiler.flow.stage;
 
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,7 +28,11 @@ import com.asakusafw.compiler.common.Precondition;
 import com.asakusafw.compiler.flow.DataClass;
 import com.asakusafw.compiler.flow.FlowCompilingEnvironment;
 import com.asakusafw.compiler.flow.FlowElementProcessor;
+import com.asakusafw.compiler.flow.LinePartProcessor;
+import com.asakusafw.compiler.flow.LineProcessor;
+import com.asakusafw.compiler.flow.join.JoinResourceDescription;
 import com.asakusafw.compiler.flow.plan.FlowBlock;
+import com.asakusafw.compiler.flow.stage.StageModel.Factor;
 import com.asakusafw.compiler.flow.stage.StageModel.Fragment;
 import com.asakusafw.compiler.flow.stage.StageModel.ResourceFragment;
 import com.asakusafw.compiler.flow.stage.StageModel.Sink;
@@ -55,6 +57,7 @@ import com.asakusafw.utils.java.model.syntax.Name;
 import com.asakusafw.utils.java.model.syntax.SimpleName;
 import com.asakusafw.utils.java.model.syntax.Statement;
 import com.asakusafw.utils.java.model.syntax.Type;
+import com.asakusafw.utils.java.model.syntax.TypeBodyDeclaration;
 import com.asakusafw.utils.java.model.util.AttributeBuilder;
 import com.asakusafw.utils.java.model.util.ExpressionBuilder;
 import com.asakusafw.utils.java.model.util.ImportBuilder;
@@ -66,6 +69,13 @@ import com.asakusafw.vocabulary.flow.graph.FlowElementOutput;
 
 /**
  * 処理断片を依存関係に従って再構築する。
+ * <p>
+ * ひとつの出力が複数の処理断片に接続される場合、
+ * 入力を参照するのみの処理断片には元のオブジェクトをそのまま渡し、
+ * それ以外の処理断片に対してのみ必要な分だけオブジェクトを複製する。
+ * </p>
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class FragmentFlow {
 
@@ -91,6 +101,8 @@ public class FragmentFlow {
 
     private Map<ResourceFragment, SimpleName> resources = Maps.create();
 
+    private final Map<FragmentNode, Boolean> readOnlyNodes = Maps.create();
+
     private final ModelFactory factory;
 
     private final Graph<FragmentNode> dependencies;
@@ -413,12 +425,20 @@ public class FragmentFlow {
                     .newObject()
                     .toExpression())
                 .toStatement());
-            results.add(new ExpressionBuilder(factory, factory.newThis())
-                .field(field)
-                .method("setup", new ExpressionBuilder(factory, context)
-                    .method("getConfiguration")
-                    .toExpression())
-                .toStatement());
+            if (resource.getDescription() instanceof JoinResourceDescription) {
+                // 結合表の保持方式をカウンタに記録するため、タスクコンテキストを渡して初期化する
+                results.add(new ExpressionBuilder(factory, factory.newThis())
+                    .field(field)
+                    .method("setup", context)
+                    .toStatement());
+            } else {
+                results.add(new ExpressionBuilder(factory, factory.newThis())
+                    .field(field)
+                    .method("setup", new ExpressionBuilder(factory, context)
+                        .method("getConfiguration")
+                        .toExpression())
+                    .toStatement());
+            }
         }
         return results;
     }
@@ -565,32 +585,48 @@ public class FragmentFlow {
         }
         Type dataType = importer.toType(model.getType());
 
-        SimpleName cacheName = names.create("cache");
-        FieldDeclaration cache = factory.newFieldDeclaration(
-                null,
-                new AttributeBuilder(factory)
-                    .Private()
-                    .toAttributes(),
-                dataType,
-                cacheName,
-                model.createNewInstance(dataType));
+        // 参照のみの後続には複製せずに先に渡し、内容を変更しうる後続にのみ複製を渡す
+        List<FragmentNode> readers = Lists.create();
+        List<FragmentNode> writers = Lists.create();
+        for (FragmentNode node : downstream) {
+            if (isReadOnly(node)) {
+                readers.add(node);
+            } else {
+                writers.add(node);
+            }
+        }
 
         SimpleName argumentName = names.create("arg");
         List<Statement> statements = Lists.create();
-        Iterator<FragmentNode> iter = downstream.iterator();
-        while (iter.hasNext()) {
-            FragmentNode node = iter.next();
-            if (iter.hasNext()) {
+        for (FragmentNode node : readers) {
+            statements.add(new ExpressionBuilder(factory, node.getName())
+                .method(FlowElementProcessor.RESULT_METHOD_NAME, argumentName)
+                .toStatement());
+        }
+        List<TypeBodyDeclaration> members = Lists.create();
+        if (writers.size() >= 2) {
+            SimpleName cacheName = names.create("cache");
+            members.add(factory.newFieldDeclaration(
+                    null,
+                    new AttributeBuilder(factory)
+                        .Private()
+                        .toAttributes(),
+                    dataType,
+                    cacheName,
+                    model.createNewInstance(dataType)));
+            for (FragmentNode node : writers.subList(0, writers.size() - 1)) {
                 statements.add(model.assign(cacheName, argumentName));
                 statements.add(new ExpressionBuilder(factory, node.getName())
                     .method(FlowElementProcessor.RESULT_METHOD_NAME, cacheName)
                     .toStatement());
-            } else {
-                statements.add(new ExpressionBuilder(factory, node.getName())
-                    .method(FlowElementProcessor.RESULT_METHOD_NAME, argumentName)
-                    .toStatement());
             }
         }
+        if (writers.isEmpty() == false) {
+            FragmentNode last = writers.get(writers.size() - 1);
+            statements.add(new ExpressionBuilder(factory, last.getName())
+                .method(FlowElementProcessor.RESULT_METHOD_NAME, argumentName)
+                .toStatement());
+        }
 
         MethodDeclaration result = factory.newMethodDeclaration(
                 null,
@@ -604,6 +640,7 @@ public class FragmentFlow {
                         Models.toType(factory, model.getType()),
                         argumentName)),
                 statements);
+        members.add(result);
 
         return factory.newClassInstanceCreationExpression(
                 null,
@@ -612,7 +649,52 @@ public class FragmentFlow {
                         Models.toType(factory, Result.class),
                         dataType)),
                 Collections.<Expression>emptyList(),
-                factory.newClassBody(Arrays.asList(cache, result)));
+                factory.newClassBody(members));
+    }
+
+    private boolean isReadOnly(FragmentNode node) {
+        assert node != null;
+        Boolean cached = readOnlyNodes.get(node);
+        if (cached != null) {
+            return cached;
+        }
+        boolean result = analyzeReadOnly(node);
+        readOnlyNodes.put(node, result);
+        return result;
+    }
+
+    private boolean analyzeReadOnly(FragmentNode node) {
+        assert node != null;
+        switch (node.getKind()) {
+        case OUTPUT:
+            // ステージの出力は受け取ったオブジェクトを即座に書き出す
+            return true;
+        case SHUFFLE: {
+            // シャッフルの出力はキーと値を複製してから書き出す
+            ShuffleModel.Segment segment = (ShuffleModel.Segment) node.getValue();
+            LinePartProcessor converter = segment.getDescription().getConverter();
+            return converter == null || converter.isInputReadOnly();
+        }
+        case LINE: {
+            Fragment fragment = (Fragment) node.getValue();
+            List<Factor> factors = fragment.getFactors();
+            if (factors.isEmpty()) {
+                for (FlowElementOutput output : fragment.getOutputPorts()) {
+                    for (FragmentNode succ : node.getDownstream(output)) {
+                        if (isReadOnly(succ) == false) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            FlowElementProcessor processor = factors.get(0).getProcessor();
+            return processor instanceof LineProcessor
+                && ((LineProcessor) processor).isInputReadOnly();
+        }
+        default:
+            return false;
+        }
     }
 
     private Statement setupShuffle(
@@ -769,6 +851,22 @@ public class FragmentFlow {
             .toExpression();
     }
 
+    /**
+     * 指定の入力に関連するライン断片が、受け取ったオブジェクトを参照するのみかどうかを返す。
+     * @param input 対象の入力
+     * @return 参照するのみである場合に{@code true}
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     * @since 0.4.0
+     */
+    public boolean isReadOnlyLine(FlowElementInput input) {
+        Precondition.checkMustNotBeNull(input, "input"); //$NON-NLS-1$
+        FragmentNode node = lines.get(input);
+        if (node == null) {
+            throw new IllegalArgumentException();
+        }
+        return isReadOnly(node);
+    }
+
     /**
      * 指定の要素に関連する合流断片を参照するための式を返す。
      * @param element 対象の要素
@@ -58,6 +58,8 @@ import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
 
 /**
  * Mapperプログラムを出力するエミッタ。
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class MapperEmitter {
 
@@ -247,12 +249,20 @@ public class MapperEmitter {
 
             for (FlowBlock.Input input : unit.getInputs()) {
                 Expression expr = fragments.getLine(input.getElementPort());
-                loop.add(dataClass.assign(cache, new ExpressionBuilder(factory, context)
+                Expression value = new ExpressionBuilder(factory, context)
                     .method("getCurrentValue")
-                    .toExpression()));
-                loop.add(new ExpressionBuilder(factory, expr)
-                    .method(FlowElementProcessor.RESULT_METHOD_NAME, cache)
-                    .toStatement());
+                    .toExpression();
+                if (fragments.isReadOnlyLine(input.getElementPort())) {
+                    // 入力を参照するのみであれば複製せずに渡す
+                    loop.add(new ExpressionBuilder(factory, expr)
+                        .method(FlowElementProcessor.RESULT_METHOD_NAME, value)
+                        .toStatement());
+                } else {
+                    loop.add(dataClass.assign(cache, value));
+                    loop.add(new ExpressionBuilder(factory, expr)
+                        .method(FlowElementProcessor.RESULT_METHOD_NAME, cache)
+                        .toStatement());
+                }
             }
 
             List<Statement> statements = Lists.create();
@@ -23,6 +23,7 @@ import com.asakusafw.compiler.common.Naming;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Arrangement;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Segment;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Term;
+import com.asakusafw.runtime.flow.SegmentedPartitioner.SplitKind;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.model.syntax.BasicTypeKind;
 import com.asakusafw.utils.java.model.syntax.FormalParameterDeclaration;
@@ -34,6 +35,11 @@ import com.asakusafw.utils.java.model.syntax.Statement;
 import com.asakusafw.utils.java.model.util.AttributeBuilder;
 import com.asakusafw.utils.java.model.util.ExpressionBuilder;
 import com.asakusafw.utils.java.model.util.Models;
+import com.asakusafw.vocabulary.flow.graph.FlowElementDescription;
+import com.asakusafw.vocabulary.flow.graph.FlowElementKind;
+import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
+import com.asakusafw.vocabulary.flow.graph.OperatorDescription;
+import com.asakusafw.vocabulary.operator.MasterJoin;
 
 /**
  * シャッフルに関するソースコードを出力する際に、共通して利用するコード。
@@ -86,6 +92,36 @@ final class ShuffleEmiterUtil {
         return name;
     }
 
+    /**
+     * 指定のセグメントについて、ヘビーキーを複数のレデューサーに分割する際の扱いを返す。
+     * <p>
+     * 現在のところ、{@link MasterJoin マスタ結合演算子}のみを分割の対象とし、
+     * マスタ側は全てのレデューサーに複製し、トランザクション側は各レデューサーに分散させる。
+     * </p>
+     * @param segment 対象のセグメント
+     * @return 分割時の扱い
+     */
+    public static SplitKind getSplitKind(Segment segment) {
+        assert segment != null;
+        FlowElementDescription description = segment.getPort().getOwner().getDescription();
+        if (description.getKind() != FlowElementKind.OPERATOR) {
+            return SplitKind.NONE;
+        }
+        OperatorDescription operator = (OperatorDescription) description;
+        if (operator.getDeclaration().getAnnotationType() != MasterJoin.class) {
+            return SplitKind.NONE;
+        }
+        FlowElementPortDescription port = segment.getPort().getDescription();
+        List<FlowElementPortDescription> inputs = operator.getInputPorts();
+        if (port.equals(inputs.get(MasterJoin.ID_INPUT_MASTER))) {
+            return SplitKind.REPLICATE;
+        }
+        if (port.equals(inputs.get(MasterJoin.ID_INPUT_TRANSACTION))) {
+            return SplitKind.SPREAD;
+        }
+        return SplitKind.NONE;
+    }
+
     public static MethodDeclaration createCompareInts(
             ModelFactory factory) {
         SimpleName a = factory.newSimpleName("a");
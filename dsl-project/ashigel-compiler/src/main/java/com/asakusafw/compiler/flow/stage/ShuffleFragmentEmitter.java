@@ -33,6 +33,8 @@ import com.asakusafw.compiler.flow.LinePartProcessor.Context;
 import com.asakusafw.compiler.flow.plan.StageBlock;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Segment;
 import com.asakusafw.runtime.core.Result;
+import com.asakusafw.runtime.flow.HeavyKeySplitter;
+import com.asakusafw.runtime.flow.SegmentedPartitioner.SplitKind;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.model.syntax.Comment;
 import com.asakusafw.utils.java.model.syntax.CompilationUnit;
@@ -62,6 +64,11 @@ import com.asakusafw.vocabulary.operator.Identity;
 
 /**
  * Shuffleに対するフラグメントクラスを生成するエミッタ。
+ * <p>
+ * ヘビーキーの分割時に複製されるセグメントでは、マップ出力を{@link HeavyKeySplitter}経由で書き出す。
+ * </p>
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class ShuffleFragmentEmitter {
 
@@ -167,6 +174,11 @@ public class ShuffleFragmentEmitter {
             return factory.newSimpleName(Naming.getMapOutputFragmentClass(segment.getPortId()));
         }
 
+        @Override
+        boolean isReplicated() {
+            return ShuffleEmiterUtil.getSplitKind(segment) == SplitKind.REPLICATE;
+        }
+
         @Override
         Type getInputType() {
             return importer.toType(segment.getSource().getType());
@@ -225,6 +237,8 @@ public class ShuffleFragmentEmitter {
 
         final SimpleName collector;
 
+        final SimpleName splitter;
+
         final Type keyType;
 
         final Type valueType;
@@ -256,6 +270,7 @@ public class ShuffleFragmentEmitter {
                     ImportBuilder.Strategy.TOP_LEVEL);
             this.names = new NameGenerator(factory);
             this.collector = names.create("collector");
+            this.splitter = names.create("splitter");
             this.keyType = importer.toType(keyTypeName);
             this.valueType = importer.toType(valueTypeName);
             this.keyModel = names.create("key");
@@ -264,6 +279,10 @@ public class ShuffleFragmentEmitter {
 
         abstract SimpleName getClassSimpleName();
 
+        boolean isReplicated() {
+            return false;
+        }
+
         public CompilationUnit generate() {
             TypeDeclaration type = createType();
             return factory.newCompilationUnit(
@@ -306,6 +325,9 @@ public class ShuffleFragmentEmitter {
         private List<FieldDeclaration> createFields() {
             List<FieldDeclaration> results = Lists.create();
             results.add(createCollectorField());
+            if (isReplicated()) {
+                results.add(createSplitterField());
+            }
             results.add(createKeyField());
             results.add(createValueField());
             return results;
@@ -323,6 +345,18 @@ public class ShuffleFragmentEmitter {
                     null);
         }
 
+        private FieldDeclaration createSplitterField() {
+            return factory.newFieldDeclaration(
+                    null,
+                    new AttributeBuilder(factory)
+                        .Private()
+                        .Final()
+                        .toAttributes(),
+                    t(HeavyKeySplitter.class),
+                    splitter,
+                    null);
+        }
+
         private FieldDeclaration createKeyField() {
             return factory.newFieldDeclaration(
                     null,
@@ -358,6 +392,14 @@ public class ShuffleFragmentEmitter {
                 .field(collector)
                 .assignFrom(collector)
                 .toStatement());
+            if (isReplicated()) {
+                statements.add(new ExpressionBuilder(factory, factory.newThis())
+                    .field(splitter)
+                    .assignFrom(new TypeBuilder(factory, t(HeavyKeySplitter.class))
+                        .method("create", collector)
+                        .toExpression())
+                    .toStatement());
+            }
             return factory.newConstructorDeclaration(
                     new JavadocBuilder(factory)
                         .text("インスタンスを生成する。")
@@ -420,17 +462,7 @@ public class ShuffleFragmentEmitter {
 
             SimpleName exception = names.create("exception");
             results.add(factory.newTryStatement(
-                    factory.newBlock(
-                            new ExpressionBuilder(factory, factory.newThis())
-                                .field(collector)
-                                .method("write",
-                                        new ExpressionBuilder(factory, factory.newThis())
-                                            .field(keyModel)
-                                            .toExpression(),
-                                        new ExpressionBuilder(factory, factory.newThis())
-                                            .field(valueModel)
-                                            .toExpression())
-                                .toStatement()),
+                    factory.newBlock(createWrite()),
                     Collections.singletonList(factory.newCatchClause(
                             factory.newFormalParameterDeclaration(t(Exception.class), exception),
                             factory.newBlock(
@@ -441,6 +473,30 @@ public class ShuffleFragmentEmitter {
             return results;
         }
 
+        private Statement createWrite() {
+            Expression key = new ExpressionBuilder(factory, factory.newThis())
+                .field(keyModel)
+                .toExpression();
+            Expression value = new ExpressionBuilder(factory, factory.newThis())
+                .field(valueModel)
+                .toExpression();
+            if (isReplicated()) {
+                return new ExpressionBuilder(factory, factory.newThis())
+                    .field(splitter)
+                    .method("write",
+                            new ExpressionBuilder(factory, factory.newThis())
+                                .field(collector)
+                                .toExpression(),
+                            key,
+                            value)
+                    .toStatement();
+            }
+            return new ExpressionBuilder(factory, factory.newThis())
+                .field(collector)
+                .method("write", key, value)
+                .toStatement();
+        }
+
         Expression preprocess(LinePartProcessor.Context context, List<Statement> results) {
             return context.getInput();
         }
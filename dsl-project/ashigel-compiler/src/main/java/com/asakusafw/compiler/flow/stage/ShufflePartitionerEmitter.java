@@ -20,7 +20,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import org.apache.hadoop.mapreduce.Partitioner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,12 +29,13 @@ import com.asakusafw.compiler.flow.FlowCompilingEnvironment;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Arrangement;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Segment;
 import com.asakusafw.compiler.flow.stage.ShuffleModel.Term;
+import com.asakusafw.runtime.flow.SegmentedPartitioner;
+import com.asakusafw.runtime.flow.SegmentedPartitioner.SplitKind;
 import com.asakusafw.runtime.flow.SegmentedWritable;
 import com.asakusafw.utils.collections.Lists;
 import com.asakusafw.utils.java.model.syntax.Comment;
 import com.asakusafw.utils.java.model.syntax.CompilationUnit;
 import com.asakusafw.utils.java.model.syntax.Expression;
-import com.asakusafw.utils.java.model.syntax.FormalParameterDeclaration;
 import com.asakusafw.utils.java.model.syntax.InfixOperator;
 import com.asakusafw.utils.java.model.syntax.Javadoc;
 import com.asakusafw.utils.java.model.syntax.MethodDeclaration;
@@ -56,6 +56,12 @@ import com.asakusafw.utils.java.model.util.TypeBuilder;
 
 /**
  * シャッフルフェーズで利用するパーティショナーを生成する。
+ * <p>
+ * 生成されるパーティショナーは{@link SegmentedPartitioner}を継承し、
+ * グループ化キーのハッシュ値と、ヘビーキーを分割する際の各セグメントの扱いを提供する。
+ * </p>
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class ShufflePartitionerEmitter {
 
@@ -105,6 +111,8 @@ public class ShufflePartitionerEmitter {
 
         private static final String HASH_CODE_METHOD_NAME = "getHashCode";
 
+        private static final String SPLIT_KIND_METHOD_NAME = "getSplitKind";
+
         private ShuffleModel model;
 
         private ModelFactory factory;
@@ -148,8 +156,11 @@ public class ShufflePartitionerEmitter {
             SimpleName name = factory.newSimpleName(Naming.getShufflePartitionerClass());
             importer.resolvePackageMember(name);
             List<TypeBodyDeclaration> members = Lists.create();
-            members.add(createPartition());
             members.add(createHashCode());
+            MethodDeclaration splitKind = createSplitKind();
+            if (splitKind != null) {
+                members.add(splitKind);
+            }
             members.add(ShuffleEmiterUtil.createPortToElement(factory, model));
             return factory.newClassDeclaration(
                     createJavadoc(),
@@ -161,42 +172,12 @@ public class ShufflePartitionerEmitter {
                     name,
                     Collections.<TypeParameterDeclaration>emptyList(),
                     importer.resolve(factory.newParameterizedType(
-                            t(Partitioner.class),
+                            t(SegmentedPartitioner.class),
                             Arrays.asList(keyType, valueType))),
                     Collections.<Type>emptyList(),
                     members);
         }
 
-        private MethodDeclaration createPartition() {
-            SimpleName key = factory.newSimpleName("key");
-            SimpleName value = factory.newSimpleName("value");
-            SimpleName partitions = factory.newSimpleName("numPartitions");
-
-            List<Statement> statements = Lists.create();
-            statements.add(new ExpressionBuilder(factory, factory.newThis())
-                .method(HASH_CODE_METHOD_NAME, key)
-                .apply(InfixOperator.AND, new TypeBuilder(factory, t(Integer.class))
-                    .field("MAX_VALUE")
-                    .toExpression())
-                .apply(InfixOperator.REMAINDER, partitions)
-                .toReturnStatement());
-
-            return factory.newMethodDeclaration(
-                    null,
-                    new AttributeBuilder(factory)
-                        .annotation(t(Override.class))
-                        .Public()
-                        .toAttributes(),
-                    t(int.class),
-                    factory.newSimpleName("getPartition"),
-                    Arrays.asList(new FormalParameterDeclaration[] {
-                            factory.newFormalParameterDeclaration(keyType, key),
-                            factory.newFormalParameterDeclaration(valueType, value),
-                            factory.newFormalParameterDeclaration(t(int.class), partitions),
-                    }),
-                    statements);
-        }
-
         private MethodDeclaration createHashCode() {
             SimpleName key = factory.newSimpleName("key");
             List<Statement> statements = Lists.create();
@@ -243,7 +224,8 @@ public class ShufflePartitionerEmitter {
             return factory.newMethodDeclaration(
                     null,
                     new AttributeBuilder(factory)
-                        .Private()
+                        .annotation(t(Override.class))
+                        .Protected()
                         .toAttributes(),
                     t(int.class),
                     factory.newSimpleName(HASH_CODE_METHOD_NAME),
@@ -252,6 +234,39 @@ public class ShufflePartitionerEmitter {
                     statements);
         }
 
+        private MethodDeclaration createSplitKind() {
+            SimpleName segmentId = factory.newSimpleName("segmentId");
+            List<Statement> cases = Lists.create();
+            for (Segment segment : model.getSegments()) {
+                SplitKind kind = ShuffleEmiterUtil.getSplitKind(segment);
+                if (kind == SplitKind.NONE) {
+                    continue;
+                }
+                cases.add(factory.newSwitchCaseLabel(v(segment.getPortId())));
+                cases.add(new TypeBuilder(factory, t(SplitKind.class))
+                    .field(kind.name())
+                    .toReturnStatement());
+            }
+            if (cases.isEmpty()) {
+                return null;
+            }
+            cases.add(factory.newSwitchDefaultLabel());
+            cases.add(new TypeBuilder(factory, t(SplitKind.class))
+                .field(SplitKind.NONE.name())
+                .toReturnStatement());
+            return factory.newMethodDeclaration(
+                    null,
+                    new AttributeBuilder(factory)
+                        .annotation(t(Override.class))
+                        .Protected()
+                        .toAttributes(),
+                    t(SplitKind.class),
+                    factory.newSimpleName(SPLIT_KIND_METHOD_NAME),
+                    Collections.singletonList(
+                            factory.newFormalParameterDeclaration(t(int.class), segmentId)),
+                    Collections.<Statement>singletonList(factory.newSwitchStatement(segmentId, cases)));
+        }
+
         private Javadoc createJavadoc() {
             return new JavadocBuilder(factory)
                 .text("ステージ#{0}シャッフルで利用するパーティショナー。",
@@ -0,0 +1,328 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.unify;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.compiler.flow.FlowCompilerOptions.GenericOptionValue;
+import com.asakusafw.compiler.flow.FlowCompilingEnvironment;
+import com.asakusafw.compiler.flow.FlowGraphRewriter;
+import com.asakusafw.compiler.flow.plan.FlowGraphUtil;
+import com.asakusafw.utils.collections.Lists;
+import com.asakusafw.utils.collections.Maps;
+import com.asakusafw.utils.collections.Sets;
+import com.asakusafw.utils.java.model.syntax.Name;
+import com.asakusafw.vocabulary.flow.graph.FlowElement;
+import com.asakusafw.vocabulary.flow.graph.FlowElementAttribute;
+import com.asakusafw.vocabulary.flow.graph.FlowElementInput;
+import com.asakusafw.vocabulary.flow.graph.FlowElementKind;
+import com.asakusafw.vocabulary.flow.graph.FlowElementOutput;
+import com.asakusafw.vocabulary.flow.graph.FlowElementPortDescription;
+import com.asakusafw.vocabulary.flow.graph.FlowGraph;
+import com.asakusafw.vocabulary.flow.graph.FlowPartDescription;
+import com.asakusafw.vocabulary.flow.graph.FlowResourceDescription;
+import com.asakusafw.vocabulary.flow.graph.ObservationCount;
+import com.asakusafw.vocabulary.flow.graph.OperatorDescription;
+import com.asakusafw.vocabulary.flow.graph.OperatorDescription.Declaration;
+import com.asakusafw.vocabulary.flow.graph.OperatorDescription.Parameter;
+import com.asakusafw.vocabulary.flow.graph.OperatorHelper;
+import com.asakusafw.vocabulary.flow.graph.PortConnection;
+
+/**
+ * 同一の入力に対して同一の処理を行う演算子を統合する。
+ * <p>
+ * 演算子メソッド、引数、属性、および各入力に結線された上流の出力がすべて等しい演算子を同等とみなし、
+ * それらのうちひとつの演算子のみを残して後続の要素をその出力に結線しなおす。
+ * ただし、副作用を持つ演算子({@link ObservationCount#DONT_CARE}以外の観測回数を持つもの)は統合しない。
+ * </p>
+ * <p>
+ * 統合した結果、同じ入力を読み出すマップ処理が減り、
+ * 残った処理は並行ステージの圧縮によってひとつのステージにまとめられる。
+ * </p>
+ * @since 0.4.0
+ */
+public class OperatorUnifier extends FlowCompilingEnvironment.Initialized implements FlowGraphRewriter {
+
+    static final Logger LOG = LoggerFactory.getLogger(OperatorUnifier.class);
+
+    /**
+     * 同等な演算子の統合を行うかどうかを指定するコンパイラスイッチの名前。
+     * <p>
+     * {@code -XunifyOperators=enabled}のように指定する。
+     * 指定しない場合は統合を行わない。
+     * </p>
+     */
+    public static final String KEY_UNIFY_OPERATORS = "unifyOperators";
+
+    static final GenericOptionValue DEFAULT_UNIFY_OPERATORS = GenericOptionValue.DISABLED;
+
+    @Override
+    public boolean rewrite(FlowGraph graph) throws RewriteException {
+        GenericOptionValue active = getEnvironment().getOptions().getGenericExtraAttribute(
+                KEY_UNIFY_OPERATORS,
+                DEFAULT_UNIFY_OPERATORS);
+        if (active != GenericOptionValue.ENABLED) {
+            LOG.debug("同等な演算子の統合は行いません ({}={})", KEY_UNIFY_OPERATORS, active);
+            return false;
+        }
+        LOG.info("同等な演算子を統合しています");
+        return rewriteGraph(graph);
+    }
+
+    private boolean rewriteGraph(FlowGraph graph) {
+        assert graph != null;
+        boolean modified = false;
+        for (FlowElement element : FlowGraphUtil.collectFlowParts(graph)) {
+            FlowPartDescription desc = (FlowPartDescription) element.getDescription();
+            modified |= rewriteGraph(desc.getFlowGraph());
+        }
+        boolean changed;
+        do {
+            changed = false;
+            for (List<FlowElement> candidates : collectCandidates(graph).values()) {
+                changed |= unify(candidates);
+            }
+            modified |= changed;
+        } while (changed);
+        return modified;
+    }
+
+    private Map<List<Object>, List<FlowElement>> collectCandidates(FlowGraph graph) {
+        assert graph != null;
+        Map<List<Object>, List<FlowElement>> results = Maps.create();
+        for (FlowElement element : FlowGraphUtil.collectElements(graph)) {
+            if (isTarget(element) == false) {
+                continue;
+            }
+            OperatorDescription desc = (OperatorDescription) element.getDescription();
+            Declaration decl = desc.getDeclaration();
+            List<Object> key = Lists.create();
+            key.add(decl.getAnnotationType());
+            key.add(decl.getDeclaring());
+            key.add(decl.getName());
+            key.add(decl.getParameterTypes());
+            key.add(getUpstreams(element));
+            List<FlowElement> group = results.get(key);
+            if (group == null) {
+                group = Lists.create();
+                results.put(key, group);
+            }
+            group.add(element);
+        }
+        for (Iterator<List<FlowElement>> iter = results.values().iterator(); iter.hasNext();) {
+            if (iter.next().size() <= 1) {
+                iter.remove();
+            }
+        }
+        return results;
+    }
+
+    private boolean isTarget(FlowElement element) {
+        assert element != null;
+        if (element.getDescription().getKind() != FlowElementKind.OPERATOR) {
+            return false;
+        }
+        if (element.getInputPorts().isEmpty()) {
+            return false;
+        }
+        ObservationCount count = element.getAttribute(ObservationCount.class);
+        if (count != null && count != ObservationCount.DONT_CARE) {
+            return false;
+        }
+        for (FlowElementInput input : element.getInputPorts()) {
+            if (input.getOpposites().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Set<FlowElementOutput>> getUpstreams(FlowElement element) {
+        assert element != null;
+        List<Set<FlowElementOutput>> results = Lists.create();
+        for (FlowElementInput input : element.getInputPorts()) {
+            Set<FlowElementOutput> upstreams = Sets.create();
+            upstreams.addAll(input.getOpposites());
+            results.add(upstreams);
+        }
+        return results;
+    }
+
+    private boolean unify(List<FlowElement> candidates) {
+        assert candidates != null;
+        boolean changed = false;
+        for (int i = 0; i < candidates.size(); i++) {
+            FlowElement base = candidates.get(i);
+            for (Iterator<FlowElement> iter = candidates.listIterator(i + 1); iter.hasNext();) {
+                FlowElement target = iter.next();
+                if (isEquivalent(base, target) == false) {
+                    continue;
+                }
+                LOG.debug("{}は{}と同等であるため統合されます", target, base);
+                merge(base, target);
+                iter.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void merge(FlowElement base, FlowElement target) {
+        assert base != null;
+        assert target != null;
+        List<FlowElementOutput> baseOutputs = base.getOutputPorts();
+        List<FlowElementOutput> targetOutputs = target.getOutputPorts();
+        assert baseOutputs.size() == targetOutputs.size();
+        for (int i = 0, n = baseOutputs.size(); i < n; i++) {
+            FlowElementOutput upstream = baseOutputs.get(i);
+            for (FlowElementInput downstream : targetOutputs.get(i).disconnectAll()) {
+                PortConnection.connect(upstream, downstream);
+            }
+        }
+        FlowGraphUtil.disconnect(target);
+    }
+
+    private boolean isEquivalent(FlowElement a, FlowElement b) {
+        assert a != null;
+        assert b != null;
+        OperatorDescription aDesc = (OperatorDescription) a.getDescription();
+        OperatorDescription bDesc = (OperatorDescription) b.getDescription();
+        Declaration aDecl = aDesc.getDeclaration();
+        Declaration bDecl = bDesc.getDeclaration();
+        if (aDecl.getAnnotationType() != bDecl.getAnnotationType()
+                || aDecl.getDeclaring() != bDecl.getDeclaring()
+                || aDecl.getImplementing() != bDecl.getImplementing()
+                || aDecl.getName().equals(bDecl.getName()) == false
+                || aDecl.getParameterTypes().equals(bDecl.getParameterTypes()) == false) {
+            return false;
+        }
+        if (isEquivalentParameters(aDesc.getParameters(), bDesc.getParameters()) == false) {
+            return false;
+        }
+        if (isEquivalentPorts(aDesc.getInputPorts(), bDesc.getInputPorts()) == false
+                || isEquivalentPorts(aDesc.getOutputPorts(), bDesc.getOutputPorts()) == false) {
+            return false;
+        }
+        if (isEquivalentResources(aDesc.getResources(), bDesc.getResources()) == false) {
+            return false;
+        }
+        if (isEquivalentAttributes(a, b) == false) {
+            return false;
+        }
+        return getUpstreams(a).equals(getUpstreams(b));
+    }
+
+    private boolean isEquivalentParameters(List<Parameter> a, List<Parameter> b) {
+        assert a != null;
+        assert b != null;
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0, n = a.size(); i < n; i++) {
+            Parameter aParam = a.get(i);
+            Parameter bParam = b.get(i);
+            if (aParam.getName().equals(bParam.getName()) == false
+                    || aParam.getType().equals(bParam.getType()) == false) {
+                return false;
+            }
+            Object[] aValue = { aParam.getValue() };
+            Object[] bValue = { bParam.getValue() };
+            if (Arrays.deepEquals(aValue, bValue) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEquivalentPorts(List<FlowElementPortDescription> a, List<FlowElementPortDescription> b) {
+        assert a != null;
+        assert b != null;
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0, n = a.size(); i < n; i++) {
+            FlowElementPortDescription aPort = a.get(i);
+            FlowElementPortDescription bPort = b.get(i);
+            if (aPort.getName().equals(bPort.getName()) == false
+                    || aPort.getDataType().equals(bPort.getDataType()) == false) {
+                return false;
+            }
+            if (aPort.getShuffleKey() == null
+                    ? bPort.getShuffleKey() != null
+                    : aPort.getShuffleKey().equals(bPort.getShuffleKey()) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEquivalentResources(List<FlowResourceDescription> a, List<FlowResourceDescription> b) {
+        assert a != null;
+        assert b != null;
+        return a.equals(b);
+    }
+
+    private boolean isEquivalentAttributes(FlowElement a, FlowElement b) {
+        assert a != null;
+        assert b != null;
+        Set<Class<? extends FlowElementAttribute>> kinds = Sets.create();
+        collectAttributeKinds(a, kinds);
+        collectAttributeKinds(b, kinds);
+        for (Class<? extends FlowElementAttribute> kind : kinds) {
+            FlowElementAttribute aAttr = a.getAttribute(kind);
+            FlowElementAttribute bAttr = b.getAttribute(kind);
+            if (aAttr == null || bAttr == null) {
+                if (aAttr != bAttr) {
+                    return false;
+                }
+            } else if (aAttr instanceof OperatorHelper && bAttr instanceof OperatorHelper) {
+                OperatorHelper aHelper = (OperatorHelper) aAttr;
+                OperatorHelper bHelper = (OperatorHelper) bAttr;
+                if (aHelper.getName().equals(bHelper.getName()) == false
+                        || aHelper.getParameterTypes().equals(bHelper.getParameterTypes()) == false) {
+                    return false;
+                }
+            } else if (aAttr.equals(bAttr) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void collectAttributeKinds(FlowElement element, Set<Class<? extends FlowElementAttribute>> kinds) {
+        assert element != null;
+        assert kinds != null;
+        Collection<FlowElementAttribute> attributes = Lists.create();
+        attributes.addAll(((OperatorDescription) element.getDescription()).getAttributes());
+        attributes.addAll(element.getAttributeOverride());
+        for (FlowElementAttribute attribute : attributes) {
+            kinds.add(attribute.getDeclaringClass());
+        }
+    }
+
+    @Override
+    public Name resolve(FlowResourceDescription resource) throws RewriteException {
+        return null;
+    }
+}
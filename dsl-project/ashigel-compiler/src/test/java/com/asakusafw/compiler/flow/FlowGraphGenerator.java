@@ -15,6 +15,7 @@
  */
 package com.asakusafw.compiler.flow;
 
+import java.lang.annotation.Annotation;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -46,6 +47,7 @@ import com.asakusafw.vocabulary.flow.graph.OperatorDescription;
 import com.asakusafw.vocabulary.flow.graph.OutputDescription;
 import com.asakusafw.vocabulary.flow.graph.PortConnection;
 import com.asakusafw.vocabulary.flow.graph.PortDirection;
+import com.asakusafw.vocabulary.flow.graph.ShuffleKey;
 import com.asakusafw.vocabulary.flow.util.PseudElementDescription;
 import com.asakusafw.vocabulary.operator.Identity;
 
@@ -130,6 +132,89 @@ public class FlowGraphGenerator {
         return register(name, desc);
     }
 
+    /**
+     * シャッフルを伴う演算子を追加する。
+     * @param name 追加する要素の名前
+     * @param inputList スペース区切りの入力ポート名の一覧
+     * @param outputList スペース区切りの出力ポート名の一覧
+     * @param groupList スペース区切りのグループ化プロパティ名の一覧
+     * @return 追加した要素
+     */
+    public FlowElement defineShuffle(
+            String name,
+            String inputList,
+            String outputList,
+            String groupList) {
+        ShuffleKey key = new ShuffleKey(
+                Arrays.asList(groupList.trim().split("\\s+")),
+                Collections.<ShuffleKey.Order>emptyList());
+        List<FlowElementPortDescription> inputs = Lists.create();
+        for (String input : inputList.trim().split("\\s+")) {
+            inputs.add(new FlowElementPortDescription(input, TYPE, key));
+        }
+        List<FlowElementPortDescription> outputs = parsePorts(PortDirection.OUTPUT, outputList);
+        FlowElementDescription desc = new OperatorDescription(
+                new OperatorDescription.Declaration(
+                        Identity.class,
+                        TYPE,
+                        TYPE,
+                        name,
+                        Collections.<Class<?>>emptyList()),
+                inputs,
+                outputs,
+                Collections.<FlowResourceDescription>emptyList(),
+                Collections.<OperatorDescription.Parameter>emptyList(),
+                Arrays.<FlowElementAttribute>asList(FlowBoundary.SHUFFLE));
+        return register(name, desc);
+    }
+
+    /**
+     * 指定の種類を持ち、シャッフルを伴う演算子を追加する。
+     * <p>
+     * 追加する演算子は、入力ポート{@code in}と出力ポート{@code out}をそれぞれ一つずつ有する。
+     * </p>
+     * @param name 追加する要素の名前
+     * @param kind 演算子の種類を表す注釈の型
+     * @param inputType 入力の型
+     * @param outputType 出力の型
+     * @param groupList スペース区切りのグループ化プロパティ名の一覧
+     * @return 追加した要素
+     */
+    public FlowElement defineShuffle(
+            String name,
+            Class<? extends Annotation> kind,
+            Class<?> inputType,
+            Class<?> outputType,
+            String groupList) {
+        ShuffleKey key = new ShuffleKey(
+                Arrays.asList(groupList.trim().split("\\s+")),
+                Collections.<ShuffleKey.Order>emptyList());
+        FlowElementDescription desc = new OperatorDescription(
+                new OperatorDescription.Declaration(
+                        kind,
+                        TYPE,
+                        TYPE,
+                        name,
+                        Collections.<Class<?>>emptyList()),
+                Collections.singletonList(new FlowElementPortDescription("in", inputType, key)),
+                Collections.singletonList(new FlowElementPortDescription("out", outputType, PortDirection.OUTPUT)),
+                Collections.<FlowResourceDescription>emptyList(),
+                Collections.<OperatorDescription.Parameter>emptyList(),
+                Arrays.<FlowElementAttribute>asList(FlowBoundary.SHUFFLE));
+        return register(name, desc);
+    }
+
+    /**
+     * 既存の要素と同じ定義を持つ要素を追加する。
+     * @param name 追加する要素の名前
+     * @param origin 複製元の要素の名前
+     * @return 追加した要素
+     */
+    public FlowElement defineCopy(String name, String origin) {
+        FlowElement element = new FlowElement(get(origin).getDescription());
+        return register(name, element);
+    }
+
     /**
      * 空要素を追加する。
      * @param name 追加する要素の名前
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.jobflow;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.asakusafw.compiler.flow.example.TwinCogroupStage;
+import com.asakusafw.compiler.flow.processor.flow.MasterJoinFlowTrivial;
+import com.asakusafw.compiler.flow.testing.model.Ex1;
+import com.asakusafw.compiler.flow.testing.model.Ex2;
+import com.asakusafw.compiler.flow.testing.model.ExJoined;
+import com.asakusafw.compiler.testing.JobflowInfo;
+import com.asakusafw.compiler.testing.StageInfo;
+import com.asakusafw.compiler.util.tester.CompilerTester;
+import com.asakusafw.compiler.util.tester.CompilerTester.TestInput;
+import com.asakusafw.compiler.util.tester.CompilerTester.TestOutput;
+import com.asakusafw.runtime.stage.AbstractStageClient;
+import com.asakusafw.runtime.stage.StageCompression;
+import com.asakusafw.runtime.stage.StageConstants;
+import com.asakusafw.runtime.stage.StageEmptyInput;
+import com.asakusafw.runtime.stage.StageLocalMode;
+import com.asakusafw.runtime.stage.StagePartitioning;
+import com.asakusafw.runtime.stage.input.TemporaryInputFormat;
+import com.asakusafw.runtime.stage.temporary.TemporaryStorage;
+
+/**
+ * Test for {@link StageClientEmitter}.
+ */
+public class StageClientEmitterTest {
+
+    /**
+     * テストヘルパ。
+     */
+    @Rule
+    public CompilerTester tester = new CompilerTester();
+
+    /**
+     * 中間データを列指向形式で出力する。
+     * @throws Exception if failed
+     */
+    @Test
+    public void temporaryFormat_columnar() throws Exception {
+        tester.options().putExtraAttribute(
+                StageClientEmitter.KEY_TEMPORARY_FORMAT,
+                TemporaryStorage.FORMAT_COLUMNAR);
+        JobflowInfo info = run(1);
+        for (Configuration conf : configure(info)) {
+            assertThat(conf.get(TemporaryStorage.KEY_FORMAT), is(TemporaryStorage.FORMAT_COLUMNAR));
+        }
+    }
+
+    /**
+     * 列指向形式の中間データから、後続のシャッフルで利用するプロパティのみを読み出す。
+     * @throws Exception if failed
+     */
+    @Test
+    public void temporaryFormat_columnar_projection() throws Exception {
+        tester.options().putExtraAttribute(
+                StageClientEmitter.KEY_TEMPORARY_FORMAT,
+                TemporaryStorage.FORMAT_COLUMNAR);
+        TestInput<Ex1> in1 = tester.input(Ex1.class, "ex1");
+        TestInput<Ex2> in2 = tester.input(Ex2.class, "ex2");
+        TestOutput<ExJoined> joined = tester.output(ExJoined.class, "joined");
+        TestOutput<Ex2> missing = tester.output(Ex2.class, "missing");
+
+        Ex1 ex1 = new Ex1();
+        ex1.setSid(1);
+        ex1.setValue(10);
+        ex1.setStringAsString("unused");
+        in1.add(ex1);
+        Ex2 ex2 = new Ex2();
+        ex2.setSid(2);
+        ex2.setValue(10);
+        in2.add(ex2);
+        ex2.setSid(3);
+        ex2.setValue(20);
+        in2.add(ex2);
+
+        JobflowInfo info = tester.compileFlow(new MasterJoinFlowTrivial(
+                in1.flow(), in2.flow(),
+                joined.flow(), missing.flow()));
+        assertThat(tester.run(info), is(true));
+
+        List<ExJoined> joinedList = joined.toList();
+        assertThat(joinedList.size(), is(1));
+        assertThat(joinedList.get(0).getSid1(), is(1L));
+        assertThat(joinedList.get(0).getSid2(), is(2L));
+        assertThat(joinedList.get(0).getValue(), is(10));
+        List<Ex2> missingList = missing.toList();
+        assertThat(missingList.size(), is(1));
+        assertThat(missingList.get(0).getSid(), is(3L));
+
+        int projected = 0;
+        for (Configuration conf : configure(info)) {
+            for (Map.Entry<String, String> entry : conf) {
+                if (entry.getKey().startsWith(TemporaryInputFormat.KEY_PROJECTION_PREFIX)) {
+                    List<String> names = Arrays.asList(entry.getValue().split(","));
+                    assertThat(names, hasItem("value"));
+                    assertThat(names, not(hasItem("string")));
+                    projected++;
+                }
+            }
+        }
+        assertThat(projected, is(greaterThan(0)));
+    }
+
+    /**
+     * 中間データを圧縮する。
+     * @throws Exception if failed
+     */
+    @Test
+    public void stageCompression() throws Exception {
+        tester.options().putExtraAttribute(
+                StageClientEmitter.KEY_STAGE_COMPRESSION,
+                StageCompression.MODE_DEFAULT);
+        JobflowInfo info = run(1);
+        for (Configuration conf : configure(info)) {
+            assertThat(conf.get(StageCompression.KEY_TEMPORARY_CODEC), is(DefaultCodec.class.getName()));
+            assertThat(StageCompression.createTemporaryCodec(conf), instanceOf(DefaultCodec.class));
+        }
+    }
+
+    /**
+     * 中間データの圧縮方式を指定しない場合はクラスターの設定を利用する (既定)。
+     * @throws Exception if failed
+     */
+    @Test
+    public void stageCompression_default() throws Exception {
+        JobflowInfo info = run(1);
+        for (Configuration conf : configure(info)) {
+            assertThat(StageCompression.isConfigured(conf), is(false));
+        }
+    }
+
+    /**
+     * サンプリングによってパーティションを決定する。
+     * @throws Exception if failed
+     */
+    @Test
+    public void stagePartitioning() throws Exception {
+        tester.options().putExtraAttribute(
+                StageClientEmitter.KEY_STAGE_PARTITIONING,
+                StagePartitioning.MODE_SAMPLED);
+        JobflowInfo info = run(10);
+        int shuffles = 0;
+        for (Configuration conf : configure(info)) {
+            String mode = conf.get(StagePartitioning.KEY_MODE);
+            if (mode != null) {
+                assertThat(mode, is(StagePartitioning.MODE_SAMPLED));
+                shuffles++;
+            }
+        }
+        assertThat(shuffles, is(greaterThan(0)));
+    }
+
+    /**
+     * 入力が空のステージの実行を省略する。
+     * @throws Exception if failed
+     */
+    @Test
+    public void skipEmptyInput() throws Exception {
+        tester.options().putExtraAttribute(
+                StageClientEmitter.KEY_SKIP_EMPTY_INPUT,
+                "enabled");
+        JobflowInfo info = run(0);
+        for (Configuration conf : configure(info)) {
+            assertThat(StageEmptyInput.isEnabled(conf), is(true));
+        }
+    }
+
+    /**
+     * 入力が空のステージの実行を省略しない (既定)。
+     * @throws Exception if failed
+     */
+    @Test
+    public void skipEmptyInput_default() throws Exception {
+        JobflowInfo info = run(0);
+        for (Configuration conf : configure(info)) {
+            assertThat(StageEmptyInput.isEnabled(conf), is(false));
+        }
+    }
+
+    /**
+     * 小さなステージをローカルで実行する。
+     * @throws Exception if failed
+     */
+    @Test
+    public void stageLocalThreshold() throws Exception {
+        tester.options().putExtraAttribute(
+                StageClientEmitter.KEY_STAGE_LOCAL_THRESHOLD,
+                String.valueOf(1024 * 1024));
+        JobflowInfo info = run(1);
+        for (Configuration conf : configure(info)) {
+            assertThat(conf.getLong(StageLocalMode.KEY_THRESHOLD, StageLocalMode.DEFAULT_THRESHOLD), is(1024L * 1024));
+        }
+    }
+
+    /**
+     * ローカル実行の上限を指定しない場合は実行時の設定に従う (既定)。
+     * @throws Exception if failed
+     */
+    @Test
+    public void stageLocalThreshold_default() throws Exception {
+        JobflowInfo info = run(1);
+        for (Configuration conf : configure(info)) {
+            assertThat(conf.get(StageLocalMode.KEY_THRESHOLD), is(nullValue()));
+        }
+    }
+
+    /**
+     * {@link TwinCogroupStage}をコンパイルして実行し、結果を検証する。
+     * @param count 入力データの件数
+     * @return コンパイル結果
+     */
+    private JobflowInfo run(int count) throws IOException {
+        TestInput<Ex1> in = tester.input(Ex1.class, "in");
+        TestOutput<Ex1> out = tester.output(Ex1.class, "out");
+        for (int i = 0; i < count; i++) {
+            Ex1 ex1 = new Ex1();
+            ex1.setStringAsString("Hello" + i);
+            ex1.setValue(i);
+            in.add(ex1);
+        }
+
+        JobflowInfo info = tester.compileFlow(new TwinCogroupStage(in.flow(), out.flow()));
+        assertThat(tester.run(info), is(true));
+
+        List<Ex1> outputs = out.toList();
+        assertThat(outputs.size(), is(count));
+        for (Ex1 output : outputs) {
+            int index = Integer.parseInt(output.getStringAsString().substring(5));
+            assertThat(output.getValue(), is(index * 2));
+        }
+        return info;
+    }
+
+    /**
+     * 生成したステージクライアントで各ステージのジョブを構成し、その設定を返す。
+     * @param info コンパイル結果
+     * @return 各ステージのジョブの設定
+     */
+    private List<Configuration> configure(JobflowInfo info) throws Exception {
+        ClassLoader loader = new URLClassLoader(
+                new URL[] { info.getPackageFile().toURI().toURL() },
+                getClass().getClassLoader());
+        List<Configuration> results = new ArrayList<Configuration>();
+        for (StageInfo stage : info.getStages()) {
+            Configuration conf = new Configuration(tester.configuration());
+            conf.setClassLoader(loader);
+            conf.set(StageConstants.PROP_USER, "testing");
+            conf.set(StageConstants.PROP_EXECUTION_ID, "testing");
+            conf.set(StageConstants.PROP_ASAKUSA_BATCH_ARGS, "");
+            AbstractStageClient client = loader.loadClass(stage.getClassName())
+                .asSubclass(AbstractStageClient.class)
+                .newInstance();
+            client.setConf(conf);
+            Job job = client.createJob(conf);
+            results.add(job.getConfiguration());
+        }
+        assertThat(results.isEmpty(), is(false));
+        return results;
+    }
+}
@@ -20,11 +20,14 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
@@ -38,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import com.asakusafw.compiler.batch.ResourceRepository;
 import com.asakusafw.compiler.flow.JobflowCompilerTestRoot;
 import com.asakusafw.compiler.flow.Packager;
+import com.asakusafw.utils.collections.Maps;
 import com.asakusafw.utils.collections.Sets;
 import com.asakusafw.utils.java.model.syntax.Comment;
 import com.asakusafw.utils.java.model.syntax.CompilationUnit;
@@ -161,6 +165,110 @@ public class FilePackagerTest extends JobflowCompilerTestRoot {
         }
     }
 
+    /**
+     * 変更のないプログラムはキャッシュしたコンパイル結果を再利用する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void build_cached() throws Exception {
+        File cache = folder.newFolder();
+        environment.getOptions().putExtraAttribute(
+                FilePackager.KEY_COMPILE_CACHE,
+                cache.getAbsolutePath());
+
+        FilePackager first = new FilePackager(
+                folder.newFolder(),
+                Arrays.<ResourceRepository>asList());
+        first.initialize(environment);
+        emit(first, java("Hello"));
+        build(Sets.<String>create(), first);
+
+        overwrite(cache, "com/example/Hello.class", "CACHED");
+
+        FilePackager second = new FilePackager(
+                folder.newFolder(),
+                Arrays.<ResourceRepository>asList());
+        second.initialize(environment);
+        emit(second, java("Hello"));
+        write(second, "com.example", "messages.properties", "key=value");
+        Map<String, String> contents = build(second);
+        assertThat(contents.get("com/example/Hello.class"), is("CACHED"));
+        assertThat(contents.get("com/example/messages.properties"), is("key=value"));
+    }
+
+    /**
+     * 変更されたプログラムは再コンパイルする。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void build_cached_changed() throws Exception {
+        File cache = folder.newFolder();
+        environment.getOptions().putExtraAttribute(
+                FilePackager.KEY_COMPILE_CACHE,
+                cache.getAbsolutePath());
+
+        FilePackager first = new FilePackager(
+                folder.newFolder(),
+                Arrays.<ResourceRepository>asList());
+        first.initialize(environment);
+        emit(first, java("Hello"));
+        build(Sets.<String>create(), first);
+
+        overwrite(cache, "com/example/Hello.class", "CACHED");
+
+        FilePackager second = new FilePackager(
+                folder.newFolder(),
+                Arrays.<ResourceRepository>asList());
+        second.initialize(environment);
+        emit(second, java("Hello"));
+        emit(second, java("World"));
+        Map<String, String> contents = build(second);
+        assertThat(contents.get("com/example/Hello.class"), is(not("CACHED")));
+        assertThat(contents.keySet(), hasItem("com/example/World.class"));
+    }
+
+    private void overwrite(File cache, String path, String value) throws IOException {
+        File flow = new File(new File(cache, environment.getBatchId()), environment.getFlowId());
+        File file = new File(new File(flow, "bin"), path);
+        assertThat(file.isFile(), is(true));
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(value.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private Map<String, String> build(FilePackager packager) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        packager.build(output);
+        output.close();
+
+        Map<String, String> results = Maps.create();
+        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(output.toByteArray()));
+        try {
+            while (true) {
+                JarEntry entry = jar.getNextJarEntry();
+                if (entry == null) {
+                    break;
+                }
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                byte[] bytes = new byte[256];
+                while (true) {
+                    int read = jar.read(bytes);
+                    if (read < 0) {
+                        break;
+                    }
+                    buf.write(bytes, 0, read);
+                }
+                results.put(entry.getName(), new String(buf.toByteArray(), "UTF-8"));
+            }
+        } finally {
+            jar.close();
+        }
+        return results;
+    }
+
     private void build(Set<String> entries, FilePackager packager)
             throws IOException {
         ByteArrayOutputStream output = new ByteArrayOutputStream();
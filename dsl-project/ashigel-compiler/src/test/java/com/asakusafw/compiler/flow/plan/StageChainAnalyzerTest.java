@@ -0,0 +1,226 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.plan;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.compiler.flow.FlowCompilerOptions;
+import com.asakusafw.compiler.flow.FlowGraphGenerator;
+import com.asakusafw.compiler.flow.FlowGraphRewriter;
+import com.asakusafw.compiler.flow.plan.StageChainAnalyzer.Chain;
+import com.asakusafw.compiler.flow.plan.StageChainAnalyzer.Relation;
+import com.asakusafw.compiler.flow.testing.model.Ex1;
+import com.asakusafw.compiler.flow.testing.model.ExSummarized;
+import com.asakusafw.vocabulary.flow.graph.FlowElement;
+import com.asakusafw.vocabulary.operator.Fold;
+import com.asakusafw.vocabulary.operator.Summarize;
+
+/**
+ * Test for {@link StageChainAnalyzer}.
+ */
+public class StageChainAnalyzerTest {
+
+    private final FlowGraphGenerator gen = new FlowGraphGenerator();
+
+    private final FlowCompilerOptions options = new FlowCompilerOptions();
+
+    /**
+     * 同じキーで連続するシャッフル。
+     */
+    @Test
+    public void equivalent() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", "in", "out", "a b");
+        gen.defineShuffle("op2", "in", "out", "a b");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        Chain chain = analyze();
+        assertThat(chain.getRelation(), is(Relation.EQUIVALENT));
+        assertThat(chain.getReason(), containsString("op1"));
+    }
+
+    /**
+     * 先行するキーの接頭辞で連続するシャッフル。
+     */
+    @Test
+    public void prefix() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", "in", "out", "a b");
+        gen.defineShuffle("op2", "in", "out", "a");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        Chain chain = analyze();
+        assertThat(chain.getRelation(), is(Relation.PREFIX));
+    }
+
+    /**
+     * 異なるキーで連続するシャッフル。
+     */
+    @Test
+    public void different() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", "in", "out", "a");
+        gen.defineShuffle("op2", "in", "out", "b");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        Chain chain = analyze();
+        assertThat(chain.getRelation(), is(Relation.DIFFERENT));
+    }
+
+    /**
+     * 後続するシャッフルがほかの入力も受け取る。
+     */
+    @Test
+    public void multiple_sources() {
+        gen.defineInput("in1");
+        gen.defineInput("in2");
+        gen.defineShuffle("op1", "in", "out", "a");
+        gen.defineShuffle("op2", "in", "out", "a");
+        gen.defineOutput("out");
+        gen.connect("in1", "op1").connect("op1", "op2").connect("op2", "out");
+        gen.connect("in2", "op2");
+
+        Chain chain = analyze();
+        assertThat(chain.getRelation(), is(Relation.MULTIPLE_SOURCES));
+    }
+
+    /**
+     * 先行するレデュース処理がない。
+     */
+    @Test
+    public void no_chain() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", "in", "out", "a");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "out");
+
+        StageGraph graph = plan();
+        assertThat(StageChainAnalyzer.analyze(graph).isEmpty(), is(true));
+    }
+
+    /**
+     * 単純集計演算子に同じキーで後続する畳み込み演算子。
+     */
+    @Test
+    public void summarize_fold() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", Summarize.class, Ex1.class, ExSummarized.class, "string");
+        gen.defineShuffle("op2", Fold.class, ExSummarized.class, ExSummarized.class, "string");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        List<FlowElement> folds = StageChainAnalyzer.findChainableFolds(gen.toGraph());
+        assertThat(folds, is(Collections.singletonList(gen.get("op2"))));
+
+        StageGraph graph = plan();
+        assertThat(graph.getStages().size(), is(1));
+    }
+
+    /**
+     * 単純集計演算子のキーをすべて含むキーで後続する畳み込み演算子。
+     */
+    @Test
+    public void summarize_fold_superset() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", Summarize.class, Ex1.class, ExSummarized.class, "string");
+        gen.defineShuffle("op2", Fold.class, ExSummarized.class, ExSummarized.class, "value string");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        List<FlowElement> folds = StageChainAnalyzer.findChainableFolds(gen.toGraph());
+        assertThat(folds, is(Collections.singletonList(gen.get("op2"))));
+    }
+
+    /**
+     * 単純集計演算子と異なるキーで後続する畳み込み演算子。
+     */
+    @Test
+    public void summarize_fold_different() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", Summarize.class, Ex1.class, ExSummarized.class, "string");
+        gen.defineShuffle("op2", Fold.class, ExSummarized.class, ExSummarized.class, "value");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        assertThat(StageChainAnalyzer.findChainableFolds(gen.toGraph()).isEmpty(), is(true));
+
+        StageGraph graph = plan();
+        assertThat(graph.getStages().size(), is(2));
+    }
+
+    /**
+     * 単純集計演算子以外の入力も受け取る畳み込み演算子。
+     */
+    @Test
+    public void summarize_fold_multiple_sources() {
+        gen.defineInput("in1");
+        gen.defineInput("in2");
+        gen.defineShuffle("op1", Summarize.class, Ex1.class, ExSummarized.class, "string");
+        gen.defineShuffle("op2", Fold.class, ExSummarized.class, ExSummarized.class, "string");
+        gen.defineOutput("out");
+        gen.connect("in1", "op1").connect("op1", "op2").connect("op2", "out");
+        gen.connect("in2", "op2");
+
+        assertThat(StageChainAnalyzer.findChainableFolds(gen.toGraph()).isEmpty(), is(true));
+    }
+
+    /**
+     * 単純集計演算子と畳み込み演算子の連結を無効にする。
+     */
+    @Test
+    public void summarize_fold_disabled() {
+        gen.defineInput("in");
+        gen.defineShuffle("op1", Summarize.class, Ex1.class, ExSummarized.class, "string");
+        gen.defineShuffle("op2", Fold.class, ExSummarized.class, ExSummarized.class, "string");
+        gen.defineOutput("out");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2", "out");
+
+        options.putExtraAttribute(StagePlanner.KEY_CHAIN_SUMMARIZE_FOLD, "disabled");
+        StageGraph graph = plan();
+        assertThat(graph.getStages().size(), is(2));
+    }
+
+    private Chain analyze() {
+        StageGraph graph = plan();
+        assertThat(graph.getStages().size(), is(2));
+        List<Chain> chains = StageChainAnalyzer.analyze(graph);
+        assertThat(chains.size(), is(1));
+        Chain chain = chains.get(0);
+        assertThat(chain.getUpstreams(), is(Collections.singleton(graph.getStages().get(0))));
+        assertThat(chain.getDownstream(), is(graph.getStages().get(1)));
+        return chain;
+    }
+
+    private StageGraph plan() {
+        options.setCompressConcurrentStage(false);
+        options.setCompressFlowPart(false);
+        StagePlanner planner = new StagePlanner(
+                Collections.<FlowGraphRewriter>emptyList(),
+                options);
+        StageGraph graph = planner.plan(gen.toGraph());
+        assertThat(graph, is(notNullValue()));
+        return graph;
+    }
+}
@@ -137,6 +137,56 @@ public class StagePlannerRunTest {
         assertThat(outputs.get(0), equalTo(outputs.get(1)));
     }
 
+    /**
+     * duplicate into both updating and read-only operators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void duplicate_update() throws Exception {
+        TestInput<Ex1> in1 = tester.input(Ex1.class, "in1");
+        TestOutput<Ex1> out1 = tester.output(Ex1.class, "out1");
+        TestOutput<Ex1> out2 = tester.output(Ex1.class, "out2");
+        TestOutput<Ex1> out3 = tester.output(Ex1.class, "out3");
+        TestOutput<Ex1> out4 = tester.output(Ex1.class, "out4");
+
+        Ex1 model = new Ex1();
+        model.setValue(0);
+        in1.add(model);
+
+        final In<Ex1> pIn1 = in1.flow();
+        final Out<Ex1> pOut1 = out1.flow();
+        final Out<Ex1> pOut2 = out2.flow();
+        final Out<Ex1> pOut3 = out3.flow();
+        final Out<Ex1> pOut4 = out4.flow();
+        boolean result = tester.runFlow(new FlowDescription() {
+            @Override
+            protected void describe() {
+                ExOperatorFactory f = new ExOperatorFactory();
+                CoreOperatorFactory c = new CoreOperatorFactory();
+                Update u1 = f.update(pIn1, 1);
+                Update u2 = f.update(pIn1, 2);
+                pOut1.add(u1.out);
+                pOut2.add(u2.out);
+                pOut3.add(c.restructure(pIn1, Ex1.class));
+                pOut4.add(pIn1);
+            }
+        });
+        assertThat(result, is(true));
+
+        List<Ex1> r1 = out1.toList();
+        List<Ex1> r2 = out2.toList();
+        List<Ex1> r3 = out3.toList();
+        List<Ex1> r4 = out4.toList();
+        assertThat(r1.size(), is(1));
+        assertThat(r2.size(), is(1));
+        assertThat(r3.size(), is(1));
+        assertThat(r4.size(), is(1));
+        assertThat(r1.get(0).getValue(), is(1));
+        assertThat(r2.get(0).getValue(), is(2));
+        assertThat(r3.get(0).getValue(), is(0));
+        assertThat(r4.get(0).getValue(), is(0));
+    }
+
     /**
      * confluentの確認。
      * @throws Exception テストに失敗した場合
@@ -57,6 +57,26 @@ public class MasterJoinFlowProcessorTest {
         runEquality(DataSize.UNKNOWN);
     }
 
+    /**
+     * シャッフル前のプロパティの射影を明示的に有効にするテスト。
+     * @throws Exception テストが失敗した場合
+     */
+    @Test
+    public void with_projection() throws Exception {
+        tester.options().putExtraAttribute(ShuffleProjection.KEY_PROJECT_SHUFFLE_VALUES, "enabled");
+        runEquality(DataSize.UNKNOWN);
+    }
+
+    /**
+     * シャッフル前のプロパティの射影を無効にするテスト。
+     * @throws Exception テストが失敗した場合
+     */
+    @Test
+    public void without_projection() throws Exception {
+        tester.options().putExtraAttribute(ShuffleProjection.KEY_PROJECT_SHUFFLE_VALUES, "disabled");
+        runEquality(DataSize.UNKNOWN);
+    }
+
     /**
      * TINYを指定するテスト。
      * @throws Exception テストが失敗した場合
@@ -66,6 +86,16 @@ public class MasterJoinFlowProcessorTest {
         runEquality(DataSize.TINY);
     }
 
+    /**
+     * SMALLを指定するテスト。
+     * @throws Exception テストが失敗した場合
+     */
+    @Test
+    public void small() throws Exception {
+        tester.options().setHashJoinForSmall(true);
+        runEquality(DataSize.SMALL);
+    }
+
     private void runEquality(DataSize dataSize) throws IOException {
         TestInput<Ex1> in1 = tester.input(Ex1.class, "Ex1", dataSize);
         TestInput<Ex2> in2 = tester.input(Ex2.class, "ex2");
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.processor;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.compiler.flow.JobflowCompilerTestRoot;
+import com.asakusafw.compiler.flow.LinePartProcessor;
+import com.asakusafw.compiler.flow.processor.flow.MasterJoinFlowTrivial;
+import com.asakusafw.compiler.flow.stage.ShuffleModel;
+import com.asakusafw.compiler.flow.stage.ShuffleModel.Segment;
+import com.asakusafw.compiler.flow.stage.StageModel;
+
+/**
+ * Test for {@link ShuffleProjection}.
+ */
+public class ShuffleProjectionTest extends JobflowCompilerTestRoot {
+
+    /**
+     * マスタ側のポートから後続で利用しないプロパティが取り除かれる。
+     * @throws Exception テストが失敗した場合
+     */
+    @Test
+    public void masterJoin() throws Exception {
+        List<ShuffleProjection> projections = collect(compile(MasterJoinFlowTrivial.class));
+        assertThat(projections.size(), is(1));
+
+        ShuffleProjection projection = projections.get(0);
+        assertThat(projection.getPropertyNames(), hasItem("sid"));
+        assertThat(projection.getPropertyNames(), hasItem("value"));
+        assertThat(projection.getPropertyNames(), not(hasItem("string")));
+    }
+
+    /**
+     * コンパイラスイッチで射影を無効にする。
+     * @throws Exception テストが失敗した場合
+     */
+    @Test
+    public void disabled() throws Exception {
+        environment.getOptions().putExtraAttribute(ShuffleProjection.KEY_PROJECT_SHUFFLE_VALUES, "disabled");
+        List<ShuffleProjection> projections = collect(compile(MasterJoinFlowTrivial.class));
+        assertThat(projections.size(), is(0));
+    }
+
+    private List<ShuffleProjection> collect(List<StageModel> stages) {
+        List<ShuffleProjection> results = new ArrayList<ShuffleProjection>();
+        for (StageModel stage : stages) {
+            ShuffleModel shuffle = stage.getShuffleModel();
+            if (shuffle == null) {
+                continue;
+            }
+            for (Segment segment : shuffle.getSegments()) {
+                LinePartProcessor converter = segment.getDescription().getConverter();
+                if (converter instanceof ShuffleProjection) {
+                    results.add((ShuffleProjection) converter);
+                }
+            }
+        }
+        return results;
+    }
+}
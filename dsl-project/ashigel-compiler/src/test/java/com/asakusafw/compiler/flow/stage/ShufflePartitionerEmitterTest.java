@@ -21,6 +21,8 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.junit.Test;
 
@@ -32,6 +34,7 @@ import com.asakusafw.compiler.flow.stage.ShuffleModel.Segment;
 import com.asakusafw.compiler.flow.testing.model.Ex1;
 import com.asakusafw.compiler.flow.testing.model.Ex2;
 import com.asakusafw.runtime.flow.SegmentedWritable;
+import com.asakusafw.runtime.stage.StagePartitioning;
 import com.asakusafw.utils.java.model.syntax.Name;
 import com.asakusafw.vocabulary.flow.FlowDescription;
 
@@ -130,6 +133,39 @@ public class ShufflePartitionerEmitterTest extends JobflowCompilerTestRoot {
         assertThat(p01, not(p02));
     }
 
+    /**
+     * パーティション表を利用するテスト。
+     * @throws Exception 出力に失敗した場合
+     */
+    @Test
+    public void table() throws Exception {
+        ShuffleModel analyzed = shuffle(CoGroupStage.class);
+        ShufflePartitionerEmitter emitter = new ShufflePartitionerEmitter(environment);
+        Name key = emitKey(analyzed);
+        Name value = emitValue(analyzed);
+        Name name = emitter.emit(analyzed, key, value);
+
+        ClassLoader loader = start();
+        @SuppressWarnings("unchecked")
+        Partitioner<Object, Object> part = (Partitioner<Object, Object>) create(loader, name);
+        Configuration conf = new Configuration(false);
+        conf.set(StagePartitioning.KEY_TABLE, "1,1,1,1");
+        ((Configurable) part).setConf(conf);
+
+        SegmentedWritable k = (SegmentedWritable) create(loader, key);
+        SegmentedWritable v = (SegmentedWritable) create(loader, value);
+        Segment seg1 = analyzed.getSegments().get(0);
+        for (int i = 0; i < 10; i++) {
+            Ex1 ex1 = new Ex1();
+            ex1.setSid(i);
+            ex1.setValue(i);
+            ex1.setStringAsString("ex" + i);
+            setShuffleKeyValue(seg1, k, v, ex1);
+            assertThat(part.getPartition(k, v, 2), is(1));
+            assertThat(part.getPartition(k, v, 3), lessThan(3));
+        }
+    }
+
     private ShuffleModel shuffle(Class<? extends FlowDescription> aClass) {
         StageGraph graph = jfToStageGraph(aClass);
         assertThat(graph.getStages().size(), is(1));
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.compiler.flow.unify;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.asakusafw.compiler.flow.FlowGraphGenerator;
+import com.asakusafw.compiler.flow.JobflowCompilerTestRoot;
+import com.asakusafw.compiler.flow.plan.FlowGraphUtil;
+import com.asakusafw.vocabulary.flow.graph.FlowElementOutput;
+import com.asakusafw.vocabulary.flow.graph.FlowGraph;
+import com.asakusafw.vocabulary.flow.graph.ObservationCount;
+
+/**
+ * Test for {@link OperatorUnifier}.
+ */
+public class OperatorUnifierTest extends JobflowCompilerTestRoot {
+
+    private final FlowGraphGenerator gen = new FlowGraphGenerator();
+
+    /**
+     * 統合を有効にする。
+     */
+    @Before
+    public void enable() {
+        environment.getOptions().putExtraAttribute(OperatorUnifier.KEY_UNIFY_OPERATORS, "enabled");
+    }
+
+    /**
+     * 同等な演算子を統合する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void simple() throws Exception {
+        gen.defineInput("in");
+        gen.defineOperator("op1", "in", "out");
+        gen.defineCopy("op2", "op1");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.connect("in", "op1").connect("op1", "out1");
+        gen.connect("in", "op2").connect("op2", "out2");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(true));
+
+        assertThat(FlowGraphUtil.collectElements(graph).size(), is(4));
+        assertThat(gen.input("out1").getOpposites().size(), is(1));
+        assertThat(gen.input("out2").getOpposites(), is(gen.input("out1").getOpposites()));
+    }
+
+    /**
+     * 統合した演算子に後続する同等な演算子も統合する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void chain() throws Exception {
+        gen.defineInput("in");
+        gen.defineOperator("op1", "in", "out");
+        gen.defineOperator("op2", "in", "a b");
+        gen.defineCopy("op3", "op1");
+        gen.defineCopy("op4", "op2");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.defineOutput("out3");
+        gen.connect("in", "op1").connect("op1", "op2").connect("op2.a", "out1");
+        gen.connect("in", "op3").connect("op3", "op4").connect("op4.b", "out2");
+        gen.connect("op4.a", "out3");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(true));
+
+        assertThat(FlowGraphUtil.collectElements(graph).size(), is(6));
+        FlowElementOutput a = single(gen.input("out1").getOpposites());
+        FlowElementOutput b = single(gen.input("out2").getOpposites());
+        assertThat(a.getDescription().getName(), is("a"));
+        assertThat(b.getDescription().getName(), is("b"));
+        assertThat(b.getOwner(), is(a.getOwner()));
+        assertThat(gen.input("out3").getOpposites(), hasItem(a));
+    }
+
+    /**
+     * 上流が異なる演算子は統合しない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void different_upstream() throws Exception {
+        gen.defineInput("in1");
+        gen.defineInput("in2");
+        gen.defineOperator("op1", "in", "out");
+        gen.defineCopy("op2", "op1");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.connect("in1", "op1").connect("op1", "out1");
+        gen.connect("in2", "op2").connect("op2", "out2");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(false));
+
+        assertThat(FlowGraphUtil.collectElements(graph), is(gen.all()));
+    }
+
+    /**
+     * 定義が異なる演算子は統合しない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void different_operator() throws Exception {
+        gen.defineInput("in");
+        gen.defineOperator("op1", "in", "out");
+        gen.defineOperator("op2", "in", "out");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.connect("in", "op1").connect("op1", "out1");
+        gen.connect("in", "op2").connect("op2", "out2");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(false));
+
+        assertThat(FlowGraphUtil.collectElements(graph), is(gen.all()));
+    }
+
+    /**
+     * 副作用を持つ演算子は統合しない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void side_effect() throws Exception {
+        gen.defineInput("in");
+        gen.defineOperator("op1", "in", "out", ObservationCount.EXACTLY_ONCE);
+        gen.defineCopy("op2", "op1");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.connect("in", "op1").connect("op1", "out1");
+        gen.connect("in", "op2").connect("op2", "out2");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(false));
+
+        assertThat(FlowGraphUtil.collectElements(graph), is(gen.all()));
+    }
+
+    /**
+     * コンパイラスイッチで無効化する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void disabled() throws Exception {
+        environment.getOptions().putExtraAttribute(OperatorUnifier.KEY_UNIFY_OPERATORS, "disabled");
+        gen.defineInput("in");
+        gen.defineOperator("op1", "in", "out");
+        gen.defineCopy("op2", "op1");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.connect("in", "op1").connect("op1", "out1");
+        gen.connect("in", "op2").connect("op2", "out2");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(false));
+
+        assertThat(FlowGraphUtil.collectElements(graph), is(gen.all()));
+    }
+
+    /**
+     * 既定では統合しない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void disabled_default() throws Exception {
+        environment.getOptions().putExtraAttribute(OperatorUnifier.KEY_UNIFY_OPERATORS, null);
+        gen.defineInput("in");
+        gen.defineOperator("op1", "in", "out");
+        gen.defineCopy("op2", "op1");
+        gen.defineOutput("out1");
+        gen.defineOutput("out2");
+        gen.connect("in", "op1").connect("op1", "out1");
+        gen.connect("in", "op2").connect("op2", "out2");
+
+        FlowGraph graph = gen.toGraph();
+        assertThat(rewrite(graph), is(false));
+
+        assertThat(FlowGraphUtil.collectElements(graph), is(gen.all()));
+    }
+
+    private FlowElementOutput single(Collection<FlowElementOutput> outputs) {
+        assertThat(outputs.size(), is(1));
+        return outputs.iterator().next();
+    }
+
+    private boolean rewrite(FlowGraph graph) throws Exception {
+        OperatorUnifier unifier = new OperatorUnifier();
+        unifier.initialize(environment);
+        return unifier.rewrite(graph);
+    }
+}
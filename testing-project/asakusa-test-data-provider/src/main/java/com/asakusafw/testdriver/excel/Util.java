@@ -15,16 +15,14 @@
  */
 package com.asakusafw.testdriver.excel;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.MessageFormat;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.slf4j.Logger;
@@ -64,19 +62,7 @@ final class Util {
         }
 
         LOG.debug("Processing Excel workbook: {}", source);
-        URL url = source.toURL();
-        InputStream in = url.openStream();
-        Workbook book;
-        try {
-            InputStream bin = new BufferedInputStream(in);
-            book = new HSSFWorkbook(bin);
-        } catch (IOException e) {
-            throw new IOException(MessageFormat.format(
-                    "Excelファイルの展開に失敗しました: {0}",
-                    source));
-        } finally {
-            in.close();
-        }
+        Workbook book = WorkbookCache.get(toWorkbookUrl(source));
 
         if (matcher.group(1) != null) {
             int sheetNumber = Integer.parseInt(matcher.group(1));
@@ -106,6 +92,22 @@ final class Util {
         }
     }
 
+    private static URL toWorkbookUrl(URI source) throws IOException {
+        assert source != null;
+        if (source.getFragment() == null) {
+            return source.toURL();
+        }
+        // removes the sheet fragment to share the parsed workbook between its sheets
+        try {
+            URI workbook = new URI(source.getScheme(), source.getSchemeSpecificPart(), null);
+            return workbook.toURL();
+        } catch (URISyntaxException e) {
+            throw new IOException(MessageFormat.format(
+                    "Excelファイルの位置が不正です: {0}",
+                    source), e);
+        }
+    }
+
     static String buildText(String symbol, String title) {
         assert symbol != null;
         assert title != null;
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.testdriver.excel;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process-wide cache of parsed Excel workbooks.
+ * <p>
+ * Each workbook is identified by its URL and last modified time,
+ * and it will be parsed again if the workbook was modified.
+ * This keeps at most {@link #MAX_ENTRIES} workbooks with soft references.
+ * Clients must not modify the returned workbooks.
+ * </p>
+ * @since 0.4.0
+ */
+final class WorkbookCache {
+
+    static final Logger LOG = LoggerFactory.getLogger(WorkbookCache.class);
+
+    /**
+     * The maximum number of cached workbooks.
+     */
+    static final int MAX_ENTRIES = 16;
+
+    private static final Map<String, Entry> CACHE = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Returns the parsed workbook.
+     * @param url the workbook location
+     * @return the parsed workbook
+     * @throws IOException if failed to parse the workbook
+     */
+    static Workbook get(URL url) throws IOException {
+        assert url != null;
+        String key = url.toExternalForm();
+        long lastModified = getLastModified(url);
+        if (lastModified > 0) {
+            synchronized (CACHE) {
+                Entry entry = CACHE.get(key);
+                if (entry != null && entry.lastModified == lastModified) {
+                    Workbook cached = entry.workbook.get();
+                    if (cached != null) {
+                        LOG.debug("Reusing parsed Excel workbook: {}", url);
+                        return cached;
+                    }
+                }
+            }
+        }
+        Workbook book = parse(url);
+        if (lastModified > 0) {
+            synchronized (CACHE) {
+                CACHE.put(key, new Entry(lastModified, book));
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Removes all cached workbooks.
+     */
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static long getLastModified(URL url) {
+        assert url != null;
+        try {
+            if (url.getProtocol().equals("file")) { //$NON-NLS-1$
+                return new File(url.toURI()).lastModified();
+            }
+            URLConnection connection = url.openConnection();
+            return connection.getLastModified();
+        } catch (IOException e) {
+            LOG.debug(MessageFormat.format(
+                    "Failed to detect last modified time: {0}",
+                    url), e);
+            return 0L;
+        } catch (URISyntaxException e) {
+            LOG.debug(MessageFormat.format(
+                    "Failed to detect last modified time: {0}",
+                    url), e);
+            return 0L;
+        }
+    }
+
+    private static Workbook parse(URL url) throws IOException {
+        assert url != null;
+        LOG.debug("Parsing Excel workbook: {}", url);
+        InputStream in = url.openStream();
+        try {
+            InputStream bin = new BufferedInputStream(in);
+            return new HSSFWorkbook(bin);
+        } catch (IOException e) {
+            throw new IOException(MessageFormat.format(
+                    "Excelファイルの展開に失敗しました: {0}",
+                    url), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private WorkbookCache() {
+        return;
+    }
+
+    private static final class Entry {
+
+        final long lastModified;
+
+        final SoftReference<Workbook> workbook;
+
+        Entry(long lastModified, Workbook workbook) {
+            this.lastModified = lastModified;
+            this.workbook = new SoftReference<Workbook>(workbook);
+        }
+    }
+}
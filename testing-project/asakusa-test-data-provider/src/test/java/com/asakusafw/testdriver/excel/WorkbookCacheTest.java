@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.testdriver.excel;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link WorkbookCache}.
+ * @since 0.4.0
+ */
+public class WorkbookCacheTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Cleans up the test.
+     * @throws Exception if failed
+     */
+    @After
+    public void tearDown() throws Exception {
+        WorkbookCache.clear();
+    }
+
+    /**
+     * reuses the parsed workbook.
+     * @throws Exception if failed
+     */
+    @Test
+    public void reuse() throws Exception {
+        URL url = copy("data/workbook.xls").toURI().toURL();
+        Workbook first = WorkbookCache.get(url);
+        Workbook second = WorkbookCache.get(url);
+        assertThat(second, sameInstance(first));
+        assertThat(second.getNumberOfSheets(), is(first.getNumberOfSheets()));
+    }
+
+    /**
+     * parses the workbook again if it was modified.
+     * @throws Exception if failed
+     */
+    @Test
+    public void modified() throws Exception {
+        File file = copy("data/workbook.xls");
+        URL url = file.toURI().toURL();
+        Workbook first = WorkbookCache.get(url);
+        assertThat(file.setLastModified(file.lastModified() - 60 * 1000), is(true));
+        Workbook second = WorkbookCache.get(url);
+        assertThat(second, not(sameInstance(first)));
+        assertThat(WorkbookCache.get(url), sameInstance(second));
+    }
+
+    private File copy(String name) throws Exception {
+        File file = folder.newFile("workbook.xls");
+        InputStream in = getClass().getResourceAsStream(name);
+        assertThat(name, in, not(nullValue()));
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buf = new byte[1024];
+                while (true) {
+                    int read = in.read(buf);
+                    if (read < 0) {
+                        break;
+                    }
+                    out.write(buf, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return file;
+    }
+}
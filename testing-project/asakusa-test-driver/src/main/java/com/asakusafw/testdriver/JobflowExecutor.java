@@ -16,20 +16,28 @@
 package com.asakusafw.testdriver;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +45,7 @@ import com.asakusafw.compiler.flow.ExternalIoCommandProvider;
 import com.asakusafw.compiler.flow.ExternalIoCommandProvider.CommandContext;
 import com.asakusafw.compiler.testing.JobflowInfo;
 import com.asakusafw.compiler.testing.StageInfo;
+import com.asakusafw.runtime.flow.RuntimeResourceManager;
 import com.asakusafw.runtime.stage.StageConstants;
 import com.asakusafw.testdriver.TestExecutionPlan.Command;
 import com.asakusafw.testdriver.TestExecutionPlan.Job;
@@ -52,7 +61,15 @@ import com.asakusafw.vocabulary.external.ImporterDescription;
 
 /**
  * Prepares and executes jobflows.
+ * <p>
+ * Each stage of jobflows is submitted via {@link #SUBMIT_JOB_SCRIPT} by default,
+ * or is executed in the current JVM if {@link TestDriverContext#isForkHadoopJob()} is disabled.
+ * In the latter case, the stages are configured like {@link #SUBMIT_JOB_SCRIPT} does:
+ * the libraries in {@code core/lib} and {@code ext/lib} are added to the class path,
+ * and {@code TD_HADOOP_PROPERTIES} defined in {@link #ENV_SCRIPT} is passed to each stage.
+ * </p>
  * @since 0.2.0
+ * @version 0.4.0
  */
 public class JobflowExecutor {
 
@@ -63,6 +80,24 @@ public class JobflowExecutor {
      */
     public static final String SUBMIT_JOB_SCRIPT = "testing/libexec/hadoop-execute.sh";
 
+    /**
+     * Path to the script which defines environment variables for {@link #SUBMIT_JOB_SCRIPT}
+     * (relative path from {@link TestDriverContext#getFrameworkHomePath()}).
+     * @since 0.4.0
+     */
+    public static final String ENV_SCRIPT = "testing/conf/env.sh";
+
+    /**
+     * The environment variable name of extra Hadoop generic options for each stage.
+     * @since 0.4.0
+     */
+    public static final String ENV_HADOOP_PROPERTIES = "TD_HADOOP_PROPERTIES";
+
+    private static final String[] LIBRARY_DIRECTORIES = {
+        "core/lib",
+        "ext/lib",
+    };
+
     private final TestDriverContext context;
 
     private final TestModerator moderator;
@@ -297,14 +332,137 @@ public class JobflowExecutor {
         assert jobs != null;
         // DSLコンパイラが生成したHadoopジョブの各ステージを順番に実行する。
         // 各Hadoopジョブを実行した都度、hadoopコマンドの戻り値の検証を行う。
-        for (Job job : jobs) {
-            HadoopJobInfo jobElement = new HadoopJobInfo(
-                    job.getExecutionId(),
-                    jobflowPackageFile.getAbsolutePath(),
-                    job.getClassName(),
-                    job.getProperties());
-            runHadoopJob(jobElement);
+        // 現在のJVM内で実行する場合、同一ジョブフローのステージは単一のクラスローダーを共有する。
+        ClassLoader loader = null;
+        List<String> hadoopProperties = null;
+        if (context.isForkHadoopJob() == false) {
+            hadoopProperties = getHadoopProperties();
+            loader = createJobflowClassLoader(jobflowPackageFile);
+        }
+        try {
+            for (Job job : jobs) {
+                HadoopJobInfo jobElement = new HadoopJobInfo(
+                        job.getExecutionId(),
+                        jobflowPackageFile.getAbsolutePath(),
+                        job.getClassName(),
+                        job.getProperties());
+                long start = System.currentTimeMillis();
+                if (loader == null) {
+                    runHadoopJob(jobElement);
+                } else {
+                    runHadoopJobInProcess(jobElement, loader, hadoopProperties);
+                }
+                LOG.info("Hadoopジョブの実行が完了しました (class={}, fork={}, elapsed={}ms)", new Object[] {
+                        jobElement.getClassName(),
+                        loader == null,
+                        System.currentTimeMillis() - start,
+                });
+            }
+        } finally {
+            if (loader instanceof Closeable) {
+                // URLClassLoader is Closeable since Java 7
+                try {
+                    ((Closeable) loader).close();
+                } catch (IOException e) {
+                    LOG.warn("ジョブフローのクラスローダーの解放に失敗しました", e);
+                }
+            }
+        }
+    }
+
+    private ClassLoader createJobflowClassLoader(File jobflowPackageFile) throws IOException {
+        assert jobflowPackageFile != null;
+        ClassLoader parent = Thread.currentThread().getContextClassLoader();
+        if (parent == null) {
+            parent = JobflowExecutor.class.getClassLoader();
+        }
+        List<URL> urls = Lists.create();
+        for (File file : getLibraries(jobflowPackageFile)) {
+            urls.add(file.toURI().toURL());
         }
+        LOG.debug("ジョブフローのクラスローダーを作成します: {}", urls);
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), parent);
+    }
+
+    /**
+     * Returns the libraries for executing stages, like {@code testing/libexec/configure-libjars.sh} does.
+     * @param jobflowPackageFile the jobflow package
+     * @return the libraries
+     */
+    List<File> getLibraries(File jobflowPackageFile) {
+        assert jobflowPackageFile != null;
+        List<File> results = Lists.create();
+        results.add(jobflowPackageFile);
+        for (String path : LIBRARY_DIRECTORIES) {
+            File directory = new File(context.getFrameworkHomePath(), path);
+            File[] files = directory.listFiles();
+            if (files == null) {
+                LOG.debug("ライブラリディレクトリが見つかりません: {}", directory);
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile()) {
+                    results.add(file);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the extra Hadoop generic options ({@value #ENV_HADOOP_PROPERTIES}) defined in {@link #ENV_SCRIPT}.
+     * @return the options, or an empty list if they are not defined
+     * @throws IOException if failed to evaluate {@link #ENV_SCRIPT}
+     */
+    List<String> getHadoopProperties() throws IOException {
+        File script = new File(context.getFrameworkHomePath(), ENV_SCRIPT);
+        if (script.isFile() == false) {
+            LOG.debug("環境変数の設定スクリプトが見つかりません: {}", script);
+            String value = System.getenv(ENV_HADOOP_PROPERTIES);
+            return value == null ? Collections.<String>emptyList() : splitOptions(value);
+        }
+        ProcessBuilder builder = new ProcessBuilder(
+                "/bin/sh",
+                "-c",
+                ". \"$1\" && printf '%s' \"$" + ENV_HADOOP_PROPERTIES + "\"",
+                "sh",
+                script.getAbsolutePath());
+        builder.environment().putAll(getEnvironmentVariables());
+        builder.directory(new File(System.getProperty("user.home", ".")));
+        Process process = builder.start();
+        try {
+            process.getOutputStream().close();
+            InputStreamThread errors = new InputStreamThread(process.getErrorStream());
+            errors.start();
+            String value = IOUtils.toString(process.getInputStream(), Charset.defaultCharset().name());
+            int exitCode = process.waitFor();
+            errors.join();
+            if (exitCode != 0) {
+                throw new IOException(MessageFormat.format(
+                        "環境変数の設定スクリプトの実行に失敗しました (exitCode={0}, script={1})",
+                        exitCode,
+                        script));
+            }
+            LOG.debug("{}: {}", ENV_HADOOP_PROPERTIES, value);
+            return splitOptions(value);
+        } catch (InterruptedException e) {
+            throw new IOException(MessageFormat.format(
+                    "環境変数の設定スクリプトの実行中に割り込みが指定されました: {0}",
+                    script), e);
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static List<String> splitOptions(String value) {
+        assert value != null;
+        // same as the word splitting of unquoted "$TD_HADOOP_PROPERTIES" in hadoop-execute.sh
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(trimmed.split("\\s+"));
     }
 
     private void runJobFlowCommands(List<TestExecutionPlan.Command> cmdList) throws IOException {
@@ -344,6 +502,73 @@ public class JobflowExecutor {
         }
     }
 
+    private void runHadoopJobInProcess(
+            HadoopJobInfo hadoopJobInfo,
+            ClassLoader loader,
+            List<String> hadoopProperties) throws IOException {
+        assert hadoopJobInfo != null;
+        assert loader != null;
+        assert hadoopProperties != null;
+        LOG.info("[JOB] {}", hadoopJobInfo.getClassName());
+        Configuration conf = configurations.newInstance();
+        File pluginConf = new File(context.getFrameworkHomePath(), RuntimeResourceManager.CONFIGURATION_FILE_PATH);
+        if (pluginConf.isFile()) {
+            conf.addResource(pluginConf.toURI().toURL());
+        } else {
+            LOG.debug("実行時プラグインの設定ファイルが見つかりません: {}", pluginConf);
+        }
+        Map<String, String> dPropMap = hadoopJobInfo.getDPropMap();
+        if (dPropMap != null) {
+            for (Map.Entry<String, String> entry : dPropMap.entrySet()) {
+                if (entry.getValue() != null) {
+                    conf.set(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        conf.setClassLoader(loader);
+
+        int exitValue;
+        Thread current = Thread.currentThread();
+        ClassLoader contextLoader = current.getContextClassLoader();
+        current.setContextClassLoader(loader);
+        try {
+            Tool tool = newTool(hadoopJobInfo.getClassName(), loader);
+            // the generic options are parsed by ToolRunner, like the "hadoop jar" command does
+            String[] args = hadoopProperties.toArray(new String[hadoopProperties.size()]);
+            exitValue = ToolRunner.run(conf, tool, args);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(MessageFormat.format(
+                    "Hadoopジョブの実行中に例外が発生しました (flowId={0}, class={1})",
+                    hadoopJobInfo.getJobFlowId(),
+                    hadoopJobInfo.getClassName()), e);
+        } finally {
+            current.setContextClassLoader(contextLoader);
+        }
+        if (exitValue != 0) {
+            // 異常終了
+            throw new AssertionError(MessageFormat.format(
+                    "Hadoopジョブの実行に失敗しました (exitCode={0}, flowId={1}, class={2})",
+                    exitValue,
+                    hadoopJobInfo.getJobFlowId(),
+                    hadoopJobInfo.getClassName()));
+        }
+    }
+
+    private Tool newTool(String className, ClassLoader loader) throws IOException {
+        assert className != null;
+        assert loader != null;
+        try {
+            Class<?> aClass = Class.forName(className, false, loader);
+            return aClass.asSubclass(Tool.class).newInstance();
+        } catch (Exception e) {
+            throw new IOException(MessageFormat.format(
+                    "ステージクライアントの生成に失敗しました: {0}",
+                    className), e);
+        }
+    }
+
     private Map<String, String> getEnvironmentVariables() {
         Map<String, String> variables = Maps.create();
         variables.put(TestDriverContext.ENV_FRAMEWORK_PATH, context.getFrameworkHomePath().getAbsolutePath());
@@ -191,4 +191,19 @@ public abstract class TestDriverBase {
         driverContext.setSkipVerify(skip);
     }
 
+    /**
+     * Hadoopのジョブを個別のプロセスで実行するかを設定する。
+     * <p>
+     * この値が未設定の場合、システムプロパティ{@value TestDriverContext#KEY_FORK_HADOOP_JOB}の値を利用し、
+     * システムプロパティも未設定の場合は個別のプロセスで実行する。
+     * 個別のプロセスで実行しない場合、テストを実行中のJVM内で各ステージのジョブを実行する。
+     * </p>
+     * @param fork
+     *            個別のプロセスで実行する場合は{@code true}、現在のJVM内で実行する場合は{@code false}
+     * @since 0.4.0
+     */
+    public void forkHadoopJob(boolean fork) {
+        driverContext.setForkHadoopJob(fork);
+    }
+
 }
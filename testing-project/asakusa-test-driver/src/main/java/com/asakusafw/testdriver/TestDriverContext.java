@@ -52,6 +52,14 @@ public class TestDriverContext implements TestContext {
      */
     public static final String KEY_COMPILER_WORKING_DIRECTORY = "asakusa.testdriver.compilerwork.dir";
 
+    /**
+     * The system property key of whether each Hadoop job is executed in a separate process or not.
+     * If this is {@code true} or not set, Hadoop jobs are submitted via {@link JobflowExecutor#SUBMIT_JOB_SCRIPT},
+     * otherwise they are executed in the current JVM.
+     * @since 0.4.0
+     */
+    public static final String KEY_FORK_HADOOP_JOB = "asakusa.testdriver.hadoop.fork";
+
     /**
      * Environmental variable: the framework home path.
      */
@@ -79,6 +87,7 @@ public class TestDriverContext implements TestContext {
     private boolean skipPrepareOutput;
     private boolean skipRunJobflow;
     private boolean skipVerify;
+    private boolean forkHadoopJob;
 
     /**
      * Creates a new instance.
@@ -94,6 +103,7 @@ public class TestDriverContext implements TestContext {
         this.extraConfigurations = new TreeMap<String, String>();
         this.batchArgs = new TreeMap<String, String>();
         this.options = new FlowCompilerOptions();
+        this.forkHadoopJob = Boolean.valueOf(System.getProperty(KEY_FORK_HADOOP_JOB, "true"));
         configureOptions();
     }
 
@@ -174,6 +184,9 @@ public class TestDriverContext implements TestContext {
      */
     public String getOsUser() {
         String user = System.getenv("USER");
+        if (user == null) {
+            user = System.getProperty("user.name");
+        }
         return user;
     }
 
@@ -476,4 +489,25 @@ public class TestDriverContext implements TestContext {
     public void setSkipVerify(boolean skip) {
         this.skipVerify = skip;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Returns whether each Hadoop job is executed in a separate process or not.
+     * @return {@code true} to execute in separate processes, or {@code false} to execute in the current JVM
+     * @see #KEY_FORK_HADOOP_JOB
+     * @since 0.4.0
+     */
+    public boolean isForkHadoopJob() {
+        return forkHadoopJob;
+    }
+
+    /**
+     * Sets whether each Hadoop job is executed in a separate process or not.
+     * The default value is the system property {@link #KEY_FORK_HADOOP_JOB}, or {@code true} if it is not set.
+     * @param fork {@code true} to execute in separate processes, or {@code false} to execute in the current JVM
+     * @since 0.4.0
+     */
+    public void setForkHadoopJob(boolean fork) {
+        this.forkHadoopJob = fork;
+    }
+}
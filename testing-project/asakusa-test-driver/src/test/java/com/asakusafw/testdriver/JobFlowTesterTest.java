@@ -50,6 +50,32 @@ public class JobFlowTesterTest {
         tester.runTest(SimpleJobflow.class);
     }
 
+    /**
+     * simple testing with separate processes.
+     */
+    @Test
+    public void simple_fork() {
+        JobFlowTester tester = new JobFlowTester(getClass());
+        tester.setFrameworkHomePath(framework.getHome());
+        tester.forkHadoopJob(true);
+        tester.input("simple", Simple.class).prepare("data/simple-in.json");
+        tester.output("simple", Simple.class).verify("data/simple-out.json", new IdentityVerifier());
+        tester.runTest(SimpleJobflow.class);
+    }
+
+    /**
+     * simple testing in the current JVM.
+     */
+    @Test
+    public void simple_in_process() {
+        JobFlowTester tester = new JobFlowTester(getClass());
+        tester.setFrameworkHomePath(framework.getHome());
+        tester.forkHadoopJob(false);
+        tester.input("simple", Simple.class).prepare("data/simple-in.json");
+        tester.output("simple", Simple.class).verify("data/simple-out.json", new IdentityVerifier());
+        tester.runTest(SimpleJobflow.class);
+    }
+
     /**
      * saves actual data using path string.
      */
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.testdriver;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.asakusafw.runtime.configuration.FrameworkDeployer;
+
+/**
+ * Test for {@link JobflowExecutor}.
+ */
+public class JobflowExecutorTest {
+
+    /**
+     * Temporary framework installation target.
+     */
+    @Rule
+    public FrameworkDeployer framework = new FrameworkDeployer();
+
+    /**
+     * stages are executed in separate processes by default.
+     */
+    @Test
+    public void fork_default() {
+        String saved = System.getProperty(TestDriverContext.KEY_FORK_HADOOP_JOB);
+        System.clearProperty(TestDriverContext.KEY_FORK_HADOOP_JOB);
+        try {
+            TestDriverContext context = new TestDriverContext(getClass());
+            assertThat(context.isForkHadoopJob(), is(true));
+        } finally {
+            if (saved != null) {
+                System.setProperty(TestDriverContext.KEY_FORK_HADOOP_JOB, saved);
+            }
+        }
+    }
+
+    /**
+     * hadoop properties in env.sh.
+     * @throws Exception if failed
+     */
+    @Test
+    public void getHadoopProperties() throws Exception {
+        append(new File(framework.getHome(), JobflowExecutor.ENV_SCRIPT),
+                "export TD_HADOOP_PROPERTIES=\"-D com.example.a=1  -D com.example.b=2\"");
+        JobflowExecutor executor = new JobflowExecutor(context());
+        List<String> options = executor.getHadoopProperties();
+        assertThat(options, is(Arrays.asList("-D", "com.example.a=1", "-D", "com.example.b=2")));
+    }
+
+    /**
+     * hadoop properties are not defined.
+     * @throws Exception if failed
+     */
+    @Test
+    public void getHadoopProperties_empty() throws Exception {
+        append(new File(framework.getHome(), JobflowExecutor.ENV_SCRIPT),
+                "export TD_HADOOP_PROPERTIES=");
+        JobflowExecutor executor = new JobflowExecutor(context());
+        List<String> options = executor.getHadoopProperties();
+        assertThat(options.size(), is(0));
+    }
+
+    /**
+     * libraries in core/lib and ext/lib.
+     * @throws Exception if failed
+     */
+    @Test
+    public void getLibraries() throws Exception {
+        File app = touch(new File(framework.getWork("app"), "app.jar"));
+        File core = touch(new File(framework.getHome(), "core/lib/core-testing.jar"));
+        File ext = touch(new File(framework.getHome(), "ext/lib/ext-testing.jar"));
+        JobflowExecutor executor = new JobflowExecutor(context());
+        List<File> libraries = executor.getLibraries(app);
+        assertThat(libraries.get(0), is(app));
+        assertThat(libraries, hasItem(core));
+        assertThat(libraries, hasItem(ext));
+        assertThat(libraries.indexOf(core), lessThan(libraries.indexOf(ext)));
+    }
+
+    private TestDriverContext context() {
+        TestDriverContext context = new TestDriverContext(getClass());
+        context.setFrameworkHomePath(framework.getHome());
+        return context;
+    }
+
+    private File touch(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        new FileOutputStream(file).close();
+        return file;
+    }
+
+    private void append(File file, String line) throws IOException {
+        file.getParentFile().mkdirs();
+        PrintWriter writer = new PrintWriter(new FileOutputStream(file, true));
+        try {
+            writer.println();
+            writer.println(line);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.testdriver.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorts {@link DataModelReflection}s by the hash code of their keys.
+ * <p>
+ * If the number of objects exceeds the buffer size, this writes sorted runs into temporary files,
+ * and then merges them while {@link #next() reading} the results.
+ * The temporary files are removed in {@link #close()}.
+ * </p>
+ * @since 0.4.0
+ */
+final class ReflectionSorter implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(ReflectionSorter.class);
+
+    private static final int RESET_INTERVAL = 1000;
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return compareHash(o1.hash, o2.hash);
+        }
+    };
+
+    private static final Comparator<Run> RUN_COMPARATOR = new Comparator<Run>() {
+        @Override
+        public int compare(Run o1, Run o2) {
+            return compareHash(o1.current.hash, o2.current.hash);
+        }
+    };
+
+    private final int bufferSize;
+
+    private final List<Entry> buffer = new ArrayList<Entry>();
+
+    private final List<File> spills = new ArrayList<File>();
+
+    private final List<Run> runs = new ArrayList<Run>();
+
+    private PriorityQueue<Run> queue;
+
+    private long count;
+
+    /**
+     * Creates a new instance.
+     * @param bufferSize the maximum number of objects on the heap
+     */
+    ReflectionSorter(int bufferSize) {
+        assert bufferSize > 0;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Adds an object to this sorter.
+     * @param hash the hash code of the object key
+     * @param object the target object
+     * @throws IOException if failed to write objects into temporary files
+     */
+    void add(int hash, DataModelReflection object) throws IOException {
+        assert object != null;
+        assert queue == null;
+        buffer.add(new Entry(hash, object));
+        count++;
+        if (buffer.size() >= bufferSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns the number of added objects.
+     * @return the number of objects
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the next object in order of their hash codes.
+     * @return the next object, or {@code null} if there are no more objects
+     * @throws IOException if failed to read objects from temporary files
+     */
+    Entry next() throws IOException {
+        if (queue == null) {
+            prepare();
+        }
+        Run run = queue.poll();
+        if (run == null) {
+            return null;
+        }
+        Entry result = run.current;
+        if (run.advance()) {
+            queue.add(run);
+        }
+        return result;
+    }
+
+    private void prepare() throws IOException {
+        assert queue == null;
+        queue = new PriorityQueue<Run>(spills.size() + 1, RUN_COMPARATOR);
+        if (buffer.isEmpty() == false) {
+            Collections.sort(buffer, ENTRY_COMPARATOR);
+            addRun(new HeapRun(buffer));
+        }
+        for (File file : spills) {
+            addRun(new FileRun(file));
+        }
+    }
+
+    private void addRun(Run run) throws IOException {
+        assert run != null;
+        runs.add(run);
+        if (run.advance()) {
+            queue.add(run);
+        }
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(buffer, ENTRY_COMPARATOR);
+        File file = File.createTempFile("asakusa-verify", ".bin");
+        spills.add(file);
+        LOG.debug("Spilling {} objects into {}", buffer.size(), file);
+        ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            int written = 0;
+            for (Entry entry : buffer) {
+                output.writeBoolean(true);
+                output.writeInt(entry.hash);
+                output.writeObject(entry.object);
+                if (++written % RESET_INTERVAL == 0) {
+                    output.reset();
+                }
+            }
+            output.writeBoolean(false);
+        } finally {
+            output.close();
+        }
+        buffer.clear();
+    }
+
+    static int compareHash(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        return a < b ? -1 : +1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        queue = null;
+        try {
+            for (Run run : runs) {
+                try {
+                    run.close();
+                } catch (IOException e) {
+                    LOG.warn(MessageFormat.format(
+                            "一時ファイルのクローズに失敗しました: {0}",
+                            run), e);
+                }
+            }
+        } finally {
+            runs.clear();
+            for (File file : spills) {
+                if (file.delete() == false && file.exists()) {
+                    LOG.warn(MessageFormat.format(
+                            "一時ファイルの削除に失敗しました: {0}",
+                            file));
+                }
+            }
+            spills.clear();
+        }
+    }
+
+    /**
+     * A pair of object and its key hash code.
+     */
+    static final class Entry {
+
+        final int hash;
+
+        final DataModelReflection object;
+
+        Entry(int hash, DataModelReflection object) {
+            this.hash = hash;
+            this.object = object;
+        }
+    }
+
+    private abstract static class Run implements Closeable {
+
+        Entry current;
+
+        Run() {
+            return;
+        }
+
+        abstract boolean advance() throws IOException;
+    }
+
+    private static final class HeapRun extends Run {
+
+        private final List<Entry> entries;
+
+        private int index;
+
+        HeapRun(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (index >= entries.size()) {
+                current = null;
+                return false;
+            }
+            current = entries.get(index++);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            current = null;
+        }
+    }
+
+    private static final class FileRun extends Run {
+
+        private final File file;
+
+        private final ObjectInputStream input;
+
+        FileRun(File file) throws IOException {
+            this.file = file;
+            this.input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                if (input.readBoolean() == false) {
+                    current = null;
+                    return false;
+                }
+                int hash = input.readInt();
+                DataModelReflection object = (DataModelReflection) input.readObject();
+                current = new Entry(hash, object);
+                return true;
+            } catch (EOFException e) {
+                throw new IOException(MessageFormat.format(
+                        "一時ファイルが破損しています: {0}",
+                        file), e);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(MessageFormat.format(
+                        "一時ファイルの読み出しに失敗しました: {0}",
+                        file), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            current = null;
+            input.close();
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+}
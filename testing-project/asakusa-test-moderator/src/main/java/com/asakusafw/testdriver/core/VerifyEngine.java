@@ -23,32 +23,99 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Verifies model objects using {@link VerifyRule} and expected data set.
+ * <p>
+ * This engine keeps the expected and actual data objects on the heap while each number is up to the buffer size.
+ * If either number exceeds it, this engine writes the rest of data objects into temporary files
+ * in order of the hash code of their {@link VerifyRule#getKey(DataModelReflection) keys},
+ * and then verifies them by merging the sorted files in {@link #inspectRest()}.
+ * The actual data objects which were already verified are also written into the temporary files,
+ * only for detecting duplicated keys.
+ * The buffer size can be configured by the system property {@value #KEY_BUFFER_SIZE}.
+ * </p>
  * @since 0.2.0
+ * @version 0.4.0
  */
 public class VerifyEngine {
 
+    static final Logger LOG = LoggerFactory.getLogger(VerifyEngine.class);
+
+    /**
+     * The system property key of the maximum number of data objects kept on the heap.
+     * @since 0.4.0
+     */
+    public static final String KEY_BUFFER_SIZE = "asakusa.testdriver.verify.buffer";
+
+    /**
+     * The default value of {@link #KEY_BUFFER_SIZE}.
+     * @since 0.4.0
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 100000;
+
     private final VerifyRule rule;
 
+    private final int bufferSize;
+
     private final Map<Object, DataModelReflection> expectedRest;
 
     private final Map<Object, DataModelReflection> sawActual;
 
+    private ReflectionSorter expectedSpill;
+
+    private ReflectionSorter actualSpill;
+
+    private ReflectionSorter verifiedSpill;
+
     /**
      * Creates a new instance.
      * @param rule the verification strategy
      * @throws IllegalArgumentException if some parameters were {@code null}
      */
     public VerifyEngine(VerifyRule rule) {
+        this(rule, getDefaultBufferSize());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param rule the verification strategy
+     * @param bufferSize the maximum number of data objects kept on the heap
+     * @throws IllegalArgumentException if some parameters were {@code null}, or buffer size is not positive
+     * @since 0.4.0
+     */
+    public VerifyEngine(VerifyRule rule, int bufferSize) {
         if (rule == null) {
             throw new IllegalArgumentException("rule must not be null"); //$NON-NLS-1$
         }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be > 0"); //$NON-NLS-1$
+        }
         this.rule = rule;
+        this.bufferSize = bufferSize;
         this.expectedRest = new LinkedHashMap<Object, DataModelReflection>();
         this.sawActual = new HashMap<Object, DataModelReflection>();
     }
 
+    private static int getDefaultBufferSize() {
+        String value = System.getProperty(KEY_BUFFER_SIZE);
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_BUFFER_SIZE;
+        }
+        try {
+            int size = Integer.parseInt(value.trim());
+            if (size > 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOG.warn("システムプロパティ{}の値が不正です: {}", KEY_BUFFER_SIZE, value);
+        return DEFAULT_BUFFER_SIZE;
+    }
+
     /**
      * Appends the expected data model objects.
      * <p>
@@ -56,6 +123,10 @@ public class VerifyEngine {
      * the old one will be replaced with in input.
      * Note that the expected input will be closed.
      * </p>
+     * <p>
+     * If the expected data objects are written into temporary files,
+     * the duplicated keys will be reported in {@link #inspectRest()} instead of this method.
+     * </p>
      * @param expected the expected input
      * @return this object (for method chain)
      * @throws IOException if failed to obtain model objects from the input,
@@ -73,6 +144,10 @@ public class VerifyEngine {
                     break;
                 }
                 Object key = rule.getKey(next);
+                if (expectedSpill != null) {
+                    addSpill(expectedSpill, key, next);
+                    continue;
+                }
                 DataModelReflection old = expectedRest.put(key, next);
                 if (old != null) {
                     throw new IOException(MessageFormat.format(
@@ -81,6 +156,10 @@ public class VerifyEngine {
                             old,
                             next));
                 }
+                if (expectedRest.size() > bufferSize) {
+                    LOG.debug("期待値が{}件を超えたため、一時ファイルを利用して検証します", bufferSize);
+                    startSpill();
+                }
             }
         } finally {
             expected.close();
@@ -88,6 +167,50 @@ public class VerifyEngine {
         return this;
     }
 
+    private void startSpill() throws IOException {
+        assert expectedSpill == null;
+        expectedSpill = new ReflectionSorter(bufferSize);
+        actualSpill = new ReflectionSorter(bufferSize);
+        verifiedSpill = new ReflectionSorter(bufferSize);
+        for (Map.Entry<Object, DataModelReflection> entry : expectedRest.entrySet()) {
+            addSpill(expectedSpill, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Object, DataModelReflection> entry : sawActual.entrySet()) {
+            addSpill(verifiedSpill, entry.getKey(), entry.getValue());
+        }
+        expectedRest.clear();
+        sawActual.clear();
+    }
+
+    private void addSpill(ReflectionSorter spill, Object key, DataModelReflection object) throws IOException {
+        assert spill != null;
+        assert key != null;
+        assert object != null;
+        try {
+            spill.add(key.hashCode(), object);
+        } catch (IOException e) {
+            closeSpill();
+            throw e;
+        }
+    }
+
+    private void closeSpill() {
+        ReflectionSorter[] spills = { expectedSpill, actualSpill, verifiedSpill };
+        expectedSpill = null;
+        actualSpill = null;
+        verifiedSpill = null;
+        for (ReflectionSorter spill : spills) {
+            if (spill == null) {
+                continue;
+            }
+            try {
+                spill.close();
+            } catch (IOException e) {
+                LOG.warn("一時ファイルの削除に失敗しました", e);
+            }
+        }
+    }
+
     /**
      * Verifies the input sequence and returns diagnostics.
      * <p>
@@ -105,6 +228,9 @@ public class VerifyEngine {
      * <p>
      * If there are any differences between expected objects and input objects,
      * the resulting list includes them.
+     * If the data objects are written into temporary files,
+     * this method only writes the rest of input objects into them,
+     * and then {@link #inspectRest()} will report the differences of them.
      * </p>
      * @param input the input to verify
      * @return differences between the input and the expected, or an empty list if successfully verified
@@ -124,20 +250,13 @@ public class VerifyEngine {
                 if (actual == null) {
                     break;
                 }
-                Object key = rule.getKey(actual);
-                DataModelReflection saw = sawActual.get(key);
-                if (saw != null) {
-                    results.add(new Difference(actual, null, MessageFormat.format(
-                            "結果のキーが重複しています: {0} ({1} <=> {2})",
-                            key,
-                            saw,
-                            actual)));
+                if (actualSpill != null) {
+                    addSpill(actualSpill, rule.getKey(actual), actual);
                 } else {
-                    sawActual.put(key, actual);
-                    DataModelReflection expected = expectedRest.remove(key);
-                    Difference diff = verify(key, expected, actual);
-                    if (diff != null) {
-                        results.add(diff);
+                    inspectActual(actual, expectedRest, sawActual, results);
+                    if (sawActual.size() > bufferSize) {
+                        LOG.debug("結果が{}件を超えたため、一時ファイルを利用して検証します", bufferSize);
+                        startSpill();
                     }
                 }
             }
@@ -147,6 +266,33 @@ public class VerifyEngine {
         return results;
     }
 
+    private void inspectActual(
+            DataModelReflection actual,
+            Map<Object, DataModelReflection> expectedMap,
+            Map<Object, DataModelReflection> actualMap,
+            List<Difference> results) {
+        assert actual != null;
+        assert expectedMap != null;
+        assert actualMap != null;
+        assert results != null;
+        Object key = rule.getKey(actual);
+        DataModelReflection saw = actualMap.get(key);
+        if (saw != null) {
+            results.add(new Difference(actual, null, MessageFormat.format(
+                    "結果のキーが重複しています: {0} ({1} <=> {2})",
+                    key,
+                    saw,
+                    actual)));
+        } else {
+            actualMap.put(key, actual);
+            DataModelReflection expected = expectedMap.remove(key);
+            Difference diff = verify(key, expected, actual);
+            if (diff != null) {
+                results.add(diff);
+            }
+        }
+    }
+
     /**
      * Verifies the rest of expected data objects.
      * <p>
@@ -159,22 +305,96 @@ public class VerifyEngine {
      * Note that the rest of expected data mean &quot;expected but appeared in input.&quot;
      * You should invoke {@link #inspectInput(DataModelSource)} for each input before invoke this method.
      * </p>
+     * <p>
+     * If the data objects are written into temporary files,
+     * this method verifies all pairs of the expected and input objects in them,
+     * and then removes the temporary files.
+     * </p>
      * @return diagnostics for expected but not appeared in input objects
+     * @throws IllegalStateException if failed to read data objects from the temporary files,
+     *     or the expected data objects in them contain duplicated keys
      * @see #inspectInput(DataModelSource)
      */
     public List<Difference> inspectRest() {
+        if (expectedSpill != null) {
+            try {
+                return inspectSpill();
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            } finally {
+                closeSpill();
+            }
+        }
         List<Difference> results = new ArrayList<Difference>();
-        for (Map.Entry<Object, DataModelReflection> entry : expectedRest.entrySet()) {
+        inspectRest(expectedRest, results);
+        sawActual.clear();
+        return results;
+    }
+
+    private void inspectRest(Map<Object, DataModelReflection> expectedMap, List<Difference> results) {
+        assert expectedMap != null;
+        assert results != null;
+        for (Map.Entry<Object, DataModelReflection> entry : expectedMap.entrySet()) {
             Difference diff = verify(entry.getKey(), entry.getValue(), null);
             if (diff != null) {
                 results.add(diff);
             }
         }
-        expectedRest.clear();
-        sawActual.clear();
+        expectedMap.clear();
+    }
+
+    private List<Difference> inspectSpill() throws IOException {
+        LOG.debug("一時ファイルの内容を検証しています: expected={}, actual={}, verified={}", new Object[] {
+                expectedSpill.getCount(),
+                actualSpill.getCount(),
+                verifiedSpill.getCount(),
+        });
+        List<Difference> results = new ArrayList<Difference>();
+        Map<Object, DataModelReflection> expectedGroup = new LinkedHashMap<Object, DataModelReflection>();
+        Map<Object, DataModelReflection> actualGroup = new HashMap<Object, DataModelReflection>();
+        ReflectionSorter.Entry nextExpected = expectedSpill.next();
+        ReflectionSorter.Entry nextActual = actualSpill.next();
+        ReflectionSorter.Entry nextVerified = verifiedSpill.next();
+        while (nextExpected != null || nextActual != null) {
+            int hash = min(nextExpected, nextActual);
+            while (nextVerified != null && ReflectionSorter.compareHash(nextVerified.hash, hash) < 0) {
+                nextVerified = verifiedSpill.next();
+            }
+            for (; nextVerified != null && nextVerified.hash == hash; nextVerified = verifiedSpill.next()) {
+                actualGroup.put(rule.getKey(nextVerified.object), nextVerified.object);
+            }
+            for (; nextExpected != null && nextExpected.hash == hash; nextExpected = expectedSpill.next()) {
+                DataModelReflection next = nextExpected.object;
+                Object key = rule.getKey(next);
+                DataModelReflection old = expectedGroup.put(key, next);
+                if (old != null) {
+                    throw new IOException(MessageFormat.format(
+                            "期待値のキーが重複しています: {0} ({1} <=> {2})",
+                            key,
+                            old,
+                            next));
+                }
+            }
+            for (; nextActual != null && nextActual.hash == hash; nextActual = actualSpill.next()) {
+                inspectActual(nextActual.object, expectedGroup, actualGroup, results);
+            }
+            inspectRest(expectedGroup, results);
+            actualGroup.clear();
+        }
         return results;
     }
 
+    private static int min(ReflectionSorter.Entry a, ReflectionSorter.Entry b) {
+        assert a != null || b != null;
+        if (a == null) {
+            return b.hash;
+        }
+        if (b == null || ReflectionSorter.compareHash(a.hash, b.hash) <= 0) {
+            return a.hash;
+        }
+        return b.hash;
+    }
+
     private Difference verify(Object key, DataModelReflection expected, DataModelReflection actual) {
         assert key != null;
         assert expected != null || actual != null;
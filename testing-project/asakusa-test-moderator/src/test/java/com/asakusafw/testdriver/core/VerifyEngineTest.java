@@ -77,6 +77,115 @@ public class VerifyEngineTest {
         assertThat(d2.size(), is(1));
     }
 
+    /**
+     * verifies with temporary files.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill() throws Exception {
+        VerifyEngine engine = new VerifyEngine(new Rule(), 2);
+        engine.addExpected(source("a:1", "b:2", "c:3", "d:4", "e:5", "f:6", "g:7"));
+
+        List<Difference> d1 = engine.inspectInput(source("g:7", "f:6", "e:5", "d:4", "c:3", "b:2", "a:1"));
+        assertThat(d1.size(), is(0));
+
+        List<Difference> d2 = engine.inspectRest();
+        assertThat(d2.size(), is(0));
+    }
+
+    /**
+     * verifies with temporary files, and includes differences.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill_mismatch() throws Exception {
+        VerifyEngine engine = new VerifyEngine(new Rule(), 2);
+        engine.addExpected(source("a:1", "b:2", "c:3", "d:4", "e:5"));
+
+        List<Difference> d1 = engine.inspectInput(source("e:5", "d:0", "b:2", "a:1", "x:0"));
+        assertThat(d1.size(), is(0));
+
+        List<Difference> d2 = engine.inspectRest();
+        assertThat(d2.size(), is(3));
+    }
+
+    /**
+     * verifies with temporary files, and keys have same hash code.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill_collision() throws Exception {
+        assertThat("Aa".hashCode(), is("BB".hashCode()));
+        VerifyEngine engine = new VerifyEngine(new Rule(), 1);
+        engine.addExpected(source("Aa:1", "BB:2", "C:3"));
+
+        engine.inspectInput(source("BB:2", "Aa:1", "C:3"));
+        List<Difference> d1 = engine.inspectRest();
+        assertThat(d1.size(), is(0));
+    }
+
+    /**
+     * verifies with temporary files, and actual keys are duplicated.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill_duplicate_actual() throws Exception {
+        VerifyEngine engine = new VerifyEngine(new Rule(), 1);
+        engine.addExpected(source("a:1", "b:2"));
+
+        engine.inspectInput(source("a:1", "b:2", "a:1"));
+        List<Difference> d1 = engine.inspectRest();
+        assertThat(d1.size(), is(1));
+    }
+
+    /**
+     * verifies with temporary files, and expected keys are duplicated.
+     * @throws Exception if failed
+     */
+    @Test(expected = IllegalStateException.class)
+    public void spill_duplicate_expected() throws Exception {
+        VerifyEngine engine = new VerifyEngine(new Rule(), 1);
+        engine.addExpected(source("a:1", "b:2", "a:1"));
+
+        engine.inspectInput(source("a:1", "b:2"));
+        engine.inspectRest();
+    }
+
+    /**
+     * verifies with temporary files, and only actual objects exceed the buffer size.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill_actual() throws Exception {
+        VerifyEngine engine = new VerifyEngine(new Rule(), 2);
+        engine.addExpected(source("a:1"));
+
+        List<Difference> d1 = engine.inspectInput(source("a:1", "b:2", "c:3", "d:4", "a:1"));
+        assertThat(d1.size(), is(2));
+
+        List<Difference> d2 = engine.inspectRest();
+        assertThat(d2.size(), is(2));
+    }
+
+    /**
+     * verifies with temporary files, and expected objects exceed the buffer size after some actual objects.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill_actual_before_expected() throws Exception {
+        VerifyEngine engine = new VerifyEngine(new Rule(), 2);
+        engine.addExpected(source("a:1"));
+        List<Difference> d1 = engine.inspectInput(source("a:1"));
+        assertThat(d1.size(), is(0));
+
+        engine.addExpected(source("b:2", "c:3", "d:4"));
+        List<Difference> d2 = engine.inspectInput(source("b:2", "c:0", "a:1"));
+        assertThat(d2.size(), is(0));
+
+        List<Difference> d3 = engine.inspectRest();
+        assertThat(d3.size(), is(3));
+    }
+
     DataModelSource source(String... values) {
         return new IteratorDataModelSource(
                 ValueDefinition.of(String.class),
@@ -47,7 +47,7 @@ public class VolatileEmitter extends Emitter {
         return new PrintWriter(file.openWriter());
     }
 
-    private void register(VolatileJavaFile file) {
+    private synchronized void register(VolatileJavaFile file) {
         emitted.add(file);
     }
 
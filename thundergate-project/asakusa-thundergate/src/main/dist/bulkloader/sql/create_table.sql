@@ -31,6 +31,14 @@ CREATE  TABLE `EXPORT_TEMP_TABLE` (
   PRIMARY KEY (`JOBFLOW_SID`, `TABLE_NAME`),
   INDEX I_EXPORT_TEMP_SEQ (EXPORT_TEMP_SEQ)) ENGINE=InnoDB;
 
+CREATE  TABLE `EXPORT_TEMP_RANGE` (
+  `JOBFLOW_SID` BIGINT NOT NULL ,
+  `TABLE_NAME` VARCHAR(64) NOT NULL ,
+  `RANGE_FROM` BIGINT NOT NULL ,
+  `RANGE_TO` BIGINT NOT NULL ,
+  `RANGE_STATUS` CHAR(1) NOT NULL ,
+  PRIMARY KEY (`JOBFLOW_SID`, `TABLE_NAME`, `RANGE_FROM`)) ENGINE=InnoDB;
+
 CREATE  TABLE __TG_CACHE_INFO (
     CACHE_ID VARCHAR(128) NOT NULL,
     CACHE_TIMESTAMP DATETIME NOT NULL,
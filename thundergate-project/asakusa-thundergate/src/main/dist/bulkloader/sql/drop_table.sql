@@ -1,3 +1,4 @@
+DROP TABLE IF EXISTS EXPORT_TEMP_RANGE;
 DROP TABLE IF EXISTS EXPORT_TEMP_TABLE;
 DROP TABLE IF EXISTS IMPORT_RECORD_LOCK;
 DROP TABLE IF EXISTS IMPORT_TABLE_LOCK;
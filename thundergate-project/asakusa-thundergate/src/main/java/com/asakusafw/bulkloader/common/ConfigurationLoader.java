@@ -239,6 +239,18 @@ public final class ConfigurationLoader {
                         "Importerのリトライインターバルの設定が不正。設定値：" + impRetryInterval);
             }
         }
+        // Importerでレコードを抽出する際の最大並列数
+        String impMaxParallel = prop.getProperty(Constants.PROP_KEY_IMP_MAX_PARALLEL);
+        if (isEmpty(impMaxParallel)) {
+            prop.setProperty(
+                    Constants.PROP_KEY_IMP_MAX_PARALLEL,
+                    Constants.PROP_DEFAULT_IMP_MAX_PARALLEL);
+        } else {
+            if (!isNumber(impMaxParallel, 1)) {
+                throw new BulkLoaderSystemException(CLASS, "TG-COMMON-00008",
+                        "Importerでレコードを抽出する際の最大並列数の設定が不正。設定値：" + impMaxParallel);
+            }
+        }
         // Exportファイルの圧縮時のバッファサイズ
         String expBufSize = prop.getProperty(Constants.PROP_KEY_EXP_FILE_COMP_BUFSIZE);
         if (isEmpty(expBufSize)) {
@@ -287,6 +299,16 @@ public final class ConfigurationLoader {
                         "エクスポート処理でExport対象テーブルにデータをコピーする時の最大レコード数の設定が不正。設定値：" + copyMaxRecord);
             }
         }
+        // エクスポート処理でExport対象テーブルにデータをコピーする方式
+        String copyMode = prop.getProperty(Constants.PROP_KEY_EXP_COPY_MODE);
+        if (isEmpty(copyMode)) {
+            prop.setProperty(
+                    Constants.PROP_KEY_EXP_COPY_MODE,
+                    Constants.PROP_DEFAULT_EXP_COPY_MODE);
+        } else if (ExportCopyMode.find(copyMode) == null) {
+            throw new BulkLoaderSystemException(CLASS, "TG-COMMON-00008",
+                    "エクスポート処理でExport対象テーブルにデータをコピーする方式の設定が不正。設定値：" + copyMode);
+        }
         // インポート正常終了時のTSVファイル削除有無
         String deleteImportTsv = prop.getProperty(Constants.PROP_KEY_IMPORT_TSV_DELETE);
         TsvDeleteType delImpType = TsvDeleteType.find(deleteImportTsv);
@@ -489,6 +511,20 @@ public final class ConfigurationLoader {
             throw new BulkLoaderSystemException(CLASS, "TG-COMMON-00011",
                     "DB接続ユーザーに対するパスワードが設定されていません");
         }
+
+        // デフォルト値の設定
+        // DBMSに対する処理の最大並列数
+        String maxParallel = prop.getProperty(Constants.PROP_KEY_DB_MAX_PARALLEL);
+        if (isEmpty(maxParallel)) {
+            prop.setProperty(
+                    Constants.PROP_KEY_DB_MAX_PARALLEL,
+                    Constants.PROP_DEFAULT_DB_MAX_PARALLEL);
+        } else {
+            if (!isNumber(maxParallel, 1)) {
+                throw new BulkLoaderSystemException(CLASS, "TG-COMMON-00011",
+                        "DBMSに対する処理の最大並列数の設定が不正。設定値：" + maxParallel);
+            }
+        }
     }
 
     /**
@@ -163,6 +163,11 @@ public final class Constants {
      * プロパティKEY Importerのリトライインターバル。
      */
     public static final String PROP_KEY_IMP_RETRY_INTERVAL = "import.retry-interval";
+    /**
+     * プロパティKEY インポート処理でImport対象テーブルからレコードを抽出する際の最大並列数。
+     * @since 0.4.0
+     */
+    public static final String PROP_KEY_IMP_MAX_PARALLEL = "import.max-parallel";
     /**
      * プロパティKEY エクスポートファイルを置くディレクトリのトップディレクトリ。
      */
@@ -189,6 +194,12 @@ public final class Constants {
      * プロパティKEY エクスポート処理でExport対象テーブルにデータをコピーする時の最大レコード数。
      */
     public static final String PROP_KEY_EXP_COPY_MAX_RECORD = "export.data-copy-max-count";
+    /**
+     * プロパティKEY エクスポート処理でExport対象テーブルにデータをコピーする方式。
+     * @see ExportCopyMode
+     * @since 0.4.0
+     */
+    public static final String PROP_KEY_EXP_COPY_MODE = "export.data-copy-mode";
     /**
      * システムカラムのカラム名 システムID。
      */
@@ -242,6 +253,11 @@ public final class Constants {
      * プロパティKEY DBMSのコネクション取得時のチューニングパラ-メータを記述したプロパティファイル。
      */
     public static final String PROP_KEY_NAME_DB_PRAM = "jdbc.param-conf-path";
+    /**
+     * The property key of maximum number of parallel database operations (connections) for each target.
+     * @since 0.4.0
+     */
+    public static final String PROP_KEY_DB_MAX_PARALLEL = "jdbc.max-parallel";
 
     /*
      * bulkloader-conf-hc.properties
@@ -300,6 +316,11 @@ public final class Constants {
      * プロパティデフォルト値 Importerのリトライインターバル。
      */
     public static final String PROP_DEFAULT_IMP_RETRY_INTERVAL = "10";
+    /**
+     * プロパティデフォルト値 インポート処理でImport対象テーブルからレコードを抽出する際の最大並列数。
+     * @since 0.4.0
+     */
+    public static final String PROP_DEFAULT_IMP_MAX_PARALLEL = "1";
     /**
      * プロパティデフォルト値 Exportファイルの圧縮有無。
      */
@@ -324,6 +345,11 @@ public final class Constants {
      * プロパティデフォルト値 エクスポート処理でExport対象テーブルにデータをコピーする時の最大レコード数。
      */
     public static final String PROP_DEFAULT_EXP_COPY_MAX_RECORD = "100000";
+    /**
+     * プロパティデフォルト値 エクスポート処理でExport対象テーブルにデータをコピーする方式。
+     * @since 0.4.0
+     */
+    public static final String PROP_DEFAULT_EXP_COPY_MODE = ExportCopyMode.CHUNK.getSymbol();
     /**
      * プロパティデフォルト値 ファイル入出力位置をワーキングディレクトリベースとするか。
      */
@@ -345,6 +371,11 @@ public final class Constants {
      * @since 0.2.3
      */
     public static final String PROP_DEFAULT_CACHE_BUILDER_PARALLEL = "1";
+    /**
+     * The default property value of maximum number of parallel database operations for each target.
+     * @since 0.4.0
+     */
+    public static final String PROP_DEFAULT_DB_MAX_PARALLEL = "1";
 
     /*
      * パス・ファイル名の固定値
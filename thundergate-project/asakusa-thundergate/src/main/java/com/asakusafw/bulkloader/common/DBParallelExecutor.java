@@ -0,0 +1,239 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.bulkloader.common;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.asakusafw.bulkloader.exception.BulkLoaderSystemException;
+import com.asakusafw.bulkloader.log.Log;
+
+/**
+ * DBMSに対する複数の処理を、ターゲットごとの最大並列数の範囲で並列に実行する。
+ * <p>
+ * 最大並列数はDBMSの接続情報を記述したプロパティファイルの
+ * {@link Constants#PROP_KEY_DB_MAX_PARALLEL}で指定し、同時に利用するコネクション数の上限となる。
+ * 最大並列数が1の場合や処理が1つしかない場合は、呼び出し元のコネクションを利用して順番に処理を実行する。
+ * それ以外の場合、並列数分のスレッドが処理の一覧の先頭から順に処理を取り出して実行する。
+ * 呼び出し元のコネクションは処理の完了待ちの間は利用されないため、スレッドの1つに貸し出し、
+ * 残りのスレッドがそれぞれ専用のコネクションを取得する。
+ * このため、同時に利用するコネクション数は呼び出し元のコネクションを含めて最大並列数以下となる。
+ * 呼び出し元のコネクションには、未コミットの更新を残さないこと。
+ * </p>
+ * <p>
+ * いずれかの処理が失敗した場合、そのコネクションをロールバックして未着手の処理は実行せず、
+ * 全てのスレッドが終了した後に最初に発生した例外をスローする。
+ * </p>
+ * @since 0.4.0
+ */
+public final class DBParallelExecutor {
+
+    static final Log LOG = new Log(DBParallelExecutor.class);
+
+    private static final Class<?> CLASS = DBParallelExecutor.class;
+
+    private DBParallelExecutor() {
+        return;
+    }
+
+    /**
+     * 現在のターゲットに対する処理の最大並列数を返す。
+     * @return 最大並列数
+     */
+    public static int getMaxParallel() {
+        String value = ConfigurationLoader.getProperty(Constants.PROP_KEY_DB_MAX_PARALLEL);
+        if (value == null || value.trim().isEmpty()) {
+            return Integer.parseInt(Constants.PROP_DEFAULT_DB_MAX_PARALLEL);
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(Constants.PROP_DEFAULT_DB_MAX_PARALLEL);
+        }
+    }
+
+    /**
+     * 処理の一覧を現在のターゲットの最大並列数の範囲で実行する。
+     * @param conn 処理に利用するコネクション（並列に実行する場合はスレッドの1つに貸し出す）
+     * @param tasks 処理の一覧
+     * @throws BulkLoaderSystemException いずれかの処理に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    public static void execute(
+            Connection conn,
+            List<? extends Task> tasks) throws BulkLoaderSystemException {
+        execute(conn, tasks, getMaxParallel());
+    }
+
+    /**
+     * 処理の一覧を指定の最大並列数の範囲で実行する。
+     * @param conn 処理に利用するコネクション（並列に実行する場合はスレッドの1つに貸し出す）
+     * @param tasks 処理の一覧
+     * @param maxParallel 最大並列数
+     * @throws BulkLoaderSystemException いずれかの処理に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が指定された場合
+     */
+    public static void execute(
+            Connection conn,
+            List<? extends Task> tasks,
+            int maxParallel) throws BulkLoaderSystemException {
+        if (conn == null) {
+            throw new IllegalArgumentException("conn must not be null"); //$NON-NLS-1$
+        }
+        if (tasks == null) {
+            throw new IllegalArgumentException("tasks must not be null"); //$NON-NLS-1$
+        }
+        int parallel = Math.min(maxParallel, tasks.size());
+        if (parallel <= 1) {
+            for (Task task : tasks) {
+                task.run(conn);
+            }
+            return;
+        }
+        LOG.debugMessage("Executing {0} database operations with {1} connections", tasks.size(), parallel);
+        Queue<Task> queue = new ConcurrentLinkedQueue<Task>(tasks);
+        AtomicBoolean canceled = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(parallel, new WorkerThreadFactory());
+        try {
+            List<Future<Void>> running = new ArrayList<Future<Void>>();
+            for (int i = 0; i < parallel; i++) {
+                // 完了待ちの間は呼び出し元のコネクションを利用しないため、最初のスレッドに貸し出す
+                running.add(executor.submit(new Worker(queue, canceled, i == 0 ? conn : null)));
+            }
+            BulkLoaderSystemException failure = null;
+            for (Future<Void> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    canceled.set(true);
+                    if (failure == null) {
+                        failure = toSystemException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            canceled.set(true);
+            executor.shutdownNow();
+            throw new BulkLoaderSystemException(e, CLASS, "TG-COMMON-00029",
+                    "処理の完了待ちで割り込みが発生");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static BulkLoaderSystemException toSystemException(Throwable cause) {
+        if (cause instanceof BulkLoaderSystemException) {
+            return (BulkLoaderSystemException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new BulkLoaderSystemException(cause, CLASS, "TG-COMMON-00029", String.valueOf(cause));
+    }
+
+    /**
+     * DBMSに対する処理。
+     * @since 0.4.0
+     */
+    public interface Task {
+
+        /**
+         * 処理を実行する。
+         * コネクションは他の処理と共有される場合があるため、処理の最後で必要に応じてコミットすること。
+         * @param conn この処理で利用するコネクション
+         * @throws BulkLoaderSystemException 処理に失敗した場合
+         */
+        void run(Connection conn) throws BulkLoaderSystemException;
+    }
+
+    private static final class Worker implements Callable<Void> {
+
+        private final Queue<Task> queue;
+
+        private final AtomicBoolean canceled;
+
+        private final Connection lent;
+
+        Worker(Queue<Task> queue, AtomicBoolean canceled, Connection lent) {
+            assert queue != null;
+            assert canceled != null;
+            this.queue = queue;
+            this.canceled = canceled;
+            this.lent = lent;
+        }
+
+        @Override
+        public Void call() throws BulkLoaderSystemException {
+            Connection conn = null;
+            boolean succeeded = false;
+            try {
+                conn = lent != null ? lent : DBConnection.getConnection();
+                while (canceled.get() == false) {
+                    Task task = queue.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    task.run(conn);
+                }
+                succeeded = true;
+                return null;
+            } finally {
+                if (succeeded == false) {
+                    canceled.set(true);
+                    if (conn != null) {
+                        try {
+                            DBConnection.rollback(conn);
+                        } catch (BulkLoaderSystemException e) {
+                            LOG.log(e);
+                        }
+                    }
+                }
+                if (lent == null) {
+                    DBConnection.closeConn(conn);
+                }
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        WorkerThreadFactory() {
+            return;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, String.format("thundergate-db-%d", counter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
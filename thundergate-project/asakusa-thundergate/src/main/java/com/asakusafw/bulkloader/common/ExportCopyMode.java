@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.bulkloader.common;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * エクスポートテンポラリテーブルからExport対象テーブルへのコピー方式を表すENUM。
+ * @since 0.4.0
+ */
+public enum ExportCopyMode {
+
+    /**
+     * コピー方式-1つのコネクションで、コピー最大件数ずつ順にコピーする。
+     */
+    CHUNK("CHUNK", "SEQUENTIAL"),
+
+    /**
+     * コピー方式-テンポラリSIDの範囲ごとに分割し、範囲ごとのトランザクションで並列にコピーする。
+     */
+    RANGE("RANGE", "PARALLEL"),
+    ;
+
+    private String symbol;
+
+    Set<String> keys;
+
+    private ExportCopyMode(String symbol, String... alternatives) {
+        this.symbol = symbol;
+        this.keys = new HashSet<String>();
+        this.keys.add(symbol);
+        Collections.addAll(this.keys, alternatives);
+    }
+
+    /**
+     * コピー方式を返す。
+     * @return コピー方式
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * {@code String}に対する定数を返す。
+     * @param key String
+     * @return 対応する定数、存在しない場合は{@code null}
+     */
+    public static ExportCopyMode find(String key) {
+        if (key == null) {
+            return null;
+        }
+        return SymbolToExportCopyMode.REVERSE_DICTIONARY.get(key);
+    }
+
+    private static class SymbolToExportCopyMode {
+        static final Map<String, ExportCopyMode> REVERSE_DICTIONARY;
+        static {
+            Map<String, ExportCopyMode> map = new TreeMap<String, ExportCopyMode>(String.CASE_INSENSITIVE_ORDER);
+            for (ExportCopyMode elem : ExportCopyMode.values()) {
+                for (String key : elem.keys) {
+                    map.put(key, elem);
+                }
+            }
+            REVERSE_DICTIONARY = Collections.unmodifiableMap(map);
+        }
+    }
+}
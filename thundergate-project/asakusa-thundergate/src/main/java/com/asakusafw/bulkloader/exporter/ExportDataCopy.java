@@ -19,6 +19,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.asakusafw.bulkloader.bean.ExportTargetTableBean;
@@ -28,6 +30,8 @@ import com.asakusafw.bulkloader.common.ConfigurationLoader;
 import com.asakusafw.bulkloader.common.Constants;
 import com.asakusafw.bulkloader.common.DBAccessUtil;
 import com.asakusafw.bulkloader.common.DBConnection;
+import com.asakusafw.bulkloader.common.DBParallelExecutor;
+import com.asakusafw.bulkloader.common.ExportCopyMode;
 import com.asakusafw.bulkloader.common.ExportTempTableStatus;
 import com.asakusafw.bulkloader.exception.BulkLoaderSystemException;
 import com.asakusafw.bulkloader.log.Log;
@@ -35,13 +39,39 @@ import com.asakusafw.bulkloader.log.Log;
 
 /**
  * エクスポートテンポラリテーブルからデータをコピーするクラス。
+ * <p>
+ * コピー方式が{@link ExportCopyMode#RANGE}の場合、エクスポートテンポラリテーブルを
+ * 最初に調べたテンポラリSIDの範囲でコピー最大件数ごとに分割し、範囲ごとに新規・重複・更新レコードのコピーと
+ * エクスポートテンポラリテーブルからの削除を1つのトランザクションで行う。
+ * 各範囲はDBMSの最大並列数の範囲で並列にコピーする。
+ * 分割した範囲とその状態はエクスポート範囲管理テーブル（{@code EXPORT_TEMP_RANGE}）に記録し、
+ * 範囲のコピー完了は範囲ごとのトランザクション内で記録するため、再実行時には未完了の範囲のみがコピーされる。
+ * 並列でのコピー中にデッドロック（SQLState {@code 40001}）が発生した範囲はロールバックし、
+ * 全ての範囲のコピーが終了した後に1つのコネクションで順番にコピーし直す。
+ * </p>
  * @author yuta.shirai
- *
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class ExportDataCopy {
 
     static final Log LOG = new Log(ExportDataCopy.class);
 
+    /**
+     * デッドロックによりトランザクションがロールバックされたことを表すSQLState。
+     */
+    private static final String SQL_STATE_DEADLOCK = "40001";
+
+    /**
+     * MySQLでデッドロックが発生したことを表すエラーコード（ER_LOCK_DEADLOCK）。
+     */
+    private static final int MYSQL_ER_LOCK_DEADLOCK = 1213;
+
+    /**
+     * デッドロックが発生した範囲を順番にコピーし直す際の最大試行回数。
+     */
+    private static final int MAX_DEADLOCK_RETRY = 3;
+
     /**
      * 更新レコードのコピーが全て終了したかを表すフラグ。
      */
@@ -54,6 +84,7 @@ public class ExportDataCopy {
      */
     public boolean copyData(ExporterBean bean) {
         long maxRecord = Long.parseLong(ConfigurationLoader.getProperty(Constants.PROP_KEY_EXP_COPY_MAX_RECORD));
+        ExportCopyMode copyMode = ExportCopyMode.find(ConfigurationLoader.getProperty(Constants.PROP_KEY_EXP_COPY_MODE));
         Connection conn = null;
         try {
             // コネクションを取得する
@@ -87,14 +118,22 @@ public class ExportDataCopy {
                 // 新規レコードにレコードロックを取得するかを判定
                 boolean isGetRecordLock = getRecordLock(bean.getJobflowSid(), tableName, conn);
 
-                // 新規レコードのコピー（重複していないデータ）
-                copyNonDuplicateData(expTableBean, tableName, maxRecord, bean.getJobflowSid(), isGetRecordLock, conn);
-                if (expTableBean.isDuplicateCheck()) {
-                    // 新規レコードのコピー（重複していいるデータ（重複チェックを行う場合のみ））
-                    copyDuplicateData(expTableBean, maxRecord, conn);
+                boolean tableCopyEnd;
+                if (copyMode == ExportCopyMode.RANGE) {
+                    // テンポラリSIDの範囲ごとにコピー
+                    tableCopyEnd = copyDataByRange(
+                            expTableBean, tableName, maxRecord, bean.getJobflowSid(), isGetRecordLock, conn);
+                } else {
+                    // 新規レコードのコピー（重複していないデータ）
+                    copyNonDuplicateData(
+                            expTableBean, tableName, maxRecord, bean.getJobflowSid(), isGetRecordLock, conn);
+                    if (expTableBean.isDuplicateCheck()) {
+                        // 新規レコードのコピー（重複していいるデータ（重複チェックを行う場合のみ））
+                        copyDuplicateData(expTableBean, maxRecord, conn);
+                    }
+                    // 更新レコードのコピー
+                    tableCopyEnd = copyUpdateData(expTableBean, tableName, maxRecord, bean.getJobflowSid(), conn);
                 }
-                // 更新レコードのコピー
-                boolean tableCopyEnd = copyUpdateData(expTableBean, tableName, maxRecord, bean.getJobflowSid(), conn);
                 if (tableCopyEnd) {
                     // コピー完了を記録
                     copyExit(bean.getJobflowSid(), tableName, conn);
@@ -147,7 +186,7 @@ public class ExportDataCopy {
         return false;
     }
     /**
-     * テンポラリ管理テーブルにコピー完了を記録する。
+     * テンポラリ管理テーブルにコピー完了を記録し、エクスポート範囲管理テーブルの当該テーブルのレコードを削除する。
      * @param jobflowSid ジョブフローSID
      * @param tableName テーブル名
      * @param conn コネクション
@@ -172,6 +211,7 @@ public class ExportDataCopy {
                     stmt,
                     loadExitSql,
                     new String[] { ExportTempTableStatus.COPY_EXIT.getStatus(), jobflowSid, tableName });
+            deleteRanges(jobflowSid, tableName, conn);
             DBConnection.commit(conn);
             LOG.info("TG-EXPORTER-06011", jobflowSid, tableName);
         } catch (SQLException e) {
@@ -182,6 +222,32 @@ public class ExportDataCopy {
             DBConnection.closePs(stmt);
         }
     }
+    /**
+     * エクスポート範囲管理テーブルから当該テーブルのレコードを削除する。
+     * コミットは呼び出し元で行う。
+     * @param jobflowSid ジョブフローSID
+     * @param tableName テーブル名
+     * @param conn コネクション
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private void deleteRanges(
+            String jobflowSid,
+            String tableName,
+            Connection conn) throws BulkLoaderSystemException {
+        String sql = "DELETE FROM EXPORT_TEMP_RANGE WHERE JOBFLOW_SID=? AND TABLE_NAME=?";
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            stmt.setString(1, jobflowSid);
+            stmt.setString(2, tableName);
+            DBConnection.executeUpdate(stmt, sql, new String[] { jobflowSid, tableName });
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e, this.getClass(), sql, new String[] { jobflowSid, tableName });
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+    }
     /**
      * 重複データを異常データテーブルにコピー（Insert）する。
      * コピーしたデータはエクスポートテンポラリテーブルから削除する。
@@ -301,6 +367,31 @@ public class ExportDataCopy {
      */
     private String createDupSelectCondition(ExportTargetTableBean expTableBean,
             long maxRecord) {
+        StringBuilder selectCondition = createDupBaseCondition(expTableBean);
+        selectCondition.append(" ORDER BY ");
+        selectCondition.append(Constants.getTemporarySidColumnName());
+        selectCondition.append(" LIMIT ");
+        selectCondition.append(maxRecord);
+        return selectCondition.toString();
+    }
+    /**
+     * テンポラリSIDの範囲を指定した重複データコピーの検索条件を作成する。
+     * @param expTableBean Export対象テーブルの設定を保持するBean
+     * @param from テンポラリSIDの下限（この値を含む）
+     * @param to テンポラリSIDの上限（この値を含む）
+     * @return 検索条件
+     */
+    private String createDupRangeCondition(ExportTargetTableBean expTableBean, long from, long to) {
+        StringBuilder selectCondition = createDupBaseCondition(expTableBean);
+        appendTempSidRange(selectCondition, from, to);
+        return selectCondition.toString();
+    }
+    /**
+     * 重複データコピーの検索条件のうち、コピーするレコードを表す部分を作成する。
+     * @param expTableBean Export対象テーブルの設定を保持するBean
+     * @return 検索条件
+     */
+    private StringBuilder createDupBaseCondition(ExportTargetTableBean expTableBean) {
         StringBuilder selectCondition = new StringBuilder(" WHERE ");
         selectCondition.append(Constants.getSidColumnName());
         selectCondition.append(" IS NULL AND EXISTS (SELECT ");
@@ -318,11 +409,7 @@ public class ExportDataCopy {
         selectCondition.append(".");
         selectCondition.append(Constants.getTemporarySidColumnName());
         selectCondition.append(")");
-        selectCondition.append(" ORDER BY ");
-        selectCondition.append(Constants.getTemporarySidColumnName());
-        selectCondition.append(" LIMIT ");
-        selectCondition.append(maxRecord);
-        return selectCondition.toString();
+        return selectCondition;
     }
     /**
      * 更新データをExport対象テーブルにコピーする。
@@ -349,8 +436,6 @@ public class ExportDataCopy {
         String minTempSidSql = createMinTempSidSql(Constants.getTemporarySidColumnName(), tempTableName);
         // テンポラリSIDの最大値を調べるSQL
         String maxTempSidSql = createMaxTempSidSql(Constants.getTemporarySidColumnName(), tempTableName);
-        // テンポラリテーブルのレコード件数を調べるSQL
-        String countTempSql = createCountTempSql(tempTableName);
         // 検索条件を作成
         String selectCondition = createUpdateSelectCondition(tableName, tempTableName);
         // コピーのSQLを作成
@@ -358,8 +443,6 @@ public class ExportDataCopy {
                 tableName, tempTableName, selectCondition, tableBean.getExportTableColumns());
         // 削除のSQLを作成
         String delSql = createUpdateRecordDelSql(tableName, tempTableName);
-        // エラーになったレコードを取得するSQLを作成
-        String errTempSql = createSelectErrTempRecordSql(tempTableName);
 
         PreparedStatement stmt = null;
 
@@ -463,6 +546,389 @@ public class ExportDataCopy {
             }
         }
 
+        return checkCopyResult(tableBean, tableName, conn);
+    }
+    /**
+     * エクスポートテンポラリテーブルのテンポラリSIDの範囲ごとに、データをExport対象テーブルにコピーする。
+     * テンポラリSIDの範囲は最初に一度だけ調べ、コピー最大件数ごとに分割してエクスポート範囲管理テーブルに記録する。
+     * 再実行時はエクスポート範囲管理テーブルに記録された範囲のうち、コピーが完了していない範囲のみをコピーする。
+     * 新規レコードに対してレコードロックを取得する場合、コピーした新規レコードのSIDを連続した値として扱うため、
+     * 範囲ごとのコピーは並列に行わない。
+     * 並列でのコピー中にデッドロックが発生した範囲は、他の範囲のコピーが終了した後に順番にコピーし直す。
+     * @param tableBean Export対象テーブルの設定を保持するBean
+     * @param tableName Export対象テーブル名
+     * @param maxRecord 範囲ごとのテンポラリSIDの最大件数
+     * @param jobflowSid ジョブフローSID
+     * @param isGetRecordLock レコードロックを取得するか
+     * @param conn コネクション
+     * @return 全てのレコードをコピーした場合：true、更新対象レコードが見つからなかった場合：false
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private boolean copyDataByRange(
+            final ExportTargetTableBean tableBean,
+            final String tableName,
+            long maxRecord,
+            final String jobflowSid,
+            final boolean isGetRecordLock,
+            Connection conn) throws BulkLoaderSystemException {
+        String tempTableName = tableBean.getExportTempTableName();
+        List<CopyRange> ranges = selectRanges(jobflowSid, tableName, conn);
+        if (ranges.isEmpty()) {
+            Long minTempSid = selectTempSid(
+                    createMinTempSidSql(Constants.getTemporarySidColumnName(), tempTableName), conn);
+            Long maxTempSid = selectTempSid(
+                    createMaxTempSidSql(Constants.getTemporarySidColumnName(), tempTableName), conn);
+            if (minTempSid != null && maxTempSid != null) {
+                for (long from = minTempSid; from <= maxTempSid; from += maxRecord) {
+                    long to = Math.min(from + (maxRecord - 1), maxTempSid);
+                    ranges.add(new CopyRange(from, to, ExportTempTableStatus.BEFORE_COPY));
+                    if (to == maxTempSid) {
+                        break;
+                    }
+                }
+                insertRanges(jobflowSid, tableName, ranges, conn);
+            }
+        }
+        // 範囲ごとのトランザクションを開始する前に、このコネクションのトランザクションを終了しておく
+        DBConnection.commit(conn);
+
+        final List<CopyRange> deferred = Collections.synchronizedList(new ArrayList<CopyRange>());
+        List<DBParallelExecutor.Task> tasks = new ArrayList<DBParallelExecutor.Task>();
+        for (final CopyRange range : ranges) {
+            if (range.status == ExportTempTableStatus.COPY_EXIT) {
+                // 前回の実行でコピーが完了している範囲はコピーしない
+                continue;
+            }
+            tasks.add(new DBParallelExecutor.Task() {
+                @Override
+                public void run(Connection taskConn) throws BulkLoaderSystemException {
+                    try {
+                        copyRange(tableBean, tableName, jobflowSid, isGetRecordLock, range, taskConn);
+                    } catch (BulkLoaderSystemException e) {
+                        if (isDeadlock(e) == false) {
+                            throw e;
+                        }
+                        DBConnection.rollback(taskConn);
+                        LOG.warn(e, "TG-EXPORTER-06012", tableName, range.from, range.to);
+                        deferred.add(range);
+                    }
+                }
+            });
+        }
+        int maxParallel = isGetRecordLock ? 1 : DBParallelExecutor.getMaxParallel();
+        LOG.debugMessage("Copying {0} of {1} ranges of {2} into {3} (parallel={4})",
+                tasks.size(), ranges.size(), tempTableName, tableName, maxParallel);
+        DBParallelExecutor.execute(conn, tasks, maxParallel);
+
+        // デッドロックが発生した範囲は、他の範囲のコピーが終了した後に順番にコピーし直す
+        synchronized (deferred) {
+            for (CopyRange range : deferred) {
+                for (int attempt = 1;; attempt++) {
+                    try {
+                        copyRange(tableBean, tableName, jobflowSid, isGetRecordLock, range, conn);
+                        break;
+                    } catch (BulkLoaderSystemException e) {
+                        if (attempt >= MAX_DEADLOCK_RETRY || isDeadlock(e) == false) {
+                            throw e;
+                        }
+                        DBConnection.rollback(conn);
+                        LOG.warn(e, "TG-EXPORTER-06012", tableName, range.from, range.to);
+                    }
+                }
+            }
+        }
+        return checkCopyResult(tableBean, tableName, conn);
+    }
+    /**
+     * エクスポート範囲管理テーブルから、Export対象テーブルのテンポラリSIDの範囲の一覧を取得する。
+     * @param jobflowSid ジョブフローSID
+     * @param tableName Export対象テーブル名
+     * @param conn コネクション
+     * @return テンポラリSIDの範囲の一覧、範囲が記録されていない場合は空のリスト
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private List<CopyRange> selectRanges(
+            String jobflowSid,
+            String tableName,
+            Connection conn) throws BulkLoaderSystemException {
+        String sql = "SELECT RANGE_FROM,RANGE_TO,RANGE_STATUS "
+            + "FROM EXPORT_TEMP_RANGE "
+            + "WHERE JOBFLOW_SID=? AND TABLE_NAME=? "
+            + "ORDER BY RANGE_FROM";
+        List<CopyRange> results = new ArrayList<CopyRange>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            stmt.setString(1, jobflowSid);
+            stmt.setString(2, tableName);
+            rs = DBConnection.executeQuery(stmt, sql, new String[] { jobflowSid, tableName });
+            while (rs.next()) {
+                results.add(new CopyRange(
+                        rs.getLong("RANGE_FROM"),
+                        rs.getLong("RANGE_TO"),
+                        ExportTempTableStatus.find(rs.getString("RANGE_STATUS"))));
+            }
+            return results;
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e,
+                    this.getClass(),
+                    sql,
+                    new String[] { jobflowSid, tableName });
+        } finally {
+            DBConnection.closeRs(rs);
+            DBConnection.closePs(stmt);
+        }
+    }
+    /**
+     * エクスポート範囲管理テーブルにテンポラリSIDの範囲の一覧を記録する。
+     * @param jobflowSid ジョブフローSID
+     * @param tableName Export対象テーブル名
+     * @param ranges テンポラリSIDの範囲の一覧
+     * @param conn コネクション
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private void insertRanges(
+            String jobflowSid,
+            String tableName,
+            List<CopyRange> ranges,
+            Connection conn) throws BulkLoaderSystemException {
+        String sql = "INSERT INTO EXPORT_TEMP_RANGE "
+            + "(JOBFLOW_SID,TABLE_NAME,RANGE_FROM,RANGE_TO,RANGE_STATUS) "
+            + "VALUES (?,?,?,?,?)";
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            for (CopyRange range : ranges) {
+                stmt.setString(1, jobflowSid);
+                stmt.setString(2, tableName);
+                stmt.setLong(3, range.from);
+                stmt.setLong(4, range.to);
+                stmt.setString(5, range.status.getStatus());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e,
+                    this.getClass(),
+                    sql,
+                    new String[] { jobflowSid, tableName, String.valueOf(ranges.size()) });
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+    }
+    /**
+     * エクスポート範囲管理テーブルに、テンポラリSIDの範囲のコピー完了を記録する。
+     * コミットは呼び出し元で行う。
+     * @param jobflowSid ジョブフローSID
+     * @param tableName Export対象テーブル名
+     * @param range テンポラリSIDの範囲
+     * @param conn コネクション
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private void rangeExit(
+            String jobflowSid,
+            String tableName,
+            CopyRange range,
+            Connection conn) throws BulkLoaderSystemException {
+        String sql = "UPDATE EXPORT_TEMP_RANGE "
+            + "SET RANGE_STATUS=? "
+            + "WHERE JOBFLOW_SID=? AND TABLE_NAME=? AND RANGE_FROM=?";
+        String[] parameters = new String[] {
+                ExportTempTableStatus.COPY_EXIT.getStatus(), jobflowSid, tableName, String.valueOf(range.from)
+        };
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            stmt.setString(1, ExportTempTableStatus.COPY_EXIT.getStatus());
+            stmt.setString(2, jobflowSid);
+            stmt.setString(3, tableName);
+            stmt.setLong(4, range.from);
+            DBConnection.executeUpdate(stmt, sql, parameters);
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e, this.getClass(), sql, parameters);
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+    }
+    /**
+     * 例外の原因がデッドロックまたはロック待ちのタイムアウトによるトランザクションのロールバックかを判定する。
+     * @param exception 判定する例外
+     * @return デッドロックによるものである場合は{@code true}
+     */
+    static boolean isDeadlock(Throwable exception) {
+        for (Throwable current = exception; current != null; current = current.getCause()) {
+            if (current instanceof SQLException) {
+                SQLException e = (SQLException) current;
+                if (SQL_STATE_DEADLOCK.equals(e.getSQLState()) || e.getErrorCode() == MYSQL_ER_LOCK_DEADLOCK) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    /**
+     * テンポラリSIDの範囲に含まれるデータをExport対象テーブルにコピーし、
+     * コピーしたデータをエクスポートテンポラリテーブルから削除して、範囲のコピー完了を記録してコミットする。
+     * @param tableBean Export対象テーブルの設定を保持するBean
+     * @param tableName Export対象テーブル名
+     * @param jobflowSid ジョブフローSID
+     * @param isGetRecordLock レコードロックを取得するか
+     * @param range テンポラリSIDの範囲
+     * @param conn コネクション
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private void copyRange(
+            ExportTargetTableBean tableBean,
+            String tableName,
+            String jobflowSid,
+            boolean isGetRecordLock,
+            CopyRange range,
+            Connection conn) throws BulkLoaderSystemException {
+        String tempTableName = tableBean.getExportTempTableName();
+        long from = range.from;
+        long to = range.to;
+
+        // 新規レコードのコピー（重複していないデータ）
+        String insertCondition = createInsertRangeCondition(tableBean, from, to);
+        String insertSql = createInsertCopySql(tableName, tableBean, insertCondition);
+        if (executeUpdate(insertSql, conn) > 0) {
+            String recordLockSql = null;
+            if (isGetRecordLock) {
+                recordLockSql = lockCopiedRecords(tableName, tableBean, jobflowSid, insertCondition, conn);
+            }
+            String delSql = createInsertDelSql(tableBean, insertCondition);
+            executeUpdate(delSql, conn);
+            LOG.info("TG-EXPORTER-06007",
+                    tableName,
+                    tempTableName,
+                    insertSql,
+                    recordLockSql,
+                    delSql);
+        }
+
+        // 新規レコードのコピー（重複していいるデータ（重複チェックを行う場合のみ））
+        if (tableBean.isDuplicateCheck()) {
+            String dupCondition = createDupRangeCondition(tableBean, from, to);
+            String dupSql = createDupInsertSql(tableBean, dupCondition);
+            if (executeUpdate(dupSql, conn) > 0) {
+                String delSql = createDupCopyDelSql(tableBean, dupCondition);
+                executeUpdate(delSql, conn);
+                LOG.info("TG-EXPORTER-06008",
+                        tableBean.getErrorTableName(),
+                        tempTableName,
+                        dupSql,
+                        delSql);
+            }
+        }
+
+        // 更新レコードのコピー
+        String updateSql = createUpdateCopySql(
+                tableName,
+                tempTableName,
+                createUpdateSelectCondition(tableName, tempTableName),
+                tableBean.getExportTableColumns());
+        String updateDelSql = createUpdateRecordDelSql(tableName, tempTableName);
+        if (executeUpdate(updateSql, conn, from, to) > 0) {
+            executeUpdate(updateDelSql, conn, from, to);
+        }
+        LOG.info("TG-EXPORTER-06009",
+                tableName,
+                tempTableName,
+                updateSql,
+                updateDelSql,
+                from,
+                to);
+
+        // 範囲のコピー完了を記録し、範囲ごとにコミット
+        rangeExit(jobflowSid, tableName, range, conn);
+        DBConnection.commit(conn);
+    }
+    /**
+     * テンポラリSIDの最小値または最大値を取得する。
+     * @param sql テンポラリSIDの最小値または最大値を調べるSQL
+     * @param conn コネクション
+     * @return テンポラリSIDの最小値または最大値、レコードが存在しない場合は{@code null}
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private Long selectTempSid(String sql, Connection conn) throws BulkLoaderSystemException {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            rs = DBConnection.executeQuery(stmt, sql, new String[0]);
+            rs.next();
+            long value = rs.getLong(1);
+            if (rs.wasNull()) {
+                return null;
+            }
+            return value;
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e,
+                    this.getClass(),
+                    sql,
+                    new String[0]);
+        } finally {
+            DBConnection.closeRs(rs);
+            DBConnection.closePs(stmt);
+        }
+    }
+    /**
+     * 更新系のSQLを実行する。
+     * @param sql SQL
+     * @param conn コネクション
+     * @param parameters SQLのパラメータ
+     * @return 更新件数
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private int executeUpdate(String sql, Connection conn, long... parameters) throws BulkLoaderSystemException {
+        String[] parameterStrings = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            parameterStrings[i] = String.valueOf(parameters[i]);
+        }
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setLong(i + 1, parameters[i]);
+            }
+            return DBConnection.executeUpdate(stmt, sql, parameterStrings);
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e,
+                    this.getClass(),
+                    sql,
+                    parameterStrings);
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+    }
+    /**
+     * エクスポートテンポラリテーブルに残っているレコードを調べ、全てのレコードをコピーしたかを判定する。
+     * レコードが残っている場合はエラーになったレコードをログに出力する。
+     * @param tableBean Export対象テーブルの設定を保持するBean
+     * @param tableName Export対象テーブル名
+     * @param conn コネクション
+     * @return 全てのレコードをコピーした場合：true、更新対象レコードが見つからなかった場合：false
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private boolean checkCopyResult(
+            ExportTargetTableBean tableBean,
+            String tableName,
+            Connection conn) throws BulkLoaderSystemException {
+        String tempTableName = tableBean.getExportTempTableName();
+        // テンポラリテーブルのレコード件数を調べるSQL
+        String countTempSql = createCountTempSql(tempTableName);
+        // エラーになったレコードを取得するSQLを作成
+        String errTempSql = createSelectErrTempRecordSql(tempTableName);
+
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
         // テンポラリテーブルの件数を取得
         long tempCount = 0;
         try {
@@ -740,63 +1206,7 @@ public class ExportDataCopy {
 
             // コピーしたレコードにレコードロックフラグを立てる
             if (isGetRecordLock) {
-                // コピーしたデータのSIDを取得するSQL
-                String selectSidSql = "SELECT LAST_INSERT_ID()";
-
-                // ユーザー変数を設定するSQL
-                StringBuilder userParam = new StringBuilder("@EXPORT_");
-                userParam.append(tableName);
-                userParam.append("_SID");
-                String setUserParamSql = createSetUserParamSql(tableName, userParam);
-
-                // レコードロックフラグを立てるSQL
-                recordLockSql = createRecordLockSql(tableName, expTableBean, jobflowSid, userParam, selectCondition);
-
-                // コピーしたレコードのSIDを取得
-                ResultSet rs = null;
-                String sid = null;
-                try {
-                    stmt = conn.prepareStatement(selectSidSql);
-                    rs = DBConnection.executeQuery(stmt, selectSidSql, new String[0]);
-                    rs.next();
-                    sid =  rs.getString(1);
-                } catch (SQLException e) {
-                    throw BulkLoaderSystemException.createInstanceCauseBySQLException(
-                            e, this.getClass(), selectSidSql, new String[0]);
-                } finally {
-                    DBConnection.closeRs(rs);
-                    DBConnection.closePs(stmt);
-                }
-
-                // ユーザー変数をセットする
-                try {
-                    stmt = conn.prepareStatement(setUserParamSql);
-                    long param = Long.valueOf(sid) - 1L;
-                    stmt.setLong(1, param);
-                    copyCount = DBConnection.executeUpdate(
-                            stmt,
-                            setUserParamSql,
-                            new String[]{ String.valueOf(param) });
-                } catch (SQLException e) {
-                    throw BulkLoaderSystemException.createInstanceCauseBySQLException(
-                            e, this.getClass(), setUserParamSql, new String[] { sid });
-                } finally {
-                    DBConnection.closePs(stmt);
-                }
-                // ロックフラグを立てる
-                // Import時にレコードロックを取得している場合のみレコードロックを取得する
-                try {
-                    stmt = conn.prepareStatement(recordLockSql.toString());
-                    copyCount = DBConnection.executeUpdate(
-                            stmt,
-                            recordLockSql.toString(),
-                            new String[0]);
-                } catch (SQLException e) {
-                    throw BulkLoaderSystemException.createInstanceCauseBySQLException(
-                            e, this.getClass(), recordLockSql.toString(), new String[0]);
-                } finally {
-                    DBConnection.closePs(stmt);
-                }
+                recordLockSql = lockCopiedRecords(tableName, expTableBean, jobflowSid, selectCondition, conn);
             }
 
             // コピーしたレコードを削除
@@ -818,6 +1228,82 @@ public class ExportDataCopy {
                     delSql);
         }
     }
+    /**
+     * コピーした新規レコードにレコードロックフラグを立てる。
+     * @param tableName Export対象テーブル名
+     * @param expTableBean Export対象テーブルの設定を保持するBean
+     * @param jobflowSid ジョブフローSID
+     * @param selectCondition コピーした新規レコードの検索条件
+     * @param conn コネクション
+     * @return レコードロックフラグを立てるSQL
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private String lockCopiedRecords(
+            String tableName,
+            ExportTargetTableBean expTableBean,
+            String jobflowSid,
+            String selectCondition,
+            Connection conn) throws BulkLoaderSystemException {
+        PreparedStatement stmt = null;
+        // コピーしたデータのSIDを取得するSQL
+        String selectSidSql = "SELECT LAST_INSERT_ID()";
+
+        // ユーザー変数を設定するSQL
+        StringBuilder userParam = new StringBuilder("@EXPORT_");
+        userParam.append(tableName);
+        userParam.append("_SID");
+        String setUserParamSql = createSetUserParamSql(tableName, userParam);
+
+        // レコードロックフラグを立てるSQL
+        String recordLockSql = createRecordLockSql(tableName, expTableBean, jobflowSid, userParam, selectCondition);
+
+        // コピーしたレコードのSIDを取得
+        ResultSet rs = null;
+        String sid = null;
+        try {
+            stmt = conn.prepareStatement(selectSidSql);
+            rs = DBConnection.executeQuery(stmt, selectSidSql, new String[0]);
+            rs.next();
+            sid =  rs.getString(1);
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e, this.getClass(), selectSidSql, new String[0]);
+        } finally {
+            DBConnection.closeRs(rs);
+            DBConnection.closePs(stmt);
+        }
+
+        // ユーザー変数をセットする
+        try {
+            stmt = conn.prepareStatement(setUserParamSql);
+            long param = Long.valueOf(sid) - 1L;
+            stmt.setLong(1, param);
+            DBConnection.executeUpdate(
+                    stmt,
+                    setUserParamSql,
+                    new String[]{ String.valueOf(param) });
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e, this.getClass(), setUserParamSql, new String[] { sid });
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+        // ロックフラグを立てる
+        // Import時にレコードロックを取得している場合のみレコードロックを取得する
+        try {
+            stmt = conn.prepareStatement(recordLockSql.toString());
+            DBConnection.executeUpdate(
+                    stmt,
+                    recordLockSql.toString(),
+                    new String[0]);
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e, this.getClass(), recordLockSql.toString(), new String[0]);
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+        return recordLockSql;
+    }
     /**
      * レコードロックフラグを立てるSQLを生成する。
      * @param tableName テーブル名
@@ -907,6 +1393,31 @@ public class ExportDataCopy {
      */
     private String createInsertselectcondition(
             ExportTargetTableBean expTableBean, long maxRecord) {
+        StringBuilder selectCondition = createInsertBaseCondition(expTableBean);
+        selectCondition.append(" ORDER BY ");
+        selectCondition.append(Constants.getTemporarySidColumnName());
+        selectCondition.append(" LIMIT ");
+        selectCondition.append(maxRecord);
+        return selectCondition.toString();
+    }
+    /**
+     * テンポラリSIDの範囲を指定した新規レコードコピーの検索条件を作成する。
+     * @param expTableBean Export対象テーブルの設定を保持するBean
+     * @param from テンポラリSIDの下限（この値を含む）
+     * @param to テンポラリSIDの上限（この値を含む）
+     * @return 検索条件
+     */
+    private String createInsertRangeCondition(ExportTargetTableBean expTableBean, long from, long to) {
+        StringBuilder selectCondition = createInsertBaseCondition(expTableBean);
+        appendTempSidRange(selectCondition, from, to);
+        return selectCondition.toString();
+    }
+    /**
+     * 新規レコードコピーの検索条件のうち、コピーするレコードを表す部分を作成する。
+     * @param expTableBean Export対象テーブルの設定を保持するBean
+     * @return 検索条件
+     */
+    private StringBuilder createInsertBaseCondition(ExportTargetTableBean expTableBean) {
         StringBuilder selectCondition = new StringBuilder(" WHERE ");
         selectCondition.append(Constants.getSidColumnName());
         selectCondition.append(" IS NULL AND NOT EXISTS (SELECT ");
@@ -922,11 +1433,21 @@ public class ExportDataCopy {
         selectCondition.append(".");
         selectCondition.append(Constants.getTemporarySidColumnName());
         selectCondition.append(")");
-        selectCondition.append(" ORDER BY ");
+        return selectCondition;
+    }
+    /**
+     * 検索条件にテンポラリSIDの範囲を追加する。
+     * @param selectCondition 検索条件
+     * @param from テンポラリSIDの下限（この値を含む）
+     * @param to テンポラリSIDの上限（この値を含む）
+     */
+    private void appendTempSidRange(StringBuilder selectCondition, long from, long to) {
+        selectCondition.append(" AND ");
         selectCondition.append(Constants.getTemporarySidColumnName());
-        selectCondition.append(" LIMIT ");
-        selectCondition.append(maxRecord);
-        return selectCondition.toString();
+        selectCondition.append(" BETWEEN ");
+        selectCondition.append(from);
+        selectCondition.append(" AND ");
+        selectCondition.append(to);
     }
     /**
      * 新規レコードに対してレコードロックを取得するか判定する。
@@ -980,4 +1501,22 @@ public class ExportDataCopy {
     public boolean isUpdateEnd() {
         return copyEnd;
     }
+
+    /**
+     * テンポラリSIDの範囲とそのコピー状態。
+     */
+    private static final class CopyRange {
+
+        final long from;
+
+        final long to;
+
+        final ExportTempTableStatus status;
+
+        CopyRange(long from, long to, ExportTempTableStatus status) {
+            this.from = from;
+            this.to = to;
+            this.status = status;
+        }
+    }
 }
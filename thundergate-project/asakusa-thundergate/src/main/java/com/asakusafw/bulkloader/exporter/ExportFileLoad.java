@@ -32,6 +32,7 @@ import com.asakusafw.bulkloader.common.ConfigurationLoader;
 import com.asakusafw.bulkloader.common.Constants;
 import com.asakusafw.bulkloader.common.DBAccessUtil;
 import com.asakusafw.bulkloader.common.DBConnection;
+import com.asakusafw.bulkloader.common.DBParallelExecutor;
 import com.asakusafw.bulkloader.common.ExportTempTableStatus;
 import com.asakusafw.bulkloader.exception.BulkLoaderSystemException;
 import com.asakusafw.bulkloader.log.Log;
@@ -130,143 +131,165 @@ public class ExportFileLoad {
     }
     /**
      * 中間TSVファイルをエクスポートテンポラリテーブルにLoadする。
-     * Loadが終わったテーブルに対して重複チェックを行い、ロード完了を記録する
+     * Loadが終わったテーブルに対して重複チェックを行い、ロード完了を記録する。
+     * テーブルごとのLoadはDBMSの最大並列数の範囲で並列に行い、
+     * 同一テーブルに対するファイルのLoadからロード完了の記録までは1つのコネクションで順に行う。
      * @param bean パラメータを保持するBean
      * @param conn コネクション
      * @throws BulkLoaderSystemException SQL例外が発生した場合
      */
-    private void loadFile(ExporterBean bean, Connection conn) throws BulkLoaderSystemException {
+    private void loadFile(final ExporterBean bean, Connection conn) throws BulkLoaderSystemException {
+        // 中間TSVファイルをロードする
+        List<DBParallelExecutor.Task> tasks = new ArrayList<DBParallelExecutor.Task>();
+        for (final String tableName : bean.getExportTargetTableList()) {
+            tasks.add(new DBParallelExecutor.Task() {
+                @Override
+                public void run(Connection taskConn) throws BulkLoaderSystemException {
+                    loadTable(bean, tableName, taskConn);
+                }
+            });
+        }
+        DBParallelExecutor.execute(conn, tasks);
+    }
+    /**
+     * 指定のExport対象テーブルに対する中間TSVファイルをエクスポートテンポラリテーブルにLoadする。
+     * Loadが終わったら重複チェックを行い、ロード完了を記録する
+     * @param bean パラメータを保持するBean
+     * @param tableName Export対象テーブル名
+     * @param conn コネクション
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private void loadTable(
+            ExporterBean bean,
+            String tableName,
+            Connection conn) throws BulkLoaderSystemException {
         // ロード完了を記録するSQL
         String loadExitSql = "UPDATE EXPORT_TEMP_TABLE "
             + "SET TEMP_TABLE_STATUS=? "
             + "WHERE JOBFLOW_SID=? AND TABLE_NAME=?";
 
-        // 中間TSVファイルをロードする
-        List<String> list = bean.getExportTargetTableList();
-        for (String tableName : list) {
-            ExportTargetTableBean tableBean = bean.getExportTargetTable(tableName);
-            List<File> exportFileList = tableBean.getExportFiles();
-
-            long recordCount = 0;
-            // Export対象テーブルに該当するファイル数分繰り返す
-            for (File file : exportFileList) {
-                // ファイルをDBにロードする
-                recordCount += load(
-                        tableBean.getExportTempTableName(),
-                        file,
-                        tableBean.getExportTsvColumn(),
-                        conn);
-                LOG.info("TG-EXPORTER-03004",
-                        bean.getJobflowSid(),
-                        tableName,
-                        tableBean.getExportTempTableName(),
-                        file.getAbsolutePath());
-            }
-            LOG.info("TG-PROFILE-01003",
-                    bean.getTargetName(),
-                    bean.getBatchId(),
-                    bean.getJobflowId(),
-                    bean.getExecutionId(),
+        ExportTargetTableBean tableBean = bean.getExportTargetTable(tableName);
+        List<File> exportFileList = tableBean.getExportFiles();
+
+        long recordCount = 0;
+        // Export対象テーブルに該当するファイル数分繰り返す
+        for (File file : exportFileList) {
+            // ファイルをDBにロードする
+            recordCount += load(
+                    tableBean.getExportTempTableName(),
+                    file,
+                    tableBean.getExportTsvColumn(),
+                    conn);
+            LOG.info("TG-EXPORTER-03004",
+                    bean.getJobflowSid(),
                     tableName,
-                    recordCount);
+                    tableBean.getExportTempTableName(),
+                    file.getAbsolutePath());
+        }
+        LOG.info("TG-PROFILE-01003",
+                bean.getTargetName(),
+                bean.getBatchId(),
+                bean.getJobflowId(),
+                bean.getExecutionId(),
+                tableName,
+                recordCount);
 
-            PreparedStatement stmt = null;
-            if (tableBean.isDuplicateCheck()) {
-                // 重複フラグを立てるSQL
-                StringBuilder duplicateCheckSql = new StringBuilder("INSERT INTO ");
-                duplicateCheckSql.append(tableBean.getDuplicateFlagTableName());
-                duplicateCheckSql.append("(");
-                duplicateCheckSql.append(Constants.getTemporarySidColumnName());
+        PreparedStatement stmt = null;
+        if (tableBean.isDuplicateCheck()) {
+            // 重複フラグを立てるSQL
+            StringBuilder duplicateCheckSql = new StringBuilder("INSERT INTO ");
+            duplicateCheckSql.append(tableBean.getDuplicateFlagTableName());
+            duplicateCheckSql.append("(");
+            duplicateCheckSql.append(Constants.getTemporarySidColumnName());
+            duplicateCheckSql.append(")");
+            duplicateCheckSql.append(" SELECT ");
+            duplicateCheckSql.append(Constants.getTemporarySidColumnName());
+            duplicateCheckSql.append(" FROM ");
+            duplicateCheckSql.append(tableBean.getExportTempTableName());
+            duplicateCheckSql.append(" WHERE ");
+            duplicateCheckSql.append("EXISTS(SELECT * FROM ");
+            duplicateCheckSql.append(tableName);
+
+            String forceIndex = ConfigurationLoader.getForceIndexName(
+                    bean.getBatchId(), bean.getJobflowId(), tableName);
+            if (forceIndex != null) {
+                duplicateCheckSql.append(" FORCE INDEX (");
+                duplicateCheckSql.append(forceIndex);
                 duplicateCheckSql.append(")");
-                duplicateCheckSql.append(" SELECT ");
-                duplicateCheckSql.append(Constants.getTemporarySidColumnName());
-                duplicateCheckSql.append(" FROM ");
-                duplicateCheckSql.append(tableBean.getExportTempTableName());
-                duplicateCheckSql.append(" WHERE ");
-                duplicateCheckSql.append("EXISTS(SELECT * FROM ");
-                duplicateCheckSql.append(tableName);
+            }
 
-                String forceIndex = ConfigurationLoader.getForceIndexName(
-                        bean.getBatchId(), bean.getJobflowId(), tableName);
-                if (forceIndex != null) {
-                    duplicateCheckSql.append(" FORCE INDEX (");
-                    duplicateCheckSql.append(forceIndex);
-                    duplicateCheckSql.append(")");
-                }
+            duplicateCheckSql.append(" WHERE ");
+            List<String> key = tableBean.getKeyColumns();
 
-                duplicateCheckSql.append(" WHERE ");
-                List<String> key = tableBean.getKeyColumns();
-
-                int keySize = key.size();
-                for (int i = 0; i < keySize; i++) {
-                    duplicateCheckSql.append(tableName);
-                    duplicateCheckSql.append(".");
-                    duplicateCheckSql.append(key.get(i));
-                    duplicateCheckSql.append("=");
-                    duplicateCheckSql.append(tableBean.getExportTempTableName());
-                    duplicateCheckSql.append(".");
-                    duplicateCheckSql.append(key.get(i));
-                    if (i < keySize - 1) {
-                        duplicateCheckSql.append(" AND ");
-                    }
-                }
-                duplicateCheckSql.append(") AND ");
+            int keySize = key.size();
+            for (int i = 0; i < keySize; i++) {
+                duplicateCheckSql.append(tableName);
+                duplicateCheckSql.append(".");
+                duplicateCheckSql.append(key.get(i));
+                duplicateCheckSql.append("=");
                 duplicateCheckSql.append(tableBean.getExportTempTableName());
                 duplicateCheckSql.append(".");
-                duplicateCheckSql.append(Constants.getSidColumnName());
-                duplicateCheckSql.append(" IS NULL");
-
-                // 重複チェックを行い、重複しているレコードには重複フラグを立てる
-                try {
-                    stmt = conn.prepareStatement(duplicateCheckSql.toString());
-                    DBConnection.executeUpdate(stmt, duplicateCheckSql.toString(), new String[0]);
-                } catch (SQLException e) {
-                    throw BulkLoaderSystemException.createInstanceCauseBySQLException(
-                            e,
-                            this.getClass(),
-                            duplicateCheckSql.toString(),
-                            new String[0]);
-                } finally {
-                    DBConnection.closePs(stmt);
+                duplicateCheckSql.append(key.get(i));
+                if (i < keySize - 1) {
+                    duplicateCheckSql.append(" AND ");
                 }
             }
+            duplicateCheckSql.append(") AND ");
+            duplicateCheckSql.append(tableBean.getExportTempTableName());
+            duplicateCheckSql.append(".");
+            duplicateCheckSql.append(Constants.getSidColumnName());
+            duplicateCheckSql.append(" IS NULL");
 
-            // エクスポートテンポラリ管理テーブルにロード完了を記録する
+            // 重複チェックを行い、重複しているレコードには重複フラグを立てる
             try {
-                stmt = conn.prepareStatement(loadExitSql);
-                stmt.setString(1, ExportTempTableStatus.LOAD_EXIT.getStatus());
-                stmt.setString(2, bean.getJobflowSid());
-                stmt.setString(3, tableName);
-                int updateCount = DBConnection.executeUpdate(
-                        stmt,
-                        loadExitSql,
-                        new String[] {
-                                ExportTempTableStatus.LOAD_EXIT.getStatus(),
-                                bean.getJobflowSid(),
-                                tableName
-                        });
-                if (updateCount == 0) {
-                    throw new BulkLoaderSystemException(getClass(), "TG-EXPORTER-03001",
-                            // TODO MessageFormat.formatの検討
-                            "テンポラリ管理テーブルのレコードを更新できませんでした。ジョブフローSID：" + bean.getJobflowSid(),
-                            " Export対象テーブル名：" + tableName);
-                }
-                DBConnection.commit(conn);
-                LOG.info("TG-EXPORTER-03005",
-                        bean.getJobflowSid(), tableName, tableBean.getExportTempTableName());
+                stmt = conn.prepareStatement(duplicateCheckSql.toString());
+                DBConnection.executeUpdate(stmt, duplicateCheckSql.toString(), new String[0]);
             } catch (SQLException e) {
                 throw BulkLoaderSystemException.createInstanceCauseBySQLException(
                         e,
                         this.getClass(),
-                        loadExitSql,
-                        new String[]{
+                        duplicateCheckSql.toString(),
+                        new String[0]);
+            } finally {
+                DBConnection.closePs(stmt);
+            }
+        }
+
+        // エクスポートテンポラリ管理テーブルにロード完了を記録する
+        try {
+            stmt = conn.prepareStatement(loadExitSql);
+            stmt.setString(1, ExportTempTableStatus.LOAD_EXIT.getStatus());
+            stmt.setString(2, bean.getJobflowSid());
+            stmt.setString(3, tableName);
+            int updateCount = DBConnection.executeUpdate(
+                    stmt,
+                    loadExitSql,
+                    new String[] {
                             ExportTempTableStatus.LOAD_EXIT.getStatus(),
                             bean.getJobflowSid(),
                             tableName
-                        });
-            } finally {
-                DBConnection.closePs(stmt);
+                    });
+            if (updateCount == 0) {
+                throw new BulkLoaderSystemException(getClass(), "TG-EXPORTER-03001",
+                        // TODO MessageFormat.formatの検討
+                        "テンポラリ管理テーブルのレコードを更新できませんでした。ジョブフローSID：" + bean.getJobflowSid(),
+                        " Export対象テーブル名：" + tableName);
             }
+            DBConnection.commit(conn);
+            LOG.info("TG-EXPORTER-03005",
+                    bean.getJobflowSid(), tableName, tableBean.getExportTempTableName());
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e,
+                    this.getClass(),
+                    loadExitSql,
+                    new String[]{
+                        ExportTempTableStatus.LOAD_EXIT.getStatus(),
+                        bean.getJobflowSid(),
+                        tableName
+                    });
+        } finally {
+            DBConnection.closePs(stmt);
         }
     }
     /**
@@ -80,6 +80,7 @@ public class TempTableDelete {
 
     /**
      * エクスポートテンポラリ管理テーブルのレコードを削除する。
+     * レコードを削除した場合、エクスポート範囲管理テーブルに残っているレコードも削除する。
      * @param jobflowSid ジョブフローSID
      * @param tableName テーブル名
      * @param isDeleteCopyIncomplete エクスポート対象テーブルへのコピーが終了していない場合も削除するか
@@ -109,6 +110,7 @@ public class TempTableDelete {
                     stmt,
                     sql.toString(),
                     new String[]{ jobflowSid, tableName });
+            deleteTempRangeRecord(jobflowSid, tableName, conn);
         } catch (SQLException e) {
             throw BulkLoaderSystemException.createInstanceCauseBySQLException(
                     e,
@@ -120,6 +122,43 @@ public class TempTableDelete {
         }
     }
 
+    /**
+     * エクスポート範囲管理テーブルのレコードを削除する。
+     * エクスポートテンポラリ管理テーブルのレコードが削除されている場合のみ削除する。
+     * @param jobflowSid ジョブフローSID
+     * @param tableName テーブル名
+     * @param conn コネクション
+     * @throws BulkLoaderSystemException SQL例外が発生した場合
+     */
+    private void deleteTempRangeRecord(
+            String jobflowSid,
+            String tableName,
+            Connection conn) throws BulkLoaderSystemException {
+        String sql = "DELETE FROM EXPORT_TEMP_RANGE "
+            + "WHERE JOBFLOW_SID=? AND TABLE_NAME=? "
+            + "AND NOT EXISTS (SELECT * FROM EXPORT_TEMP_TABLE "
+            + "WHERE EXPORT_TEMP_TABLE.JOBFLOW_SID=EXPORT_TEMP_RANGE.JOBFLOW_SID "
+            + "AND EXPORT_TEMP_TABLE.TABLE_NAME=EXPORT_TEMP_RANGE.TABLE_NAME)";
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            stmt.setString(1, jobflowSid);
+            stmt.setString(2, tableName);
+            DBConnection.executeUpdate(
+                    stmt,
+                    sql,
+                    new String[]{ jobflowSid, tableName });
+        } catch (SQLException e) {
+            throw BulkLoaderSystemException.createInstanceCauseBySQLException(
+                    e,
+                    DBAccessUtil.class,
+                    sql,
+                    new String[] { jobflowSid, tableName });
+        } finally {
+            DBConnection.closePs(stmt);
+        }
+    }
+
     /**
      * テンポラリテーブルを削除する。
      * 指定されたテーブルが存在しない場合は削除されない
@@ -22,14 +22,17 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 
 import com.asakusafw.bulkloader.bean.ImportBean;
 import com.asakusafw.bulkloader.bean.ImportTargetTableBean;
+import com.asakusafw.bulkloader.common.ConfigurationLoader;
 import com.asakusafw.bulkloader.common.Constants;
 import com.asakusafw.bulkloader.common.DBAccessUtil;
 import com.asakusafw.bulkloader.common.DBConnection;
+import com.asakusafw.bulkloader.common.DBParallelExecutor;
 import com.asakusafw.bulkloader.common.FileNameUtil;
 import com.asakusafw.bulkloader.common.ImportTableLockType;
 import com.asakusafw.bulkloader.exception.BulkLoaderSystemException;
@@ -38,7 +41,17 @@ import com.asakusafw.thundergate.runtime.cache.ThunderGateCacheSupport;
 
 /**
  * Importファイルを生成するクラス。
+ * <p>
+ * 既定では全てのImport対象テーブルを1つのコネクションで順に抽出する。
+ * {@link Constants#PROP_KEY_IMP_MAX_PARALLEL}に2以上を指定した場合、
+ * DBMSに対する処理の最大並列数の範囲でテーブルごとに別のトランザクションで並列に抽出する。
+ * この場合、テーブル間で同一時点の読み取り一貫性は保証されないため、
+ * ロックを取得しないテーブルを含むImportで、抽出中に他のアプリケーションが
+ * 複数のテーブルを更新する場合は並列に抽出しないこと。
+ * </p>
  * @author yuta.shirai
+ * @since 0.1.0
+ * @version 0.4.0
  */
 public class ImportFileCreate {
 
@@ -57,83 +70,24 @@ public class ImportFileCreate {
      * @param jobflowSid ジョブフローID (レコードロックを一つも行わない場合は{@code null}でもよい)
      * @return ファイル生成結果（成功した場合：true、失敗した場合：false）
      */
-    public boolean createImportFile(ImportBean bean, String jobflowSid) {
+    public boolean createImportFile(final ImportBean bean, final String jobflowSid) {
         Connection conn = null;
         try {
             // コネクションを取得する
             conn = DBConnection.getConnection();
 
-            // import対象テーブルの分繰り返してファイル作成を行う。
-            List<String> list = bean.getImportTargetTableList();
-            for (String tableName : list) {
-                ImportTargetTableBean targetTable = bean.getTargetTable(tableName);
-                ImportTableLockType lockType = targetTable.getLockType();
-
-                // ファイル名を生成
-                File importFile = FileNameUtil.createImportFilePath(
-                        bean.getTargetName(), bean.getJobflowId(), bean.getExecutionId(), tableName);
-
-                LOG.info("TG-IMPORTER-03003",
-                        tableName,
-                        lockType,
-                        importFile.getAbsolutePath());
-
-                // ファイルが既に存在する場合はファイルを削除する。
-                if (importFile.exists()) {
-                    if (!importFile.delete()) {
-                        // ファイルの削除に失敗した場合は異常終了する
-                        throw new BulkLoaderSystemException(getClass(), "TG-IMPORTER-03001",
-                                importFile.getName());
+            // import対象テーブルの分だけファイル作成処理を行う。
+            // 各テーブルのロックはTargetDataLockで取得済みのため、明示的に指定された場合はテーブルごとに並列に抽出してよい
+            List<DBParallelExecutor.Task> tasks = new ArrayList<DBParallelExecutor.Task>();
+            for (final String tableName : bean.getImportTargetTableList()) {
+                tasks.add(new DBParallelExecutor.Task() {
+                    @Override
+                    public void run(Connection taskConn) throws BulkLoaderSystemException {
+                        createImportFile(taskConn, bean, tableName, jobflowSid);
                     }
-                }
-
-                // ロック取得有無に応じてレコードを抽出し、ファイルを生成する
-                if (ImportTableLockType.TABLE.equals(lockType)) {
-                    // ロック取得有無が「テーブルロック」の場合、検索条件でレコードを抽出する
-                    createFileWithCondition(
-                            conn,
-                            tableName,
-                            targetTable,
-                            importFile);
-                } else if (ImportTableLockType.RECORD.equals(lockType)) {
-                    // ロック取得有無が「行ロック」の場合、ジョブフローIDを条件にレコードを抽出する
-                    createFileWithJobFlowSid(
-                            conn,
-                            tableName,
-                            targetTable,
-                            jobflowSid,
-                            importFile);
-                } else if (ImportTableLockType.NONE.equals(lockType)) {
-                    // ロック取得有無が「ロックを取得しない」の場合、検索条件でレコードを抽出する
-                    createFileWithCondition(
-                            conn,
-                            tableName,
-                            targetTable,
-                            importFile);
-                }
-                // ファイルが生成出来なかった場合は0byteのファイルを作成する。
-                if (!importFile.exists()) {
-                    try {
-                        if (!importFile.createNewFile()) {
-                            throw new BulkLoaderSystemException(getClass(), "TG-IMPORTER-03002");
-                        }
-                        LOG.info("TG-IMPORTER-03005",
-                                tableName,
-                                lockType,
-                                importFile.getAbsolutePath());
-                    } catch (IOException e) {
-                        throw new BulkLoaderSystemException(getClass(), "TG-IMPORTER-03002");
-                    }
-                } else {
-                    LOG.info("TG-IMPORTER-03004",
-                            tableName,
-                            lockType,
-                            importFile.getAbsolutePath());
-                }
-
-                // 生成したファイル名を追加
-                targetTable.setImportFile(importFile);
+                });
             }
+            DBParallelExecutor.execute(conn, tasks, getMaxParallel());
 
             // 正常終了
             return true;
@@ -146,6 +100,104 @@ public class ImportFileCreate {
         }
     }
 
+    /**
+     * Import対象テーブルからレコードを抽出する際の最大並列数を返す。
+     * インポート処理の最大並列数とDBMSに対する処理の最大並列数のうち、小さい方を利用する。
+     * @return 最大並列数
+     */
+    private int getMaxParallel() {
+        String value = ConfigurationLoader.getProperty(Constants.PROP_KEY_IMP_MAX_PARALLEL);
+        int importParallel;
+        if (value == null || value.trim().isEmpty()) {
+            importParallel = Integer.parseInt(Constants.PROP_DEFAULT_IMP_MAX_PARALLEL);
+        } else {
+            importParallel = Math.max(1, Integer.parseInt(value.trim()));
+        }
+        return Math.min(importParallel, DBParallelExecutor.getMaxParallel());
+    }
+
+    /**
+     * 指定のテーブルのレコードを抽出してImportファイルを生成する。
+     * @param conn コネクション
+     * @param bean パラメータを保持するBean
+     * @param tableName Import対象テーブル名
+     * @param jobflowSid ジョブフローID (レコードロックを行わない場合は{@code null}でもよい)
+     * @throws BulkLoaderSystemException 処理に失敗した場合
+     */
+    private void createImportFile(
+            Connection conn,
+            ImportBean bean,
+            String tableName,
+            String jobflowSid) throws BulkLoaderSystemException {
+        ImportTargetTableBean targetTable = bean.getTargetTable(tableName);
+        ImportTableLockType lockType = targetTable.getLockType();
+
+        // ファイル名を生成
+        File importFile = FileNameUtil.createImportFilePath(
+                bean.getTargetName(), bean.getJobflowId(), bean.getExecutionId(), tableName);
+
+        LOG.info("TG-IMPORTER-03003",
+                tableName,
+                lockType,
+                importFile.getAbsolutePath());
+
+        // ファイルが既に存在する場合はファイルを削除する。
+        if (importFile.exists()) {
+            if (!importFile.delete()) {
+                // ファイルの削除に失敗した場合は異常終了する
+                throw new BulkLoaderSystemException(getClass(), "TG-IMPORTER-03001",
+                        importFile.getName());
+            }
+        }
+
+        // ロック取得有無に応じてレコードを抽出し、ファイルを生成する
+        if (ImportTableLockType.TABLE.equals(lockType)) {
+            // ロック取得有無が「テーブルロック」の場合、検索条件でレコードを抽出する
+            createFileWithCondition(
+                    conn,
+                    tableName,
+                    targetTable,
+                    importFile);
+        } else if (ImportTableLockType.RECORD.equals(lockType)) {
+            // ロック取得有無が「行ロック」の場合、ジョブフローIDを条件にレコードを抽出する
+            createFileWithJobFlowSid(
+                    conn,
+                    tableName,
+                    targetTable,
+                    jobflowSid,
+                    importFile);
+        } else if (ImportTableLockType.NONE.equals(lockType)) {
+            // ロック取得有無が「ロックを取得しない」の場合、検索条件でレコードを抽出する
+            createFileWithCondition(
+                    conn,
+                    tableName,
+                    targetTable,
+                    importFile);
+        }
+        // ファイルが生成出来なかった場合は0byteのファイルを作成する。
+        if (!importFile.exists()) {
+            try {
+                if (!importFile.createNewFile()) {
+                    throw new BulkLoaderSystemException(getClass(), "TG-IMPORTER-03002");
+                }
+                LOG.info("TG-IMPORTER-03005",
+                        tableName,
+                        lockType,
+                        importFile.getAbsolutePath());
+            } catch (IOException e) {
+                throw new BulkLoaderSystemException(getClass(), "TG-IMPORTER-03002");
+            }
+        } else {
+            LOG.info("TG-IMPORTER-03004",
+                    tableName,
+                    lockType,
+                    importFile.getAbsolutePath());
+        }
+
+        // 生成したファイル名を追加
+        targetTable.setImportFile(importFile);
+    }
+
     /**
      * ジョブフローSIDを条件にレコードを抽出してファイルを生成する。
      * @param conn コネクション
@@ -332,6 +332,7 @@ public final class DBCleaner {
         String selSql = "SELECT EXPORT_TEMP_NAME,DUPLICATE_FLG_NAME FROM EXPORT_TEMP_TABLE";
         String dropSql = "DROP TABLE IF EXISTS ";
         String delSql = "DELETE FROM EXPORT_TEMP_TABLE";
+        String delRangeSql = "DELETE FROM EXPORT_TEMP_RANGE";
 
         // エクスポートテンポラリ管理テーブルを検索
         List<String> tempTableList = new ArrayList<String>();
@@ -406,6 +407,11 @@ public final class DBCleaner {
             int delCount = stmt.executeUpdate();
             printLog(
                     MessageFormat.format("エクスポートテンポラリ管理テーブルのレコードを全て削除しました。件数：{0}", delCount));
+            stmt.close();
+            stmt = conn.prepareStatement(delRangeSql);
+            int delRangeCount = stmt.executeUpdate();
+            printLog(
+                    MessageFormat.format("エクスポート範囲管理テーブルのレコードを全て削除しました。件数：{0}", delRangeCount));
         } catch (SQLException e) {
             throw new SystemException(e,
                     MessageFormat.format("エクスポートテンポラリ管理テーブルのレコードの削除に失敗しました。SQL：{0}", delSql));
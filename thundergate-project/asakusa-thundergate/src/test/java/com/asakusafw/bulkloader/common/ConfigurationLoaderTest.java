@@ -786,6 +786,7 @@ public class ConfigurationLoaderTest {
             e.printStackTrace();
         }
         assertEquals("100000", ConfigurationLoader.getProperty(Constants.PROP_KEY_EXP_COPY_MAX_RECORD));
+        assertEquals("CHUNK", ConfigurationLoader.getProperty(Constants.PROP_KEY_EXP_COPY_MODE));
     }
     /**
      * <p>
@@ -1069,6 +1070,52 @@ public class ConfigurationLoaderTest {
             assertTrue(e instanceof BulkLoaderSystemException);
         }
     }
+    /**
+     * <p>
+     * checkAndSetParamDBのテストケース
+     * 正常系：Importerでレコードを抽出する際の最大並列数が設定されていないケース(デフォルト値が設定される)
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void checkAndSetParamDB32() throws Exception {
+        ConfigurationLoader.init(propertys_db, true, false);
+        Properties p = ConfigurationLoader.getProperty();
+        p.setProperty("import.max-parallel", "");
+        ConfigurationLoader.setProperty(p);
+
+        try {
+            ConfigurationLoader.checkAndSetParamDB();
+        } catch (Exception e) {
+            fail();
+            e.printStackTrace();
+        }
+        assertEquals("1", ConfigurationLoader.getProperty(Constants.PROP_KEY_IMP_MAX_PARALLEL));
+    }
+    /**
+     * <p>
+     * checkAndSetParamDBのテストケース
+     * 異常系：Importerでレコードを抽出する際の最大並列数が不正なケース
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void checkAndSetParamDB33() throws Exception {
+        ConfigurationLoader.init(propertys_db, true, false);
+        Properties p = ConfigurationLoader.getProperty();
+        p.setProperty("import.max-parallel", "0");
+        ConfigurationLoader.setProperty(p);
+
+        try {
+            ConfigurationLoader.checkAndSetParamDB();
+            fail();
+        } catch (Exception e) {
+            e.printStackTrace();
+            assertTrue(e instanceof BulkLoaderSystemException);
+        }
+    }
     /**
      * <p>
      * getPropStartWithStringのテストケース
@@ -1152,6 +1199,7 @@ public class ConfigurationLoaderTest {
         assertEquals("__asakusa_ut_tg", ConfigurationLoader.getProperty("jdbc.user"));
         assertEquals("__asakusa_ut_tg", ConfigurationLoader.getProperty("jdbc.password"));
         assertEquals(PATH_DB_PARAMETER, ConfigurationLoader.getProperty("db.parameter"));
+        assertEquals("1", ConfigurationLoader.getProperty("jdbc.max-parallel"));
 
     }
     /**
@@ -1308,4 +1356,29 @@ public class ConfigurationLoaderTest {
             LOG.info(e.getCause(), e.getMessageId(), e.getMessageArgs());
         }
     }
+    /**
+     * <p>
+     * loadJDBCPropのテストケース
+     * 異常系：DBMSに対する処理の最大並列数が不正なケース
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void loadJDBCProp08() throws Exception {
+        ConfigurationLoader.init(propertys_db, false, false);
+        Properties p = ConfigurationLoader.getProperty();
+        p.setProperty("jdbc.driver", "com.mysql.jdbc.Driver");
+        p.setProperty("jdbc.url", "jdbc:mysql://localhost/asakusa");
+        p.setProperty("jdbc.user", "asakusa");
+        p.setProperty("jdbc.password", "asakusa");
+        p.setProperty("jdbc.max-parallel", "0");
+        ConfigurationLoader.setProperty(p);
+        try {
+            ConfigurationLoader.loadJDBCProp("target2");
+            fail();
+        } catch (BulkLoaderSystemException e) {
+            LOG.info(e.getCause(), e.getMessageId(), e.getMessageArgs());
+        }
+    }
 }
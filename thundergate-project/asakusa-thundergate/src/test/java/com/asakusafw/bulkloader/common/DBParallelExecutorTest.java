@@ -0,0 +1,188 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.bulkloader.common;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.asakusafw.bulkloader.exception.BulkLoaderSystemException;
+import com.asakusafw.bulkloader.testutil.UnitTestUtil;
+
+/**
+ * Test for {@link DBParallelExecutor}.
+ */
+public class DBParallelExecutorTest {
+
+    private static String jobflowId = "JOB_FLOW01";
+
+    private static String executionId = "JOB_FLOW01-001";
+
+    /**
+     * Initializes the test.
+     * @throws Exception if failed
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        UnitTestUtil.setUpBeforeClass();
+        UnitTestUtil.setUpEnv();
+    }
+
+    /**
+     * Cleans up the test.
+     * @throws Exception if failed
+     */
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        UnitTestUtil.tearDownAfterClass();
+    }
+
+    /**
+     * Initializes each test case.
+     * @throws Exception if failed
+     */
+    @Before
+    public void setUp() throws Exception {
+        BulkLoaderInitializer.initDBServer(
+                jobflowId, executionId,
+                Arrays.asList(new String[]{"bulkloader-conf-db.properties"}), "target1");
+        UnitTestUtil.startUp();
+    }
+
+    /**
+     * runs tasks sequentially with the given connection.
+     * @throws Exception if failed
+     */
+    @Test
+    public void sequential() throws Exception {
+        Connection conn = DBConnection.getConnection();
+        try {
+            Recorder recorder = new Recorder();
+            DBParallelExecutor.execute(conn, tasks(recorder, 5), 1);
+            assertEquals(5, recorder.count.get());
+            assertEquals(1, recorder.connections.size());
+            assertTrue(recorder.connections.contains(conn));
+        } finally {
+            DBConnection.closeConn(conn);
+        }
+    }
+
+    /**
+     * runs tasks in parallel, lending the caller's connection to one of the workers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel() throws Exception {
+        Connection conn = DBConnection.getConnection();
+        try {
+            Recorder recorder = new Recorder();
+            DBParallelExecutor.execute(conn, tasks(recorder, 10), 3);
+            assertEquals(10, recorder.count.get());
+            assertTrue(recorder.connections.size() <= 3);
+            for (Connection used : recorder.connections) {
+                if (used != conn) {
+                    assertTrue(used.isClosed());
+                }
+            }
+            assertFalse(conn.isClosed());
+        } finally {
+            DBConnection.closeConn(conn);
+        }
+    }
+
+    /**
+     * the number of tasks is less than the max parallel.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel_few_tasks() throws Exception {
+        Connection conn = DBConnection.getConnection();
+        try {
+            Recorder recorder = new Recorder();
+            DBParallelExecutor.execute(conn, tasks(recorder, 2), 10);
+            assertEquals(2, recorder.count.get());
+            assertTrue(recorder.connections.size() <= 2);
+        } finally {
+            DBConnection.closeConn(conn);
+        }
+    }
+
+    /**
+     * a task was failed.
+     * @throws Exception if failed
+     */
+    @Test
+    public void parallel_failure() throws Exception {
+        Connection conn = DBConnection.getConnection();
+        try {
+            Recorder recorder = new Recorder();
+            List<DBParallelExecutor.Task> tasks = new ArrayList<DBParallelExecutor.Task>();
+            tasks.add(new DBParallelExecutor.Task() {
+                @Override
+                public void run(Connection taskConn) throws BulkLoaderSystemException {
+                    throw new BulkLoaderSystemException(getClass(), "TG-COMMON-00029", "testing");
+                }
+            });
+            tasks.addAll(tasks(recorder, 10));
+            try {
+                DBParallelExecutor.execute(conn, tasks, 2);
+                fail();
+            } catch (BulkLoaderSystemException e) {
+                assertEquals("TG-COMMON-00029", e.getMessageId());
+            }
+        } finally {
+            DBConnection.closeConn(conn);
+        }
+    }
+
+    private List<DBParallelExecutor.Task> tasks(final Recorder recorder, int count) {
+        List<DBParallelExecutor.Task> results = new ArrayList<DBParallelExecutor.Task>();
+        for (int i = 0; i < count; i++) {
+            results.add(new DBParallelExecutor.Task() {
+                @Override
+                public void run(Connection conn) throws BulkLoaderSystemException {
+                    recorder.connections.add(conn);
+                    recorder.count.incrementAndGet();
+                }
+            });
+        }
+        return results;
+    }
+
+    private static class Recorder {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        final Set<Connection> connections =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>()));
+
+        Recorder() {
+            return;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.asakusafw.bulkloader.exporter;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -35,6 +36,8 @@ import com.asakusafw.bulkloader.bean.ExporterBean;
 import com.asakusafw.bulkloader.common.BulkLoaderInitializer;
 import com.asakusafw.bulkloader.common.ConfigurationLoader;
 import com.asakusafw.bulkloader.common.Constants;
+import com.asakusafw.bulkloader.common.ExportCopyMode;
+import com.asakusafw.bulkloader.exception.BulkLoaderSystemException;
 import com.asakusafw.bulkloader.testutil.UnitTestUtil;
 import com.asakusafw.testtools.TestUtils;
 import com.asakusafw.testtools.inspect.Cause;
@@ -669,4 +672,229 @@ public class ExportDataCopyTest {
             fail(util.getCauseMessage());
         }
     }
+    /**
+     *
+     * <p>
+     * copyDataのテストケース
+     * 正常系：テンポラリSIDの範囲ごとに複数のテーブルのコピーを行うケース
+     * ・IMPORT_TARGET1:テーブルロック
+     * ・IMPORT_TARGET2_レコードロック
+     * ・新規レコード：有り（最大コピー件数を超えない）
+     * ・更新レコード：有り（最大コピー件数を超えない）
+     * ・重複レコード：有り（最大コピー件数を超えない）
+     *
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void copyDataTest10() throws Exception {
+        // テストデータを指定
+        TestUtils util = new TestUtils(new File("src/test/data/exporter/ExportDataCopyTest/copyDataTest01"));
+        // テストデータをセット
+        util.storeToDatabase(false);
+
+        // プロパティを書き換え
+        Properties prop = ConfigurationLoader.getProperty();
+        prop.setProperty(Constants.PROP_KEY_EXP_COPY_MODE, ExportCopyMode.RANGE.getSymbol());
+        ConfigurationLoader.setProperty(prop);
+
+        // ExportBeanを生成
+        Map<String, ExportTargetTableBean> targetTable = new LinkedHashMap<String, ExportTargetTableBean>();
+        ExportTargetTableBean table1 = new ExportTargetTableBean();
+        table1.setDuplicateCheck(true);
+        table1.setExportTempTableName("TEMP_IMPORT_TARGET1");
+        table1.setDuplicateFlagTableName("TEMP_IMPORT_TARGET1_DF");
+        table1.setExportTableColumns(Arrays.asList(new String[]{"TEXTDATA1", "INTDATA1"}));
+        table1.setErrorTableName("IMPORT_TARGET1_ERROR");
+        table1.setErrorTableColumns(Arrays.asList(new String[]{"TEXTDATA1", "INTDATA1", "DATEDATA1"}));
+        table1.setErrorCodeColumn("ERROR_CODE");
+        table1.setErrorCode("ERR01");
+        targetTable.put("IMPORT_TARGET1", table1);
+        ExportTargetTableBean table2 = new ExportTargetTableBean();
+        table2.setDuplicateCheck(true);
+        table2.setExportTempTableName("TEMP_IMPORT_TARGET2");
+        table2.setDuplicateFlagTableName("TEMP_IMPORT_TARGET2_DF");
+        table2.setExportTableColumns(Arrays.asList(new String[]{"TEXTDATA2", "INTDATA2", "DATEDATA2"}));
+        table2.setErrorTableName("IMPORT_TARGET2_ERROR");
+        table2.setErrorTableColumns(Arrays.asList(new String[]{"TEXTDATA2", "INTDATA2", "DATEDATA2"}));
+        table2.setErrorCodeColumn("ERROR_CODE");
+        table2.setErrorCode("ERR02");
+        targetTable.put("IMPORT_TARGET2", table2);
+        ExporterBean bean = new ExporterBean();
+        bean.setExportTargetTable(targetTable);
+        bean.setJobflowSid("11");
+        bean.setJobflowId(jobflowId);
+        bean.setExecutionId(executionId);
+
+        // テスト対象クラスを生成
+        ExportDataCopy copy = new ExportDataCopy();
+
+        // テスト対象クラス実行
+        boolean result = copy.copyData(bean);
+
+        // 実行結果の検証
+        assertTrue(result);
+        assertTrue(copy.isUpdateEnd());
+
+        // DBの結果を検証
+        util.loadFromDatabase();
+        if (!util.inspect()) {
+            for (Cause cause : util.getCauses()) {
+                System.out.println(cause.getMessage());
+            }
+            fail(util.getCauseMessage());
+        }
+        assertTrue(UnitTestUtil.countAssert("IMPORT_TARGET1_RL", 2));
+        assertTrue(UnitTestUtil.countAssert("IMPORT_TARGET2_RL", 4));
+
+    }
+    /**
+     *
+     * <p>
+     * copyDataのテストケース
+     * 正常系：テンポラリSIDの範囲ごとに並列で新規レコードのコピーを行うケース
+     * ・テーブルロック：無し
+     * ・レコードロック：無し
+     * ・新規レコード：有り（最大コピー件数を超える）
+     * ・更新レコード：無し
+     * ・重複レコード：無し
+     *
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void copyDataTest11() throws Exception {
+        // テストデータを指定
+        TestUtils util = new TestUtils(new File("src/test/data/exporter/ExportDataCopyTest/copyDataTest02"));
+        // テストデータをセット
+        util.storeToDatabase(false);
+
+        // プロパティを書き換え
+        Properties prop = ConfigurationLoader.getProperty();
+        prop.setProperty(Constants.PROP_KEY_EXP_COPY_MAX_RECORD, "1");
+        prop.setProperty(Constants.PROP_KEY_EXP_COPY_MODE, ExportCopyMode.RANGE.getSymbol());
+        prop.setProperty(Constants.PROP_KEY_DB_MAX_PARALLEL, "2");
+        ConfigurationLoader.setProperty(prop);
+
+        // ExportBeanを生成
+        Map<String, ExportTargetTableBean> targetTable = new LinkedHashMap<String, ExportTargetTableBean>();
+        ExportTargetTableBean table1 = new ExportTargetTableBean();
+        table1.setDuplicateCheck(true);
+        table1.setExportTempTableName("TEMP_IMPORT_TARGET1");
+        table1.setDuplicateFlagTableName("TEMP_IMPORT_TARGET1_DF");
+        table1.setExportTableColumns(Arrays.asList(new String[]{"TEXTDATA1", "INTDATA1", "DATEDATA1"}));
+        table1.setErrorTableName("IMPORT_TARGET1_ERROR");
+        table1.setErrorTableColumns(Arrays.asList(new String[]{"TEXTDATA1", "INTDATA1", "DATEDATA1"}));
+        table1.setErrorCodeColumn("ERROR_CODE");
+        table1.setErrorCode("ERR01");
+        targetTable.put("IMPORT_TARGET1", table1);
+        ExporterBean bean = new ExporterBean();
+        bean.setExportTargetTable(targetTable);
+        bean.setJobflowSid("11");
+        bean.setJobflowId(jobflowId);
+        bean.setExecutionId(executionId);
+
+        // テスト対象クラスを生成
+        ExportDataCopy copy = new ExportDataCopy();
+
+        // テスト対象クラス実行
+        boolean result = copy.copyData(bean);
+
+        // 実行結果の検証
+        assertTrue(result);
+        assertTrue(copy.isUpdateEnd());
+
+        // DBの結果を検証
+        util.loadFromDatabase();
+        if (!util.inspect()) {
+            for (Cause cause : util.getCauses()) {
+                System.out.println(cause.getMessage());
+            }
+            fail(util.getCauseMessage());
+        }
+        // IMPORT_TARGET1_RLの内容を検証
+        assertTrue(UnitTestUtil.countAssert("IMPORT_TARGET1_RL", 0));
+        // コピーが完了した範囲の記録は削除されている
+        assertTrue(UnitTestUtil.countAssert("EXPORT_TEMP_RANGE", 0));
+    }
+    /**
+     *
+     * <p>
+     * copyDataのテストケース
+     * 正常系：テンポラリSIDの範囲ごとのコピーを再実行するケース
+     * ・前回の実行で全ての範囲のコピーが完了したことが記録されている
+     * ・コピーが完了した範囲はコピーし直さない
+     *
+     * </p>
+     *
+     * @throws Exception
+     */
+    @Test
+    public void copyDataTest12() throws Exception {
+        // テストデータを指定
+        TestUtils util = new TestUtils(new File("src/test/data/exporter/ExportDataCopyTest/copyDataTest02"));
+        // テストデータをセット
+        util.storeToDatabase(false);
+        UnitTestUtil.executeUpdate("DELETE FROM EXPORT_TEMP_RANGE");
+        UnitTestUtil.executeUpdate("INSERT INTO EXPORT_TEMP_RANGE "
+                + "(JOBFLOW_SID,TABLE_NAME,RANGE_FROM,RANGE_TO,RANGE_STATUS) "
+                + "VALUES (11,'IMPORT_TARGET1',0," + Long.MAX_VALUE + ",'3')");
+        try {
+            // プロパティを書き換え
+            Properties prop = ConfigurationLoader.getProperty();
+            prop.setProperty(Constants.PROP_KEY_EXP_COPY_MAX_RECORD, "1");
+            prop.setProperty(Constants.PROP_KEY_EXP_COPY_MODE, ExportCopyMode.RANGE.getSymbol());
+            prop.setProperty(Constants.PROP_KEY_DB_MAX_PARALLEL, "2");
+            ConfigurationLoader.setProperty(prop);
+
+            // ExportBeanを生成
+            Map<String, ExportTargetTableBean> targetTable = new LinkedHashMap<String, ExportTargetTableBean>();
+            ExportTargetTableBean table1 = new ExportTargetTableBean();
+            table1.setDuplicateCheck(true);
+            table1.setExportTempTableName("TEMP_IMPORT_TARGET1");
+            table1.setDuplicateFlagTableName("TEMP_IMPORT_TARGET1_DF");
+            table1.setExportTableColumns(Arrays.asList(new String[]{"TEXTDATA1", "INTDATA1", "DATEDATA1"}));
+            table1.setErrorTableName("IMPORT_TARGET1_ERROR");
+            table1.setErrorTableColumns(Arrays.asList(new String[]{"TEXTDATA1", "INTDATA1", "DATEDATA1"}));
+            table1.setErrorCodeColumn("ERROR_CODE");
+            table1.setErrorCode("ERR01");
+            targetTable.put("IMPORT_TARGET1", table1);
+            ExporterBean bean = new ExporterBean();
+            bean.setExportTargetTable(targetTable);
+            bean.setJobflowSid("11");
+            bean.setJobflowId(jobflowId);
+            bean.setExecutionId(executionId);
+
+            // テスト対象クラスを生成
+            ExportDataCopy copy = new ExportDataCopy();
+
+            // テスト対象クラス実行
+            boolean result = copy.copyData(bean);
+
+            // 実行結果の検証（完了済みの範囲はコピーされないため、テンポラリテーブルにレコードが残る）
+            assertTrue(result);
+            assertFalse(copy.isUpdateEnd());
+            assertTrue(UnitTestUtil.countAssert("IMPORT_TARGET1_RL", 0));
+            assertTrue(UnitTestUtil.countAssert("EXPORT_TEMP_RANGE", 1));
+        } finally {
+            UnitTestUtil.executeUpdate("DELETE FROM EXPORT_TEMP_RANGE");
+        }
+    }
+    /**
+     * デッドロックの判定を行うテストケース。
+     * @throws Exception
+     */
+    @Test
+    public void isDeadlock() throws Exception {
+        SQLException deadlock = new SQLException("deadlock", "40001", 1213);
+        assertTrue(ExportDataCopy.isDeadlock(deadlock));
+        assertTrue(ExportDataCopy.isDeadlock(new SQLException("deadlock", "HY000", 1213)));
+        assertTrue(ExportDataCopy.isDeadlock(
+                BulkLoaderSystemException.createInstanceCauseBySQLException(
+                        deadlock, getClass(), "SELECT 1", new String[0])));
+        assertFalse(ExportDataCopy.isDeadlock(new SQLException("duplicate", "23000", 1062)));
+        assertFalse(ExportDataCopy.isDeadlock(new IllegalStateException()));
+    }
 }
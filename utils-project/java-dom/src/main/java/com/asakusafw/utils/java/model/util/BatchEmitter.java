@@ -0,0 +1,239 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.utils.java.model.util;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.asakusafw.utils.java.model.syntax.CompilationUnit;
+import com.asakusafw.utils.java.model.syntax.TypeDeclaration;
+
+/**
+ * 複数のコンパイル単位をまとめて出力する。
+ * <p>
+ * それぞれのコンパイル単位は整形用のスレッドで並列にソースコードへ変換され、
+ * 書き出し用のスレッドで{@link Emitter}に出力される。
+ * 書き出し待ちのソースコードの個数には上限があり、それを超える場合は整形を一時的に停止する。
+ * </p>
+ * <p>
+ * 出力先の{@link Emitter}は複数のスレッドから同時に利用されるため、スレッドセーフである必要がある。
+ * </p>
+ * @since 0.4.0
+ */
+public class BatchEmitter {
+
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    private static final int BUFFERS_PER_THREAD = 4;
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final Emitter output;
+
+    private final int formatThreads;
+
+    private final int writeThreads;
+
+    private final AtomicLong totalChars = new AtomicLong();
+
+    private final AtomicLong totalUnits = new AtomicLong();
+
+    /**
+     * インスタンスを生成する。
+     * @param output 出力先
+     * @param formatThreads 整形に利用するスレッド数
+     * @param writeThreads 書き出しに利用するスレッド数
+     * @throws IllegalArgumentException 引数に{@code null}が含まれる場合、またはスレッド数が正でない場合
+     */
+    public BatchEmitter(Emitter output, int formatThreads, int writeThreads) {
+        if (output == null) {
+            throw new IllegalArgumentException("output must not be null"); //$NON-NLS-1$
+        }
+        if (formatThreads <= 0) {
+            throw new IllegalArgumentException("formatThreads must be > 0"); //$NON-NLS-1$
+        }
+        if (writeThreads <= 0) {
+            throw new IllegalArgumentException("writeThreads must be > 0"); //$NON-NLS-1$
+        }
+        this.output = output;
+        this.formatThreads = formatThreads;
+        this.writeThreads = writeThreads;
+    }
+
+    /**
+     * 指定のコンパイル単位をすべて出力する。
+     * <p>
+     * このメソッドはすべてのコンパイル単位の出力が完了するか、いずれかの出力に失敗するまで待機する。
+     * </p>
+     * @param units 出力するコンパイル単位の一覧
+     * @throws IOException 出力に失敗した場合
+     * @throws IllegalArgumentException 引数に{@code null}が含まれる場合
+     */
+    public void emit(List<? extends CompilationUnit> units) throws IOException {
+        if (units == null) {
+            throw new IllegalArgumentException("units must not be null"); //$NON-NLS-1$
+        }
+        for (CompilationUnit unit : units) {
+            if (unit == null) {
+                throw new IllegalArgumentException("units must not contain null"); //$NON-NLS-1$
+            }
+        }
+        if (units.isEmpty()) {
+            return;
+        }
+        final ExecutorService formatter = Executors.newFixedThreadPool(
+                formatThreads,
+                new WorkerFactory("format"));
+        final ExecutorService writer = Executors.newFixedThreadPool(
+                writeThreads,
+                new WorkerFactory("write"));
+        final Semaphore buffers = new Semaphore((formatThreads + writeThreads) * BUFFERS_PER_THREAD);
+        final Queue<Future<?>> writes = new ConcurrentLinkedQueue<Future<?>>();
+        try {
+            List<Future<?>> formats = new ArrayList<Future<?>>(units.size());
+            for (final CompilationUnit unit : units) {
+                formats.add(formatter.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        buffers.acquire();
+                        boolean submitted = false;
+                        try {
+                            final String content = format(unit);
+                            writes.add(writer.submit(new Callable<Void>() {
+                                @Override
+                                public Void call() throws IOException {
+                                    try {
+                                        write(unit, content);
+                                    } finally {
+                                        buffers.release();
+                                    }
+                                    return null;
+                                }
+                            }));
+                            submitted = true;
+                        } finally {
+                            if (submitted == false) {
+                                buffers.release();
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : formats) {
+                await(future);
+            }
+            for (Future<?> future : writes) {
+                await(future);
+            }
+        } finally {
+            formatter.shutdownNow();
+            writer.shutdownNow();
+        }
+    }
+
+    private String format(CompilationUnit unit) {
+        assert unit != null;
+        StringWriter buffer = new StringWriter(estimateSize());
+        PrintWriter printer = new PrintWriter(buffer);
+        Models.emit(unit, printer);
+        printer.close();
+        String content = buffer.toString();
+        totalChars.addAndGet(content.length());
+        totalUnits.incrementAndGet();
+        return content;
+    }
+
+    private int estimateSize() {
+        long units = totalUnits.get();
+        if (units == 0) {
+            return MIN_BUFFER_SIZE;
+        }
+        long average = totalChars.get() / units;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_BUFFER_SIZE, average + average / 4));
+    }
+
+    private void write(CompilationUnit unit, String content) throws IOException {
+        assert unit != null;
+        assert content != null;
+        PrintWriter writer = output.openFor(unit);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            TypeDeclaration primary = Emitter.findPrimaryType(unit);
+            throw new IOException(MessageFormat.format(
+                    "Failed to write a compilation unit: {0}",
+                    primary == null ? unit.getPackageDeclaration() : primary.getName()));
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        assert future != null;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while emitting compilation units", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final String name;
+
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        WorkerFactory(String kind) {
+            assert kind != null;
+            this.name = String.format("emitter-%d-%s", POOL_COUNTER.incrementAndGet(), kind);
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
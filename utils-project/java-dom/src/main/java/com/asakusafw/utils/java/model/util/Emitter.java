@@ -27,6 +27,12 @@ import com.asakusafw.utils.java.model.syntax.TypeDeclaration;
 
 /**
  * ソースコードを出力するための出力を作成する。
+ * <p>
+ * 複数のスレッドから同時に利用される場合、サブクラスは
+ * {@link #openFor(PackageDeclaration, String)}とそれが返すライターを、
+ * 異なるコンパイル単位に対してスレッド安全に実装する必要がある。
+ * </p>
+ * @version 0.4.0
  */
 public abstract class Emitter {
 
@@ -16,10 +16,16 @@
 package com.asakusafw.utils.java.model.util;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
+import java.util.Arrays;
 
 import com.asakusafw.utils.java.model.syntax.Name;
 import com.asakusafw.utils.java.model.syntax.PackageDeclaration;
@@ -27,6 +33,13 @@ import com.asakusafw.utils.java.model.syntax.SimpleName;
 
 /**
  * ソースコードを出力するためのファイルを作成する。
+ * <p>
+ * 出力先に同じ内容のファイルが既に存在する場合、そのファイルは書き換えない。
+ * </p>
+ * <p>
+ * このクラスは、異なるファイルに対してであれば複数のスレッドから同時に利用できる。
+ * </p>
+ * @version 0.4.0
  */
 public class Filer extends Emitter {
 
@@ -117,6 +130,85 @@ public class Filer extends Emitter {
                         file));
             }
         }
-        return new PrintWriter(file, encoding.name());
+        return new PrintWriter(new ContentWriter(file, encoding));
+    }
+
+    /**
+     * 閉じる際に、内容が変更されている場合のみファイルを書き出すライター。
+     */
+    private static final class ContentWriter extends Writer {
+
+        private final File file;
+
+        private final Charset encoding;
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private boolean closed;
+
+        ContentWriter(File file, Charset encoding) {
+            assert file != null;
+            assert encoding != null;
+            this.file = file;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException(MessageFormat.format(
+                        "Writer is already closed: {0}",
+                        file));
+            }
+            buffer.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+            return;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            byte[] contents = buffer.toString().getBytes(encoding.name());
+            if (isSame(contents)) {
+                return;
+            }
+            OutputStream output = new FileOutputStream(file);
+            try {
+                output.write(contents);
+            } finally {
+                output.close();
+            }
+        }
+
+        private boolean isSame(byte[] contents) throws IOException {
+            assert contents != null;
+            if (file.isFile() == false || file.length() != contents.length) {
+                return false;
+            }
+            byte[] current = new byte[contents.length];
+            InputStream input = new FileInputStream(file);
+            try {
+                int offset = 0;
+                while (offset < current.length) {
+                    int read = input.read(current, offset, current.length - offset);
+                    if (read < 0) {
+                        return false;
+                    }
+                    offset += read;
+                }
+                if (input.read() >= 0) {
+                    return false;
+                }
+            } finally {
+                input.close();
+            }
+            return Arrays.equals(current, contents);
+        }
     }
 }
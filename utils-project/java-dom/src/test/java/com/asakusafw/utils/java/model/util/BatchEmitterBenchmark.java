@@ -0,0 +1,163 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.utils.java.model.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.asakusafw.utils.java.model.syntax.Comment;
+import com.asakusafw.utils.java.model.syntax.CompilationUnit;
+import com.asakusafw.utils.java.model.syntax.FormalParameterDeclaration;
+import com.asakusafw.utils.java.model.syntax.ImportDeclaration;
+import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.syntax.SimpleName;
+import com.asakusafw.utils.java.model.syntax.Type;
+import com.asakusafw.utils.java.model.syntax.TypeBodyDeclaration;
+import com.asakusafw.utils.java.model.syntax.TypeParameterDeclaration;
+
+/**
+ * Benchmark for {@link BatchEmitter}.
+ * <p>
+ * This emits a synthetic workload of data model like classes
+ * both sequentially and with {@link BatchEmitter}, and then prints the elapsed time of each.
+ * </p>
+<pre><code>
+java -classpath ... com.asakusafw.utils.java.model.util.BatchEmitterBenchmark \
+    [/path/to/output [number-of-classes [number-of-properties [format-threads [write-threads]]]]]
+</code></pre>
+ */
+public final class BatchEmitterBenchmark {
+
+    static final ModelFactory F = Models.getModelFactory();
+
+    private BatchEmitterBenchmark() {
+        return;
+    }
+
+    /**
+     * Program entry.
+     * @param args program arguments
+     * @throws IOException if failed to emit classes
+     */
+    public static void main(String... args) throws IOException {
+        File output = new File(args.length > 0 ? args[0] : "target/benchmark");
+        int classes = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int properties = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int processors = Runtime.getRuntime().availableProcessors();
+        int formatThreads = args.length > 3 ? Integer.parseInt(args[3]) : processors;
+        int writeThreads = args.length > 4 ? Integer.parseInt(args[4]) : Math.max(1, processors / 2);
+
+        System.out.printf("Building %,d classes with %,d properties...%n", classes, properties);
+        List<CompilationUnit> units = createUnits(classes, properties);
+        Charset charset = Charset.forName("UTF-8");
+
+        for (int round = 1; round <= 3; round++) {
+            File sequential = new File(output, "sequential-" + round);
+            long start = System.nanoTime();
+            Filer filer = new Filer(sequential, charset);
+            for (CompilationUnit unit : units) {
+                PrintWriter writer = filer.openFor(unit);
+                try {
+                    Models.emit(unit, writer);
+                } finally {
+                    writer.close();
+                }
+            }
+            long sequentialTime = System.nanoTime() - start;
+
+            File batch = new File(output, "batch-" + round);
+            start = System.nanoTime();
+            new BatchEmitter(new Filer(batch, charset), formatThreads, writeThreads).emit(units);
+            long batchTime = System.nanoTime() - start;
+
+            System.out.printf(
+                    "round %d: sequential=%,dms, batch=%,dms (format-threads=%d, write-threads=%d)%n",
+                    round,
+                    sequentialTime / 1000000,
+                    batchTime / 1000000,
+                    formatThreads,
+                    writeThreads);
+        }
+    }
+
+    /**
+     * Creates a synthetic workload.
+     * Each class is named {@code com.example.Model<index>}, and has the specified number of properties.
+     * @param classes the number of classes
+     * @param properties the number of properties in each class
+     * @return the created compilation units
+     */
+    public static List<CompilationUnit> createUnits(int classes, int properties) {
+        List<CompilationUnit> results = new ArrayList<CompilationUnit>(classes);
+        for (int i = 0; i < classes; i++) {
+            results.add(createUnit("Model" + i, properties));
+        }
+        return results;
+    }
+
+    private static CompilationUnit createUnit(String className, int properties) {
+        List<TypeBodyDeclaration> members = new ArrayList<TypeBodyDeclaration>();
+        for (int i = 0; i < properties; i++) {
+            SimpleName field = F.newSimpleName("property" + i);
+            Type type = i % 2 == 0
+                    ? Models.toType(F, String.class)
+                    : Models.toType(F, long.class);
+            members.add(F.newFieldDeclaration(
+                    new JavadocBuilder(F).text("Property {0}.", i).toJavadoc(),
+                    new AttributeBuilder(F).Private().toAttributes(),
+                    type,
+                    field,
+                    null));
+            members.add(F.newMethodDeclaration(
+                    new JavadocBuilder(F).text("Returns property {0}.", i).returns().text("the value").toJavadoc(),
+                    new AttributeBuilder(F).Public().toAttributes(),
+                    type,
+                    F.newSimpleName("getProperty" + i),
+                    Collections.<FormalParameterDeclaration>emptyList(),
+                    Collections.singletonList(new ExpressionBuilder(F, F.newThis())
+                        .field(field)
+                        .toReturnStatement())));
+            SimpleName value = F.newSimpleName("value");
+            members.add(F.newMethodDeclaration(
+                    new JavadocBuilder(F).text("Sets property {0}.", i).param(value).text("the value").toJavadoc(),
+                    new AttributeBuilder(F).Public().toAttributes(),
+                    Models.toType(F, void.class),
+                    F.newSimpleName("setProperty" + i),
+                    Collections.singletonList(F.newFormalParameterDeclaration(type, value)),
+                    Collections.singletonList(new ExpressionBuilder(F, F.newThis())
+                        .field(field)
+                        .assignFrom(value)
+                        .toStatement())));
+        }
+        return F.newCompilationUnit(
+                F.newPackageDeclaration(Models.toName(F, "com.example")),
+                Collections.<ImportDeclaration>emptyList(),
+                Collections.singletonList(F.newClassDeclaration(
+                        new JavadocBuilder(F).text("Synthetic model {0}.", className).toJavadoc(),
+                        new AttributeBuilder(F).Public().toAttributes(),
+                        F.newSimpleName(className),
+                        Collections.<TypeParameterDeclaration>emptyList(),
+                        null,
+                        Collections.<Type>emptyList(),
+                        members)),
+                Collections.<Comment>emptyList());
+    }
+}
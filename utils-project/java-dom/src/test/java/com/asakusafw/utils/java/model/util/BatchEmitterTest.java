@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.utils.java.model.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.utils.java.model.syntax.CompilationUnit;
+import com.asakusafw.utils.java.model.syntax.PackageDeclaration;
+
+/**
+ * Test for {@link BatchEmitter}.
+ */
+public class BatchEmitterTest {
+
+    /**
+     * テンポラリフォルダ。
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 複数のコンパイル単位を出力する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void simple() throws Exception {
+        File root = folder.newFolder("output");
+        List<CompilationUnit> units = BatchEmitterBenchmark.createUnits(100, 5);
+        BatchEmitter emitter = new BatchEmitter(new Filer(root, Charset.forName("UTF-8")), 4, 2);
+        emitter.emit(units);
+
+        for (int i = 0; i < units.size(); i++) {
+            File file = new File(root, String.format("com/example/Model%d.java", i));
+            assertThat(file.getPath(), file.isFile(), is(true));
+            assertThat(read(file), is(format(units.get(i))));
+        }
+    }
+
+    /**
+     * 空のコンパイル単位の一覧を出力する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void empty() throws Exception {
+        File root = folder.newFolder("output");
+        BatchEmitter emitter = new BatchEmitter(new Filer(root, Charset.forName("UTF-8")), 1, 1);
+        emitter.emit(Collections.<CompilationUnit>emptyList());
+        assertThat(root.list().length, is(0));
+    }
+
+    /**
+     * 出力に失敗する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test(expected = IOException.class)
+    public void failure() throws Exception {
+        Emitter output = new Emitter() {
+            @Override
+            public PrintWriter openFor(PackageDeclaration packageDeclOrNull, String subPath) throws IOException {
+                throw new IOException();
+            }
+        };
+        BatchEmitter emitter = new BatchEmitter(output, 2, 2);
+        emitter.emit(BatchEmitterBenchmark.createUnits(10, 1));
+    }
+
+    private String format(CompilationUnit unit) {
+        StringWriter buffer = new StringWriter();
+        PrintWriter writer = new PrintWriter(buffer);
+        Models.emit(unit, writer);
+        writer.close();
+        return buffer.toString();
+    }
+
+    private String read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            Scanner scanner = new Scanner(input, "UTF-8");
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            input.close();
+        }
+    }
+}
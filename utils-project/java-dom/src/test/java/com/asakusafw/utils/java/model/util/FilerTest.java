@@ -0,0 +1,120 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.utils.java.model.util;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.utils.java.model.syntax.ModelFactory;
+import com.asakusafw.utils.java.model.syntax.PackageDeclaration;
+
+/**
+ * Test for {@link Filer}.
+ */
+public class FilerTest {
+
+    /**
+     * テンポラリフォルダ。
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    ModelFactory f = Models.getModelFactory();
+
+    /**
+     * ファイルを書き出す。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void simple() throws Exception {
+        File root = folder.newFolder("output");
+        Filer filer = new Filer(root, Charset.forName("UTF-8"));
+        write(filer, "Hello, world!");
+
+        File file = new File(root, "com/example/Hello.java");
+        assertThat(read(file), is("Hello, world!"));
+    }
+
+    /**
+     * 内容が等しい場合はファイルを書き換えない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void unchanged() throws Exception {
+        File root = folder.newFolder("output");
+        Filer filer = new Filer(root, Charset.forName("UTF-8"));
+        write(filer, "Hello, world!");
+
+        File file = new File(root, "com/example/Hello.java");
+        assertThat(file.setLastModified(10000), is(true));
+        long lastModified = file.lastModified();
+
+        write(filer, "Hello, world!");
+        assertThat(file.lastModified(), is(lastModified));
+        assertThat(read(file), is("Hello, world!"));
+    }
+
+    /**
+     * 内容が異なる場合はファイルを書き換える。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void changed() throws Exception {
+        File root = folder.newFolder("output");
+        Filer filer = new Filer(root, Charset.forName("UTF-8"));
+        write(filer, "Hello, world!");
+
+        File file = new File(root, "com/example/Hello.java");
+        assertThat(file.setLastModified(10000), is(true));
+        long lastModified = file.lastModified();
+
+        write(filer, "Hello, Filer!");
+        assertThat(file.lastModified(), is(not(lastModified)));
+        assertThat(read(file), is("Hello, Filer!"));
+    }
+
+    private void write(Filer filer, String content) throws IOException {
+        PackageDeclaration pkg = f.newPackageDeclaration(Models.toName(f, "com.example"));
+        PrintWriter writer = filer.openFor(pkg, "Hello.java");
+        try {
+            writer.print(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private String read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            Scanner scanner = new Scanner(input, "UTF-8");
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            input.close();
+        }
+    }
+}
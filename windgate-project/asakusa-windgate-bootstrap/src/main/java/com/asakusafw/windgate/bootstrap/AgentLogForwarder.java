@@ -0,0 +1,117 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.windgate.bootstrap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Forwards the agent logs to the requesting client while a request is running.
+ * <p>
+ * Each log line is sent as a {@code log=<line>} reply line.
+ * This only works if the agent uses Logback as its logging backend,
+ * otherwise the logs are only written to the agent's own log.
+ * </p>
+ * @since 0.4.0
+ */
+final class AgentLogForwarder {
+
+    static final Logger LOG = LoggerFactory.getLogger(AgentLogForwarder.class);
+
+    static final String PATTERN = "%d{yyyy/MM/dd HH:mm:ss} %-5level %msg [%X{batchId}|%X{flowId}]%n%ex";
+
+    private AgentLogForwarder() {
+        return;
+    }
+
+    /**
+     * Starts forwarding logs into the target writer.
+     * @param writer the target writer
+     * @return an object to stop forwarding
+     */
+    static Closeable start(PrintWriter writer) {
+        assert writer != null;
+        try {
+            Closeable result = LogbackForwarder.start(writer);
+            if (result != null) {
+                return result;
+            }
+        } catch (LinkageError e) {
+            LOG.debug("Logback is not available", e);
+        }
+        return new Closeable() {
+            @Override
+            public void close() {
+                return;
+            }
+        };
+    }
+
+    private static final class LogbackForwarder {
+
+        private LogbackForwarder() {
+            return;
+        }
+
+        static Closeable start(final PrintWriter writer) {
+            ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+            if ((factory instanceof LoggerContext) == false) {
+                LOG.debug("Logback is not active: {}", factory);
+                return null;
+            }
+            LoggerContext context = (LoggerContext) factory;
+            final PatternLayout layout = new PatternLayout();
+            layout.setContext(context);
+            layout.setPattern(PATTERN);
+            layout.start();
+            final AppenderBase<ILoggingEvent> appender = new AppenderBase<ILoggingEvent>() {
+                @Override
+                protected void append(ILoggingEvent event) {
+                    String text = layout.doLayout(event);
+                    for (String line : text.split("\r?\n")) {
+                        writer.print(WindGateAgent.KEY_LOG);
+                        writer.print('=');
+                        writer.println(line);
+                    }
+                    writer.flush();
+                }
+            };
+            appender.setName(AgentLogForwarder.class.getName());
+            appender.setContext(context);
+            appender.start();
+            final ch.qos.logback.classic.Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+            root.addAppender(appender);
+            return new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    root.detachAppender(appender);
+                    appender.stop();
+                    layout.stop();
+                }
+            };
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.net.URI;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.cli.BasicParser;
@@ -42,6 +43,9 @@ import com.asakusafw.windgate.core.WindGateLogger;
 
 /**
  * A WindGate main entry point.
+ * @since 0.2.2
+ * @version 0.4.0
+ * @see WindGateAgent
  */
 public final class WindGate {
 
@@ -122,9 +126,16 @@ public final class WindGate {
     }
 
     static int execute(String[] args) {
+        return execute(WindGate.class.getClassLoader(), System.getenv(), args);
+    }
+
+    static int execute(ClassLoader parent, Map<String, String> environment, String[] args) {
+        assert parent != null;
+        assert environment != null;
+        assert args != null;
         GateTask task;
         try {
-            Configuration conf = parseConfiguration(args);
+            Configuration conf = parseConfiguration(parent, environment, args);
             task = new GateTask(
                     conf.profile,
                     conf.script,
@@ -166,6 +177,15 @@ public final class WindGate {
     }
 
     static Configuration parseConfiguration(String[] args) throws ParseException {
+        return parseConfiguration(WindGate.class.getClassLoader(), System.getenv(), args);
+    }
+
+    static Configuration parseConfiguration(
+            ClassLoader parent,
+            Map<String, String> environment,
+            String[] args) throws ParseException {
+        assert parent != null;
+        assert environment != null;
         assert args != null;
         LOG.debug("Analyzing WindGate bootstrap arguments: {}", Arrays.toString(args));
 
@@ -187,7 +207,7 @@ public final class WindGate {
 
         LOG.debug("Loading plugins: {}", plugins);
         List<File> pluginFiles = CommandLineUtil.parseFileList(plugins);
-        ClassLoader loader = CommandLineUtil.buildPluginLoader(WindGate.class.getClassLoader(), pluginFiles);
+        ClassLoader loader = CommandLineUtil.buildPluginLoader(parent, pluginFiles);
 
         Configuration result = new Configuration();
         result.mode = ExecutionKind.parse(mode);
@@ -200,7 +220,7 @@ public final class WindGate {
 
         LOG.debug("Loading profile: {}", profile);
         try {
-            ProfileContext context = ProfileContext.system(loader);
+            ProfileContext context = new ProfileContext(loader, new ParameterList(environment));
             URI uri = CommandLineUtil.toUri(profile);
             Properties properties = CommandLineUtil.loadProperties(uri, loader);
             result.profile = GateProfile.loadFrom(CommandLineUtil.toName(uri), properties, context);
@@ -0,0 +1,482 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.windgate.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.asakusafw.runtime.core.context.RuntimeContext;
+import com.asakusafw.windgate.core.WindGateLogger;
+
+/**
+ * A long-lived WindGate agent which executes gate scripts submitted from the local host.
+ * <p>
+ * This agent listens on a loopback port and executes each request in order of arrival,
+ * and reuses the class loaders for the same application libraries and plug-ins.
+ * On startup, the agent writes a random secret into a file which only the agent user can read,
+ * and rejects requests which do not contain the secret.
+ * Each request consists of the following lines (in UTF-8), and is terminated by an empty line:
+ * </p>
+ * <ul>
+ * <li> {@code secret=<value>} - the agent secret </li>
+ * <li> {@code classpath=<path>} - an application library path (may appear zero or more times) </li>
+ * <li> {@code env.<name>=<value>} - an environment variable of the client </li>
+ * <li> {@code log.<name>=<value>} - a log context value </li>
+ * <li> {@code arg=<value>} - an argument for {@link WindGate} </li>
+ * </ul>
+ * <p>
+ * In each value, {@code "\\"} and {@code "\n"} represent a back-slash and a line feed, respectively.
+ * </p>
+ * <p>
+ * The agent replies the logs of the request as {@code log=<line>} lines,
+ * and then a {@code status=<code>} line which contains the exit status of WindGate.
+ * If the agent did not execute the request, it replies an {@code error=<message>} line instead.
+ * </p>
+ * @since 0.4.0
+ */
+public final class WindGateAgent {
+
+    static final WindGateLogger WGLOG = new WindGateBootstrapLogger(WindGateAgent.class);
+
+    static final Logger LOG = LoggerFactory.getLogger(WindGateAgent.class);
+
+    static final Charset ENCODING = Charset.forName("UTF-8");
+
+    static final String KEY_CLASSPATH = "classpath";
+
+    static final String PREFIX_ENV = "env.";
+
+    static final String PREFIX_LOG = "log.";
+
+    static final String KEY_ARGUMENT = "arg";
+
+    static final String KEY_SECRET = "secret";
+
+    static final String KEY_LOG = "log";
+
+    static final String KEY_STATUS = "status";
+
+    static final String KEY_ERROR = "error";
+
+    /**
+     * The timeout to receive each request (in milliseconds).
+     */
+    static final int REQUEST_TIMEOUT = 30 * 1000;
+
+    /**
+     * The number of random bytes in the agent secret.
+     */
+    static final int SECRET_BYTES = 32;
+
+    /**
+     * The maximum number of cached class loaders.
+     */
+    static final int MAX_LOADERS = 32;
+
+    static final Option OPT_PORT;
+
+    static final Option OPT_SECRET;
+
+    private static final Options OPTIONS;
+    static {
+        OPT_PORT = new Option("port", true, "listening port number");
+        OPT_PORT.setArgName("port");
+        OPT_PORT.setRequired(true);
+
+        OPT_SECRET = new Option("secret", true, "output path of the agent secret");
+        OPT_SECRET.setArgName("/path/to/secret");
+        OPT_SECRET.setRequired(true);
+
+        OPTIONS = new Options();
+        OPTIONS.addOption(OPT_PORT);
+        OPTIONS.addOption(OPT_SECRET);
+    }
+
+    private final String secret;
+
+    private final Map<List<File>, ClassLoader> loaders =
+        new LinkedHashMap<List<File>, ClassLoader>(MAX_LOADERS, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<File>, ClassLoader> eldest) {
+                return size() > MAX_LOADERS;
+            }
+        };
+
+    /**
+     * Creates a new instance.
+     * @param secret the secret which each request must contain
+     */
+    WindGateAgent(String secret) {
+        assert secret != null;
+        this.secret = secret;
+    }
+
+    /**
+     * Program entry.
+     * @param args program arguments
+     */
+    public static void main(String... args) {
+        CommandLineUtil.prepareLogContext();
+        int status = execute(args);
+        WGLOG.info("I02999",
+                status);
+        System.exit(status);
+    }
+
+    static int execute(String[] args) {
+        assert args != null;
+        ServerSocket server;
+        File secretFile;
+        String secret;
+        try {
+            CommandLine cmd = parseCommandLine(args);
+            int port = parsePort(cmd);
+            secretFile = new File(cmd.getOptionValue(OPT_SECRET.getOpt()));
+            secret = createSecret(secretFile);
+            server = new ServerSocket(port, 0, InetAddress.getByName(null));
+        } catch (Exception e) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.setWidth(Integer.MAX_VALUE);
+            formatter.printHelp(
+                    MessageFormat.format(
+                            "java -classpath ... {0}",
+                            WindGateAgent.class.getName()),
+                    OPTIONS,
+                    true);
+            WGLOG.error(e, "E02001");
+            return 1;
+        }
+        try {
+            WGLOG.info("I02000",
+                    server.getLocalPort());
+            new WindGateAgent(secret).serve(server);
+            return 0;
+        } catch (IOException e) {
+            WGLOG.error(e, "E02002");
+            return 1;
+        } finally {
+            try {
+                server.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close the server socket", e);
+            }
+            if (secretFile.delete() == false) {
+                LOG.debug("Failed to delete the agent secret: {}", secretFile);
+            }
+        }
+    }
+
+    static CommandLine parseCommandLine(String[] args) throws Exception {
+        assert args != null;
+        LOG.debug("Analyzing WindGate agent arguments: {}", Arrays.toString(args));
+        CommandLineParser parser = new BasicParser();
+        return parser.parse(OPTIONS, args);
+    }
+
+    static int parsePort(CommandLine cmd) {
+        assert cmd != null;
+        String port = cmd.getOptionValue(OPT_PORT.getOpt());
+        LOG.debug("WindGate agent port: {}", port);
+        try {
+            return Integer.parseInt(port.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Invalid port number \"{0}\".",
+                    port), e);
+        }
+    }
+
+    /**
+     * Creates a new random secret and writes it into the file which only the current user can read.
+     * @param file the target file
+     * @return the created secret
+     * @throws IOException if failed to create the secret file
+     */
+    static String createSecret(File file) throws IOException {
+        assert file != null;
+        byte[] bytes = new byte[SECRET_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(String.format("%02x", b & 0xff));
+        }
+        String result = buf.toString();
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent.isDirectory() == false && parent.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to create the directory for the agent secret: {0}",
+                    parent));
+        }
+        if (file.exists() && file.delete() == false) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to delete the previous agent secret: {0}",
+                    file));
+        }
+        if (file.createNewFile() == false
+                || file.setReadable(false, false) == false
+                || file.setWritable(false, false) == false
+                || file.setReadable(true, true) == false
+                || file.setWritable(true, true) == false) {
+            throw new IOException(MessageFormat.format(
+                    "Failed to restrict permissions of the agent secret: {0}",
+                    file));
+        }
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(result.getBytes(ENCODING));
+        } finally {
+            output.close();
+        }
+        LOG.debug("Created the agent secret: {}", file);
+        return result;
+    }
+
+    void serve(ServerSocket server) throws IOException {
+        assert server != null;
+        while (true) {
+            Socket socket = server.accept();
+            try {
+                handle(socket);
+            } catch (IOException e) {
+                WGLOG.error(e, "E02002");
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    void handle(Socket socket) throws IOException {
+        assert socket != null;
+        socket.setSoTimeout(REQUEST_TIMEOUT);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), ENCODING));
+        Request request;
+        try {
+            request = Request.read(reader);
+        } catch (SocketTimeoutException e) {
+            WGLOG.warn(e, "W02001",
+                    socket.getRemoteSocketAddress());
+            return;
+        }
+        if (request == null) {
+            LOG.debug("Request is empty: {}", socket);
+            return;
+        }
+        if (isAuthorized(request) == false) {
+            WGLOG.warn("W02002",
+                    socket.getRemoteSocketAddress());
+            writer.print(KEY_ERROR);
+            writer.println("=unauthorized");
+            writer.flush();
+            return;
+        }
+        int status;
+        Closeable forwarder = AgentLogForwarder.start(writer);
+        try {
+            status = execute(request);
+        } finally {
+            forwarder.close();
+        }
+        writer.print(KEY_STATUS);
+        writer.print('=');
+        writer.println(status);
+        writer.flush();
+    }
+
+    boolean isAuthorized(Request request) {
+        assert request != null;
+        if (request.secret == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(secret.getBytes(ENCODING), request.secret.getBytes(ENCODING));
+    }
+
+    int execute(Request request) {
+        assert request != null;
+        WGLOG.info("I02001",
+                request.arguments);
+        long start = System.currentTimeMillis();
+        Thread current = Thread.currentThread();
+        ClassLoader contextLoader = current.getContextClassLoader();
+        int status = 1;
+        try {
+            for (Map.Entry<String, String> entry : request.logContext.entrySet()) {
+                MDC.put(entry.getKey(), entry.getValue());
+            }
+            ClassLoader loader = getLoader(request.classpath);
+            current.setContextClassLoader(loader);
+            RuntimeContext.set(RuntimeContext.DEFAULT.apply(request.environment));
+            RuntimeContext.get().verifyApplication(loader);
+            List<String> arguments = request.arguments;
+            status = WindGate.execute(
+                    loader,
+                    request.environment,
+                    arguments.toArray(new String[arguments.size()]));
+        } catch (RuntimeException e) {
+            WGLOG.error(e, "E02002");
+        } finally {
+            current.setContextClassLoader(contextLoader);
+            WGLOG.info("I02002",
+                    status,
+                    System.currentTimeMillis() - start);
+            for (String key : request.logContext.keySet()) {
+                MDC.remove(key);
+            }
+        }
+        return status;
+    }
+
+    private ClassLoader getLoader(List<File> classpath) {
+        assert classpath != null;
+        ClassLoader loader = loaders.get(classpath);
+        if (loader == null) {
+            LOG.debug("Creating a class loader: {}", classpath);
+            loader = CommandLineUtil.buildPluginLoader(WindGateAgent.class.getClassLoader(), classpath);
+            loaders.put(classpath, loader);
+        } else {
+            LOG.debug("Reusing the class loader: {}", classpath);
+        }
+        return loader;
+    }
+
+    /**
+     * A request for WindGate agent.
+     */
+    static final class Request {
+
+        String secret;
+
+        final List<File> classpath = new ArrayList<File>();
+
+        final Map<String, String> environment = new HashMap<String, String>();
+
+        final Map<String, String> logContext = new HashMap<String, String>();
+
+        final List<String> arguments = new ArrayList<String>();
+
+        /**
+         * Reads a request.
+         * The plug-ins in arguments are moved into the class path, to reuse the class loader.
+         * @param reader the source reader
+         * @return the request, or {@code null} if the source is empty
+         * @throws IOException if failed to read the request
+         */
+        static Request read(BufferedReader reader) throws IOException {
+            assert reader != null;
+            Request result = new Request();
+            boolean sawLine = false;
+            while (true) {
+                String line = reader.readLine();
+                if (line == null || line.isEmpty()) {
+                    break;
+                }
+                sawLine = true;
+                int index = line.indexOf('=');
+                if (index < 0) {
+                    throw new IOException(MessageFormat.format(
+                            "Invalid WindGate agent request: {0}",
+                            line));
+                }
+                String key = line.substring(0, index);
+                String value = unescape(line.substring(index + 1));
+                if (key.equals(KEY_SECRET)) {
+                    result.secret = value;
+                } else if (key.equals(KEY_CLASSPATH)) {
+                    result.classpath.addAll(CommandLineUtil.parseFileList(value));
+                } else if (key.startsWith(PREFIX_ENV)) {
+                    result.environment.put(key.substring(PREFIX_ENV.length()), value);
+                } else if (key.startsWith(PREFIX_LOG)) {
+                    result.logContext.put(key.substring(PREFIX_LOG.length()), value);
+                } else if (key.equals(KEY_ARGUMENT)) {
+                    result.arguments.add(value);
+                } else {
+                    throw new IOException(MessageFormat.format(
+                            "Invalid WindGate agent request: {0}",
+                            line));
+                }
+            }
+            if (sawLine == false) {
+                return null;
+            }
+            result.extractPlugins();
+            return result;
+        }
+
+        static String unescape(String value) {
+            assert value != null;
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            StringBuilder buf = new StringBuilder();
+            for (int i = 0, n = value.length(); i < n; i++) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < n) {
+                    char next = value.charAt(++i);
+                    buf.append(next == 'n' ? '\n' : next);
+                } else {
+                    buf.append(c);
+                }
+            }
+            return buf.toString();
+        }
+
+        private void extractPlugins() {
+            String option = '-' + WindGate.OPT_PLUGIN.getOpt();
+            for (int i = 0, n = arguments.size() - 1; i < n; i++) {
+                if (arguments.get(i).equals(option)) {
+                    classpath.addAll(CommandLineUtil.parseFileList(arguments.get(i + 1)));
+                    arguments.remove(i + 1);
+                    arguments.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+}
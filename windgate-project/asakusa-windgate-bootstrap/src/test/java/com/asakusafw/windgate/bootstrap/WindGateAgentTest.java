@@ -0,0 +1,154 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.windgate.bootstrap;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.windgate.bootstrap.WindGateAgent.Request;
+
+/**
+ * Test for {@link WindGateAgent}.
+ */
+public class WindGateAgentTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Reads a request.
+     * @throws Exception if failed
+     */
+    @Test
+    public void read() throws Exception {
+        String pathSeparator = File.pathSeparator;
+        Request request = parse(
+                "classpath=app.jar",
+                "env._ASAKUSA_APP_BATCH_ID=b",
+                "log.flowId=f",
+                "arg=-mode",
+                "arg=oneshot",
+                "arg=-plugin",
+                "arg=p1.jar" + pathSeparator + "p2.jar",
+                "arg=-arguments",
+                "arg=a=b,c=d",
+                "",
+                "arg=ignored");
+        assertThat(request, not(nullValue()));
+        assertThat(request.classpath, is(Arrays.asList(
+                new File("app.jar"),
+                new File("p1.jar"),
+                new File("p2.jar"))));
+        assertThat(request.environment.get("_ASAKUSA_APP_BATCH_ID"), is("b"));
+        assertThat(request.logContext.get("flowId"), is("f"));
+        assertThat(request.arguments, is(Arrays.asList("-mode", "oneshot", "-arguments", "a=b,c=d")));
+    }
+
+    /**
+     * Reads a request with escaped values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void read_escaped() throws Exception {
+        Request request = parse(
+                "secret=s",
+                "env.MULTI=a\\nb",
+                "env.BACKSLASH=a\\\\nb",
+                "arg=-mode");
+        assertThat(request.secret, is("s"));
+        assertThat(request.environment.get("MULTI"), is("a\nb"));
+        assertThat(request.environment.get("BACKSLASH"), is("a\\nb"));
+    }
+
+    /**
+     * Authorizes requests.
+     * @throws Exception if failed
+     */
+    @Test
+    public void isAuthorized() throws Exception {
+        WindGateAgent agent = new WindGateAgent("s");
+        assertThat(agent.isAuthorized(parse("secret=s", "arg=-mode")), is(true));
+        assertThat(agent.isAuthorized(parse("secret=t", "arg=-mode")), is(false));
+        assertThat(agent.isAuthorized(parse("arg=-mode")), is(false));
+    }
+
+    /**
+     * Creates a secret file.
+     * @throws Exception if failed
+     */
+    @Test
+    public void createSecret() throws Exception {
+        File file = folder.newFile("agent.secret");
+        String secret = WindGateAgent.createSecret(file);
+        assertThat(secret.length(), is(WindGateAgent.SECRET_BYTES * 2));
+        assertThat(file.canRead(), is(true));
+        assertThat(WindGateAgent.createSecret(file), is(not(secret)));
+    }
+
+    /**
+     * Reads an empty request.
+     * @throws Exception if failed
+     */
+    @Test
+    public void read_empty() throws Exception {
+        assertThat(parse(), is(nullValue()));
+    }
+
+    /**
+     * Reads an invalid request.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void read_invalid() throws Exception {
+        parse("unknown=value");
+    }
+
+    /**
+     * Executes an invalid request.
+     * @throws Exception if failed
+     */
+    @Test
+    public void execute_invalid() throws Exception {
+        Request request = parse("arg=-mode", "arg=unknown");
+        int status = new WindGateAgent("s").execute(request);
+        assertThat(status, is(not(0)));
+    }
+
+    private static Request parse(String... lines) throws IOException {
+        StringWriter buf = new StringWriter();
+        PrintWriter writer = new PrintWriter(buf);
+        for (String line : lines) {
+            writer.println(line);
+        }
+        writer.close();
+        return Request.read(new BufferedReader(new StringReader(buf.toString())));
+    }
+}
@@ -181,34 +181,38 @@ public class GateTask implements Closeable {
                         profile.getName(),
                         script.getName());
                 List<ResourceMirror> resources = createResources();
-                if (createSession) {
-                    WGLOG.info("I00003",
-                            sessionId,
-                            profile.getName(),
-                            script.getName());
-                    fireSessionCreated(resources);
-                }
-                WGLOG.info("I00004",
-                        sessionId,
-                        profile.getName(),
-                        script.getName());
-                prepareResources(resources);
-                WGLOG.info("I00005",
-                        sessionId,
-                        profile.getName(),
-                        script.getName());
-                runGateProcesses(resources);
-                if (completeSession) {
-                    WGLOG.info("I00006",
+                try {
+                    if (createSession) {
+                        WGLOG.info("I00003",
+                                sessionId,
+                                profile.getName(),
+                                script.getName());
+                        fireSessionCreated(resources);
+                    }
+                    WGLOG.info("I00004",
                             sessionId,
                             profile.getName(),
                             script.getName());
-                    fireSessionCompleted(resources);
-                    WGLOG.info("I00007",
+                    prepareResources(resources);
+                    WGLOG.info("I00005",
                             sessionId,
                             profile.getName(),
                             script.getName());
-                    session.complete();
+                    runGateProcesses(resources);
+                    if (completeSession) {
+                        WGLOG.info("I00006",
+                                sessionId,
+                                profile.getName(),
+                                script.getName());
+                        fireSessionCompleted(resources);
+                        WGLOG.info("I00007",
+                                sessionId,
+                                profile.getName(),
+                                script.getName());
+                        session.complete();
+                    }
+                } finally {
+                    closeResources(resources);
                 }
             } finally {
                 try {
@@ -260,12 +264,29 @@ public class GateTask implements Closeable {
             LOG.debug("Creating resource: {}",
                     provider.getClass().getName());
             // NOTE each initialization can be done in multi-threaded
-            ResourceMirror resource = provider.create(sessionId, arguments);
+            ResourceMirror resource = provider.create(sessionId, arguments, profile.getCore());
             results.add(resource);
         }
         return results;
     }
 
+    private void closeResources(List<ResourceMirror> resources) {
+        assert resources != null;
+        for (ResourceMirror resource : resources) {
+            LOG.debug("Closing resource: {}",
+                    resource.getName());
+            try {
+                resource.close();
+            } catch (IOException e) {
+                WGLOG.warn(e, "W00005",
+                        sessionId,
+                        profile.getName(),
+                        script.getName(),
+                        resource.getName());
+            }
+        }
+    }
+
     private void fireSessionCreated(List<ResourceMirror> resources) throws IOException {
         assert resources != null;
         for (final ResourceMirror resource : resources) {
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.text.MessageFormat;
 
 import com.asakusafw.windgate.core.BaseProvider;
+import com.asakusafw.windgate.core.CoreProfile;
 import com.asakusafw.windgate.core.ParameterList;
 
 /**
@@ -26,6 +27,7 @@ import com.asakusafw.windgate.core.ParameterList;
  * Clients can inherit this class to provide new data sources.
  * Each subclass must provide a public constructor with no parameters.
  * @since 0.2.2
+ * @version 0.4.0
  */
 public abstract class ResourceProvider extends BaseProvider<ResourceProfile> {
 
@@ -38,6 +40,22 @@ public abstract class ResourceProvider extends BaseProvider<ResourceProfile> {
      */
     public abstract ResourceMirror create(String sessionId, ParameterList arguments) throws IOException;
 
+    /**
+     * Provides a new {@link ResourceMirror} for the gate task with the core profile.
+     * Resources can use the core profile to decide the size of their shared facilities,
+     * for example, the number of connections which are used concurrently.
+     * The default implementation just invokes {@link #create(String, ParameterList)}.
+     * @param sessionId the current session ID
+     * @param arguments arguments (key and value pairs)
+     * @param core the core profile of the current gate task
+     * @return the created {@link ResourceMirror}
+     * @throws IOException if failed to create the specified {@link ResourceMirror}
+     * @since 0.4.0
+     */
+    public ResourceMirror create(String sessionId, ParameterList arguments, CoreProfile core) throws IOException {
+        return create(sessionId, arguments);
+    }
+
     /**
      * Aborts the specified session corresponding to this resouce.
      * The default implementation does nothing.
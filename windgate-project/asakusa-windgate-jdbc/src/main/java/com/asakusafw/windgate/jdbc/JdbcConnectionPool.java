@@ -0,0 +1,371 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.windgate.jdbc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.windgate.core.WindGateLogger;
+
+/**
+ * A pool of JDBC connections in a WindGate session.
+ * <p>
+ * Connections provided by {@link #acquire()} are returned into this pool when they are closed,
+ * and the pooled connections are validated before they are reused.
+ * Prepared statements of each connection are also reused while the connection is alive.
+ * </p>
+ * @since 0.4.0
+ */
+final class JdbcConnectionPool implements Closeable {
+
+    static final WindGateLogger WGLOG = new JdbcLogger(JdbcConnectionPool.class);
+
+    static final Logger LOG = LoggerFactory.getLogger(JdbcConnectionPool.class);
+
+    /**
+     * The max number of cached prepared statements for each connection.
+     */
+    static final int STATEMENT_CACHE_SIZE = 16;
+
+    /**
+     * The timeout in seconds for validating pooled connections.
+     */
+    static final int VALIDATION_TIMEOUT = 5;
+
+    private final JdbcProfile profile;
+
+    private final int maxIdleConnections;
+
+    private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param profile the profile to open connections
+     * @param maxIdleConnections the max number of idle connections in this pool
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     */
+    JdbcConnectionPool(JdbcProfile profile, int maxIdleConnections) {
+        if (profile == null) {
+            throw new IllegalArgumentException("profile must not be null"); //$NON-NLS-1$
+        }
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("maxIdleConnections must be >= 0"); //$NON-NLS-1$
+        }
+        this.profile = profile;
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    /**
+     * Returns a connection from this pool, or opens a new connection if there are no available ones.
+     * The returned connection will be returned into this pool when it is closed.
+     * @return the connection
+     * @throws IOException if failed to open a new connection, or this pool was already closed
+     */
+    Connection acquire() throws IOException {
+        while (true) {
+            PooledConnection pooled;
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("JDBC connection pool was already closed");
+                }
+                pooled = idle.poll();
+            }
+            if (pooled == null) {
+                break;
+            }
+            if (pooled.isValid()) {
+                LOG.debug("Reusing pooled JDBC connection (resource={})",
+                        profile.getResourceName());
+                return pooled.lease();
+            }
+            LOG.debug("Disposing invalid JDBC connection (resource={})",
+                    profile.getResourceName());
+            pooled.dispose();
+        }
+        return new PooledConnection(profile.openConnection()).lease();
+    }
+
+    /**
+     * Returns the number of idle connections in this pool.
+     * @return the number of idle connections
+     */
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    void release(PooledConnection pooled) {
+        assert pooled != null;
+        if (pooled.reset()) {
+            synchronized (this) {
+                if (closed == false && idle.size() < maxIdleConnections) {
+                    idle.addFirst(pooled);
+                    return;
+                }
+            }
+        }
+        pooled.dispose();
+    }
+
+    @Override
+    public void close() {
+        List<PooledConnection> targets;
+        synchronized (this) {
+            closed = true;
+            targets = new ArrayList<PooledConnection>(idle);
+            idle.clear();
+        }
+        LOG.debug("Closing JDBC connection pool: {} connections (resource={})",
+                targets.size(),
+                profile.getResourceName());
+        for (PooledConnection pooled : targets) {
+            pooled.dispose();
+        }
+    }
+
+    static Object invokeObjectMethod(Object proxy, Object target, Method method, Object[] args) {
+        assert method.getDeclaringClass() == Object.class;
+        String name = method.getName();
+        if (name.equals("equals")) {
+            return proxy == args[0];
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else {
+            return String.valueOf(target);
+        }
+    }
+
+    static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class PooledConnection {
+
+        final Connection physical;
+
+        private final LinkedHashMap<String, PreparedStatement> statements =
+            new LinkedHashMap<String, PreparedStatement>(STATEMENT_CACHE_SIZE * 2, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            assert physical != null;
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    JdbcConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new ConnectionHandler(this));
+        }
+
+        boolean isValid() {
+            try {
+                return physical.isValid(VALIDATION_TIMEOUT);
+            } catch (SQLException e) {
+                LOG.debug("Failed to validate JDBC connection", e);
+                return false;
+            } catch (AbstractMethodError e) {
+                // JDBC drivers before 4.0 do not support Connection.isValid()
+                try {
+                    return physical.isClosed() == false;
+                } catch (SQLException inner) {
+                    LOG.debug("Failed to validate JDBC connection", inner);
+                    return false;
+                }
+            }
+        }
+
+        synchronized PreparedStatement prepare(String sql) throws SQLException {
+            assert sql != null;
+            PreparedStatement cached = statements.remove(sql);
+            if (cached != null) {
+                LOG.debug("Reusing prepared statement: {}", sql);
+                return cached;
+            }
+            return physical.prepareStatement(sql);
+        }
+
+        void recycle(String sql, PreparedStatement statement) throws SQLException {
+            assert sql != null;
+            assert statement != null;
+            try {
+                statement.clearBatch();
+                statement.clearParameters();
+                statement.clearWarnings();
+            } catch (SQLException e) {
+                statement.close();
+                throw e;
+            }
+            PreparedStatement evicted = null;
+            synchronized (this) {
+                PreparedStatement conflict = statements.put(sql, statement);
+                if (conflict != null) {
+                    evicted = conflict;
+                } else if (statements.size() > STATEMENT_CACHE_SIZE) {
+                    Iterator<PreparedStatement> iter = statements.values().iterator();
+                    evicted = iter.next();
+                    iter.remove();
+                }
+            }
+            if (evicted != null) {
+                evicted.close();
+            }
+        }
+
+        boolean reset() {
+            try {
+                physical.rollback();
+                physical.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                LOG.debug("Failed to reset JDBC connection", e);
+                return false;
+            }
+        }
+
+        void dispose() {
+            List<PreparedStatement> targets;
+            synchronized (this) {
+                targets = new ArrayList<PreparedStatement>(statements.values());
+                statements.clear();
+            }
+            try {
+                for (PreparedStatement statement : targets) {
+                    statement.close();
+                }
+                physical.close();
+            } catch (SQLException e) {
+                for (SQLException ex = e; ex != null; ex = ex.getNextException()) {
+                    WGLOG.warn(ex, "W00002",
+                            profile.getResourceName());
+                }
+            }
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final PooledConnection pooled;
+
+        private boolean closed;
+
+        ConnectionHandler(PooledConnection pooled) {
+            assert pooled != null;
+            this.pooled = pooled;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, pooled.physical, method, args);
+            }
+            String name = method.getName();
+            if (name.equals("close") && method.getParameterTypes().length == 0) {
+                if (closed == false) {
+                    closed = true;
+                    release(pooled);
+                }
+                return null;
+            }
+            if (name.equals("isClosed") && method.getParameterTypes().length == 0) {
+                return closed || pooled.physical.isClosed();
+            }
+            if (closed) {
+                throw new SQLException("JDBC connection was already closed");
+            }
+            if (name.equals("prepareStatement")
+                    && method.getParameterTypes().length == 1
+                    && method.getParameterTypes()[0] == String.class) {
+                String sql = (String) args[0];
+                PreparedStatement statement = pooled.prepare(sql);
+                return Proxy.newProxyInstance(
+                        JdbcConnectionPool.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class },
+                        new StatementHandler(pooled, (Connection) proxy, sql, statement));
+            }
+            return JdbcConnectionPool.invoke(pooled.physical, method, args);
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final PooledConnection pooled;
+
+        private final Connection connection;
+
+        private final String sql;
+
+        private final PreparedStatement statement;
+
+        private boolean closed;
+
+        StatementHandler(PooledConnection pooled, Connection connection, String sql, PreparedStatement statement) {
+            assert pooled != null;
+            assert connection != null;
+            assert sql != null;
+            assert statement != null;
+            this.pooled = pooled;
+            this.connection = connection;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, statement, method, args);
+            }
+            String name = method.getName();
+            if (name.equals("close") && method.getParameterTypes().length == 0) {
+                if (closed == false) {
+                    closed = true;
+                    pooled.recycle(sql, statement);
+                }
+                return null;
+            }
+            if (name.equals("isClosed") && method.getParameterTypes().length == 0) {
+                return closed || statement.isClosed();
+            }
+            if (name.equals("getConnection") && method.getParameterTypes().length == 0) {
+                return connection;
+            }
+            if (closed) {
+                throw new SQLException("Prepared statement was already closed");
+            }
+            return JdbcConnectionPool.invoke(statement, method, args);
+        }
+    }
+}
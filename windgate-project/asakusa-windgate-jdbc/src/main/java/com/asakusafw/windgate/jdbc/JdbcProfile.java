@@ -36,6 +36,7 @@ import com.asakusafw.windgate.core.util.PropertiesUtil;
 /**
  * A structured profile for {@link JdbcResourceMirror}.
  * @since 0.2.2
+ * @version 0.4.0
  */
 public class JdbcProfile {
 
@@ -86,6 +87,12 @@ public class JdbcProfile {
      */
     public static final String KEY_CONNECT_RETRY_INTERVAL = "connect.retryInterval";
 
+    /**
+     * The profile key of {@link #getConnectionPoolSize()}.
+     * @since 0.4.0
+     */
+    public static final String KEY_CONNECTION_POOL_SIZE = "connection.poolSize";
+
     /**
      * The profile key of {@link #getTruncateStatement(String)}.
      * @since 0.2.4
@@ -122,6 +129,13 @@ public class JdbcProfile {
      */
     public static final int DEFAULT_CONNECT_RETRY_INTERVAL = 10;
 
+    /**
+     * The default value of {@link #KEY_CONNECTION_POOL_SIZE}.
+     * This means that the pool size is decided from the number of max processes in the core profile.
+     * @since 0.4.0
+     */
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = -1;
+
     /**
      * The default value of {@link #KEY_TRUNCATE_STATEMENT}.
      * @since 0.2.4
@@ -150,6 +164,8 @@ public class JdbcProfile {
 
     private volatile int connectRetryInterval = DEFAULT_CONNECT_RETRY_INTERVAL;
 
+    private volatile int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
+
     private volatile String truncateStatement = DEFAULT_TRUNCATE_STATEMENT;
 
     /**
@@ -241,6 +257,7 @@ public class JdbcProfile {
         long batchPutUnit = extractLong(profile, KEY_BATCH_PUT_UNIT, 1, DEFAULT_BATCH_PUT_UNIT);
         int connectRetryCount = extractInt(profile, KEY_CONNECT_RETRY_COUNT, 0, DEFAULT_CONNECT_RETRY_COUNT);
         int connectRetryInterval = extractInt(profile, KEY_CONNECT_RETRY_INTERVAL, 1, DEFAULT_CONNECT_RETRY_INTERVAL);
+        int connectionPoolSize = extractInt(profile, KEY_CONNECTION_POOL_SIZE, -1, DEFAULT_CONNECTION_POOL_SIZE);
         String truncateStatement = extract(profile, KEY_TRUNCATE_STATEMENT, false);
         if (truncateStatement == null) {
             truncateStatement = DEFAULT_TRUNCATE_STATEMENT;
@@ -263,6 +280,7 @@ public class JdbcProfile {
         result.setBatchPutUnit(batchPutUnit);
         result.setConnectRetryCount(connectRetryCount);
         result.setConnectRetryInterval(connectRetryInterval);
+        result.setConnectionPoolSize(connectionPoolSize);
         result.setTruncateStatement(truncateStatement);
         return result;
     }
@@ -601,6 +619,30 @@ public class JdbcProfile {
         this.connectRetryInterval = value;
     }
 
+    /**
+     * Returns the max number of idle connections in each session.
+     * @return the max number of idle connections,
+     *     {@code 0} if connection pooling is disabled,
+     *     or {@code -1} if it is decided from the number of max processes
+     * @since 0.4.0
+     */
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    /**
+     * Configures {@link #KEY_CONNECTION_POOL_SIZE}.
+     * @param value to set, or {@code -1} to decide it from the number of max processes
+     * @throws IllegalArgumentException if {@code < -1}
+     * @since 0.4.0
+     */
+    public void setConnectionPoolSize(int value) {
+        if (value < -1) {
+            throw new IllegalArgumentException("connectionPoolSize must be >= -1"); //$NON-NLS-1$
+        }
+        this.connectionPoolSize = value;
+    }
+
     /**
      * Returns the truncate statement.
      * @param tableName target table name
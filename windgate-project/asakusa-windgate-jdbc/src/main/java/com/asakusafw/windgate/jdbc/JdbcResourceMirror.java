@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.asakusafw.runtime.core.context.SimulationSupport;
+import com.asakusafw.windgate.core.CoreProfile;
 import com.asakusafw.windgate.core.DriverScript;
 import com.asakusafw.windgate.core.GateScript;
 import com.asakusafw.windgate.core.ParameterList;
@@ -49,6 +50,8 @@ public class JdbcResourceMirror extends ResourceMirror {
 
     private final ParameterList arguments;
 
+    private final JdbcConnectionPool pool;
+
     /**
      * Creates a new instance.
      * @param profile the profile of this resource
@@ -56,14 +59,40 @@ public class JdbcResourceMirror extends ResourceMirror {
      * @throws IllegalArgumentException if some parameters were {@code null}
      */
     public JdbcResourceMirror(JdbcProfile profile, ParameterList arguments) {
+        this(profile, arguments, new CoreProfile(CoreProfile.DEFAULT_MAX_PROCESSES));
+    }
+
+    /**
+     * Creates a new instance.
+     * The connections of this resource are pooled while this resource is open,
+     * and the number of idle connections is limited to {@link JdbcProfile#getConnectionPoolSize()},
+     * or {@link CoreProfile#getMaxProcesses()} if it is not specified.
+     * @param profile the profile of this resource
+     * @param arguments the runtime arguments
+     * @param core the core profile of the current gate task
+     * @throws IllegalArgumentException if some parameters were {@code null}
+     * @since 0.4.0
+     */
+    public JdbcResourceMirror(JdbcProfile profile, ParameterList arguments, CoreProfile core) {
         if (profile == null) {
             throw new IllegalArgumentException("profile must not be null"); //$NON-NLS-1$
         }
         if (arguments == null) {
             throw new IllegalArgumentException("arguments must not be null"); //$NON-NLS-1$
         }
+        if (core == null) {
+            throw new IllegalArgumentException("core must not be null"); //$NON-NLS-1$
+        }
         this.profile = profile;
         this.arguments = arguments;
+        int poolSize = profile.getConnectionPoolSize();
+        if (poolSize < 0) {
+            poolSize = core.getMaxProcesses();
+        }
+        LOG.debug("JDBC connection pool size: {} (resource={})",
+                poolSize,
+                profile.getResourceName());
+        this.pool = poolSize == 0 ? null : new JdbcConnectionPool(profile, poolSize);
     }
 
     @Override
@@ -102,7 +131,7 @@ public class JdbcResourceMirror extends ResourceMirror {
         WGLOG.info("I02001",
                 getName(),
                 script.getName());
-        Connection connection = profile.openConnection();
+        Connection connection = openConnection();
         boolean succeed = false;
         try {
             JdbcSourceDriver<T> driver = new JdbcSourceDriver<T>(profile, jdbcScript, connection, object);
@@ -138,7 +167,7 @@ public class JdbcResourceMirror extends ResourceMirror {
         WGLOG.info("I02001",
                 getName(),
                 script.getName());
-        Connection connection = profile.openConnection();
+        Connection connection = openConnection();
         boolean succeed = false;
         try {
             JdbcDrainDriver<T> driver = new JdbcDrainDriver<T>(profile, jdbcScript, connection, true);
@@ -162,9 +191,19 @@ public class JdbcResourceMirror extends ResourceMirror {
         }
     }
 
+    private Connection openConnection() throws IOException {
+        if (pool == null) {
+            return profile.openConnection();
+        }
+        return pool.acquire();
+    }
+
     @Override
     public void close() throws IOException {
         LOG.debug("Closing JDBC resource: {}",
                 getName());
+        if (pool != null) {
+            pool.close();
+        }
     }
 }
@@ -21,6 +21,7 @@ import java.text.MessageFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.asakusafw.windgate.core.CoreProfile;
 import com.asakusafw.windgate.core.ParameterList;
 import com.asakusafw.windgate.core.resource.ResourceManipulator;
 import com.asakusafw.windgate.core.resource.ResourceMirror;
@@ -30,6 +31,7 @@ import com.asakusafw.windgate.core.resource.ResourceProvider;
 /**
  * An implementation of {@link ResourceProvider} using JDBC.
  * @since 0.2.2
+ * @version 0.4.0
  */
 public class JdbcResourceProvider extends ResourceProvider {
 
@@ -58,6 +60,14 @@ public class JdbcResourceProvider extends ResourceProvider {
         return new JdbcResourceMirror(jdbcProfile, arguments);
     }
 
+    @Override
+    public ResourceMirror create(String sessionId, ParameterList arguments, CoreProfile core) throws IOException {
+        LOG.debug("Creating JDBC resource {} for session {}",
+                jdbcProfile.getResourceName(),
+                sessionId);
+        return new JdbcResourceMirror(jdbcProfile, arguments, core);
+    }
+
     @Override
     public ResourceManipulator createManipulator(ParameterList arguments) throws IOException {
         if (arguments == null) {
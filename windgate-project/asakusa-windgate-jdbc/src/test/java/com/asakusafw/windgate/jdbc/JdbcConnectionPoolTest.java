@@ -0,0 +1,196 @@
+/**
+ * Copyright 2011-2012 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.windgate.jdbc;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test for {@link JdbcConnectionPool}.
+ */
+public class JdbcConnectionPoolTest {
+
+    /**
+     * Test database.
+     */
+    @Rule
+    public H2Resource h2 = new H2Resource("testing") {
+        @Override
+        protected void before() throws Exception {
+            executeFile("pair.sql");
+        }
+    };
+
+    /**
+     * Connections are reused.
+     * @throws Exception if failed
+     */
+    @Test
+    public void reuse() throws Exception {
+        JdbcConnectionPool pool = new JdbcConnectionPool(profile(), 1);
+        try {
+            Connection first = pool.acquire();
+            String session = sessionId(first);
+            first.close();
+            assertThat(first.isClosed(), is(true));
+            assertThat(pool.getIdleCount(), is(1));
+
+            Connection second = pool.acquire();
+            assertThat(pool.getIdleCount(), is(0));
+            assertThat(sessionId(second), is(session));
+            second.close();
+        } finally {
+            pool.close();
+        }
+        assertThat(pool.getIdleCount(), is(0));
+    }
+
+    /**
+     * The number of idle connections is limited.
+     * @throws Exception if failed
+     */
+    @Test
+    public void bounded() throws Exception {
+        JdbcConnectionPool pool = new JdbcConnectionPool(profile(), 1);
+        try {
+            Connection first = pool.acquire();
+            Connection second = pool.acquire();
+            assertThat(sessionId(second), is(not(sessionId(first))));
+            first.close();
+            second.close();
+            assertThat(pool.getIdleCount(), is(1));
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Uncommitted changes are discarded when connections are returned.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rollback() throws Exception {
+        JdbcConnectionPool pool = new JdbcConnectionPool(profile(), 1);
+        try {
+            Connection first = pool.acquire();
+            Statement statement = first.createStatement();
+            statement.execute("INSERT INTO PAIR (KEY, VALUE) VALUES (1, 'Hello, world!')");
+            statement.close();
+            first.close();
+
+            Connection second = pool.acquire();
+            assertThat(h2.count("PAIR"), is(0));
+            second.close();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Prepared statements are reused.
+     * @throws Exception if failed
+     */
+    @Test
+    public void statement_reuse() throws Exception {
+        JdbcConnectionPool pool = new JdbcConnectionPool(profile(), 1);
+        try {
+            String sql = "INSERT INTO PAIR (KEY, VALUE) VALUES (?, ?)";
+            Connection first = pool.acquire();
+            PreparedStatement statement = first.prepareStatement(sql);
+            statement.setInt(1, 1);
+            statement.setString(2, "Hello1, world!");
+            statement.addBatch();
+            statement.executeBatch();
+            first.commit();
+            statement.close();
+            assertThat(statement.isClosed(), is(true));
+            first.close();
+
+            Connection second = pool.acquire();
+            PreparedStatement reused = second.prepareStatement(sql);
+            assertThat(reused.getConnection(), is(sameInstance(second)));
+            reused.setInt(1, 2);
+            reused.setString(2, "Hello2, world!");
+            reused.addBatch();
+            reused.executeBatch();
+            second.commit();
+            reused.close();
+            second.close();
+        } finally {
+            pool.close();
+        }
+        assertThat(h2.count("PAIR"), is(2));
+    }
+
+    /**
+     * Closed connections are not available.
+     * @throws Exception if failed
+     */
+    @Test(expected = SQLException.class)
+    public void closed_connection() throws Exception {
+        JdbcConnectionPool pool = new JdbcConnectionPool(profile(), 1);
+        try {
+            Connection conn = pool.acquire();
+            conn.close();
+            conn.createStatement();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Closed pool is not available.
+     * @throws Exception if failed
+     */
+    @Test(expected = IOException.class)
+    public void closed_pool() throws Exception {
+        JdbcConnectionPool pool = new JdbcConnectionPool(profile(), 1);
+        pool.close();
+        pool.acquire();
+    }
+
+    private String sessionId(Connection conn) throws SQLException {
+        Statement statement = conn.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery("SELECT SESSION_ID()");
+            assertThat(rs.next(), is(true));
+            return rs.getString(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private JdbcProfile profile() {
+        return new JdbcProfile(
+                "jdbc",
+                null,
+                org.h2.Driver.class.getName(),
+                h2.getJdbcUrl(),
+                null,
+                null,
+                100);
+    }
+}
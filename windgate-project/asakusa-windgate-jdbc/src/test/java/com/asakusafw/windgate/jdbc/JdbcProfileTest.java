@@ -62,6 +62,7 @@ public class JdbcProfileTest {
         JdbcProfile profile = JdbcProfile.convert(rp);
         assertThat(profile.getResourceName(), is(rp.getName()));
         assertThat(profile.getBatchPutUnit(), greaterThan(0L));
+        assertThat(profile.getConnectionPoolSize(), is(JdbcProfile.DEFAULT_CONNECTION_POOL_SIZE));
         Connection conn = profile.openConnection();
         try {
             Statement stmt = conn.createStatement();
@@ -89,6 +90,7 @@ public class JdbcProfileTest {
         map.put(JdbcProfile.KEY_BATCH_PUT_UNIT, "10000");
         map.put(JdbcProfile.KEY_CONNECT_RETRY_COUNT, "3");
         map.put(JdbcProfile.KEY_CONNECT_RETRY_INTERVAL, "10");
+        map.put(JdbcProfile.KEY_CONNECTION_POOL_SIZE, "4");
         map.put(JdbcProfile.KEY_TRUNCATE_STATEMENT, "DELETE FROM {0}");
         map.put(JdbcProfile.KEY_PREFIX_PROPERTIES + "hello1", "world1");
         map.put(JdbcProfile.KEY_PREFIX_PROPERTIES + "hello2", "world2");
@@ -97,6 +99,7 @@ public class JdbcProfileTest {
         JdbcProfile profile = JdbcProfile.convert(toProfile(map));
         assertThat(profile.getBatchGetUnit(), is(5000));
         assertThat(profile.getBatchPutUnit(), is(10000L));
+        assertThat(profile.getConnectionPoolSize(), is(4));
 
         Map<String, String> extra = new HashMap<String, String>();
         extra.put("hello1", "world1");
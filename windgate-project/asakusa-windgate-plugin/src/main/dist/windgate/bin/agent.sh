@@ -0,0 +1,93 @@
+#!/bin/sh
+#
+# Copyright 2011-2012 Asakusa Framework Team.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+usage() {
+    cat 1>&2 <<EOF
+WindGate Agent - A long-lived WindGate process
+
+Usage:
+    $0 port
+
+Parameters:
+    port
+        local port number to accept WindGate requests,
+        set the same number to WINDGATE_AGENT_PORT in conf/env.sh
+
+The agent writes a secret into \$WINDGATE_AGENT_SECRET
+(default: \$HOME/.asakusa/windgate-agent-<port>.secret),
+and accepts only requests from users who can read it.
+EOF
+}
+
+import() {
+    _SCRIPT="$1"
+    if [ -e "$_SCRIPT" ]
+    then
+        . "$_SCRIPT"
+    else
+        echo "$_SCRIPT is not found" 1>&2
+        exit 1
+    fi
+}
+
+if [ $# -ne 1 ]; then
+    usage
+    exit 1
+fi
+
+_OPT_PORT="$1"
+
+_WG_ROOT="$(cd "$(dirname "$0")/.." ; pwd)"
+
+import "$_WG_ROOT/conf/env.sh"
+import "$_WG_ROOT/libexec/validate-env.sh"
+
+# Move to home directory
+cd
+
+_WG_CLASSPATH=""
+_WG_CLASS="com.asakusafw.windgate.bootstrap.WindGateAgent"
+_WG_SECRET="${WINDGATE_AGENT_SECRET:-$HOME/.asakusa/windgate-agent-${_OPT_PORT}.secret}"
+
+import "$_WG_ROOT/libexec/configure-classpath.sh"
+import "$_WG_ROOT/libexec/configure-hadoop-cmd.sh"
+
+cat << __EOF__
+Starting WindGate Agent
+  -classpath $_WG_CLASSPATH
+  -port $_OPT_PORT
+  -secret $_WG_SECRET
+  WINDGATE_OPTS="$WINDGATE_OPTS"
+__EOF__
+
+if [ -x "$HADOOP_CMD" ]
+then
+    export HADOOP_CLASSPATH="$_WG_CLASSPATH"
+    HADOOP_OPTS="$HADOOP_OPTS $WINDGATE_OPTS"
+    export HADOOP_OPTS
+    exec "$HADOOP_CMD" \
+        "$_WG_CLASS" \
+        -port "$_OPT_PORT" \
+        -secret "$_WG_SECRET"
+else
+    exec java \
+        $WINDGATE_OPTS \
+        -classpath "$_WG_CLASSPATH" \
+        "$_WG_CLASS" \
+        -port "$_OPT_PORT" \
+        -secret "$_WG_SECRET"
+fi
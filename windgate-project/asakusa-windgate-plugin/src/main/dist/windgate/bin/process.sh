@@ -104,6 +104,7 @@ _WG_ARGUMENTS="$_WG_ARGUMENTS,batch_id=$_OPT_BATCH_ID"
 _WG_ARGUMENTS="$_WG_ARGUMENTS,flow_id=$_OPT_FLOW_ID"
 _WG_ARGUMENTS="$_WG_ARGUMENTS,execution_id=$_OPT_EXECUTION_ID"
 _WG_CLASSPATH="$ASAKUSA_HOME/batchapps/$_OPT_BATCH_ID/lib/jobflow-${_OPT_FLOW_ID}.jar"
+_WG_APP_CLASSPATH="$_WG_CLASSPATH"
 _WG_CLASS="com.asakusafw.windgate.bootstrap.WindGate"
 
 import "$_WG_ROOT/libexec/configure-classpath.sh"
@@ -124,39 +125,68 @@ Starting WindGate
   WINDGATE_OPTS="$WINDGATE_OPTS"
 __EOF__
 
-if [ -x "$HADOOP_CMD" ]
+_WG_RET=""
+if [ "$WINDGATE_AGENT_PORT" != "" ]
 then
-    export HADOOP_CLASSPATH="$_WG_CLASSPATH"
-    HADOOP_OPTS="$HADOOP_OPTS $WINDGATE_OPTS"
-    HADOOP_OPTS="$HADOOP_OPTS -Dcom.asakusafw.windgate.log.batchId=${_OPT_BATCH_ID:-(unknown)}"
-    HADOOP_OPTS="$HADOOP_OPTS -Dcom.asakusafw.windgate.log.flowId=${_OPT_FLOW_ID:-(unknown)}"
-    HADOOP_OPTS="$HADOOP_OPTS -Dcom.asakusafw.windgate.log.executionId=${_OPT_EXECUTION_ID:-(unknown)}"
-    export HADOOP_OPTS
-    "$HADOOP_CMD" \
-        "$_WG_CLASS" \
-        -mode "$_WG_MODE" \
-        -profile "$_WG_PROFILE" \
-        -script "$_WG_SCRIPT" \
-        -session "$_WG_SESSION" \
-        -plugin "$_WG_PLUGIN" \
-        -arguments "$_WG_ARGUMENTS"
-else
-    java \
-        $WINDGATE_OPTS \
-        -classpath "$_WG_CLASSPATH" \
-        "-Dcom.asakusafw.windgate.log.batchId=${_OPT_BATCH_ID:-(unknown)}" \
-        "-Dcom.asakusafw.windgate.log.flowId=${_OPT_FLOW_ID:-(unknown)}" \
-        "-Dcom.asakusafw.windgate.log.executionId=${_OPT_EXECUTION_ID:-(unknown)}" \
-        "$_WG_CLASS" \
+    _WG_AGENT_STATUS_FILE="$(mktemp "${TMPDIR:-/tmp}/windgate-agent.XXXXXXXX")"
+    bash "$_WG_ROOT/libexec/submit-agent.sh" \
+        "$_WG_AGENT_STATUS_FILE" \
+        "$WINDGATE_AGENT_PORT" \
+        "${WINDGATE_AGENT_SECRET:-$HOME/.asakusa/windgate-agent-${WINDGATE_AGENT_PORT}.secret}" \
+        "$_WG_APP_CLASSPATH" \
+        "$_OPT_BATCH_ID" \
+        "$_OPT_FLOW_ID" \
+        "$_OPT_EXECUTION_ID" \
         -mode "$_WG_MODE" \
         -profile "$_WG_PROFILE" \
         -script "$_WG_SCRIPT" \
         -session "$_WG_SESSION" \
         -plugin "$_WG_PLUGIN" \
         -arguments "$_WG_ARGUMENTS"
+    _WG_RET="$(cat "$_WG_AGENT_STATUS_FILE")"
+    rm -f "$_WG_AGENT_STATUS_FILE"
+    if [ "$_WG_RET" = "" ]
+    then
+        echo "WindGate Agent is not available (port=$WINDGATE_AGENT_PORT), starting a new process"
+    fi
+fi
+
+if [ "$_WG_RET" = "" ]
+then
+    if [ -x "$HADOOP_CMD" ]
+    then
+        export HADOOP_CLASSPATH="$_WG_CLASSPATH"
+        HADOOP_OPTS="$HADOOP_OPTS $WINDGATE_OPTS"
+        HADOOP_OPTS="$HADOOP_OPTS -Dcom.asakusafw.windgate.log.batchId=${_OPT_BATCH_ID:-(unknown)}"
+        HADOOP_OPTS="$HADOOP_OPTS -Dcom.asakusafw.windgate.log.flowId=${_OPT_FLOW_ID:-(unknown)}"
+        HADOOP_OPTS="$HADOOP_OPTS -Dcom.asakusafw.windgate.log.executionId=${_OPT_EXECUTION_ID:-(unknown)}"
+        export HADOOP_OPTS
+        "$HADOOP_CMD" \
+            "$_WG_CLASS" \
+            -mode "$_WG_MODE" \
+            -profile "$_WG_PROFILE" \
+            -script "$_WG_SCRIPT" \
+            -session "$_WG_SESSION" \
+            -plugin "$_WG_PLUGIN" \
+            -arguments "$_WG_ARGUMENTS"
+    else
+        java \
+            $WINDGATE_OPTS \
+            -classpath "$_WG_CLASSPATH" \
+            "-Dcom.asakusafw.windgate.log.batchId=${_OPT_BATCH_ID:-(unknown)}" \
+            "-Dcom.asakusafw.windgate.log.flowId=${_OPT_FLOW_ID:-(unknown)}" \
+            "-Dcom.asakusafw.windgate.log.executionId=${_OPT_EXECUTION_ID:-(unknown)}" \
+            "$_WG_CLASS" \
+            -mode "$_WG_MODE" \
+            -profile "$_WG_PROFILE" \
+            -script "$_WG_SCRIPT" \
+            -session "$_WG_SESSION" \
+            -plugin "$_WG_PLUGIN" \
+            -arguments "$_WG_ARGUMENTS"
+    fi
+    _WG_RET=$?
 fi
 
-_WG_RET=$?
 if [ $_WG_RET -ne 0 ]
 then
     cat 1>&2 << __EOF__
@@ -17,3 +17,9 @@
 # Set your Hadoop installation path (optional)
 #export HADOOP_HOME="/usr/lib/hadoop"
 export HADOOP_USER_CLASSPATH_FIRST=true
+
+# Set the local port number of WindGate Agent (bin/agent.sh) to reuse its JVM (optional)
+# If the agent is not available, WindGate will be launched as a new process
+#export WINDGATE_AGENT_PORT=17070
+# Set the path of WindGate Agent secret, which only the agent user can read (optional)
+#export WINDGATE_AGENT_SECRET="$HOME/.asakusa/windgate-agent-17070.secret"
@@ -0,0 +1,106 @@
+#!/bin/bash
+#
+# Copyright 2011-2012 Asakusa Framework Team.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Submits a WindGate request to the WindGate Agent on the local host.
+# Usage:
+#     submit-agent.sh status-file port secret-file classpath batch-id flow-id execution-id windgate-arguments...
+# Result:
+#     The exit status of the WindGate execution is written into status-file.
+#     If the agent is not available or rejected the request, status-file is left empty,
+#     and then the caller should launch WindGate as a new process.
+#     The WindGate logs in the agent are written to the standard output.
+
+if [ $# -lt 7 ]; then
+    echo "Invalid arguments: $*" 1>&2
+    exit 1
+fi
+
+_AGENT_STATUS_FILE="$1"
+_AGENT_PORT="$2"
+_AGENT_SECRET_FILE="$3"
+_AGENT_CLASSPATH="$4"
+_AGENT_BATCH_ID="$5"
+_AGENT_FLOW_ID="$6"
+_AGENT_EXECUTION_ID="$7"
+shift 7
+
+_agent_escape() {
+    local _V="$1"
+    _V="${_V//\\/\\\\}"
+    _V="${_V//$'\n'/\\n}"
+    printf '%s' "$_V"
+}
+
+if ! _AGENT_SECRET="$(cat "$_AGENT_SECRET_FILE" 2>/dev/null)" || [ "$_AGENT_SECRET" = "" ]
+then
+    echo "WindGate Agent secret is not readable: $_AGENT_SECRET_FILE" 1>&2
+    exit 0
+fi
+
+if ! { exec 3<>"/dev/tcp/127.0.0.1/$_AGENT_PORT" ; } 2>/dev/null
+then
+    exit 0
+fi
+
+{
+    printf '%s\n' "secret=$_AGENT_SECRET"
+    printf '%s\n' "classpath=$(_agent_escape "$_AGENT_CLASSPATH")"
+    for _AGENT_ENV in $(compgen -e)
+    do
+        printf '%s\n' "env.$_AGENT_ENV=$(_agent_escape "${!_AGENT_ENV}")"
+    done
+    printf '%s\n' "log.batchId=$(_agent_escape "${_AGENT_BATCH_ID:-(unknown)}")"
+    printf '%s\n' "log.flowId=$(_agent_escape "${_AGENT_FLOW_ID:-(unknown)}")"
+    printf '%s\n' "log.executionId=$(_agent_escape "${_AGENT_EXECUTION_ID:-(unknown)}")"
+    for _AGENT_ARG in "$@"
+    do
+        printf '%s\n' "arg=$(_agent_escape "$_AGENT_ARG")"
+    done
+    printf '\n'
+} >&3
+
+_AGENT_STATUS=""
+_AGENT_ERROR=""
+while IFS= read -r _AGENT_LINE <&3
+do
+    case "$_AGENT_LINE" in
+        log=*)
+            printf '%s\n' "${_AGENT_LINE#log=}"
+        ;;
+        status=*)
+            _AGENT_STATUS="${_AGENT_LINE#status=}"
+        ;;
+        error=*)
+            _AGENT_ERROR="${_AGENT_LINE#error=}"
+        ;;
+    esac
+done
+exec 3<&-
+
+if [ "$_AGENT_ERROR" != "" ]
+then
+    echo "WindGate Agent rejected the request: $_AGENT_ERROR" 1>&2
+    exit 0
+fi
+if [ "$_AGENT_STATUS" = "" ]
+then
+    # the request may have been partially executed, so that we must not retry it
+    echo "WindGate Agent did not return the exit status: port=$_AGENT_PORT" 1>&2
+    _AGENT_STATUS=1
+fi
+printf '%s\n' "$_AGENT_STATUS" > "$_AGENT_STATUS_FILE"
+exit 0